@@ -0,0 +1,357 @@
+/*
+ * Copyright (c) 2024, Oleksandr Yarmolenko. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details.
+ *
+ */
+package com.olexyarm.jfxfilecontenteditor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Random;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Guesses charset of file from small samples, so big file is decoded once with right charset.
+// Samples are start and end of file and a few probes at random (but repeatable) positions,
+// bytes are read from mapped file, time of detection does not depend on file size.
+// Order of checks: BOM, UTF-16 without BOM (zero bytes at even or odd positions), UTF-8 validity,
+// then single byte charsets are scored by pairs of bytes decoded with each of them.
+// Default charset is returned when samples have no bytes which could tell charset.
+public class CharsetDetector {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CharsetDetector.class);
+
+    private static final int INT_SAMPLE_SIZE = 64 * 1024;
+    private static final int INT_PROBE_COUNT = 16;
+    private static final int INT_PROBE_SIZE = 4 * 1024;
+    // UTF-16 text of Latin script has zero byte in almost every char.
+    private static final int INT_UTF_16_ZERO_PERCENT_MIN = 30;
+    private static final int INT_UTF_16_ZERO_OTHER_PERCENT_MAX = 5;
+    // Text with more zero bytes is binary, charset can't be guessed.
+    private static final int INT_BINARY_ZERO_PERCENT_MIN = 1;
+    // Few broken sequences (e.g. file cut in the middle of char) don't make UTF-8 file single byte one.
+    private static final int INT_UTF_8_INVALID_PERCENT_MAX = 1;
+    // Default charset wins when score of other single byte charset is not better.
+    private static final String[] ARR_STR_SINGLE_BYTE_CHARSETS = {
+        "windows-1252", "windows-1250", "windows-1251", "KOI8-R", "windows-1253"
+    };
+
+    private static final int INT_SCORE_UNDEFINED = -10;
+    private static final int INT_SCORE_SCRIPT_SAME = 2;
+    private static final int INT_SCORE_SCRIPT_MIXED = -3;
+    private static final int INT_SCORE_LOWER_PAIR = 1;
+    private static final int INT_SCORE_UPPER_AFTER_LOWER = -3;
+    private static final int INT_SCORE_LATIN_RUN = -1;
+
+    // -------------------------------------------------------------------------------------
+    // Construstors
+    // -------------------------------------------------------------------------------------
+    private CharsetDetector() {
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Methods
+    // -------------------------------------------------------------------------------------
+    public static Charset detect(MappedFileWindow mappedFileWindow, Charset charsetDefault) throws IOException {
+
+        long lngTimeStart = System.currentTimeMillis();
+        long lngSize = mappedFileWindow.size();
+        String strReason;
+        Charset charset = detectBom(mappedFileWindow);
+        if (charset != null) {
+            strReason = "BOM";
+        } else if (lngSize == 0) {
+            charset = charsetDefault;
+            strReason = "Empty";
+        } else {
+            Sample sample = new Sample();
+            // Samples start at even offsets, so zero bytes of UTF-16 are counted at right positions.
+            sample.add(mappedFileWindow, 0, (int) Math.min(INT_SAMPLE_SIZE, lngSize));
+            if (lngSize > INT_SAMPLE_SIZE) {
+                long lngTailStart = Math.max(INT_SAMPLE_SIZE, lngSize - INT_SAMPLE_SIZE) & ~1L;
+                if (lngSize > 2L * INT_SAMPLE_SIZE + INT_PROBE_SIZE) {
+                    Random random = new Random(lngSize);
+                    long lngProbeRange = lngSize - 2L * INT_SAMPLE_SIZE - INT_PROBE_SIZE;
+                    for (int i = 0; i < INT_PROBE_COUNT; i++) {
+                        long lngProbeStart = (INT_SAMPLE_SIZE + (long) (random.nextDouble() * lngProbeRange)) & ~1L;
+                        sample.add(mappedFileWindow, lngProbeStart, INT_PROBE_SIZE);
+                    }
+                }
+                sample.add(mappedFileWindow, lngTailStart, (int) (lngSize - lngTailStart));
+            }
+            charset = sample.choose(charsetDefault);
+            strReason = sample.strReason;
+        }
+        LOGGER.debug("Detected charset."
+                + " Charset=\"" + charset + "\""
+                + " Reason=\"" + strReason + "\""
+                + " CharsetDefault=\"" + charsetDefault + "\""
+                + " Time=" + (System.currentTimeMillis() - lngTimeStart)
+                + " pathFile=\"" + mappedFileWindow.getPathFile() + "\"");
+        return charset;
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Helpers
+    // -------------------------------------------------------------------------------------
+    // UTF-16 and UTF-32 are returned with BOM, MappedTextSource reads byte order from it.
+    private static Charset detectBom(MappedFileWindow mappedFileWindow) throws IOException {
+
+        long lngSize = mappedFileWindow.size();
+        if (lngSize < 2) {
+            return null;
+        }
+        ByteBuffer byteBuffer = mappedFileWindow.getBuffer(0, (int) Math.min(4, lngSize));
+        int intB0 = byteBuffer.get(0) & 0xFF;
+        int intB1 = byteBuffer.get(1) & 0xFF;
+        int intB2 = (byteBuffer.limit() > 2) ? byteBuffer.get(2) & 0xFF : -1;
+        int intB3 = (byteBuffer.limit() > 3) ? byteBuffer.get(3) & 0xFF : -1;
+        if (intB0 == 0xEF && intB1 == 0xBB && intB2 == 0xBF) {
+            return StandardCharsets.UTF_8;
+        }
+        if ((intB0 == 0xFF && intB1 == 0xFE && intB2 == 0 && intB3 == 0)
+                || (intB0 == 0 && intB1 == 0 && intB2 == 0xFE && intB3 == 0xFF)) {
+            return Charset.forName("UTF-32");
+        }
+        if ((intB0 == 0xFF && intB1 == 0xFE) || (intB0 == 0xFE && intB1 == 0xFF)) {
+            return StandardCharsets.UTF_16;
+        }
+        return null;
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Counters collected from all samples.
+    private static class Sample {
+
+        private long lngBytes;
+        private long lngZeroEven;
+        private long lngZeroOdd;
+        private long lngHighBytes;
+        private long lngUtf8Sequences;
+        private long lngUtf8Invalid;
+        // Pairs of adjacent bytes where at least one byte is not ASCII, index is (b1 << 8) | b2.
+        private final int[] aintPairs = new int[256 * 256];
+        private String strReason;
+
+        // ---------------------------------------------------------------------------------
+        private void add(MappedFileWindow mappedFileWindow, long lngStart, int intLen) throws IOException {
+
+            ByteBuffer byteBuffer = mappedFileWindow.getBuffer(lngStart, intLen);
+            boolean booFileStart = (lngStart == 0);
+            boolean booFileEnd = (lngStart + intLen == mappedFileWindow.size());
+            this.lngBytes += intLen;
+            int intPrev = -1;
+            for (int i = 0; i < intLen; i++) {
+                int intB = byteBuffer.get(i) & 0xFF;
+                if (intB == 0) {
+                    if ((i & 1) == 0) {
+                        this.lngZeroEven++;
+                    } else {
+                        this.lngZeroOdd++;
+                    }
+                }
+                if (intB >= 0x80) {
+                    this.lngHighBytes++;
+                }
+                if (intPrev >= 0 && (intPrev >= 0x80 || intB >= 0x80)) {
+                    this.aintPairs[(intPrev << 8) | intB]++;
+                }
+                intPrev = intB;
+            }
+            this.countUtf8(byteBuffer, intLen, booFileStart, booFileEnd);
+        }
+
+        // ---------------------------------------------------------------------------------
+        private void countUtf8(ByteBuffer byteBuffer, int intLen, boolean booFileStart, boolean booFileEnd) {
+
+            int i = 0;
+            if (!booFileStart) {
+                // Sample could start in the middle of char.
+                while (i < intLen && i < 3 && (byteBuffer.get(i) & 0xC0) == 0x80) {
+                    i++;
+                }
+            }
+            while (i < intLen) {
+                int intB = byteBuffer.get(i) & 0xFF;
+                if (intB < 0x80) {
+                    i++;
+                    continue;
+                }
+                int intFollowing;
+                if (intB >= 0xC2 && intB <= 0xDF) {
+                    intFollowing = 1;
+                } else if (intB >= 0xE0 && intB <= 0xEF) {
+                    intFollowing = 2;
+                } else if (intB >= 0xF0 && intB <= 0xF4) {
+                    intFollowing = 3;
+                } else {
+                    this.lngUtf8Invalid++;
+                    i++;
+                    continue;
+                }
+                if (i + intFollowing >= intLen) {
+                    // Char cut by end of sample.
+                    if (booFileEnd) {
+                        this.lngUtf8Invalid++;
+                    }
+                    break;
+                }
+                boolean booValid = true;
+                for (int j = 1; j <= intFollowing; j++) {
+                    if ((byteBuffer.get(i + j) & 0xC0) != 0x80) {
+                        booValid = false;
+                        break;
+                    }
+                }
+                if (booValid) {
+                    this.lngUtf8Sequences++;
+                    i += intFollowing + 1;
+                } else {
+                    this.lngUtf8Invalid++;
+                    i++;
+                }
+            }
+        }
+
+        // ---------------------------------------------------------------------------------
+        private Charset choose(Charset charsetDefault) {
+
+            long lngZeroPercentEven = this.lngZeroEven * 100 / this.lngBytes;
+            long lngZeroPercentOdd = this.lngZeroOdd * 100 / this.lngBytes;
+            // Zero byte of Latin char in UTF-16 is every second byte, so percent of all bytes is up to 50.
+            if (lngZeroPercentOdd * 2 >= INT_UTF_16_ZERO_PERCENT_MIN && lngZeroPercentEven * 2 <= INT_UTF_16_ZERO_OTHER_PERCENT_MAX) {
+                this.strReason = "UTF-16 zero bytes";
+                return StandardCharsets.UTF_16LE;
+            }
+            if (lngZeroPercentEven * 2 >= INT_UTF_16_ZERO_PERCENT_MIN && lngZeroPercentOdd * 2 <= INT_UTF_16_ZERO_OTHER_PERCENT_MAX) {
+                this.strReason = "UTF-16 zero bytes";
+                return StandardCharsets.UTF_16BE;
+            }
+            if ((this.lngZeroEven + this.lngZeroOdd) * 100 >= this.lngBytes * INT_BINARY_ZERO_PERCENT_MIN) {
+                this.strReason = "Binary";
+                return charsetDefault;
+            }
+            if (this.lngHighBytes == 0) {
+                this.strReason = "ASCII";
+                return isAsciiCompatible(charsetDefault) ? charsetDefault : StandardCharsets.UTF_8;
+            }
+            if (this.lngUtf8Sequences > 0 && this.lngUtf8Invalid * 100 <= this.lngUtf8Sequences * INT_UTF_8_INVALID_PERCENT_MAX) {
+                this.strReason = "UTF-8 valid";
+                return StandardCharsets.UTF_8;
+            }
+            Set<Charset> setCandidates = new LinkedHashSet<>();
+            if (isSingleByte(charsetDefault)) {
+                setCandidates.add(charsetDefault);
+            }
+            for (String strName : ARR_STR_SINGLE_BYTE_CHARSETS) {
+                if (Charset.isSupported(strName)) {
+                    setCandidates.add(Charset.forName(strName));
+                }
+            }
+            Charset charsetBest = null;
+            long lngScoreBest = Long.MIN_VALUE;
+            for (Charset charsetCandidate : setCandidates) {
+                long lngScore = this.score(charsetCandidate);
+                LOGGER.trace("Scored single byte charset."
+                        + " Charset=\"" + charsetCandidate + "\""
+                        + " Score=" + lngScore);
+                if (lngScore > lngScoreBest) {
+                    lngScoreBest = lngScore;
+                    charsetBest = charsetCandidate;
+                }
+            }
+            if (charsetBest == null) {
+                this.strReason = "No single byte charset";
+                return charsetDefault;
+            }
+            this.strReason = "Single byte score " + lngScoreBest;
+            return charsetBest;
+        }
+
+        // ---------------------------------------------------------------------------------
+        // Text in right charset has letters of one script in words and more lower case letters.
+        private long score(Charset charset) {
+
+            byte[] abytAll = new byte[256];
+            for (int i = 0; i < 256; i++) {
+                abytAll[i] = (byte) i;
+            }
+            char[] achTable = new String(abytAll, charset).toCharArray();
+            if (achTable.length != 256) {
+                return Long.MIN_VALUE;
+            }
+            long lngScore = 0;
+            for (int intPair = 0; intPair < this.aintPairs.length; intPair++) {
+                int intCount = this.aintPairs[intPair];
+                if (intCount == 0) {
+                    continue;
+                }
+                char ch1 = achTable[intPair >>> 8];
+                char ch2 = achTable[intPair & 0xFF];
+                lngScore += (long) intCount * scorePair(ch1, ch2);
+            }
+            return lngScore;
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    private static int scorePair(char ch1, char ch2) {
+
+        if (isUndefined(ch1) || isUndefined(ch2)) {
+            return INT_SCORE_UNDEFINED;
+        }
+        if (!Character.isLetter(ch1) || !Character.isLetter(ch2)) {
+            return 0;
+        }
+        Character.UnicodeScript script1 = Character.UnicodeScript.of(ch1);
+        Character.UnicodeScript script2 = Character.UnicodeScript.of(ch2);
+        if (script1 != script2) {
+            return INT_SCORE_SCRIPT_MIXED;
+        }
+        int intScore = INT_SCORE_SCRIPT_SAME;
+        if (Character.isLowerCase(ch1) && Character.isUpperCase(ch2)) {
+            intScore += INT_SCORE_UPPER_AFTER_LOWER;
+        } else if (Character.isLowerCase(ch1) && Character.isLowerCase(ch2)) {
+            intScore += INT_SCORE_LOWER_PAIR;
+        }
+        // Accented Latin letters rarely follow each other, Cyrillic or Greek text read as Latin has runs of them.
+        if (script1 == Character.UnicodeScript.LATIN && ch1 >= 0x80 && ch2 >= 0x80) {
+            intScore += INT_SCORE_LATIN_RUN;
+        }
+        return intScore;
+    }
+
+    // -------------------------------------------------------------------------------------
+    private static boolean isUndefined(char ch) {
+
+        return ch == '\uFFFD' || (ch >= 0x80 && Character.isISOControl(ch)) || Character.getType(ch) == Character.UNASSIGNED;
+    }
+
+    // -------------------------------------------------------------------------------------
+    private static boolean isSingleByte(Charset charset) {
+
+        return charset.canEncode() && charset.newEncoder().maxBytesPerChar() == 1.0f;
+    }
+
+    // -------------------------------------------------------------------------------------
+    private static boolean isAsciiCompatible(Charset charset) {
+
+        byte[] abytAscii = "Az09 \n".getBytes(StandardCharsets.US_ASCII);
+        return Arrays.equals(abytAscii, "Az09 \n".getBytes(charset));
+    }
+    // -------------------------------------------------------------------------------------
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2024, Oleksandr Yarmolenko. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details.
+ *
+ */
+package com.olexyarm.jfxfilecontenteditor;
+
+import java.util.concurrent.CancellationException;
+
+// Read-only view of document range for java.util.regex, document is read by windows and never copied to String.
+// Regular expression could backtrack for very long, so every INT_CHECK_READS chars read deadline
+// and thread interrupt are checked.
+public class DocumentCharSequence implements CharSequence {
+
+    private static final int INT_WINDOW_SIZE = 64 * 1024;
+    // Regex engine reads mostly forward, window starts a bit before read char for lookbehind and backtracking.
+    private static final int INT_WINDOW_BEFORE = INT_WINDOW_SIZE / 8;
+    private static final int INT_CHECK_READS = 4096;
+
+    private final PieceTable document;
+    private final long lngStart;
+    private final int intLength;
+    private final long lngDeadlineNanos;
+    private final char[] achWindow = new char[INT_WINDOW_SIZE];
+    private long lngWindowStart;
+    private int intWindowLen;
+    private int intReads;
+
+    // -------------------------------------------------------------------------------------
+    // Construstors
+    // -------------------------------------------------------------------------------------
+    // lngDeadlineNanos is System.nanoTime() value, 0 means no deadline.
+    public DocumentCharSequence(PieceTable document, long lngStart, int intLength, long lngDeadlineNanos) {
+
+        if (lngStart < 0 || intLength < 0 || lngStart + intLength > document.length()) {
+            throw new IndexOutOfBoundsException("start " + lngStart + ", length " + intLength + ", document length " + document.length());
+        }
+        this.document = document;
+        this.lngStart = lngStart;
+        this.intLength = intLength;
+        this.lngDeadlineNanos = lngDeadlineNanos;
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Methods
+    // -------------------------------------------------------------------------------------
+    @Override
+    public int length() {
+        return this.intLength;
+    }
+
+    // -------------------------------------------------------------------------------------
+    @Override
+    public char charAt(int intIndex) {
+
+        if (intIndex < 0 || intIndex >= this.intLength) {
+            throw new IndexOutOfBoundsException("index " + intIndex + ", length " + this.intLength);
+        }
+        if (++this.intReads == INT_CHECK_READS) {
+            this.intReads = 0;
+            this.checkTime();
+        }
+        long lngPos = this.lngStart + intIndex;
+        if (lngPos < this.lngWindowStart || lngPos >= this.lngWindowStart + this.intWindowLen) {
+            this.readWindow(lngPos);
+        }
+        return this.achWindow[(int) (lngPos - this.lngWindowStart)];
+    }
+
+    // -------------------------------------------------------------------------------------
+    @Override
+    public CharSequence subSequence(int intStart, int intEnd) {
+
+        if (intStart < 0 || intEnd > this.intLength || intStart > intEnd) {
+            throw new IndexOutOfBoundsException("start " + intStart + ", end " + intEnd + ", length " + this.intLength);
+        }
+        return new DocumentCharSequence(this.document, this.lngStart + intStart, intEnd - intStart, this.lngDeadlineNanos);
+    }
+
+    // -------------------------------------------------------------------------------------
+    @Override
+    public String toString() {
+
+        return this.document.getText(this.lngStart, this.lngStart + this.intLength);
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Helpers
+    // -------------------------------------------------------------------------------------
+    private void checkTime() {
+
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("Search is cancelled.");
+        }
+        if (this.lngDeadlineNanos != 0 && System.nanoTime() - this.lngDeadlineNanos > 0) {
+            throw new SearchEngine.SearchTimeoutException("Search took longer than timeout.");
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    private void readWindow(long lngPos) {
+
+        long lngEnd = this.lngStart + this.intLength;
+        long lngWindowStartNew = Math.max(this.lngStart, lngPos - INT_WINDOW_BEFORE);
+        long lngWindowEndNew = Math.min(lngEnd, lngWindowStartNew + INT_WINDOW_SIZE);
+        this.document.getChars(lngWindowStartNew, lngWindowEndNew, this.achWindow, 0);
+        this.lngWindowStart = lngWindowStartNew;
+        this.intWindowLen = (int) (lngWindowEndNew - lngWindowStartNew);
+    }
+    // -------------------------------------------------------------------------------------
+}
@@ -0,0 +1,533 @@
+/*
+ * Copyright (c) 2024, Oleksandr Yarmolenko. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details.
+ *
+ */
+package com.olexyarm.jfxfilecontenteditor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.AclFileAttributeView;
+import java.nio.file.attribute.DosFileAttributeView;
+import java.nio.file.attribute.DosFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.Arrays;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Writes document to file chunk by chunk, whole text is never copied to one String.
+// Chars are encoded to direct buffer which is written to FileChannel without extra copying,
+// so memory used by saving does not depend on file size.
+// Chars which could not be encoded by charset are reported as error, like BufferedWriter does.
+// Document read from memory mapped file can be written as delta: pieces of document not changed
+// since file was read are copied from that file byte by byte, only edited text is encoded.
+// Line endings could be converted while chunks are encoded: LF of every chunk is found by
+// LineIndexScanner, text between LF chars is copied as is, CR LF or LF is written in place of LF.
+// CR not followed by LF is not line ending in this editor, it is written as is.
+public class DocumentFileWriter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DocumentFileWriter.class);
+
+    private static final int INT_CHAR_CHUNK_SIZE = 64 * 1024;
+    private static final int INT_BYTE_BUFFER_SIZE = 256 * 1024;
+    // Finding byte offset of piece decodes up to one file block, so document with many pieces is encoded.
+    private static final int INT_DELTA_PIECES_MAX = 1024;
+    // Shorter original pieces are encoded with edited text around them.
+    private static final long LNG_DELTA_COPY_CHARS_MIN = 64 * 1024;
+    private static final long LNG_DELTA_COPY_CHUNK_SIZE = 16 * 1024 * 1024;
+    // Converted chunk with line ending after every char and surrogate left from previous chunk fits char buffer.
+    private static final int INT_CONVERT_CHUNK_SIZE = INT_CHAR_CHUNK_SIZE / 2 - 2;
+    private static final char CH_CR = '\r';
+    private static final char CH_LF = '\n';
+
+    private final PieceTable document;
+    private final CharsetEncoder charsetEncoder;
+
+    private CharBuffer charBuffer;
+    private ByteBuffer byteBuffer;
+    private long lngCharsDone;
+    private long lngBytesWritten;
+    private long lngBytesCopied;
+
+    // Line separator written in place of every line ending, null if line endings are written as is.
+    private char[] achLineSeparator;
+    private char[] achConvert;
+    private LineIndex lineIndexConvert;
+    private long[] alngLineEndingsConvert;
+    private boolean booConvertCrPending;
+
+    // Delta ranges in document order, range with byte start -1 is encoded, other ranges are copied.
+    private MappedFileWindow mappedFileWindowDelta;
+    private int intRangeCount;
+    private long[] alngRangeCharStart;
+    private long[] alngRangeCharEnd;
+    private long[] alngRangeByteStart;
+    private long[] alngRangeByteEnd;
+
+    // -------------------------------------------------------------------------------------
+    // Called by writer after every written buffer.
+    public interface Progress {
+
+        void update(long lngCharsDone, long lngCharsTotal, long lngBytesWritten);
+
+        boolean isCancelled();
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Construstors
+    // -------------------------------------------------------------------------------------
+    public DocumentFileWriter(PieceTable document, Charset charset) {
+
+        this.document = document;
+        this.charsetEncoder = charset.newEncoder();
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Methods
+    // -------------------------------------------------------------------------------------
+    // Line endings (CR LF or LF) are replaced with strLineSeparator, null keeps them as they are.
+    public void setLineSeparator(String strLineSeparator) {
+
+        this.achLineSeparator = (strLineSeparator == null) ? null : strLineSeparator.toCharArray();
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Returns false if writing was cancelled, file has only part of document then.
+    public boolean write(FileChannel fileChannel, Progress progress) throws IOException {
+
+        this.startWriting();
+        if (!this.encodeRange(fileChannel, 0, this.document.length(), progress)) {
+            return false;
+        }
+        progress.update(this.lngCharsDone, this.document.length(), this.lngBytesWritten);
+        return true;
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Splits document to ranges copied from file it was read from and ranges encoded from text.
+    // Returns false if document could not be written as delta, it must be written by write() then.
+    public boolean planDelta(Path pathFile) throws IOException {
+
+        this.intRangeCount = 0;
+        TextSource textSourceOriginal = this.document.getTextSourceOriginal();
+        if (!(textSourceOriginal instanceof MappedTextSource mappedTextSource)
+                || !isReadingFile(this.document, pathFile)
+                || !mappedTextSource.getCharset().equals(this.charsetEncoder.charset())) {
+            return false;
+        }
+        int intPieceCount = this.document.getPieceCount();
+        if (intPieceCount > INT_DELTA_PIECES_MAX) {
+            LOGGER.debug("Too many pieces to write document as delta."
+                    + " PieceCount=" + intPieceCount
+                    + " pathFile=\"" + pathFile + "\"");
+            return false;
+        }
+        int intCapacity = 2 * intPieceCount + 1;
+        this.alngRangeCharStart = new long[intCapacity];
+        this.alngRangeCharEnd = new long[intCapacity];
+        this.alngRangeByteStart = new long[intCapacity];
+        this.alngRangeByteEnd = new long[intCapacity];
+        int intCopyCount = 0;
+        long lngPos = 0;
+        long lngEncodeStart = -1;
+        for (int i = 0; i < intPieceCount; i++) {
+            long lngPieceLength = this.document.getPieceLength(i);
+            long lngByteStart = -1;
+            long lngByteEnd = -1;
+            if (this.document.isPieceOriginal(i) && lngPieceLength >= LNG_DELTA_COPY_CHARS_MIN) {
+                long lngPieceStart = this.document.getPieceStart(i);
+                lngByteStart = mappedTextSource.getByteOffset(lngPieceStart);
+                lngByteEnd = mappedTextSource.getByteOffset(lngPieceStart + lngPieceLength);
+            }
+            if (lngByteStart < 0 || lngByteEnd < 0) {
+                if (lngEncodeStart < 0) {
+                    lngEncodeStart = lngPos;
+                }
+            } else {
+                if (lngEncodeStart >= 0) {
+                    this.addRange(lngEncodeStart, lngPos, -1, -1);
+                    lngEncodeStart = -1;
+                }
+                this.addRange(lngPos, lngPos + lngPieceLength, lngByteStart, lngByteEnd);
+                intCopyCount++;
+            }
+            lngPos += lngPieceLength;
+        }
+        if (lngEncodeStart >= 0) {
+            this.addRange(lngEncodeStart, lngPos, -1, -1);
+        }
+        if (intCopyCount == 0) {
+            this.intRangeCount = 0;
+            return false;
+        }
+        if (this.achLineSeparator != null) {
+            // Copied bytes are not converted, CR LF split between ranges would not be found.
+            for (int i = 1; i < this.intRangeCount; i++) {
+                long lngBoundary = this.alngRangeCharStart[i];
+                if (this.document.charAt(lngBoundary - 1) == CH_CR && this.document.charAt(lngBoundary) == CH_LF) {
+                    LOGGER.debug("Line ending is split between delta ranges."
+                            + " CharPos=" + lngBoundary
+                            + " pathFile=\"" + pathFile + "\"");
+                    this.intRangeCount = 0;
+                    return false;
+                }
+            }
+        }
+        this.mappedFileWindowDelta = mappedTextSource.getMappedFileWindow();
+        LOGGER.debug("Planned delta writing of document."
+                + " PieceCount=" + intPieceCount
+                + " RangeCount=" + this.intRangeCount
+                + " CopyCount=" + intCopyCount
+                + " pathFile=\"" + pathFile + "\"");
+        return true;
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Writes ranges planned by planDelta, returns false if writing was cancelled.
+    public boolean writeDelta(FileChannel fileChannel, Progress progress) throws IOException {
+
+        if (this.intRangeCount == 0) {
+            throw new IllegalStateException("Delta writing of document is not planned.");
+        }
+        this.startWriting();
+        long lngCharsTotal = this.document.length();
+        for (int i = 0; i < this.intRangeCount; i++) {
+            long lngCharStart = this.alngRangeCharStart[i];
+            long lngCharEnd = this.alngRangeCharEnd[i];
+            long lngByteStart = this.alngRangeByteStart[i];
+            if (lngByteStart < 0) {
+                if (!this.encodeRange(fileChannel, lngCharStart, lngCharEnd, progress)) {
+                    return false;
+                }
+                continue;
+            }
+            long lngByteEnd = this.alngRangeByteEnd[i];
+            long lngBytePos = lngByteStart;
+            while (lngBytePos < lngByteEnd) {
+                long lngCount = Math.min(LNG_DELTA_COPY_CHUNK_SIZE, lngByteEnd - lngBytePos);
+                this.mappedFileWindowDelta.transferTo(lngBytePos, lngCount, fileChannel);
+                lngBytePos += lngCount;
+                this.lngBytesWritten += lngCount;
+                this.lngBytesCopied += lngCount;
+                // Chars of copied bytes are not known, progress is estimated.
+                this.lngCharsDone = lngCharStart + (long) ((lngCharEnd - lngCharStart) * ((double) (lngBytePos - lngByteStart) / (lngByteEnd - lngByteStart)));
+                progress.update(this.lngCharsDone, lngCharsTotal, this.lngBytesWritten);
+                if (progress.isCancelled()) {
+                    return false;
+                }
+            }
+            this.lngCharsDone = lngCharEnd;
+        }
+        progress.update(this.lngCharsDone, lngCharsTotal, this.lngBytesWritten);
+        return true;
+    }
+
+    // -------------------------------------------------------------------------------------
+    // File replaced by save is file symbolic link points to, link itself is kept.
+    public static Path getTargetPath(Path pathFile) {
+
+        try {
+            return pathFile.toRealPath();
+        } catch (IOException ex) {
+            // New file.
+            return pathFile.toAbsolutePath().normalize();
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Temp file is created in directory of file, so it could be moved over file atomically.
+    // Returns null if temp file could not be created or could not get owner, group, permissions or ACL
+    // of file, file should be written in place then. Temp file is returned anyway if booRequired.
+    public static Path createTempFile(Path pathFile, boolean booRequired) throws IOException {
+
+        Path pathFileAbs = pathFile.toAbsolutePath();
+        Path pathTemp;
+        try {
+            pathTemp = Files.createTempFile(pathFileAbs.getParent(), "." + pathFileAbs.getFileName() + ".", ".tmp");
+        } catch (IOException ex) {
+            if (booRequired) {
+                throw ex;
+            }
+            LOGGER.debug("Could not create temp file, file is written in place."
+                    + " pathFile=\"" + pathFileAbs + "\""
+                    + " IOException=\"" + ex.toString() + "\"");
+            return null;
+        }
+        if (!Files.exists(pathFileAbs) || copyAttributes(pathFileAbs, pathTemp) || booRequired) {
+            return pathTemp;
+        }
+        LOGGER.debug("Temp file could not get attributes of file, file is written in place."
+                + " pathFile=\"" + pathFileAbs + "\""
+                + " pathTemp=\"" + pathTemp + "\"");
+        Files.deleteIfExists(pathTemp);
+        return null;
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Moves completely written temp file over file, readers see either old or new file.
+    // On Windows file could not be replaced while it's memory mapped, IOException is thrown then.
+    public static void replaceFile(Path pathTemp, Path pathFile) throws IOException {
+
+        try {
+            Files.move(pathTemp, pathFile, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            LOGGER.debug("Atomic move is not supported."
+                    + " pathTemp=\"" + pathTemp + "\""
+                    + " pathFile=\"" + pathFile + "\""
+                    + " Exception=\"" + ex.toString() + "\"");
+            Files.move(pathTemp, pathFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+        // New directory entry should be on disk too, directory could not be opened on Windows.
+        Path pathDir = pathFile.toAbsolutePath().getParent();
+        try (FileChannel fileChannel = FileChannel.open(pathDir, StandardOpenOption.READ)) {
+            fileChannel.force(true);
+        } catch (IOException ex) {
+            LOGGER.trace("Could not force directory."
+                    + " pathDir=\"" + pathDir + "\""
+                    + " IOException=\"" + ex.toString() + "\"");
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Document of big file reads memory mapped file, it could not be written in place.
+    public static boolean isReadingFile(PieceTable document, Path pathFile) {
+
+        TextSource textSourceOriginal = document.getTextSourceOriginal();
+        if (!(textSourceOriginal instanceof MappedTextSource mappedTextSource)) {
+            return false;
+        }
+        Path pathMapped = mappedTextSource.getMappedFileWindow().getPathFile();
+        return getTargetPath(pathMapped).equals(getTargetPath(pathFile));
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Saved file should keep owner, group, permissions, ACL and DOS attributes of replaced file.
+    // Returns false if owner, group, permissions or ACL could not be set, user is not owner of file.
+    private static boolean copyAttributes(Path pathFile, Path pathTemp) {
+
+        boolean booKept = true;
+        try {
+            PosixFileAttributeView posixFileAttributeView = Files.getFileAttributeView(pathTemp, PosixFileAttributeView.class);
+            if (posixFileAttributeView != null) {
+                PosixFileAttributes posixFileAttributes = Files.readAttributes(pathFile, PosixFileAttributes.class);
+                PosixFileAttributes posixFileAttributesTemp = posixFileAttributeView.readAttributes();
+                if (!posixFileAttributes.owner().equals(posixFileAttributesTemp.owner())) {
+                    posixFileAttributeView.setOwner(posixFileAttributes.owner());
+                }
+                if (!posixFileAttributes.group().equals(posixFileAttributesTemp.group())) {
+                    posixFileAttributeView.setGroup(posixFileAttributes.group());
+                }
+                posixFileAttributeView.setPermissions(posixFileAttributes.permissions());
+            }
+        } catch (IOException | UnsupportedOperationException ex) {
+            LOGGER.debug("Could not copy owner and permissions of file to temp file."
+                    + " pathFile=\"" + pathFile + "\""
+                    + " pathTemp=\"" + pathTemp + "\""
+                    + " Exception=\"" + ex.toString() + "\"");
+            booKept = false;
+        }
+        try {
+            AclFileAttributeView aclFileAttributeView = Files.getFileAttributeView(pathTemp, AclFileAttributeView.class);
+            AclFileAttributeView aclFileAttributeViewFile = Files.getFileAttributeView(pathFile, AclFileAttributeView.class);
+            if (aclFileAttributeView != null && aclFileAttributeViewFile != null) {
+                if (!aclFileAttributeViewFile.getOwner().equals(aclFileAttributeView.getOwner())) {
+                    aclFileAttributeView.setOwner(aclFileAttributeViewFile.getOwner());
+                }
+                aclFileAttributeView.setAcl(aclFileAttributeViewFile.getAcl());
+            }
+        } catch (IOException | UnsupportedOperationException ex) {
+            LOGGER.debug("Could not copy ACL of file to temp file."
+                    + " pathFile=\"" + pathFile + "\""
+                    + " pathTemp=\"" + pathTemp + "\""
+                    + " Exception=\"" + ex.toString() + "\"");
+            booKept = false;
+        }
+        try {
+            DosFileAttributeView dosFileAttributeView = Files.getFileAttributeView(pathTemp, DosFileAttributeView.class);
+            if (dosFileAttributeView != null && Files.getFileAttributeView(pathFile, DosFileAttributeView.class) != null) {
+                DosFileAttributes dosFileAttributes = Files.readAttributes(pathFile, DosFileAttributes.class);
+                dosFileAttributeView.setHidden(dosFileAttributes.isHidden());
+                dosFileAttributeView.setSystem(dosFileAttributes.isSystem());
+                dosFileAttributeView.setArchive(dosFileAttributes.isArchive());
+            }
+        } catch (IOException | UnsupportedOperationException ex) {
+            // Hidden, system and archive flags are not important for saving.
+            LOGGER.debug("Could not copy DOS attributes of file to temp file."
+                    + " pathFile=\"" + pathFile + "\""
+                    + " pathTemp=\"" + pathTemp + "\""
+                    + " Exception=\"" + ex.toString() + "\"");
+        }
+        return booKept;
+    }
+
+    // -------------------------------------------------------------------------------------
+    public long getCharsDone() {
+        return this.lngCharsDone;
+    }
+
+    public long getBytesWritten() {
+        return this.lngBytesWritten;
+    }
+
+    // Bytes copied from file by delta writing.
+    public long getBytesCopied() {
+        return this.lngBytesCopied;
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Helpers
+    // -------------------------------------------------------------------------------------
+    private void startWriting() {
+
+        if (this.charBuffer == null) {
+            this.charBuffer = CharBuffer.allocate(INT_CHAR_CHUNK_SIZE);
+            this.byteBuffer = ByteBuffer.allocateDirect(INT_BYTE_BUFFER_SIZE);
+        }
+        if (this.achLineSeparator != null && this.achConvert == null) {
+            this.achConvert = new char[INT_CONVERT_CHUNK_SIZE];
+            this.lineIndexConvert = new LineIndex();
+            this.alngLineEndingsConvert = new long[3];
+        }
+        this.lngCharsDone = 0;
+        this.lngBytesWritten = 0;
+        this.lngBytesCopied = 0;
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Encodes document range [lngStart, lngEnd) and writes it at current position of channel.
+    private boolean encodeRange(FileChannel fileChannel, long lngStart, long lngEnd, Progress progress) throws IOException {
+
+        long lngCharsTotal = this.document.length();
+        CharBuffer charBuffer = this.charBuffer;
+        ByteBuffer byteBuffer = this.byteBuffer;
+        char[] achBuffer = charBuffer.array();
+        charBuffer.clear();
+        byteBuffer.clear();
+        this.charsetEncoder.reset();
+        this.booConvertCrPending = false;
+        long lngCharPos = lngStart;
+        boolean booEndOfInput = false;
+        while (!booEndOfInput) {
+            // Chars not encoded yet (high surrogate at end of chunk) stay at start of buffer.
+            if (this.achLineSeparator == null) {
+                int intCount = (int) Math.min(charBuffer.remaining(), lngEnd - lngCharPos);
+                this.document.getChars(lngCharPos, lngCharPos + intCount, achBuffer, charBuffer.position());
+                charBuffer.position(charBuffer.position() + intCount);
+                lngCharPos += intCount;
+                booEndOfInput = (lngCharPos == lngEnd);
+            } else {
+                int intCount = (int) Math.min(INT_CONVERT_CHUNK_SIZE, lngEnd - lngCharPos);
+                this.document.getChars(lngCharPos, lngCharPos + intCount, this.achConvert, 0);
+                lngCharPos += intCount;
+                booEndOfInput = (lngCharPos == lngEnd);
+                this.convertLineEndings(intCount, charBuffer, booEndOfInput);
+            }
+            this.lngCharsDone = lngCharPos;
+            charBuffer.flip();
+            while (true) {
+                CoderResult coderResult = this.charsetEncoder.encode(charBuffer, byteBuffer, booEndOfInput);
+                if (coderResult.isUnderflow()) {
+                    break;
+                }
+                if (coderResult.isOverflow()) {
+                    this.writeBuffer(fileChannel, byteBuffer);
+                    progress.update(this.lngCharsDone, lngCharsTotal, this.lngBytesWritten);
+                    if (progress.isCancelled()) {
+                        return false;
+                    }
+                    continue;
+                }
+                LOGGER.error("Could not encode char."
+                        + " CharPos=" + (lngCharPos - charBuffer.remaining())
+                        + " Charset=\"" + this.charsetEncoder.charset() + "\""
+                        + " CoderResult=\"" + coderResult + "\"");
+                coderResult.throwException();
+            }
+            charBuffer.compact();
+        }
+        while (this.charsetEncoder.flush(byteBuffer).isOverflow()) {
+            this.writeBuffer(fileChannel, byteBuffer);
+        }
+        this.writeBuffer(fileChannel, byteBuffer);
+        return true;
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Puts intCount chars of achConvert to buffer with line endings replaced by line separator.
+    // CR at end of chunk is kept until next chunk shows if it's followed by LF.
+    private void convertLineEndings(int intCount, CharBuffer charBuffer, boolean booLast) {
+
+        char[] achConvert = this.achConvert;
+        if (this.booConvertCrPending) {
+            this.booConvertCrPending = false;
+            if (intCount == 0 || achConvert[0] != CH_LF) {
+                charBuffer.put(CH_CR);
+            }
+        }
+        this.lineIndexConvert.clear();
+        LineIndexScanner.scan(achConvert, intCount, 0, (char) 0, this.alngLineEndingsConvert, this.lineIndexConvert);
+        int intLineCount = this.lineIndexConvert.getLineCount();
+        int intFrom = 0;
+        for (int intLine = 1; intLine < intLineCount; intLine++) {
+            int intLf = (int) this.lineIndexConvert.getLineStart(intLine) - 1;
+            int intTextEnd = (intLf > intFrom && achConvert[intLf - 1] == CH_CR) ? intLf - 1 : intLf;
+            charBuffer.put(achConvert, intFrom, intTextEnd - intFrom);
+            charBuffer.put(this.achLineSeparator);
+            intFrom = intLf + 1;
+        }
+        int intTextEnd = intCount;
+        if (!booLast && intCount > intFrom && achConvert[intCount - 1] == CH_CR) {
+            intTextEnd--;
+            this.booConvertCrPending = true;
+        }
+        charBuffer.put(achConvert, intFrom, intTextEnd - intFrom);
+    }
+
+    // -------------------------------------------------------------------------------------
+    private void addRange(long lngCharStart, long lngCharEnd, long lngByteStart, long lngByteEnd) {
+
+        if (this.intRangeCount == this.alngRangeCharStart.length) {
+            int intCapacity = this.intRangeCount * 2;
+            this.alngRangeCharStart = Arrays.copyOf(this.alngRangeCharStart, intCapacity);
+            this.alngRangeCharEnd = Arrays.copyOf(this.alngRangeCharEnd, intCapacity);
+            this.alngRangeByteStart = Arrays.copyOf(this.alngRangeByteStart, intCapacity);
+            this.alngRangeByteEnd = Arrays.copyOf(this.alngRangeByteEnd, intCapacity);
+        }
+        this.alngRangeCharStart[this.intRangeCount] = lngCharStart;
+        this.alngRangeCharEnd[this.intRangeCount] = lngCharEnd;
+        this.alngRangeByteStart[this.intRangeCount] = lngByteStart;
+        this.alngRangeByteEnd[this.intRangeCount] = lngByteEnd;
+        this.intRangeCount++;
+    }
+
+    // -------------------------------------------------------------------------------------
+    private void writeBuffer(FileChannel fileChannel, ByteBuffer byteBuffer) throws IOException {
+
+        byteBuffer.flip();
+        while (byteBuffer.hasRemaining()) {
+            this.lngBytesWritten += fileChannel.write(byteBuffer);
+        }
+        byteBuffer.clear();
+    }
+    // -------------------------------------------------------------------------------------
+}
@@ -0,0 +1,862 @@
+/*
+ * Copyright (c) 2024, Oleksandr Yarmolenko. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details.
+ *
+ */
+package com.olexyarm.jfxfilecontenteditor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Write-ahead journal of edits of one tab not saved to file yet, kept in file under settings directory,
+// so edits are not lost when editor is killed or computer is switched off.
+// Journal file is header, base record (path, charset, size and time of file, length of document when
+// journal was started) and records of edits: replace, Replace All and save marker. Every record has
+// length and CRC32, torn record at end of file written while crashing is dropped.
+// Records are collected in memory and written by one I/O task of tab with one fsync (group commit),
+// task starts after short delay, so typing writes few batches per second.
+// Tasks are serialized by path of journal file. Journal of file is owned by one tab, other tab
+// of the same file does not record nor replay edits.
+// When file is saved records before save marker are dropped, journal is deleted when tab is closed.
+// When file is read again journal is replayed if it was written for the same file (size, time, charset).
+public class EditJournal {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EditJournal.class);
+
+    private static final int INT_MAGIC = 0x4A46454A;
+    private static final int INT_VERSION = 1;
+    private static final int INT_HEADER_SIZE = 8;
+    // Length of payload and its CRC32.
+    private static final int INT_RECORD_HEADER_SIZE = 8;
+    private static final String STR_JOURNAL_FILE_EXT = ".journal";
+    private static final String STR_JOURNAL_FILE_TEMP_EXT = ".tmp";
+    private static final String STR_JOURNAL_FILE_OLD_EXT = ".old";
+
+    private static final byte BYTE_RECORD_BASE = 0;
+    private static final byte BYTE_RECORD_REPLACE = 1;
+    private static final byte BYTE_RECORD_REPLACE_ALL = 2;
+    private static final byte BYTE_RECORD_SAVE = 3;
+
+    // Records made while batch is waiting are written by the same write and fsync.
+    private static final int INT_COMMIT_DELAY_MS = 200;
+
+    // Journal writing journal file of every file.
+    private static final Map<Path, EditJournal> MAP_JOURNAL_OWNERS = new HashMap<>();
+    // Journal files to be deleted by tasks not run yet, they are not replayed.
+    private static final Map<Path, Integer> MAP_JOURNALS_DELETING = new HashMap<>();
+
+    // Records not written yet, base and generation are guarded by baosPending.
+    // Generation is changed when journal is reset or compacted, batch of older generation is not written.
+    // Records made while journal is compacted are written after it, to journal of path file was saved to.
+    private final ByteArrayOutputStream baosPending = new ByteArrayOutputStream();
+    private Base base;
+    private int intGeneration;
+    private boolean booFlushScheduled;
+    private boolean booCompacting;
+
+    // Used by JavaFX thread only. Edits are recorded after file was read, not while journal is replayed.
+    private boolean booRecording;
+    private final ByteArrayOutputStream baosRecord = new ByteArrayOutputStream();
+    private final DataOutputStream dosRecord = new DataOutputStream(this.baosRecord);
+    private final CRC32 crc32 = new CRC32();
+
+    // Used by I/O tasks only, tasks of old and new journal path could overlap after Save As.
+    private final Object objChannelLock = new Object();
+    private FileChannel fileChannel;
+    private Path pathChannel;
+
+    // -------------------------------------------------------------------------------------
+    // File and document the records are applied to.
+    private static class Base {
+
+        private final Path pathFile;
+        private final String strCharsetName;
+        private final long lngFileSize;
+        private final long lngFileTime;
+        private final long lngLength;
+
+        private Base(Path pathFile, String strCharsetName, long lngFileSize, long lngFileTime, long lngLength) {
+
+            this.pathFile = pathFile.toAbsolutePath().normalize();
+            this.strCharsetName = strCharsetName;
+            this.lngFileSize = lngFileSize;
+            this.lngFileTime = lngFileTime;
+            this.lngLength = lngLength;
+        }
+
+        private boolean isSame(Base baseOther) {
+
+            return baseOther != null
+                    && this.pathFile.equals(baseOther.pathFile)
+                    && this.strCharsetName.equals(baseOther.strCharsetName)
+                    && this.lngFileSize == baseOther.lngFileSize
+                    && this.lngFileTime == baseOther.lngFileTime
+                    && this.lngLength == baseOther.lngLength;
+        }
+
+        @Override
+        public String toString() {
+            return "Base(" + this.pathFile + " " + this.strCharsetName + " size=" + this.lngFileSize
+                    + " time=" + this.lngFileTime + " length=" + this.lngLength + ")";
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Construstors
+    // -------------------------------------------------------------------------------------
+    public EditJournal() {
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Methods
+    // -------------------------------------------------------------------------------------
+    // Applies edits of journal of file to document just read from it and starts recording.
+    // Journal written for other content of file is moved aside, it's not deleted.
+    // Returns number of edits applied.
+    public int replay(UndoJournal.Target target, Path pathFile, String strCharsetName, long lngFileSize, long lngFileTime, long lngLength) {
+
+        if (!Settings.BOO_EDIT_JOURNAL || pathFile == null) {
+            return 0;
+        }
+        Base baseFile = new Base(pathFile, strCharsetName, lngFileSize, lngFileTime, lngLength);
+        if (!this.acquire(baseFile.pathFile)) {
+            LOGGER.info("Edit journal of file is written by other tab."
+                    + " pathFile=\"" + baseFile.pathFile + "\"");
+            return 0;
+        }
+        synchronized (this.baosPending) {
+            this.base = baseFile;
+        }
+        this.booRecording = true;
+        Path pathJournal = getJournalFilePath(baseFile.pathFile);
+        if (isDeleting(pathJournal) || !Files.isRegularFile(pathJournal)) {
+            return 0;
+        }
+        long lngTimeStart = System.currentTimeMillis();
+        byte[] abyteJournal;
+        try {
+            abyteJournal = Files.readAllBytes(pathJournal);
+        } catch (IOException | OutOfMemoryError ex) {
+            LOGGER.error("Could not read edit journal."
+                    + " pathJournal=\"" + pathJournal + "\""
+                    + " Exception=\"" + ex.toString() + "\"");
+            moveAside(pathJournal);
+            return 0;
+        }
+        ByteBuffer byteBuffer = ByteBuffer.wrap(abyteJournal);
+        Base baseJournal = null;
+        if (abyteJournal.length >= INT_HEADER_SIZE && byteBuffer.getInt() == INT_MAGIC && byteBuffer.getInt() == INT_VERSION) {
+            ByteBuffer byteBufferRecord = readRecord(byteBuffer);
+            if (byteBufferRecord != null && byteBufferRecord.get() == BYTE_RECORD_BASE) {
+                baseJournal = readBase(byteBufferRecord);
+            }
+        }
+        if (!baseFile.isSame(baseJournal)) {
+            LOGGER.info("Edit journal was written for other content of file."
+                    + " Base=\"" + baseJournal + "\""
+                    + " BaseFile=\"" + baseFile + "\""
+                    + " pathJournal=\"" + pathJournal + "\"");
+            moveAside(pathJournal);
+            return 0;
+        }
+
+        int intEdits = 0;
+        long lngLengthDoc = lngLength;
+        int intPosValid = byteBuffer.position();
+        this.booRecording = false;
+        try {
+            ByteBuffer byteBufferRecord;
+            while ((byteBufferRecord = readRecord(byteBuffer)) != null) {
+                byte byteType = byteBufferRecord.get();
+                if (byteType == BYTE_RECORD_REPLACE) {
+                    long lngStart = byteBufferRecord.getLong();
+                    long lngEnd = byteBufferRecord.getLong();
+                    String strText = readText(byteBufferRecord);
+                    if (strText == null || lngStart < 0 || lngStart > lngEnd || lngEnd > lngLengthDoc) {
+                        break;
+                    }
+                    target.replace(lngStart, lngEnd, strText);
+                    lngLengthDoc += strText.length() - (lngEnd - lngStart);
+                    intEdits++;
+                } else if (byteType == BYTE_RECORD_REPLACE_ALL) {
+                    int intCount = byteBufferRecord.getInt();
+                    int intFindLen = byteBufferRecord.getInt();
+                    String strText = readText(byteBufferRecord);
+                    if (strText == null || intCount <= 0 || intFindLen < 0 || byteBufferRecord.remaining() != intCount * 8L) {
+                        break;
+                    }
+                    // Ranges must be in order, not overlapping and inside document.
+                    long[] alngStart = new long[intCount];
+                    long lngEndPrev = 0;
+                    boolean booRangesValid = true;
+                    for (int i = 0; i < intCount && booRangesValid; i++) {
+                        alngStart[i] = byteBufferRecord.getLong();
+                        booRangesValid = alngStart[i] >= lngEndPrev;
+                        lngEndPrev = alngStart[i] + intFindLen;
+                    }
+                    if (!booRangesValid || lngEndPrev > lngLengthDoc) {
+                        break;
+                    }
+                    target.replaceAll(alngStart, intCount, intFindLen, strText);
+                    lngLengthDoc += (long) intCount * (strText.length() - intFindLen);
+                    intEdits++;
+                } else if (byteType != BYTE_RECORD_SAVE) {
+                    break;
+                }
+                intPosValid = byteBuffer.position();
+            }
+        } catch (RuntimeException ex) {
+            LOGGER.error("Could not replay edit journal."
+                    + " Edits=" + intEdits
+                    + " pathJournal=\"" + pathJournal + "\""
+                    + " RuntimeException=\"" + ex.toString() + "\"");
+        } finally {
+            this.booRecording = true;
+        }
+        if (intPosValid < abyteJournal.length) {
+            // Records written after torn record would be applied to other text, they are dropped.
+            LOGGER.info("Dropping end of edit journal."
+                    + " Position=" + intPosValid
+                    + " Size=" + abyteJournal.length
+                    + " pathJournal=\"" + pathJournal + "\"");
+            try (FileChannel fileChannelTruncate = FileChannel.open(pathJournal, StandardOpenOption.WRITE)) {
+                fileChannelTruncate.truncate(intPosValid);
+                fileChannelTruncate.force(false);
+            } catch (IOException ex) {
+                LOGGER.error("Could not truncate edit journal."
+                        + " pathJournal=\"" + pathJournal + "\""
+                        + " IOException=\"" + ex.toString() + "\"");
+            }
+        }
+        LOGGER.info("Replayed edit journal."
+                + " Edits=" + intEdits
+                + " Length=" + lngLengthDoc
+                + " Time=" + (System.currentTimeMillis() - lngTimeStart)
+                + " pathJournal=\"" + pathJournal + "\"");
+        return intEdits;
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Starts new journal for document just read or decoded again, old journal of tab is deleted.
+    public void reset(Path pathFile, String strCharsetName, long lngFileSize, long lngFileTime, long lngLength) {
+
+        Base baseNew = null;
+        if (Settings.BOO_EDIT_JOURNAL && pathFile != null) {
+            baseNew = new Base(pathFile, strCharsetName, lngFileSize, lngFileTime, lngLength);
+        }
+        Base baseOld;
+        synchronized (this.baosPending) {
+            baseOld = this.base;
+            this.base = null;
+            this.discardPending();
+        }
+        if (baseOld != null && (baseNew == null || !baseOld.pathFile.equals(baseNew.pathFile))) {
+            this.release(baseOld.pathFile);
+        }
+        if (baseNew != null && !this.acquire(baseNew.pathFile)) {
+            baseNew = null;
+        }
+        synchronized (this.baosPending) {
+            this.base = baseNew;
+        }
+        this.booRecording = baseNew != null;
+        if (baseOld != null) {
+            this.executeDelete(getJournalFilePath(baseOld.pathFile));
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Tab is closed, its edits were saved or dropped by user.
+    public void delete() {
+
+        Base baseOld;
+        synchronized (this.baosPending) {
+            baseOld = this.base;
+            this.base = null;
+            this.discardPending();
+        }
+        this.booRecording = false;
+        if (baseOld != null) {
+            this.release(baseOld.pathFile);
+            this.executeDelete(getJournalFilePath(baseOld.pathFile));
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    public void recordReplace(long lngStart, long lngEnd, String strText) {
+
+        if (!this.booRecording) {
+            return;
+        }
+        try {
+            this.dosRecord.writeByte(BYTE_RECORD_REPLACE);
+            this.dosRecord.writeLong(lngStart);
+            this.dosRecord.writeLong(lngEnd);
+            writeText(this.dosRecord, strText);
+        } catch (IOException ex) {
+            // ByteArrayOutputStream does not throw.
+        }
+        this.appendRecord();
+    }
+
+    // -------------------------------------------------------------------------------------
+    public void recordReplaceAll(long[] alngStart, int intCount, int intFindLen, String strText) {
+
+        if (!this.booRecording || intCount == 0) {
+            return;
+        }
+        try {
+            this.dosRecord.writeByte(BYTE_RECORD_REPLACE_ALL);
+            this.dosRecord.writeInt(intCount);
+            this.dosRecord.writeInt(intFindLen);
+            writeText(this.dosRecord, strText);
+            for (int i = 0; i < intCount; i++) {
+                this.dosRecord.writeLong(alngStart[i]);
+            }
+        } catch (IOException ex) {
+            // ByteArrayOutputStream does not throw.
+        }
+        this.appendRecord();
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Marks position of document snapshot being saved, records before it are dropped when save succeeds.
+    public void recordSave() {
+
+        if (!this.booRecording) {
+            return;
+        }
+        this.baosRecord.write(BYTE_RECORD_SAVE);
+        this.appendRecord();
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Document was saved to file (to new path after Save As), journal keeps only edits made after last save
+    // marker, they are applied to saved file.
+    public void saved(Path pathFile, String strCharsetName, long lngFileSize, long lngFileTime, long lngLength) {
+
+        if (!this.booRecording || pathFile == null) {
+            return;
+        }
+        final Base baseOld;
+        final Base baseNew = new Base(pathFile, strCharsetName, lngFileSize, lngFileTime, lngLength);
+        final byte[] abytePending;
+        synchronized (this.baosPending) {
+            baseOld = this.base;
+            abytePending = this.baosPending.toByteArray();
+            this.discardPending();
+        }
+        if (baseOld == null) {
+            return;
+        }
+        final Path pathJournalOld = getJournalFilePath(baseOld.pathFile);
+        final boolean booMoved = !baseOld.pathFile.equals(baseNew.pathFile);
+        if (booMoved) {
+            this.release(baseOld.pathFile);
+            if (!this.acquire(baseNew.pathFile)) {
+                // File is saved over file open in other tab, that tab keeps journal of it.
+                synchronized (this.baosPending) {
+                    this.base = null;
+                }
+                this.booRecording = false;
+                this.executeDelete(pathJournalOld);
+                return;
+            }
+            addDeleting(pathJournalOld);
+        }
+        synchronized (this.baosPending) {
+            this.base = baseNew;
+            this.booCompacting = true;
+        }
+        EditorIoScheduler.executeIo(pathJournalOld, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    write(abytePending, baseOld);
+                    compact(baseOld, baseNew);
+                } finally {
+                    if (booMoved) {
+                        removeDeleting(pathJournalOld);
+                    }
+                    compacted();
+                }
+            }
+        });
+    }
+
+    // -------------------------------------------------------------------------------------
+    public static boolean exists(Path pathFile) {
+
+        return pathFile != null && Files.isRegularFile(getJournalFilePath(pathFile.toAbsolutePath().normalize()));
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Files having journal, they were modified and not saved when editor was closed or crashed.
+    public static List<Path> getFilesJournaled() {
+
+        List<Path> lstFiles = new ArrayList<>();
+        Path pathDir = Paths.get(Settings.STR_EDIT_JOURNAL_DIR_PATH);
+        if (!Settings.BOO_EDIT_JOURNAL || !Files.isDirectory(pathDir)) {
+            return lstFiles;
+        }
+        try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(pathDir, "*" + STR_JOURNAL_FILE_EXT)) {
+            for (Path pathJournal : directoryStream) {
+                Base baseJournal = readBase(pathJournal);
+                if (baseJournal != null && Files.isRegularFile(baseJournal.pathFile)) {
+                    lstFiles.add(baseJournal.pathFile);
+                }
+            }
+        } catch (IOException ex) {
+            LOGGER.error("Could not list edit journals."
+                    + " pathDir=\"" + pathDir + "\""
+                    + " IOException=\"" + ex.toString() + "\"");
+        }
+        return lstFiles;
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Helpers
+    // -------------------------------------------------------------------------------------
+    // Frames record built in baosRecord and adds it to batch, first record of batch starts write task.
+    private void appendRecord() {
+
+        byte[] abyteRecord = this.baosRecord.toByteArray();
+        this.baosRecord.reset();
+        this.crc32.reset();
+        this.crc32.update(abyteRecord);
+        int intCrc = (int) this.crc32.getValue();
+        synchronized (this.baosPending) {
+            if (this.base == null) {
+                return;
+            }
+            writeInt(this.baosPending, abyteRecord.length);
+            writeInt(this.baosPending, intCrc);
+            this.baosPending.write(abyteRecord, 0, abyteRecord.length);
+            if (this.booFlushScheduled || this.booCompacting) {
+                return;
+            }
+            this.scheduleFlush();
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Caller holds baosPending lock.
+    private void scheduleFlush() {
+
+        this.booFlushScheduled = true;
+        final int intGenerationFlush = this.intGeneration;
+        EditorIoScheduler.executeIo(getJournalFilePath(this.base.pathFile), new Runnable() {
+            @Override
+            public void run() {
+                flush(intGenerationFlush);
+            }
+        });
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Records made while journal was compacted are written to journal of file saved.
+    private void compacted() {
+
+        synchronized (this.baosPending) {
+            this.booCompacting = false;
+            if (this.base != null && this.baosPending.size() > 0 && !this.booFlushScheduled) {
+                this.scheduleFlush();
+            }
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    private void flush(int intGenerationFlush) {
+
+        try {
+            Thread.sleep(INT_COMMIT_DELAY_MS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        byte[] abyteBatch;
+        Base baseBatch;
+        synchronized (this.baosPending) {
+            if (intGenerationFlush != this.intGeneration) {
+                // Batch was taken by save or dropped by reset.
+                return;
+            }
+            this.booFlushScheduled = false;
+            abyteBatch = this.baosPending.toByteArray();
+            this.baosPending.reset();
+            baseBatch = this.base;
+        }
+        if (baseBatch != null) {
+            this.write(abyteBatch, baseBatch);
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Caller holds baosPending lock.
+    private void discardPending() {
+
+        this.baosPending.reset();
+        this.booFlushScheduled = false;
+        this.intGeneration++;
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Appends batch to journal file and waits until it's on disk, new file gets header and base first.
+    private void write(byte[] abyteBatch, Base baseBatch) {
+
+        if (abyteBatch.length == 0) {
+            return;
+        }
+        Path pathJournal = getJournalFilePath(baseBatch.pathFile);
+        synchronized (this.objChannelLock) {
+            try {
+                if (this.fileChannel != null && !pathJournal.equals(this.pathChannel)) {
+                    this.closeChannel();
+                }
+                if (this.fileChannel == null) {
+                    Files.createDirectories(pathJournal.getParent());
+                    this.fileChannel = FileChannel.open(pathJournal, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                    this.pathChannel = pathJournal;
+                    long lngSize = this.fileChannel.size();
+                    if (lngSize == 0) {
+                        writeFully(this.fileChannel, ByteBuffer.wrap(newJournalStart(baseBatch)));
+                    } else {
+                        this.fileChannel.position(lngSize);
+                    }
+                }
+                writeFully(this.fileChannel, ByteBuffer.wrap(abyteBatch));
+                this.fileChannel.force(false);
+            } catch (IOException ex) {
+                LOGGER.error("Could not write edit journal."
+                        + " Bytes=" + abyteBatch.length
+                        + " pathJournal=\"" + pathJournal + "\""
+                        + " IOException=\"" + ex.toString() + "\"");
+                this.closeChannel();
+            }
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Journal of saved document is header, new base and records after last save marker.
+    // It's written to temporary file and moved over journal, so crash leaves old or new journal.
+    private void compact(Base baseOld, Base baseNew) {
+
+        synchronized (this.objChannelLock) {
+            this.closeChannel();
+            this.compactFile(baseOld, baseNew);
+        }
+    }
+
+    private void compactFile(Base baseOld, Base baseNew) {
+
+        Path pathJournalOld = getJournalFilePath(baseOld.pathFile);
+        Path pathJournalNew = getJournalFilePath(baseNew.pathFile);
+        try {
+            if (!Files.isRegularFile(pathJournalOld)) {
+                // Journal left at new path by other session would get records of this document.
+                if (!pathJournalOld.equals(pathJournalNew)) {
+                    Files.deleteIfExists(pathJournalNew);
+                }
+                return;
+            }
+            byte[] abyteJournal = Files.readAllBytes(pathJournalOld);
+            ByteBuffer byteBuffer = ByteBuffer.wrap(abyteJournal);
+            byteBuffer.position(Math.min(INT_HEADER_SIZE, abyteJournal.length));
+            int intPosTail = abyteJournal.length;
+            int intPosEnd = byteBuffer.position();
+            ByteBuffer byteBufferRecord;
+            while ((byteBufferRecord = readRecord(byteBuffer)) != null) {
+                intPosEnd = byteBuffer.position();
+                if (byteBufferRecord.get() == BYTE_RECORD_SAVE) {
+                    intPosTail = intPosEnd;
+                }
+            }
+            if (intPosTail >= intPosEnd) {
+                Files.deleteIfExists(pathJournalOld);
+                Files.deleteIfExists(pathJournalNew);
+                LOGGER.debug("Deleted edit journal of saved file."
+                        + " pathJournal=\"" + pathJournalOld + "\"");
+                return;
+            }
+            Path pathTemp = Paths.get(pathJournalNew.toString() + STR_JOURNAL_FILE_TEMP_EXT);
+            try (FileChannel fileChannelTemp = FileChannel.open(pathTemp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                writeFully(fileChannelTemp, ByteBuffer.wrap(newJournalStart(baseNew)));
+                writeFully(fileChannelTemp, ByteBuffer.wrap(abyteJournal, intPosTail, intPosEnd - intPosTail));
+                fileChannelTemp.force(false);
+            }
+            Files.move(pathTemp, pathJournalNew, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (!pathJournalOld.equals(pathJournalNew)) {
+                Files.deleteIfExists(pathJournalOld);
+            }
+            LOGGER.debug("Compacted edit journal of saved file."
+                    + " Size=" + abyteJournal.length
+                    + " Tail=" + (intPosEnd - intPosTail)
+                    + " pathJournal=\"" + pathJournalNew + "\"");
+        } catch (IOException ex) {
+            LOGGER.error("Could not compact edit journal."
+                    + " pathJournal=\"" + pathJournalOld + "\""
+                    + " IOException=\"" + ex.toString() + "\"");
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    private void executeDelete(final Path pathJournal) {
+
+        addDeleting(pathJournal);
+        EditorIoScheduler.executeIo(pathJournal, new Runnable() {
+            @Override
+            public void run() {
+                synchronized (objChannelLock) {
+                    closeChannel();
+                }
+                try {
+                    Files.deleteIfExists(pathJournal);
+                } catch (IOException ex) {
+                    LOGGER.error("Could not delete edit journal."
+                            + " pathJournal=\"" + pathJournal + "\""
+                            + " IOException=\"" + ex.toString() + "\"");
+                } finally {
+                    removeDeleting(pathJournal);
+                }
+            }
+        });
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Returns false if journal of file is owned by journal of other tab.
+    private boolean acquire(Path pathFile) {
+
+        synchronized (MAP_JOURNAL_OWNERS) {
+            EditJournal editJournalOwner = MAP_JOURNAL_OWNERS.get(pathFile);
+            if (editJournalOwner != null && editJournalOwner != this) {
+                return false;
+            }
+            MAP_JOURNAL_OWNERS.put(pathFile, this);
+            return true;
+        }
+    }
+
+    private void release(Path pathFile) {
+
+        synchronized (MAP_JOURNAL_OWNERS) {
+            if (MAP_JOURNAL_OWNERS.get(pathFile) == this) {
+                MAP_JOURNAL_OWNERS.remove(pathFile);
+            }
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    private static void addDeleting(Path pathJournal) {
+
+        synchronized (MAP_JOURNALS_DELETING) {
+            Integer intCount = MAP_JOURNALS_DELETING.get(pathJournal);
+            MAP_JOURNALS_DELETING.put(pathJournal, (intCount == null) ? 1 : intCount + 1);
+        }
+    }
+
+    private static void removeDeleting(Path pathJournal) {
+
+        synchronized (MAP_JOURNALS_DELETING) {
+            Integer intCount = MAP_JOURNALS_DELETING.get(pathJournal);
+            if (intCount == null || intCount <= 1) {
+                MAP_JOURNALS_DELETING.remove(pathJournal);
+            } else {
+                MAP_JOURNALS_DELETING.put(pathJournal, intCount - 1);
+            }
+        }
+    }
+
+    private static boolean isDeleting(Path pathJournal) {
+
+        synchronized (MAP_JOURNALS_DELETING) {
+            return MAP_JOURNALS_DELETING.containsKey(pathJournal);
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    private void closeChannel() {
+
+        if (this.fileChannel == null) {
+            return;
+        }
+        try {
+            this.fileChannel.close();
+        } catch (IOException ex) {
+            LOGGER.debug("Could not close edit journal."
+                    + " IOException=\"" + ex.toString() + "\"");
+        }
+        this.fileChannel = null;
+        this.pathChannel = null;
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Journal is kept for user, next journal of the same file would replace it.
+    private static void moveAside(Path pathJournal) {
+
+        try {
+            Files.move(pathJournal, Paths.get(pathJournal.toString() + STR_JOURNAL_FILE_OLD_EXT), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ex) {
+            LOGGER.error("Could not move edit journal."
+                    + " pathJournal=\"" + pathJournal + "\""
+                    + " IOException=\"" + ex.toString() + "\"");
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Returns payload of record at position of buffer, null at end of journal or at torn or corrupted record.
+    private static ByteBuffer readRecord(ByteBuffer byteBuffer) {
+
+        if (byteBuffer.remaining() < INT_RECORD_HEADER_SIZE) {
+            return null;
+        }
+        int intPos = byteBuffer.position();
+        int intLength = byteBuffer.getInt(intPos);
+        int intCrc = byteBuffer.getInt(intPos + 4);
+        if (intLength <= 0 || intLength > byteBuffer.remaining() - INT_RECORD_HEADER_SIZE) {
+            return null;
+        }
+        CRC32 crc32Record = new CRC32();
+        crc32Record.update(byteBuffer.array(), intPos + INT_RECORD_HEADER_SIZE, intLength);
+        if ((int) crc32Record.getValue() != intCrc) {
+            return null;
+        }
+        byteBuffer.position(intPos + INT_RECORD_HEADER_SIZE + intLength);
+        return ByteBuffer.wrap(byteBuffer.array(), intPos + INT_RECORD_HEADER_SIZE, intLength).slice();
+    }
+
+    // -------------------------------------------------------------------------------------
+    private static Base readBase(ByteBuffer byteBufferRecord) {
+
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(byteBufferRecord.array(),
+                byteBufferRecord.arrayOffset() + byteBufferRecord.position(), byteBufferRecord.remaining()));
+        try {
+            return new Base(Paths.get(dis.readUTF()), dis.readUTF(), dis.readLong(), dis.readLong(), dis.readLong());
+        } catch (IOException | RuntimeException ex) {
+            return null;
+        }
+    }
+
+    private static Base readBase(Path pathJournal) {
+
+        byte[] abyteStart = new byte[INT_HEADER_SIZE + INT_RECORD_HEADER_SIZE + 64 * 1024];
+        int intRead = 0;
+        try (FileChannel fileChannelRead = FileChannel.open(pathJournal, StandardOpenOption.READ)) {
+            ByteBuffer byteBufferRead = ByteBuffer.wrap(abyteStart);
+            while (byteBufferRead.hasRemaining() && fileChannelRead.read(byteBufferRead) > 0) {
+                intRead = byteBufferRead.position();
+            }
+        } catch (IOException ex) {
+            LOGGER.error("Could not read edit journal."
+                    + " pathJournal=\"" + pathJournal + "\""
+                    + " IOException=\"" + ex.toString() + "\"");
+            return null;
+        }
+        ByteBuffer byteBuffer = ByteBuffer.wrap(abyteStart, 0, intRead);
+        if (intRead < INT_HEADER_SIZE || byteBuffer.getInt() != INT_MAGIC || byteBuffer.getInt() != INT_VERSION) {
+            return null;
+        }
+        ByteBuffer byteBufferRecord = readRecord(byteBuffer);
+        if (byteBufferRecord == null || byteBufferRecord.get() != BYTE_RECORD_BASE) {
+            return null;
+        }
+        return readBase(byteBufferRecord);
+    }
+
+    // -------------------------------------------------------------------------------------
+    private static byte[] newJournalStart(Base baseJournal) throws IOException {
+
+        ByteArrayOutputStream baosBase = new ByteArrayOutputStream();
+        DataOutputStream dosBase = new DataOutputStream(baosBase);
+        dosBase.writeByte(BYTE_RECORD_BASE);
+        dosBase.writeUTF(baseJournal.pathFile.toString());
+        dosBase.writeUTF(baseJournal.strCharsetName);
+        dosBase.writeLong(baseJournal.lngFileSize);
+        dosBase.writeLong(baseJournal.lngFileTime);
+        dosBase.writeLong(baseJournal.lngLength);
+        byte[] abyteBase = baosBase.toByteArray();
+        CRC32 crc32Base = new CRC32();
+        crc32Base.update(abyteBase);
+
+        ByteArrayOutputStream baosStart = new ByteArrayOutputStream();
+        writeInt(baosStart, INT_MAGIC);
+        writeInt(baosStart, INT_VERSION);
+        writeInt(baosStart, abyteBase.length);
+        writeInt(baosStart, (int) crc32Base.getValue());
+        baosStart.write(abyteBase, 0, abyteBase.length);
+        return baosStart.toByteArray();
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Text is written as UTF-16 chars, lone surrogates of split pairs are kept.
+    private static void writeText(DataOutputStream dos, String strText) throws IOException {
+
+        String strWrite = (strText == null) ? "" : strText;
+        dos.writeInt(strWrite.length());
+        dos.writeChars(strWrite);
+    }
+
+    private static String readText(ByteBuffer byteBuffer) {
+
+        int intLength = byteBuffer.getInt();
+        if (intLength < 0 || intLength > byteBuffer.remaining() / 2) {
+            return null;
+        }
+        char[] achText = new char[intLength];
+        byteBuffer.asCharBuffer().get(achText);
+        byteBuffer.position(byteBuffer.position() + intLength * 2);
+        return new String(achText);
+    }
+
+    private static void writeInt(ByteArrayOutputStream baos, int intValue) {
+
+        baos.write(intValue >>> 24);
+        baos.write(intValue >>> 16);
+        baos.write(intValue >>> 8);
+        baos.write(intValue);
+    }
+
+    // -------------------------------------------------------------------------------------
+    private static Path getJournalFilePath(Path pathFile) {
+
+        String strFile = pathFile.toString();
+        Path pathName = pathFile.getFileName();
+        String strName = (pathName == null) ? "root" : pathName.toString().replaceAll("[^A-Za-z0-9_.-]", "_");
+        return Paths.get(Settings.STR_EDIT_JOURNAL_DIR_PATH, strName + "-" + Integer.toHexString(strFile.hashCode()) + STR_JOURNAL_FILE_EXT);
+    }
+
+    // -------------------------------------------------------------------------------------
+    private static void writeFully(FileChannel fileChannel, ByteBuffer byteBuffer) throws IOException {
+
+        while (byteBuffer.hasRemaining()) {
+            fileChannel.write(byteBuffer);
+        }
+    }
+    // -------------------------------------------------------------------------------------
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2024, Oleksandr Yarmolenko. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details.
+ *
+ */
+package com.olexyarm.jfxfilecontenteditor;
+
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Runs background file tasks of all tabs.
+// Blocking I/O tasks (saving, reading ahead) run on virtual threads, CPU heavy tasks (loading and
+// decoding files) run on pool with one thread per CPU.
+// Tasks of one file run one after another in order they were submitted, so file is never
+// saved and loaded at the same time.
+public class EditorIoScheduler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EditorIoScheduler.class);
+
+    private static final int INT_CPU_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    private static final ExecutorService EXECUTOR_IO = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("EditorIo-", 0).factory());
+
+    private static final ExecutorService EXECUTOR_CPU = Executors.newFixedThreadPool(INT_CPU_THREADS, new ThreadFactory() {
+        private final AtomicInteger atomThreadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "EditorCpu-" + atomThreadCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private static final Metrics METRICS_IO = new Metrics("IO");
+    private static final Metrics METRICS_CPU = new Metrics("CPU");
+
+    // Waiting tasks of every file which has running task, first task of file is not in queue.
+    private static final Map<Path, ArrayDeque<ScheduledTask>> MAP_FILE_QUEUES = new HashMap<>();
+
+    // -------------------------------------------------------------------------------------
+    // Methods
+    // -------------------------------------------------------------------------------------
+    // pathFile could be null for tasks not related to file, they are not serialized.
+    public static void executeIo(Path pathFile, Runnable runnable) {
+
+        submit(pathFile, runnable, EXECUTOR_IO, METRICS_IO);
+    }
+
+    // -------------------------------------------------------------------------------------
+    public static void executeCpu(Path pathFile, Runnable runnable) {
+
+        submit(pathFile, runnable, EXECUTOR_CPU, METRICS_CPU);
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Tasks passed to returned executor are I/O tasks of file, path is taken when task is passed.
+    // It's used as executor of JavaFX Service.
+    public static Executor getExecutorIo(final FileContentEditor fileEditor) {
+
+        return new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                executeIo(fileEditor.getPathFile(), runnable);
+            }
+        };
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Number of I/O tasks submitted and not started yet, including tasks waiting for other task of the same file.
+    public static long getQueueDepthIo() {
+        return METRICS_IO.atomQueued.get();
+    }
+
+    public static long getQueueDepthCpu() {
+        return METRICS_CPU.atomQueued.get();
+    }
+
+    public static String getMetrics() {
+        return METRICS_IO.toString() + " " + METRICS_CPU.toString();
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Helpers
+    // -------------------------------------------------------------------------------------
+    private static void submit(Path pathFile, Runnable runnable, ExecutorService executor, Metrics metrics) {
+
+        Path pathKey = (pathFile == null) ? null : pathFile.toAbsolutePath().normalize();
+        ScheduledTask scheduledTask = new ScheduledTask(pathKey, runnable, executor, metrics);
+        metrics.atomQueued.incrementAndGet();
+        if (pathKey != null) {
+            synchronized (MAP_FILE_QUEUES) {
+                ArrayDeque<ScheduledTask> queue = MAP_FILE_QUEUES.get(pathKey);
+                if (queue != null) {
+                    queue.add(scheduledTask);
+                    LOGGER.debug("Task is waiting for other task of file."
+                            + " Waiting=" + queue.size()
+                            + " pathFile=\"" + pathKey + "\"");
+                    return;
+                }
+                MAP_FILE_QUEUES.put(pathKey, new ArrayDeque<>());
+            }
+        }
+        executor.execute(scheduledTask);
+    }
+
+    // -------------------------------------------------------------------------------------
+    private static void startNextTask(Path pathKey) {
+
+        ScheduledTask scheduledTaskNext;
+        synchronized (MAP_FILE_QUEUES) {
+            ArrayDeque<ScheduledTask> queue = MAP_FILE_QUEUES.get(pathKey);
+            scheduledTaskNext = (queue == null) ? null : queue.poll();
+            if (scheduledTaskNext == null) {
+                MAP_FILE_QUEUES.remove(pathKey);
+                return;
+            }
+        }
+        scheduledTaskNext.executor.execute(scheduledTaskNext);
+    }
+
+    // -------------------------------------------------------------------------------------
+    private static class ScheduledTask implements Runnable {
+
+        private final Path pathKey;
+        private final Runnable runnable;
+        private final ExecutorService executor;
+        private final Metrics metrics;
+        private final long lngTimeSubmitted;
+
+        private ScheduledTask(Path pathKey, Runnable runnable, ExecutorService executor, Metrics metrics) {
+
+            this.pathKey = pathKey;
+            this.runnable = runnable;
+            this.executor = executor;
+            this.metrics = metrics;
+            this.lngTimeSubmitted = System.nanoTime();
+        }
+
+        @Override
+        public void run() {
+
+            long lngTimeStarted = System.nanoTime();
+            this.metrics.started(lngTimeStarted - this.lngTimeSubmitted);
+            try {
+                this.runnable.run();
+            } catch (Throwable t) {
+                LOGGER.error("Task failed."
+                        + " pathFile=\"" + this.pathKey + "\""
+                        + " Throwable=\"" + t.toString() + "\"");
+            } finally {
+                long lngTimeRun = System.nanoTime() - lngTimeStarted;
+                this.metrics.finished(lngTimeRun);
+                LOGGER.debug("Task finished."
+                        + " WaitMs=" + (lngTimeStarted - this.lngTimeSubmitted) / 1_000_000
+                        + " RunMs=" + lngTimeRun / 1_000_000
+                        + " pathFile=\"" + this.pathKey + "\""
+                        + " " + this.metrics);
+                if (this.pathKey != null) {
+                    startNextTask(this.pathKey);
+                }
+            }
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Wait time is time from submitting task to its start, it includes waiting for other tasks of file.
+    private static class Metrics {
+
+        private final String strName;
+        private final AtomicLong atomQueued = new AtomicLong();
+        private final AtomicLong atomRunning = new AtomicLong();
+        private final AtomicLong atomCompleted = new AtomicLong();
+        private final AtomicLong atomWaitTotal = new AtomicLong();
+        private final AtomicLong atomWaitMax = new AtomicLong();
+        private final AtomicLong atomRunTotal = new AtomicLong();
+        private final AtomicLong atomRunMax = new AtomicLong();
+
+        private Metrics(String strName) {
+            this.strName = strName;
+        }
+
+        private void started(long lngTimeWait) {
+
+            this.atomQueued.decrementAndGet();
+            this.atomRunning.incrementAndGet();
+            this.atomWaitTotal.addAndGet(lngTimeWait);
+            setMax(this.atomWaitMax, lngTimeWait);
+        }
+
+        private void finished(long lngTimeRun) {
+
+            this.atomRunning.decrementAndGet();
+            this.atomCompleted.incrementAndGet();
+            this.atomRunTotal.addAndGet(lngTimeRun);
+            setMax(this.atomRunMax, lngTimeRun);
+        }
+
+        private static void setMax(AtomicLong atomMax, long lngValue) {
+
+            long lngMax = atomMax.get();
+            while (lngValue > lngMax && !atomMax.compareAndSet(lngMax, lngValue)) {
+                lngMax = atomMax.get();
+            }
+        }
+
+        @Override
+        public String toString() {
+
+            long lngCompleted = Math.max(1, this.atomCompleted.get());
+            long lngStarted = Math.max(1, this.atomCompleted.get() + this.atomRunning.get());
+            return this.strName + "["
+                    + "Queued=" + this.atomQueued.get()
+                    + " Running=" + this.atomRunning.get()
+                    + " Completed=" + this.atomCompleted.get()
+                    + " WaitAvgMs=" + this.atomWaitTotal.get() / lngStarted / 1_000_000
+                    + " WaitMaxMs=" + this.atomWaitMax.get() / 1_000_000
+                    + " RunAvgMs=" + this.atomRunTotal.get() / lngCompleted / 1_000_000
+                    + " RunMaxMs=" + this.atomRunMax.get() / 1_000_000
+                    + "]";
+        }
+    }
+    // -------------------------------------------------------------------------------------
+}
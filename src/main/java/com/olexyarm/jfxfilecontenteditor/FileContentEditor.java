@@ -14,31 +14,37 @@
  */
 package com.olexyarm.jfxfilecontenteditor;
 
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
-import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetDecoder;
-import java.nio.charset.CodingErrorAction;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.FileTime;
 import java.time.LocalDate;
-import java.util.EnumSet;
+import java.util.Arrays;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+import java.util.regex.Pattern;
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
 import javafx.beans.InvalidationListener;
 import javafx.beans.Observable;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.ReadOnlyBooleanProperty;
 import javafx.beans.property.ReadOnlyIntegerProperty;
 import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.ReadOnlyStringProperty;
 import javafx.beans.property.SimpleIntegerProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
@@ -48,18 +54,30 @@ import javafx.concurrent.Service;
 import javafx.concurrent.Task;
 import javafx.concurrent.Worker;
 import javafx.concurrent.WorkerStateEvent;
+import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.event.EventTarget;
 import javafx.event.EventType;
 import javafx.geometry.Insets;
+import javafx.scene.Node;
+import javafx.scene.control.ContextMenu;
 import javafx.scene.control.Label;
+import javafx.scene.control.MenuItem;
 import javafx.scene.control.ProgressBar;
+import javafx.scene.control.SeparatorMenuItem;
 import javafx.scene.control.TabPane;
 import javafx.scene.control.TextArea;
+import javafx.scene.control.TextFormatter;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyCodeCombination;
+import javafx.scene.input.KeyCombination;
+import javafx.scene.input.KeyEvent;
+import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
 import javafx.scene.text.Font;
+import javafx.scene.text.Text;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -67,13 +85,21 @@ public class FileContentEditor extends VBox {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(FileContentEditor.class);
     private static final int INT_PROGRESS_BAR_STEPS = 20;
-    private static final byte BYT_CR = 0x0D;
-    private static final byte BYT_LF = 0x0A;
+    private static final int INT_PROGRESS_POLL_MS = 100;
     private static final String STR_CR_LF_WIN = "Win CRLF";
     private static final String STR_LF_UNIX = "Unix LF";
     private static final String STR_CR_LF_MIX = "Mix CR LF";
     private static final String STR_NO_CR_LF = "no CR LF)";
     private static final String STR_CR_LF_WIP = "WIP";
+    // Match index is not kept for more matches, Next and Prev search document then.
+    private static final int INT_MATCH_INDEX_MAX = 4 * 1024 * 1024;
+    private static final int INT_MATCH_BATCH_SIZE = 4096;
+    // Returned by find methods while regular expression is searched on background.
+    public static final long LNG_FIND_PENDING = -2;
+
+    private static final KeyCombination KEY_COMB_UNDO = new KeyCodeCombination(KeyCode.Z, KeyCombination.SHORTCUT_DOWN);
+    private static final KeyCombination KEY_COMB_REDO = new KeyCodeCombination(KeyCode.Y, KeyCombination.SHORTCUT_DOWN);
+    private static final KeyCombination KEY_COMB_REDO_SHIFT = new KeyCodeCombination(KeyCode.Z, KeyCombination.SHORTCUT_DOWN, KeyCombination.SHIFT_DOWN);
 
     private Path pathFile;
     private String strFilePath;
@@ -81,24 +107,66 @@ public class FileContentEditor extends VBox {
     private String strFileExt;
     private String strFileDir;
     private boolean booBinary;
-    private String strCharsetName;
+    // Set by load task when charset is detected.
+    private volatile String strCharsetName;
+    // Charset selected by user is not detected again when file is opened.
+    private boolean booCharsetSelected;
     private boolean booFileModified;
     private boolean booTextWrap;
 
     private final String strId;
 
+    // Document model, TextArea edits are mirrored to it by TextFormatter filter.
+    private PieceTable document = PieceTable.of("");
+    private boolean booDocumentSync = true;
+    // Big files are shown by virtualized FileContentView instead of TextArea.
+    private boolean booVirtualView;
+    private volatile LineIndex lineIndexLoaded;
+    // Line ending found in file when it was read, set by load task.
+    private volatile String strLineEndingFile = STR_CR_LF_WIP;
+    // Parts of big file shown while it's loading, loading thread puts them, animationTimerLoad
+    // takes the last one once per pulse.
+    private final AtomicReference<DocumentLoaded> atomDocumentLoaded = new AtomicReference<>();
+    private AnimationTimer animationTimerLoad;
+    private boolean booDocumentLoading;
+    // Line index of document shown by TextArea, FileContentView keeps its own one.
+    private LineIndex lineIndex = new LineIndex();
+    // Restored tab is not read until it's selected, caret and first visible line are set after reading.
+    private boolean booLoadPending;
+    private long lngCaretPositionRestore = -1;
+    private int intLineFirstRestore = -1;
+    // Occurrence found in files is selected when file is read.
+    private int intLineSelectRestore = -1;
+    private int intColumnSelectRestore;
+    private int intLengthSelectRestore;
+    // Search pattern is compiled once while text to find is not changed.
+    private SearchEngine searchEngine;
+    private String strSearchEngineFind;
+    // Matches of last Next or Prev search, kept in sync with document while it's edited.
+    private MatchIndex matchIndex;
+    private Task<Void> taskMatchIndex;
+    // Undo history kept as edit deltas, TextArea history is not used, it does not pass changes to document.
+    private final UndoJournal undoJournal = new UndoJournal(Settings.INT_UNDO_MEMORY_MB * 1024L * 1024L);
+    private final UndoJournal.Target undoTarget;
+    // Edits not saved are written to journal file, it's replayed when file is read first time after crash.
+    private final EditJournal editJournal = new EditJournal();
+    private boolean booEditJournalReplay = true;
+    private long lngFileSizeRead;
+    private long lngFileTimeRead;
+
     // ---------- Graphics - Begin -----------------------------------------------------
     private final TextArea textArea = new TextArea();
+    private FileContentView fileContentView;
 
     private final HBox hboxState;
     private final Label lblFileState;
     private final Label lblFileName;
     private final ProgressBar progressBar;
 
-    private Task<String> taskFileLoad;
+    private Task<PieceTable> taskFileLoad;
 
     private Service<String> serviceFileSave;
-    private static final int INT_FILE_LEN_SPLIT = 10;
+    private PieceTable documentSave;
     private int intFileSaveCount = 0;
 
     private final ReadOnlyBooleanProperty booPropFocusedProperty;
@@ -115,6 +183,7 @@ public class FileContentEditor extends VBox {
     private TabPane tabPane;
 
     private final StringProperty spLineEnding = new SimpleStringProperty(STR_CR_LF_WIP);
+    private final StringProperty spCaretLineColumn = new SimpleStringProperty("");
 
     // ---------- Graphics - End -----------------------------------------------------
     // -------------------------------------------------------------------------------------
@@ -137,6 +206,7 @@ public class FileContentEditor extends VBox {
         // ---------- initGraphics - begin -----------------------------------------------------
         this.textArea.setPromptText("Enter Text here.");
         this.textArea.setFont(this.font);
+        this.textArea.setContextMenu(this.createContextMenu());
         VBox.setVgrow(this.textArea, Priority.ALWAYS);
 
         this.hboxState = new HBox();
@@ -166,6 +236,7 @@ public class FileContentEditor extends VBox {
             public void changed(ObservableValue<? extends Number> observable, Number oldNumberValue, Number newNumberValue) {
                 hboxState.setVisible(false);
                 intPropCaretPosition.set(newNumberValue.intValue());
+                updateCaretLineColumn();
                 LOGGER.debug("caretPositionChangeListener."
                         + " Id=\"" + strId + "\""
                         + " FileName=\"" + strFileName + "\""
@@ -190,6 +261,69 @@ public class FileContentEditor extends VBox {
         };
         this.textArea.textProperty().addListener(this.invalidationListenerFileContent);
 
+        // -------------------------------------------------------------------------------------
+        this.textArea.setTextFormatter(new TextFormatter<>(new UnaryOperator<TextFormatter.Change>() {
+            @Override
+            public TextFormatter.Change apply(TextFormatter.Change change) {
+                if (booDocumentSync && change.isContentChange()) {
+                    // TextArea drops control chars from text after formatter, document must get the same text.
+                    String strText = filterTextAreaInput(change.getText());
+                    if (strText != change.getText()) {
+                        // Caret after inserted text is moved to end of filtered text.
+                        int intTextEnd = change.getRangeStart() + change.getText().length();
+                        boolean booCaretAtEnd = change.getCaretPosition() == intTextEnd && change.getAnchor() == intTextEnd;
+                        change.setText(strText);
+                        if (booCaretAtEnd) {
+                            change.selectRange(change.getRangeStart() + strText.length(), change.getRangeStart() + strText.length());
+                        }
+                    }
+                    undoJournal.recordReplace(document, change.getRangeStart(), change.getRangeEnd(), change.getText());
+                    editJournal.recordReplace(change.getRangeStart(), change.getRangeEnd(), change.getText());
+                    boolean booMatchIndexValid = matchIndex != null && matchIndex.isValid(document);
+                    document.replace(change.getRangeStart(), change.getRangeEnd(), change.getText());
+                    lineIndex.update(change.getRangeStart(), change.getRangeEnd(), change.getText());
+                    if (booMatchIndexValid) {
+                        matchIndex.update(document, change.getRangeStart(), change.getRangeEnd(), change.getText().length());
+                    }
+                }
+                return change;
+            }
+        }));
+
+        // Undo and redo keys of TextArea and FileContentView are handled here by undo journal.
+        // Typing is not merged with edit made after caret was moved by keys or mouse.
+        this.addEventFilter(KeyEvent.KEY_PRESSED, new EventHandler<KeyEvent>() {
+            @Override
+            public void handle(KeyEvent event) {
+                if (KEY_COMB_UNDO.match(event)) {
+                    event.consume();
+                    undo();
+                } else if (KEY_COMB_REDO.match(event) || KEY_COMB_REDO_SHIFT.match(event)) {
+                    event.consume();
+                    redo();
+                } else if (event.getCode().isNavigationKey()) {
+                    undoJournal.breakMerge();
+                }
+            }
+        });
+        this.addEventFilter(MouseEvent.MOUSE_PRESSED, new EventHandler<MouseEvent>() {
+            @Override
+            public void handle(MouseEvent event) {
+                undoJournal.breakMerge();
+            }
+        });
+        this.undoTarget = new UndoJournal.Target() {
+            @Override
+            public void replace(long lngStart, long lngEnd, String strText) {
+                replaceText(lngStart, lngEnd, strText);
+            }
+
+            @Override
+            public void replaceAll(long[] alngStart, int intCount, int intFindLen, String strText) {
+                replaceAllText(alngStart, intCount, intFindLen, strText);
+            }
+        };
+
         // -------------------------------------------------------------------------------------
         this.focusedPropertyChangeListener = new ChangeListener<Boolean>() {
             @Override
@@ -232,6 +366,7 @@ public class FileContentEditor extends VBox {
     // -------------------------------------------------------------------------------------
     public String openFile() {
 
+        this.booLoadPending = false;
         this.hboxState.visibleProperty().set(true);
         LOGGER.debug("# openFile."
                 + " booBinary=" + this.booBinary
@@ -273,47 +408,93 @@ public class FileContentEditor extends VBox {
 
         File file = this.pathFile.toFile();
         long lngFileSize = file.length();
-        if (lngFileSize > Integer.MAX_VALUE) {
-            String strMsg = "File is too big."
+        this.lngFileSizeRead = lngFileSize;
+        this.lngFileTimeRead = file.lastModified();
+        final boolean booVirtualViewLoad = lngFileSize > (long) Settings.INT_VIRTUAL_VIEW_FILE_SIZE_KB * 1024;
+        // Big files are read through windowed mapping and decoded on demand, not loaded to memory.
+        boolean booMappedLoad = false;
+        if (booVirtualViewLoad) {
+            try {
+                booMappedLoad = MappedTextSource.isBlockDecodable(Charset.forName(this.strCharsetName));
+            } catch (Throwable t) {
+                LOGGER.error("Could not get charset."
+                        + " CharsetName=\"" + this.strCharsetName + "\""
+                        + " Throwable=\"" + t.toString() + "\"");
+            }
+        }
+        final boolean booMapped = booMappedLoad;
+        final boolean booCharsetDetect = Settings.BOO_CHARSET_DETECT && !this.booCharsetSelected && !this.booBinary;
+        if (!booMapped && lngFileSize > Integer.MAX_VALUE) {
+            String strMsg = "File is too big for charset."
                     + " FileSize=" + lngFileSize
+                    + " Charset=\"" + this.strCharsetName + "\""
                     + " pathFile=\"" + pathFile + "\"";
             LOGGER.error(strMsg);
             lblFileState.textProperty().set(strMsg);
             return strMsg;
         }
-        int intFileSize = (int) lngFileSize;
-        int intFileSizeKb = 0;
-        int intFileSizeMb = 0;
+        this.closeDocument();
+        this.booVirtualView = booVirtualViewLoad;
+        this.lineIndexLoaded = null;
+        long lngFileSizeKb = 0;
+        long lngFileSizeMb = 0;
         String strFileSize = "";
-        if (intFileSize > 1024) {
-            intFileSizeKb = intFileSize / 1024;
-            strFileSize = "" + intFileSizeKb + "KB";
+        if (lngFileSize > 1024) {
+            lngFileSizeKb = lngFileSize / 1024;
+            strFileSize = "" + lngFileSizeKb + "KB";
         }
-        if (intFileSizeKb > 1024) {
-            intFileSizeMb = intFileSizeKb / 1024;
-            strFileSize = "" + intFileSizeMb + "MB";
+        if (lngFileSizeKb > 1024) {
+            lngFileSizeMb = lngFileSizeKb / 1024;
+            strFileSize = "" + lngFileSizeMb + "MB";
         }
         LOGGER.debug("# openFile."
                 + " lngFileSize=" + lngFileSize
-                + " intFileSizeKb=" + intFileSizeKb
-                + " intFileSizeMb=" + intFileSizeMb
+                + " lngFileSizeKb=" + lngFileSizeKb
+                + " lngFileSizeMb=" + lngFileSizeMb
                 + " strFileSize=" + strFileSize
                 + " pathFile=\"" + this.pathFile + "\""
                 + " Binary=" + this.booBinary
+                + " VirtualView=" + booVirtualViewLoad
+                + " Mapped=" + booMapped
+                + " CharsetDetect=" + booCharsetDetect
                 + " strCharsetName=\"" + this.strCharsetName + "\"");
 
         this.taskFileLoad = new Task<>() {
             @Override
-            protected String call() throws Exception {
+            protected PieceTable call() throws Exception {
 
                 updateMessage("Task File loading started.");
-                updateProgress(0, intFileSize);
+                updateProgress(0, lngFileSize);
 
                 Charset charset = Charset.forName(strCharsetName);
-                CharsetDecoder charsetDecoder = charset.newDecoder();
-                charsetDecoder.onMalformedInput(CodingErrorAction.REPLACE);
-                charsetDecoder.onUnmappableCharacter(CodingErrorAction.REPLACE);
-                charsetDecoder.replaceWith(Settings.STR_CHARSET_REPLACE_WITH_DEFAULT);
+                long lngTimeStart = System.currentTimeMillis();
+                MappedFileWindow mappedFileWindow = new MappedFileWindow(pathFile);
+                if (booCharsetDetect) {
+                    // Charset is chosen from samples of file before it's decoded, so file is decoded once.
+                    try {
+                        charset = CharsetDetector.detect(mappedFileWindow, charset);
+                    } catch (Throwable t) {
+                        mappedFileWindow.close();
+                        throw t;
+                    }
+                    strCharsetName = charset.name();
+                }
+                MappedTextSource mappedTextSource = null;
+                long lngByteStart = 0;
+                if (booMapped) {
+                    try {
+                        mappedTextSource = new MappedTextSource(mappedFileWindow, charset);
+                    } catch (Throwable t) {
+                        mappedFileWindow.close();
+                        throw t;
+                    }
+                    charset = mappedTextSource.getCharset();
+                    lngByteStart = mappedTextSource.getBlockByteStart(0);
+                    if (ParallelFileLoader.isParallelLoadable(charset, mappedFileWindow.size(), Settings.INT_LOAD_THREADS)) {
+                        return loadFileParallel(mappedTextSource, lngTimeStart);
+                    }
+                }
+                CharsetDecoder charsetDecoder = MappedTextSource.newDecoder(charset);
 
                 LOGGER.debug("Using charset."
                         + " Id=\"" + strId + "\""
@@ -322,173 +503,253 @@ public class FileContentEditor extends VBox {
                         + " charsetDecoder.malformedInputAction()=\"" + charsetDecoder.malformedInputAction() + "\""
                         + " charsetDecoder.unmappableCharacterAction()=\"" + charsetDecoder.unmappableCharacterAction() + "\""
                         + " charsetDecoder.replacement()=\"" + charsetDecoder.replacement() + "\""
+                        + " Mapped=" + booMapped
                         + " pathFile=\"" + pathFile + "\""
                 );
 
-                int intProgressStep = intFileSize / INT_PROGRESS_BAR_STEPS;
+                // One char buffer is reused for all blocks.
+                int intCharBufferSize = (int) Math.ceil(MappedTextSource.INT_BLOCK_SIZE * (double) charsetDecoder.maxCharsPerByte()) + 16;
+                CharBuffer charBuffer = CharBuffer.allocate(intCharBufferSize);
+                char[] achBuffer = charBuffer.array();
+                // Text of small file is kept in memory, capacity is estimated to avoid copying.
+                StringBuilder sbFileContent = null;
+                if (!booMapped) {
+                    double dblCapacity = Math.min(Integer.MAX_VALUE - 8, lngFileSize * (double) charsetDecoder.averageCharsPerByte() + 16);
+                    sbFileContent = new StringBuilder((int) dblCapacity);
+                }
+                LineIndex lineIndex = booVirtualViewLoad ? new LineIndex() : null;
+                // Line endings counters: CR, CR LF, LF without CR.
+                long[] alngLineEndings = new long[3];
+
+                long lngSize = mappedFileWindow.size();
+                long lngProgressStep = Math.max(lngSize / INT_PROGRESS_BAR_STEPS, 1);
+                long lngProgressNext = lngProgressStep;
+                int intProgressCounter = 0;
+                long lngBytePos = lngByteStart;
+                long lngCharPos = 0;
+                char chPrev = 0;
                 LOGGER.debug("Loading file."
                         + " Id=\"" + strId + "\""
-                        + " intFileSize=" + intFileSize
-                        + " pathFile=\"" + pathFile + "\""
-                        + " intProgressStep=" + intProgressStep);
-
-                int intProgressCounter = 1;
-                long lngBytesReadTotal = 0;
-                int intRemaining = 0;
-                int intBytesReadLast = -1;
-                long lngLinesLoaded = 0;
-                int intErrors = 0;
-                int intErrorsMissingLF = 0;
-                int intOsWinCrCount = 0;
-                int intOsWinLfCount = 0;
-                int intOsUnixCount = 0;
-                StringBuilder sbFileContent = new StringBuilder();
-                long lngTimeStart = System.currentTimeMillis();
-
-                try (FileChannel fileChannel = (FileChannel) Files.newByteChannel(pathFile, EnumSet.of(StandardOpenOption.READ))) {
-
-                    MappedByteBuffer mbb = fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, lngFileSize);
-                    mbb.mark();
-                    int intPosStart = mbb.position();
-                    int intPosEnd;
-                    boolean booEolFound = false;
-                    while (true) {
-                        intRemaining = mbb.remaining();
-                        if (intRemaining == 0) {
-                            break;
+                        + " ByteStart=" + lngByteStart
+                        + " lngSize=" + lngSize
+                        + " intCharBufferSize=" + intCharBufferSize
+                        + " pathFile=\"" + pathFile + "\"");
+                try {
+                    while (lngBytePos < lngSize) {
+                        int intLen = (int) Math.min(MappedTextSource.INT_BLOCK_SIZE, lngSize - lngBytePos);
+                        boolean booLast = (lngBytePos + intLen == lngSize);
+                        ByteBuffer byteBuffer = mappedFileWindow.getBuffer(lngBytePos, intLen);
+                        charBuffer.clear();
+                        if (booMapped) {
+                            // Every block of mapped file is decoded alone later, decode it the same way here.
+                            charsetDecoder.reset();
                         }
-                        byte b = mbb.get();
-                        intRemaining = mbb.remaining();
-                        lngBytesReadTotal++;
-                        if (b == BYT_CR) {
-                            booEolFound = true;
-                            lngLinesLoaded++;
-                            intOsWinCrCount++;
-                            b = mbb.get();
-                            intRemaining = mbb.remaining();
-                            lngBytesReadTotal++;
-                            if (b == BYT_LF) {
-                                intOsWinLfCount++;
-                            } else {
-                                intErrors++;
-                                intErrorsMissingLF++;
-                            }
-                        } else if (b == BYT_LF) {
-                            booEolFound = true;
-                            lngLinesLoaded++;
-                            intOsUnixCount++;
+                        charsetDecoder.decode(byteBuffer, charBuffer, booLast);
+                        if (booLast) {
+                            charsetDecoder.flush(charBuffer);
                         }
-                        if (booEolFound) {
-                            booEolFound = false;
-                            intPosEnd = mbb.position();
-                            int intBytesInLine = intPosEnd - intPosStart;
-                            byte[] abytLine = new byte[intBytesInLine];
-                            mbb.reset();
-                            mbb.get(abytLine);
-                            ByteBuffer byteBufferLine = ByteBuffer.wrap(abytLine);
-                            CharBuffer charBufferLine = charsetDecoder.decode(byteBufferLine);
-                            String strLine = charBufferLine.toString();
-                            //lstLines.add(strLine);
-                            sbFileContent.append(strLine);
-                            intBytesReadLast = strLine.length();
-                            mbb.mark();
-                            intPosStart = intPosEnd;
+                        int intConsumed = byteBuffer.position();
+                        if (intConsumed == 0) {
+                            throw new IOException("Could not decode file block. BytePos=" + lngBytePos);
                         }
-                        if (intProgressStep == 1
-                                || lngBytesReadTotal >= intProgressStep * intProgressCounter) {
-                            long lngBytesTotal = lngBytesReadTotal + intRemaining;
-                            //int intListSize = lstLines.size();
-                            LOGGER.debug("Reading..."
-                                    + " intProgressCounter=" + intProgressCounter
-                                    + " lngBytesReadTotal=" + lngBytesReadTotal
-                                    + " intRemaining=" + intRemaining
-                                    + " lngBytesTotal=" + lngBytesTotal
-                                    + " lngLinesLoaded=" + lngLinesLoaded
-                                    //+ " intListSize=" + intListSize
-                                    + " intOsWinCrCount=" + intOsWinCrCount
-                                    + " intOsWinLfCount=" + intOsWinLfCount
-                                    + " intErrorsMissingLF=" + intErrorsMissingLF
-                                    + " intOsUnixCount=" + intOsUnixCount);
-                            updateProgress(lngBytesReadTotal, intFileSize);
-                            updateMessage("File Loading " + " steps=" + intProgressCounter * INT_PROGRESS_BAR_STEPS + " bytes=" + lngBytesReadTotal);
-                            intProgressCounter++;
+                        int intChars = charBuffer.position();
+                        chPrev = LineIndexScanner.scan(achBuffer, intChars, lngCharPos, chPrev, alngLineEndings, lineIndex);
+                        lngCharPos += intChars;
+                        lngBytePos += intConsumed;
+                        if (booMapped) {
+                            mappedTextSource.addBlock(lngBytePos, lngCharPos);
+                            publishDocumentLoaded(mappedTextSource, lineIndex);
+                        } else {
+                            sbFileContent.append(achBuffer, 0, intChars);
                         }
-                        /*
-                        // For testing only !
-                        try {
-                            Thread.sleep(1);
-                        } catch (InterruptedException interrupted) {
-                            if (isCancelled()) {
-                                updateMessage("Cancelled");
-                                break;
-                            }
+                        if (lngBytePos >= lngProgressNext) {
+                            intProgressCounter++;
+                            lngProgressNext += lngProgressStep;
+                            updateProgress(lngBytePos, lngSize);
+                            updateMessage("File Loading " + " steps=" + intProgressCounter * INT_PROGRESS_BAR_STEPS + " bytes=" + lngBytePos);
                         }
-                         */
                         if (isCancelled()) {
                             updateMessage("Cancelled");
                             break;
                         }
                     }
-                    fileChannel.close();
                 } catch (Throwable t) {
                     updateMessage("Error loading File." + t.getMessage());
                     LOGGER.error("Could not Read File."
                             + " Id=\"" + strId + "\""
                             + " intUpdateProgressCounter=" + intProgressCounter
-                            + " lngBytesReadTotal=" + lngBytesReadTotal
-                            + " intBytesReadLast=" + intBytesReadLast
-                            + " lngLinesLoaded=" + lngLinesLoaded
-                            + " intOsWinCrCount=" + intOsWinCrCount
-                            + " intOsWinLfCount=" + intOsWinLfCount
-                            + " intErrorsMissingLF=" + intErrorsMissingLF
-                            + " intOsUnixCount=" + intOsUnixCount
+                            + " lngBytesReadTotal=" + lngBytePos
+                            + " lngCharsTotal=" + lngCharPos
+                            + " lngCrCount=" + alngLineEndings[LineIndexScanner.INT_CR_COUNT]
+                            + " lngCrLfCount=" + alngLineEndings[LineIndexScanner.INT_CR_LF_COUNT]
+                            + " lngLfCount=" + alngLineEndings[LineIndexScanner.INT_LF_COUNT]
                             + " pathFile=\"" + pathFile + "\""
                             + " Throwable=\"" + t.toString() + "\"");
-                    return sbFileContent.toString();
+                    // Task fails, document with part of file is not shown as loaded.
+                    throw t;
+                } finally {
+                    if (!booMapped) {
+                        mappedFileWindow.close();
+                    }
                 }
-                updateMessage("File Loaded (" + lngBytesReadTotal + " bytes).");
-
-                String strLineEnding;
-                if (intOsWinCrCount > 0 && intOsUnixCount > 0) {
-                    strLineEnding = STR_CR_LF_MIX;
-                } else if (intOsWinCrCount > 0) {
-                    strLineEnding = STR_CR_LF_WIN;
-                } else if (intOsUnixCount > 0) {
-                    strLineEnding = STR_LF_UNIX;
-                } else {
-                    strLineEnding = STR_NO_CR_LF;
+                if (!isCancelled()) {
+                    updateMessage("File Loaded (" + lngBytePos + " bytes).");
                 }
+
+                String strLineEnding = getLineEndingName(alngLineEndings[LineIndexScanner.INT_CR_COUNT], alngLineEndings[LineIndexScanner.INT_LF_COUNT]);
                 spLineEnding.set(strLineEnding);
+                strLineEndingFile = strLineEnding;
 
                 long lngTimeFinish = System.currentTimeMillis();
                 long lngTimeTaken = lngTimeFinish - lngTimeStart;
                 LOGGER.debug("Loaded file."
                         + " Id=\"" + strId + "\""
-                        + " lngBytesReadTotal=" + lngBytesReadTotal
-                        + " lngLinesLoaded=" + lngLinesLoaded
-                        + " intOsWinCrCount=" + intOsWinCrCount
-                        + " intOsWinLfCount=" + intOsWinLfCount
-                        + " intErrorsMissingLF=" + intErrorsMissingLF
-                        + " intOsUnixCount=" + intOsUnixCount
+                        + " lngBytesReadTotal=" + lngBytePos
+                        + " lngCharsTotal=" + lngCharPos
+                        + " LineCount=" + (lineIndex == null ? -1 : lineIndex.getLineCount())
+                        + " lngCrCount=" + alngLineEndings[LineIndexScanner.INT_CR_COUNT]
+                        + " lngCrLfCount=" + alngLineEndings[LineIndexScanner.INT_CR_LF_COUNT]
+                        + " lngLfCount=" + alngLineEndings[LineIndexScanner.INT_LF_COUNT]
+                        + " strLineEnding=\"" + strLineEnding + "\""
+                        + " TimeTaken=" + (float) lngTimeTaken / 1000.00 + " sec" + " (" + lngTimeTaken + " ms}"
+                        + " pathFile=\"" + pathFile + "\"");
+
+                lineIndexLoaded = lineIndex;
+                if (booMapped) {
+                    return new PieceTable(mappedTextSource);
+                }
+                return PieceTable.of(sbFileContent);
+            }
+
+            // -------------------------------------------------------------------------------------
+            // Chunks of file are decoded on ForkJoinPool, this thread reports progress and passes cancel.
+            private PieceTable loadFileParallel(MappedTextSource mappedTextSource, long lngTimeStart) throws IOException {
+
+                long lngSize = mappedTextSource.getMappedFileWindow().size();
+                ParallelFileLoader parallelFileLoader = new ParallelFileLoader(mappedTextSource, Settings.INT_LOAD_THREADS, booVirtualViewLoad);
+                ForkJoinTask<Long> forkJoinTask = parallelFileLoader.start();
+                while (!forkJoinTask.isDone()) {
+                    try {
+                        forkJoinTask.get(INT_PROGRESS_POLL_MS, TimeUnit.MILLISECONDS);
+                    } catch (TimeoutException ex) {
+                        // Still loading.
+                    } catch (InterruptedException ex) {
+                        parallelFileLoader.cancel();
+                    } catch (ExecutionException ex) {
+                        updateMessage("Error loading File." + ex.getMessage());
+                        LOGGER.error("Could not Read File."
+                                + " Id=\"" + strId + "\""
+                                + " BytesDone=" + parallelFileLoader.getBytesDone()
+                                + " pathFile=\"" + pathFile + "\""
+                                + " ExecutionException=\"" + ex.toString() + "\"");
+                        parallelFileLoader.cancel();
+                        throw new IOException("Could not load file.", ex.getCause());
+                    }
+                    updateProgress(parallelFileLoader.getBytesDone(), lngSize);
+                    updateMessage("File Loading " + " bytes=" + parallelFileLoader.getBytesDone());
+                    parallelFileLoader.stitch();
+                    publishDocumentLoaded(mappedTextSource, parallelFileLoader.getLineIndex());
+                    if (isCancelled()) {
+                        updateMessage("Cancelled");
+                        parallelFileLoader.cancel();
+                    }
+                }
+                parallelFileLoader.stitch();
+                // Task fails, document with part of file is not shown as loaded.
+                parallelFileLoader.checkFailed();
+                updateMessage("File Loaded (" + parallelFileLoader.getBytesLoaded() + " bytes).");
+
+                long[] alngLineEndings = parallelFileLoader.getLineEndings();
+                String strLineEnding = getLineEndingName(alngLineEndings[LineIndexScanner.INT_CR_COUNT], alngLineEndings[LineIndexScanner.INT_LF_COUNT]);
+                spLineEnding.set(strLineEnding);
+                strLineEndingFile = strLineEnding;
+                LineIndex lineIndex = parallelFileLoader.getLineIndex();
+
+                long lngTimeTaken = System.currentTimeMillis() - lngTimeStart;
+                LOGGER.debug("Loaded file in parallel."
+                        + " Id=\"" + strId + "\""
+                        + " Chunks=" + parallelFileLoader.getChunkCount()
+                        + " Threads=" + Settings.INT_LOAD_THREADS
+                        + " lngBytesReadTotal=" + parallelFileLoader.getBytesLoaded()
+                        + " lngCharsTotal=" + parallelFileLoader.getCharsLoaded()
+                        + " LineCount=" + (lineIndex == null ? -1 : lineIndex.getLineCount())
+                        + " lngCrCount=" + alngLineEndings[LineIndexScanner.INT_CR_COUNT]
+                        + " lngCrLfCount=" + alngLineEndings[LineIndexScanner.INT_CR_LF_COUNT]
+                        + " lngLfCount=" + alngLineEndings[LineIndexScanner.INT_LF_COUNT]
                         + " strLineEnding=\"" + strLineEnding + "\""
                         + " TimeTaken=" + (float) lngTimeTaken / 1000.00 + " sec" + " (" + lngTimeTaken + " ms}"
                         + " pathFile=\"" + pathFile + "\"");
 
-                return sbFileContent.toString();
+                lineIndexLoaded = lineIndex;
+                return new PieceTable(mappedTextSource);
             }
         };
         this.processTask();
+        if (booMapped) {
+            this.startDocumentLoading();
+        }
 
         LOGGER.debug("# openFile-Task starting."
                 + " Id=\"" + strId + "\""
                 + " task=\"" + taskFileLoad + "\"");
-        new Thread(taskFileLoad).start();
+        EditorIoScheduler.executeCpu(this.pathFile, this.taskFileLoad);
         LOGGER.debug("# openFile-Task started."
                 + " Id=\"" + strId + "\""
                 + " task=\"" + taskFileLoad + "\"");
         return "";
     }
 
+    // -------------------------------------------------------------------------------------
+    // Tab is shown without file content, file is read by loadIfPending when tab is selected.
+    public void setLoadPending(long lngCaretPosition, int intLineFirst) {
+
+        this.booLoadPending = true;
+        this.lngCaretPositionRestore = lngCaretPosition;
+        this.intLineFirstRestore = intLineFirst;
+        this.hboxState.visibleProperty().set(true);
+        this.lblFileState.textProperty().set("File is not loaded yet.");
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Returns error message like openFile, null if file was read already.
+    public String loadIfPending() {
+
+        if (!this.booLoadPending) {
+            return null;
+        }
+        LOGGER.debug("Loading restored Tab."
+                + " Id=\"" + this.strId + "\""
+                + " CaretPosition=" + this.lngCaretPositionRestore
+                + " LineFirst=" + this.intLineFirstRestore
+                + " pathFile=\"" + this.pathFile + "\"");
+        return this.openFile();
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Opens file again with other charset, caret and scroll position are kept.
+    public String reopenFile(String strCharsetNameNew) {
+
+        Charset charset;
+        try {
+            charset = Charset.forName(strCharsetNameNew);
+        } catch (Throwable t) {
+            String strMsg = "Could not get charset."
+                    + " CharsetName=\"" + strCharsetNameNew + "\""
+                    + " Throwable=\"" + t.toString() + "\"";
+            LOGGER.error(strMsg);
+            return strMsg;
+        }
+        if (!this.booLoadPending) {
+            this.lngCaretPositionRestore = this.getCaretPositionToRestore();
+            this.intLineFirstRestore = this.getLineFirstToRestore();
+        }
+        this.setCharsetName(strCharsetNameNew);
+        if (this.redecodeDocument(charset)) {
+            return null;
+        }
+        return this.openFile();
+    }
+
     // -------------------------------------------------------------------------------------
     public void openFileBinary() {
 
@@ -504,6 +765,15 @@ public class FileContentEditor extends VBox {
 
         this.hboxState.visibleProperty().set(true);
 
+        if (this.isDocumentIncomplete()) {
+            String strReason = "File is not loaded completely, it could not be saved.";
+            lblFileState.textProperty().set(strReason);
+            LOGGER.debug("Could not save File."
+                    + " pathFile=\"" + pathFile + "\""
+                    + " strReason=\"" + strReason + "\"");
+            return false;
+        }
+
         if (pathFileSaveAs == null) {
             String strReason = canSaveFile(this.strId, this.pathFile);
             if (strReason != null) {
@@ -518,112 +788,129 @@ public class FileContentEditor extends VBox {
             this.parseFilePath(this.strId, this.pathFile);
         }
 
-        if (Settings.BOO_BACKUP_FILES_EABLED) {
-//Old            renameFileToBackupReverted(strTabID, fileToSave);
-            renameFileToBackup(this.strId, this.pathFile);
-        }
-
         if (this.serviceFileSave == null) {
             this.serviceFileSave = new Service<>() {
                 @Override
                 protected Task<String> createTask() {
+                    final PieceTable documentToSave = documentSave;
+                    final Path pathFileToSave = pathFile;
+                    final String strLineEndingSave = spLineEnding.getValue();
+                    final String strLineSeparatorSave = getLineSeparator(strLineEndingSave);
+                    // Unchanged pieces of file have line endings of file, they could be copied if endings are not converted.
+                    final boolean booLineEndingKept = (strLineSeparatorSave == null || strLineEndingSave.equals(strLineEndingFile));
                     return new Task<String>() {
                         @Override
-                        protected String call() throws InterruptedException {
+                        protected String call() throws IOException {
                             LOGGER.debug("Service File Save started."
-                                    + " pathFile=\"" + pathFile + "\"");
+                                    + " pathFile=\"" + pathFileToSave + "\"");
                             updateMessage("File Save started.");
-                            String strText = getContent();
-                            if (strText == null) {
-                                LOGGER.info("Service saving null string."
-                                        + " pathFile=\"" + pathFile + "\"");
-                                strText = "";
-                            }
-                            int intTextLen = strText.length();
-                            updateProgress(0, intTextLen);
+                            long lngTextLen = documentToSave.length();
+                            updateProgress(0, lngTextLen);
                             String strComment;
-                            if (intTextLen == 0) {
+                            if (lngTextLen == 0) {
                                 strComment = " empty file";
                             } else {
                                 strComment = "";
                             }
                             LOGGER.info("Service File saving" + strComment + "."
                                     + " Id=\"" + strId + "\""
-                                    + " intLen=" + intTextLen
-                                    + " pathFile=\"" + pathFile + "\"");
-                            int intStep;
-                            if (intTextLen < INT_FILE_LEN_SPLIT) {
-                                intStep = 0;
-                            } else {
-                                intStep = intTextLen / INT_PROGRESS_BAR_STEPS;
-                            }
-                            int intFrom = 0;
-                            LOGGER.debug("Service Saving file."
-                                    + " Id=\"" + strId + "\""
-                                    + " intLen=" + intTextLen
-                                    + " intStep=" + intStep
-                                    + " pathFile=\"" + pathFile + "\"");
-
+                                    + " lngLen=" + lngTextLen
+                                    + " pathFile=\"" + pathFileToSave + "\"");
                             Charset charset = Charset.forName(strCharsetName);
-                            try (BufferedWriter writer = Files.newBufferedWriter(pathFile, charset)) {
-                                if (intStep == 0) {
-                                    writer.write(strText, 0, intTextLen);
-                                    LOGGER.debug("Saving file."
-                                            + " Id=\"" + strId + "\""
-                                            + " charset=\"" + charset + "\""
-                                            + " intLen=" + intTextLen
-                                            + " intFrom=" + intFrom
-                                            + " pathFile=\"" + pathFile + "\"");
-                                } else {
-                                    int intProgressCounter = 0;
-                                    long lngBytesWriteTotal = 0;
-                                    while (intFrom <= intTextLen - intStep) {
-                                        intProgressCounter++;
-                                        writer.write(strText, intFrom, intStep);
-                                        intFrom += intStep;
-                                        lngBytesWriteTotal += intStep;
-                                        updateProgress(intFrom, intTextLen);
-                                        updateMessage("File Saving " + " step=" + intProgressCounter + " bytes=" + lngBytesWriteTotal);
-
-                                        LOGGER.debug("Saving file."
-                                                + " Id=\"" + strId + "\""
-                                                + " pathFile=\"" + pathFile + "\""
-                                                + " intProgressCounter=" + intProgressCounter
-                                                + " intFrom=" + intFrom);
-                                        /* 
-                                        // For testing only !
-                                        try {
-                                            Thread.sleep(300);
-                                        } catch (InterruptedException interrupted) {
-                                            if (isCancelled()) {
-                                                updateMessage("Cancelled");
-                                                break;
-                                            }
-                                        }
-                                         */
+                            DocumentFileWriter documentFileWriter = new DocumentFileWriter(documentToSave, charset);
+                            documentFileWriter.setLineSeparator(strLineSeparatorSave);
+                            final Task<String> taskSave = this;
+                            DocumentFileWriter.Progress progress = new DocumentFileWriter.Progress() {
+                                @Override
+                                public void update(long lngCharsDone, long lngCharsTotal, long lngBytesWritten) {
+                                    updateProgress(lngCharsDone, lngCharsTotal);
+                                    updateMessage("File Saving bytes=" + lngBytesWritten);
+                                }
+
+                                @Override
+                                public boolean isCancelled() {
+                                    return taskSave.isCancelled();
+                                }
+                            };
+                            long lngTimeStart = System.currentTimeMillis();
+                            // Symbolic link is kept, file it points to is written.
+                            final Path pathTarget = DocumentFileWriter.getTargetPath(pathFileToSave);
+                            // Document of big file reads file while it's saved, so file must not be overwritten in place.
+                            // Other files are written in place when temp file could not keep owner and permissions of file.
+                            boolean booReading = DocumentFileWriter.isReadingFile(documentToSave, pathTarget);
+                            Path pathTemp = null;
+                            if (Settings.BOO_SAVE_ATOMIC || booReading) {
+                                pathTemp = DocumentFileWriter.createTempFile(pathTarget, booReading);
+                            }
+                            boolean booAtomic = (pathTemp != null);
+                            Path pathWrite = booAtomic ? pathTemp : pathTarget;
+                            boolean booWritten = false;
+                            boolean booReplaced = false;
+                            boolean booDelta = false;
+                            try {
+                                if (!booAtomic && Settings.BOO_BACKUP_FILES_EABLED) {
+                                    // File is overwritten in place, so backup can't be link to it.
+                                    backupFile(strId, pathFileToSave, false);
+                                }
+                                try (FileChannel fileChannel = FileChannel.open(pathWrite,
+                                        StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                                    // Unchanged parts of big file are copied to temp file, not encoded again.
+                                    booDelta = booAtomic && booLineEndingKept && documentFileWriter.planDelta(pathTarget);
+                                    if (booDelta) {
+                                        booWritten = documentFileWriter.writeDelta(fileChannel, progress);
+                                    } else {
+                                        booWritten = documentFileWriter.write(fileChannel, progress);
                                     }
-                                    int intRest = intTextLen - intFrom;
-                                    if (intRest != 0) {
-                                        writer.write(strText, intFrom, intRest);
-                                        intProgressCounter++;
-                                        LOGGER.debug("Saving file last step."
-                                                + " Id=\"" + strId + "\""
-                                                + " pathFile=\"" + pathFile + "\""
-                                                + " intProgressCounter=" + intProgressCounter
-                                                + " intFrom=" + intFrom
-                                                + " intRest=" + intRest);
+                                    fileChannel.force(true);
+                                }
+                                if (!booWritten) {
+                                    String strMsg = "File Save cancelled.";
+                                    updateMessage(strMsg);
+                                    LOGGER.info(strMsg + " pathFile=\"" + pathFileToSave + "\"");
+                                    return "Cancelled";
+                                }
+                                if (booAtomic) {
+                                    if (Settings.BOO_BACKUP_FILES_EABLED) {
+                                        // Old file is still at its path, backup is hard link to it or its copy.
+                                        backupFile(strId, pathFileToSave, true);
                                     }
+                                    DocumentFileWriter.replaceFile(pathWrite, pathTarget);
+                                    booReplaced = true;
+                                }
+                            } catch (IOException | RuntimeException ex) {
+                                String strMsg = "File Save failed: " + ex.toString();
+                                if (booAtomic && booWritten) {
+                                    // Saved text is kept in temp file when it could not replace file.
+                                    strMsg += "\nSaved text is kept in file \"" + pathWrite + "\"";
                                 }
-                            } catch (Throwable t) {
+                                updateMessage(strMsg);
                                 LOGGER.error("Could not save file."
                                         + " Id=\"" + strId + "\""
-                                        + " pathFile=\"" + pathFile + "\""
-                                        + " Throwable=\"" + t.toString() + "\"");
+                                        + " pathFile=\"" + pathFileToSave + "\""
+                                        + " pathWrite=\"" + pathWrite + "\""
+                                        + " CharsDone=" + documentFileWriter.getCharsDone()
+                                        + " BytesWritten=" + documentFileWriter.getBytesWritten()
+                                        + " Exception=\"" + ex.toString() + "\"");
+                                throw ex;
+                            } finally {
+                                if (booAtomic && !booReplaced && !booWritten) {
+                                    Files.deleteIfExists(pathWrite);
+                                }
                             }
-                            updateProgress(intTextLen, intTextLen);
-                            String strMsg = "File Save finished (" + intTextLen + " bytes).";
+                            LOGGER.debug("Saved file."
+                                    + " Id=\"" + strId + "\""
+                                    + " Atomic=" + booAtomic
+                                    + " Delta=" + booDelta
+                                    + " LineEnding=\"" + strLineEndingSave + "\""
+                                    + " BytesCopied=" + documentFileWriter.getBytesCopied()
+                                    + " Chars=" + documentFileWriter.getCharsDone()
+                                    + " Bytes=" + documentFileWriter.getBytesWritten()
+                                    + " Time=" + (System.currentTimeMillis() - lngTimeStart)
+                                    + " pathFile=\"" + pathFileToSave + "\"");
+                            updateProgress(lngTextLen, lngTextLen);
+                            String strMsg = "File Save finished (" + lngTextLen + " chars, " + documentFileWriter.getBytesWritten() + " bytes).";
                             updateMessage(strMsg);
-                            LOGGER.debug(strMsg + " pathFile=\"" + pathFile + "\"");
+                            LOGGER.debug(strMsg + " pathFile=\"" + pathFileToSave + "\"");
                             intFileSaveCount++;
                             return "OK";
                         }
@@ -669,13 +956,19 @@ public class FileContentEditor extends VBox {
                     textArea.textProperty().addListener(invalidationListenerFileContent);
                     intPropCaretPositionProperty.addListener(caretPositionChangeListener);
                     booPropFocusedProperty.addListener(focusedPropertyChangeListener);
-                    booFileModified = false;
+                    // File is not saved, it must be saved again by user or autosave.
+                    booFileModified = true;
                     progressBar.progressProperty().unbind();
                     lblFileState.textProperty().unbind();
                     String strMsg = serviceFileSave.messageProperty().get();
+                    Throwable throwable = serviceFileSave.getException();
+                    if (throwable != null && (strMsg == null || !strMsg.startsWith("File Save failed"))) {
+                        strMsg = "File Save failed: " + throwable.toString();
+                    }
                     lblFileState.textProperty().set(strMsg);
-                    LOGGER.debug("onFailedProperty serviceFileSave."
+                    LOGGER.error("onFailedProperty serviceFileSave."
                             + " Id=\"" + strId + "\""
+                            + " strMsg=\"" + strMsg + "\""
                             + " eventType=\"" + eventType + "\""
                             + " event=\"" + event + "\"");
                     event.consume();
@@ -699,6 +992,10 @@ public class FileContentEditor extends VBox {
                     String strResult = (String) serviceFileSave.getValue();
                     String strMsg = serviceFileSave.getMessage();
                     lblFileState.textProperty().set(strMsg);
+                    if ("OK".equals(strResult)) {
+                        File fileSaved = pathFile.toFile();
+                        editJournal.saved(pathFile, strCharsetName, fileSaved.length(), fileSaved.lastModified(), documentSave.length());
+                    }
 
                     LOGGER.debug("onSucceededProperty serviceFileSave."
                             + " Id=\"" + strId + "\""
@@ -712,6 +1009,8 @@ public class FileContentEditor extends VBox {
                             + "\nstrResult=\"" + strResult + "\"");
                 }
             });
+            // Save waits for other tasks of the same file, saving to new path uses the new path.
+            this.serviceFileSave.setExecutor(EditorIoScheduler.getExecutorIo(this));
             LOGGER.debug("Created serviceFileSave."
                     + " Id=\"" + this.strId + "\""
                     + " pathFile=\"" + this.pathFile + "\""
@@ -719,6 +1018,9 @@ public class FileContentEditor extends VBox {
         }
 
         this.serviceFileSave.reset();
+        // Snapshot shares text buffers with document, so editing during save does not affect it.
+        this.documentSave = this.document.snapshot();
+        this.editJournal.recordSave();
         LOGGER.info("Saving file."
                 + " Id=\"" + this.strId + "\""
                 + " pathFile=\"" + this.pathFile + "\"");
@@ -728,10 +1030,28 @@ public class FileContentEditor extends VBox {
         return true;
     }
 
+    // -------------------------------------------------------------------------------------
+    // Stops loading of file, called when tab is closed.
+    public void cancelFileLoad() {
+
+        if (this.taskFileLoad != null && this.taskFileLoad.isRunning()) {
+            this.taskFileLoad.cancel();
+        }
+        this.stopDocumentLoading();
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Tab is closed, edits not saved were dropped by user.
+    public void closeEditJournal() {
+
+        this.editJournal.delete();
+    }
+
     // -------------------------------------------------------------------------------------
     public boolean closeFile() {
 
-        this.textArea.clear();
+        this.closeDocument();
+        this.setFileContent("");
         return true;
     }
 
@@ -741,40 +1061,27 @@ public class FileContentEditor extends VBox {
         if (strTextFind == null || strTextFind.isEmpty()) {
             return -1;
         }
-        String strContent = this.getContent();
-        if (strContent == null || strContent.isEmpty()) {
+        if (this.document.isEmpty()) {
             return -1;
         }
-        int intTextFindLen = strTextFind.length();
+        SearchEngine searchEngineFind = this.getSearchEngine(strTextFind);
         int intCount = 0;
-        int intPosFound;
+        long lngPosFound;
         if (booFindAll) {
             // Find all occurrences of text in file content.
-            intPosFound = 0;
-            while (intPosFound != -1) {
-                intPosFound = strContent.indexOf(strTextFind, intPosFound);
-                if (intPosFound != -1) {
-                    intCount++;
-                    LOGGER.trace("Find Text."
-                            + " Id=\"" + this.strId + "\""
-                            + " TextFind=\"" + strTextFind + "\""
-                            + " Count=" + intCount
-                            + " PosFound=" + intPosFound);
-                    intPosFound += intTextFindLen;
-                }
-            }
+            intCount = searchEngineFind.indexOfAll(this.document).length;
         } else {
             // Find first occurent of text from Cursor position
-            int intCaretPos = this.intPropCaretPosition.getValue();
-            intPosFound = strContent.indexOf(strTextFind, intCaretPos);
-            if (intPosFound >= 0) {
+            long lngCaretPos = this.getCaretPosition();
+            lngPosFound = searchEngineFind.indexOf(this.document, lngCaretPos);
+            if (lngPosFound >= 0) {
                 intCount = 1;
 
                 this.requestFocus();
 
             } else {
-                intPosFound = strContent.indexOf(strTextFind, 0);
-                if (intPosFound >= 0) {
+                lngPosFound = searchEngineFind.indexOf(this.document, 0);
+                if (lngPosFound >= 0) {
                     intCount = 1;
                 }
             }
@@ -786,6 +1093,171 @@ public class FileContentEditor extends VBox {
         return intCount;
     }
 
+    // -------------------------------------------------------------------------------------
+    // Selects first occurrence after caret, first one in document after last one. Returns start of selected
+    // occurrence, -1 if there is no one, LNG_FIND_PENDING if regular expression is searched on background
+    // and occurrence is not found yet, getMatchIndexTask() tells when search is done.
+    // Throws PatternSyntaxException if regular expression is not valid.
+    public long findNext(String strTextFind, boolean booRegex) {
+
+        if (strTextFind == null || strTextFind.isEmpty() || this.document.isEmpty()) {
+            return -1;
+        }
+        long lngCaretPos = this.getCaretPosition();
+        MatchIndex matchIndexFind = this.getMatchIndex(strTextFind, booRegex);
+        if (matchIndexFind == null) {
+            SearchEngine searchEngineFind = this.getSearchEngine(strTextFind, false);
+            long lngPos = searchEngineFind.indexOf(this.document, lngCaretPos);
+            if (lngPos < 0) {
+                lngPos = searchEngineFind.indexOf(this.document, 0);
+            }
+            if (lngPos >= 0) {
+                this.selectRange(lngPos, lngPos + strTextFind.length());
+            }
+            return lngPos;
+        }
+        int intMatch = matchIndexFind.findNext(lngCaretPos);
+        // Empty match at caret is selected already, next one is taken.
+        if (intMatch >= 0 && matchIndexFind.getEnd(intMatch) == lngCaretPos && matchIndexFind.getStart(intMatch) == this.getSelectionStart()) {
+            intMatch = matchIndexFind.findNext(lngCaretPos + 1);
+        }
+        return this.selectMatch(matchIndexFind, intMatch);
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Selects last occurrence before selection, last one in document before first one.
+    // Returns the same values as findNext().
+    public long findPrev(String strTextFind, boolean booRegex) {
+
+        if (strTextFind == null || strTextFind.isEmpty() || this.document.isEmpty()) {
+            return -1;
+        }
+        long lngSelectionStart = this.getSelectionStart();
+        MatchIndex matchIndexFind = this.getMatchIndex(strTextFind, booRegex);
+        if (matchIndexFind == null) {
+            // Search could go only forward, so last occurrence is found by search from document start.
+            SearchEngine searchEngineFind = this.getSearchEngine(strTextFind, false);
+            long lngPos = this.findLast(searchEngineFind, 0, lngSelectionStart);
+            if (lngPos < 0) {
+                lngPos = this.findLast(searchEngineFind, 0, Long.MAX_VALUE);
+            }
+            if (lngPos >= 0) {
+                this.selectRange(lngPos, lngPos + strTextFind.length());
+            }
+            return lngPos;
+        }
+        return this.selectMatch(matchIndexFind, matchIndexFind.findPrev(lngSelectionStart));
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Returns number of all occurrences, -1 if there are too many to index,
+    // LNG_FIND_PENDING if regular expression is searched on background.
+    public long countMatches(String strTextFind, boolean booRegex) {
+
+        if (strTextFind == null || strTextFind.isEmpty() || this.document.isEmpty()) {
+            return 0;
+        }
+        MatchIndex matchIndexFind = this.getMatchIndex(strTextFind, booRegex);
+        if (matchIndexFind == null) {
+            return -1;
+        }
+        if (!matchIndexFind.isComplete()) {
+            return LNG_FIND_PENDING;
+        }
+        return matchIndexFind.getCount();
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Returns number of occurrence starting at position from 1, 0 if occurrences are not indexed.
+    public int getMatchNumber(long lngPos) {
+
+        if (this.matchIndex == null || !this.matchIndex.isValid(this.document)) {
+            return 0;
+        }
+        int intMatch = this.matchIndex.findNext(lngPos);
+        if (intMatch < 0 || this.matchIndex.getStart(intMatch) != lngPos) {
+            return 0;
+        }
+        return intMatch + 1;
+    }
+
+    // Returns -1 if occurrences are not indexed.
+    public int getMatchCount() {
+
+        if (this.matchIndex == null || !this.matchIndex.isValid(this.document)) {
+            return -1;
+        }
+        return this.matchIndex.getCount();
+    }
+
+    // Running search of regular expression, null if there is no one.
+    public Task<Void> getMatchIndexTask() {
+        return this.taskMatchIndex;
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Counts all occurrences on background, snapshot of document is searched by chunks on all CPUs.
+    // Task message shows count found so far, task value is count. Returns null if there is nothing to find.
+    public Task<Long> findAll(final String strTextFind) {
+
+        if (strTextFind == null || strTextFind.isEmpty()) {
+            return null;
+        }
+        if (this.document.isEmpty()) {
+            return null;
+        }
+        final SearchEngine searchEngineFind = this.getSearchEngine(strTextFind);
+        final PieceTable documentFind = this.document.snapshot();
+        Task<Long> taskFindAll = new Task<Long>() {
+            @Override
+            protected Long call() throws Exception {
+
+                long lngTimeStart = System.currentTimeMillis();
+                ParallelSearch parallelSearch = new ParallelSearch(documentFind, searchEngineFind);
+                ForkJoinTask<Void> forkJoinTask = parallelSearch.start();
+                while (!forkJoinTask.isDone()) {
+                    try {
+                        forkJoinTask.get(INT_PROGRESS_POLL_MS, TimeUnit.MILLISECONDS);
+                    } catch (TimeoutException ex) {
+                        // Still searching.
+                    } catch (InterruptedException ex) {
+                        parallelSearch.cancel();
+                    } catch (ExecutionException ex) {
+                        parallelSearch.cancel();
+                        throw ex;
+                    }
+                    if (isCancelled()) {
+                        parallelSearch.cancel();
+                    }
+                    parallelSearch.stitch();
+                    updateProgress(parallelSearch.getCharsDone(), parallelSearch.getLength());
+                    updateMessage("Found " + parallelSearch.getCount() + " occurrences of \"" + strTextFind + "\""
+                            + " in " + pathFile + " (" + (100 * parallelSearch.getCharsDone() / parallelSearch.getLength()) + "%)");
+                }
+                // Throws exception of chunk search.
+                forkJoinTask.get();
+                parallelSearch.stitch();
+                if (!parallelSearch.isDone()) {
+                    updateMessage("Cancelled");
+                    return -1L;
+                }
+                long lngCount = parallelSearch.getCount();
+                LOGGER.debug("Found All Text."
+                        + " Id=\"" + strId + "\""
+                        + " TextFind=\"" + strTextFind + "\""
+                        + " Count=" + lngCount
+                        + " Chunks=" + parallelSearch.getChunkCount()
+                        + " ChunksSearchedAgain=" + parallelSearch.getChunksSearchedAgain()
+                        + " Time=" + (System.currentTimeMillis() - lngTimeStart));
+                return lngCount;
+            }
+        };
+        // This thread only waits for pool and reports progress, so it runs on virtual thread and
+        // is not queued after other tasks of file.
+        EditorIoScheduler.executeIo(null, taskFindAll);
+        return taskFindAll;
+    }
+
     // -------------------------------------------------------------------------------------
     public int replace(String strTextFind, String strTextReplace) {
 
@@ -795,21 +1267,23 @@ public class FileContentEditor extends VBox {
         if (strTextReplace == null || strTextReplace.isEmpty()) {
             return -1;
         }
-        String strContent = this.getContent();
-        if (strContent == null || strContent.isEmpty()) {
+        if (this.isDocumentIncomplete()) {
+            return 0;
+        }
+        if (this.document.isEmpty()) {
             return -1;
         }
         int intTextFindLen = strTextFind.length();
-        int intContentLen = strContent.length();
 
-        int intPos = strContent.indexOf(strTextFind, this.intPropCaretPosition.getValue());
-        if (intPos < 0) {
+        SearchEngine searchEngineFind = this.getSearchEngine(strTextFind);
+        long lngPos = searchEngineFind.indexOf(this.document, this.getCaretPosition());
+        if (lngPos < 0) {
             LOGGER.debug("Replace Text not found from cursor position."
                     + " Id=\"" + this.strId + "\""
                     + " TextFind=\"" + strTextFind + "\""
                     + " TextReplace=\"" + strTextReplace + "\"");
-            intPos = strContent.indexOf(strTextFind, 0);
-            if (intPos < 0) {
+            lngPos = searchEngineFind.indexOf(this.document, 0);
+            if (lngPos < 0) {
                 LOGGER.debug("Replace Text not found in content."
                         + " Id=\"" + this.strId + "\""
                         + " TextFind=\"" + strTextFind + "\""
@@ -817,76 +1291,349 @@ public class FileContentEditor extends VBox {
                 return 0;
             }
         }
-        StringBuilder sb = new StringBuilder();
-        sb.append(strContent.substring(0, intPos));
-        sb.append(strTextReplace);
-        int intPosEndFoundFromCursor = intPos + intTextFindLen;
-        if (intContentLen > intPosEndFoundFromCursor) {
-            sb.append(strContent.substring(intPosEndFoundFromCursor));
-        }
-        String strTextUpdated = sb.toString();
-        this.setFileContent(strTextUpdated);
+        long lngPosEndFoundFromCursor = lngPos + intTextFindLen;
+        this.undoJournal.breakMerge();
+        this.replaceText(lngPos, lngPosEndFoundFromCursor, strTextReplace);
         LOGGER.debug("Replace Text found."
                 + " Id=\"" + this.strId + "\""
                 + " TextFind=\"" + strTextFind + "\""
                 + " TextReplace=\"" + strTextReplace + "\""
-                + " intPos" + intPos
+                + " lngPos" + lngPos
                 + " intTextFindLen" + intTextFindLen
-                + " intPosEndFoundFromCursor" + intPosEndFoundFromCursor);
+                + " lngPosEndFoundFromCursor" + lngPosEndFoundFromCursor);
         return 1;
     }
 
     // -------------------------------------------------------------------------------------
+    // Document is scanned once and all occurrences are replaced by one edit, so time is linear
+    // in document size. Replaced text is not searched again, it could contain text to find.
     public int replaceAll(String strTextFind, String strTextReplace) {
 
-        int intReplacedCount = 0;
-        int intReplaced;
-        while ((intReplaced = this.replace(strTextFind, strTextReplace)) > 0) {
-            intReplacedCount += intReplaced;
+        if (strTextFind == null || strTextFind.isEmpty()) {
+            return -1;
+        }
+        if (strTextReplace == null || strTextReplace.isEmpty()) {
+            return -1;
+        }
+        if (this.isDocumentIncomplete()) {
+            return 0;
+        }
+        if (this.document.isEmpty()) {
+            return -1;
+        }
+        long lngTimeStart = System.currentTimeMillis();
+        int intTextFindLen = strTextFind.length();
+        long[] alngFound = this.getSearchEngine(strTextFind).indexOfAll(this.document);
+        int intCount = alngFound.length;
+        if (intCount == 0) {
+            LOGGER.debug("Replace All Text not found in content."
+                    + " Id=\"" + this.strId + "\""
+                    + " TextFind=\"" + strTextFind + "\""
+                    + " TextReplace=\"" + strTextReplace + "\"");
+            return 0;
+        }
+        // Undo journal keeps occurrences, not text of TextArea change from first to last occurrence.
+        this.undoJournal.recordReplaceAll(alngFound, intCount, strTextFind, strTextReplace);
+        this.undoJournal.setRecording(false);
+        try {
+            this.replaceAllText(alngFound, intCount, intTextFindLen, strTextReplace);
+        } finally {
+            this.undoJournal.setRecording(true);
         }
-        return intReplacedCount;
+        LOGGER.debug("Replaced All Text."
+                + " Id=\"" + this.strId + "\""
+                + " TextFind=\"" + strTextFind + "\""
+                + " TextReplace=\"" + strTextReplace + "\""
+                + " Count=" + intCount
+                + " Time=" + (System.currentTimeMillis() - lngTimeStart));
+        return intCount;
     }
 
     // -------------------------------------------------------------------------------------
-    public long getFileSize() {
-
-        if (this.pathFile == null) {
-            return 0;
+    // Index is built again when text to find is changed or document was changed not by edit
+    // (new document, Replace All and its undo), it's passed to view to highlight occurrences.
+    // Literal text is indexed at once, regular expression is searched on background.
+    private MatchIndex getMatchIndex(String strTextFind, boolean booRegex) {
+
+        if (this.matchIndex != null && this.matchIndex.isValid(this.document) && strTextFind.equals(this.matchIndex.getFind())
+                && this.matchIndex.getSearchEngine().isLiteral() != booRegex) {
+            return this.matchIndex;
+        }
+        if (this.taskMatchIndex != null) {
+            this.taskMatchIndex.cancel();
+            this.taskMatchIndex = null;
+        }
+        SearchEngine searchEngineFind = this.getSearchEngine(strTextFind, booRegex);
+        if (booRegex) {
+            this.matchIndex = new MatchIndex(this.document, searchEngineFind, strTextFind);
+            this.startMatchIndexTask(this.matchIndex);
         } else {
-            long lngFileSize;
-            try {
-                lngFileSize = Files.size(pathFile);
-            } catch (IOException ex) {
-                LOGGER.error("Could not get File size."
-                        + " Id=\"" + this.strId + "\""
-                        + " pathFile=\"" + this.pathFile + "\""
-                        + " IOException=\"" + ex.toString() + "\"");
-                return 0;
-            }
-            return lngFileSize;
+            this.matchIndex = MatchIndex.build(this.document, searchEngineFind, strTextFind, INT_MATCH_INDEX_MAX);
+        }
+        if (this.matchIndex == null) {
+            LOGGER.debug("Too many occurrences to index."
+                    + " Id=\"" + this.strId + "\""
+                    + " TextFind=\"" + strTextFind + "\""
+                    + " MatchIndexMax=" + INT_MATCH_INDEX_MAX);
+        }
+        if (this.booVirtualView && this.fileContentView != null) {
+            this.fileContentView.setMatchIndex(this.matchIndex);
         }
+        return this.matchIndex;
     }
 
     // -------------------------------------------------------------------------------------
-    // Helpers
-    // -------------------------------------------------------------------------------------
-    private void parseFilePath(final String strId, Path pathFile) {
+    // Snapshot of document is searched, found matches are passed to index on FX thread by batches,
+    // so Next and Prev use index and view highlights matches before search is done.
+    private void startMatchIndexTask(final MatchIndex matchIndexNew) {
 
-        if (pathFile == null) {
-            this.strFilePath = "";
-            this.strFileName = "";
-            this.strFileExt = "";
-            this.strFileDir = "";
-            LOGGER.error("File Path is null."
-                    + " Id=\"" + strId + "\"");
-        } else {
-            this.strFilePath = pathFile.toString();
-            final int intFileNamePos = this.strFilePath.lastIndexOf(File.separator);
-            if (intFileNamePos < 0) {
-                this.strFileDir = "";
-                this.strFileName = strFilePath;
-            } else {
-                this.strFileDir = this.strFilePath.substring(0, intFileNamePos);
+        final PieceTable documentFind = this.document.snapshot();
+        final SearchEngine searchEngineFind = matchIndexNew.getSearchEngine();
+        final long lngTimeStart = System.currentTimeMillis();
+        final Task<Void> taskMatchIndexNew = new Task<Void>() {
+
+            private long[] alngStart = new long[INT_MATCH_BATCH_SIZE];
+            private int[] aintLength = new int[INT_MATCH_BATCH_SIZE];
+            private int intBatchCount;
+            private int intCount;
+            private long lngTimePublished = System.currentTimeMillis();
+
+            @Override
+            protected Void call() throws Exception {
+
+                try {
+                    searchEngineFind.findAll(documentFind, 0, Long.MAX_VALUE, new SearchEngine.MatchHandler() {
+                        @Override
+                        public boolean match(long lngStart, int intLength) {
+                            if (isCancelled()) {
+                                return false;
+                            }
+                            alngStart[intBatchCount] = lngStart;
+                            aintLength[intBatchCount] = intLength;
+                            intBatchCount++;
+                            intCount++;
+                            if (intBatchCount == INT_MATCH_BATCH_SIZE || System.currentTimeMillis() - lngTimePublished > INT_PROGRESS_POLL_MS) {
+                                publish();
+                            }
+                            return intCount < INT_MATCH_INDEX_MAX;
+                        }
+                    });
+                } finally {
+                    this.publish();
+                }
+                updateMessage("Found " + this.intCount + " occurrences.");
+                return null;
+            }
+
+            private void publish() {
+
+                if (this.intBatchCount == 0) {
+                    return;
+                }
+                final long[] alngStartBatch = Arrays.copyOf(this.alngStart, this.intBatchCount);
+                final int[] aintLengthBatch = Arrays.copyOf(this.aintLength, this.intBatchCount);
+                this.intBatchCount = 0;
+                this.lngTimePublished = System.currentTimeMillis();
+                Platform.runLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        addMatches(matchIndexNew, alngStartBatch, aintLengthBatch);
+                    }
+                });
+            }
+        };
+        // Handlers added here run before handler set by caller with setOnSucceeded().
+        EventHandler<WorkerStateEvent> eventHandlerDone = new EventHandler<WorkerStateEvent>() {
+            @Override
+            public void handle(WorkerStateEvent event) {
+                if (taskMatchIndex == taskMatchIndexNew) {
+                    taskMatchIndex = null;
+                }
+                // Matches found before timeout are kept, Next and Prev wrap around them.
+                matchIndexNew.setComplete();
+                Throwable throwable = taskMatchIndexNew.getException();
+                LOGGER.debug("Searched regular expression."
+                        + " Id=\"" + strId + "\""
+                        + " Regex=\"" + matchIndexNew.getFind() + "\""
+                        + " Count=" + matchIndexNew.getCount()
+                        + " Time=" + (System.currentTimeMillis() - lngTimeStart)
+                        + " Exception=\"" + (throwable == null ? "" : throwable.toString()) + "\"");
+            }
+        };
+        taskMatchIndexNew.addEventHandler(WorkerStateEvent.WORKER_STATE_SUCCEEDED, eventHandlerDone);
+        taskMatchIndexNew.addEventHandler(WorkerStateEvent.WORKER_STATE_FAILED, eventHandlerDone);
+        this.taskMatchIndex = taskMatchIndexNew;
+        EditorIoScheduler.executeCpu(null, taskMatchIndexNew);
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Called on FX thread, search is cancelled if document was changed and index is not used any more.
+    private void addMatches(MatchIndex matchIndexNew, long[] alngStart, int[] aintLength) {
+
+        if (this.matchIndex != matchIndexNew || !matchIndexNew.isValid(this.document)) {
+            if (this.taskMatchIndex != null && this.matchIndex == matchIndexNew) {
+                this.taskMatchIndex.cancel();
+                this.taskMatchIndex = null;
+            }
+            return;
+        }
+        for (int i = 0; i < alngStart.length; i++) {
+            matchIndexNew.add(alngStart[i], aintLength[i]);
+        }
+        if (this.booVirtualView && this.fileContentView != null) {
+            this.fileContentView.setMatchIndex(matchIndexNew);
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Returns start of match, -1 if there is no match.
+    private long selectMatch(MatchIndex matchIndexFind, int intMatch) {
+
+        if (intMatch < 0) {
+            return matchIndexFind.isComplete() ? -1 : LNG_FIND_PENDING;
+        }
+        long lngStart = matchIndexFind.getStart(intMatch);
+        this.selectRange(lngStart, matchIndexFind.getEnd(intMatch));
+        return lngStart;
+    }
+
+    // -------------------------------------------------------------------------------------
+    private long findLast(SearchEngine searchEngineFind, long lngFrom, long lngTo) {
+
+        final long[] alngFound = {-1};
+        searchEngineFind.findAll(this.document, lngFrom, lngTo, new SearchEngine.MatchHandler() {
+            @Override
+            public boolean match(long lngStart, int intLength) {
+                alngFound[0] = lngStart;
+                return true;
+            }
+        });
+        return alngFound[0];
+    }
+
+    // -------------------------------------------------------------------------------------
+    private SearchEngine getSearchEngine(String strTextFind) {
+
+        return this.getSearchEngine(strTextFind, false);
+    }
+
+    private SearchEngine getSearchEngine(String strTextFind, boolean booRegex) {
+
+        if (this.searchEngine == null || !strTextFind.equals(this.strSearchEngineFind) || this.searchEngine.isLiteral() == booRegex) {
+            if (booRegex) {
+                this.searchEngine = SearchEngine.compileRegex(strTextFind, Pattern.MULTILINE, Settings.INT_REGEX_TIMEOUT_SEC * 1000L);
+            } else {
+                this.searchEngine = SearchEngine.compile(strTextFind);
+            }
+            this.strSearchEngineFind = strTextFind;
+        }
+        return this.searchEngine;
+    }
+
+    // -------------------------------------------------------------------------------------
+    public void undo() {
+
+        if (this.undoJournal.undo(this.undoTarget)) {
+            this.updateCaretLineColumn();
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    public void redo() {
+
+        if (this.undoJournal.redo(this.undoTarget)) {
+            this.updateCaretLineColumn();
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Moves caret to start of line, intLine starts from 1.
+    public boolean goToLine(int intLine) {
+
+        LineIndex lineIndexCurrent = this.getLineIndex();
+        if (intLine < 1 || intLine > lineIndexCurrent.getLineCount()) {
+            LOGGER.debug("Could not go to line."
+                    + " Id=\"" + this.strId + "\""
+                    + " Line=" + intLine
+                    + " LineCount=" + lineIndexCurrent.getLineCount());
+            return false;
+        }
+        long lngPos = lineIndexCurrent.getLineStart(intLine - 1);
+        if (this.booVirtualView) {
+            this.fileContentView.positionCaret(lngPos);
+            this.fileContentView.requestFocus();
+        } else {
+            this.textArea.positionCaret((int) lngPos);
+            this.textArea.requestFocus();
+        }
+        return true;
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Selects intLength chars from column of line, intLine starts from 1, intColumn from 0.
+    // If file is not read yet, range is selected when it's read.
+    public boolean selectInLine(int intLine, int intColumn, int intLength) {
+
+        if (this.isDocumentLoading()) {
+            this.intLineSelectRestore = intLine;
+            this.intColumnSelectRestore = intColumn;
+            this.intLengthSelectRestore = intLength;
+            return true;
+        }
+        LineIndex lineIndexCurrent = this.getLineIndex();
+        if (intLine < 1 || intLine > lineIndexCurrent.getLineCount()) {
+            LOGGER.debug("Could not select in line."
+                    + " Id=\"" + this.strId + "\""
+                    + " Line=" + intLine
+                    + " LineCount=" + lineIndexCurrent.getLineCount());
+            return false;
+        }
+        long lngLength = this.document.length();
+        long lngStart = Math.min(lineIndexCurrent.getLineStart(intLine - 1) + intColumn, lngLength);
+        this.selectRange(lngStart, Math.min(lngStart + intLength, lngLength));
+        return true;
+    }
+
+    // -------------------------------------------------------------------------------------
+    public long getFileSize() {
+
+        if (this.pathFile == null) {
+            return 0;
+        } else {
+            long lngFileSize;
+            try {
+                lngFileSize = Files.size(pathFile);
+            } catch (IOException ex) {
+                LOGGER.error("Could not get File size."
+                        + " Id=\"" + this.strId + "\""
+                        + " pathFile=\"" + this.pathFile + "\""
+                        + " IOException=\"" + ex.toString() + "\"");
+                return 0;
+            }
+            return lngFileSize;
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Helpers
+    // -------------------------------------------------------------------------------------
+    private void parseFilePath(final String strId, Path pathFile) {
+
+        if (pathFile == null) {
+            this.strFilePath = "";
+            this.strFileName = "";
+            this.strFileExt = "";
+            this.strFileDir = "";
+            LOGGER.error("File Path is null."
+                    + " Id=\"" + strId + "\"");
+        } else {
+            this.strFilePath = pathFile.toString();
+            final int intFileNamePos = this.strFilePath.lastIndexOf(File.separator);
+            if (intFileNamePos < 0) {
+                this.strFileDir = "";
+                this.strFileName = strFilePath;
+            } else {
+                this.strFileDir = this.strFilePath.substring(0, intFileNamePos);
                 this.strFileName = this.strFilePath.substring(intFileNamePos + 1);
             }
 
@@ -959,7 +1706,9 @@ public class FileContentEditor extends VBox {
     }
 
     // -------------------------------------------------------------------------------------
-    private static void renameFileToBackup(String strTabId, Path pathFile) {
+    // Keeps old version of file in backup file, file stays at its path.
+    // Backup is hard link to file when file will be replaced by new one, otherwise it's copy of file.
+    private static void backupFile(String strTabId, Path pathFile, boolean booLink) {
 
         if (pathFile == null) {
             LOGGER.error("Could not create *bak File for null File."
@@ -1074,22 +1823,336 @@ public class FileContentEditor extends VBox {
             booFileBackupOldest = false;
             pathFileBackupOld = pathFileBackup;
         }
+        if (booLink) {
+            try {
+                Files.createLink(pathFileBackup, pathFile);
+                LOGGER.debug("Linked *.bak File."
+                        + " TabId=\"" + strTabId + "\""
+                        + " pathFile=\"" + pathFile + "\""
+                        + " pathFileBackup=\"" + pathFileBackup + "\"");
+                return;
+            } catch (Throwable t) {
+                // File system without hard links.
+                LOGGER.debug("Could not link File to *.bak File, it will be copied."
+                        + " TabId=\"" + strTabId + "\""
+                        + " pathFile=\"" + pathFile + "\""
+                        + " pathFileBackup=\"" + pathFileBackup + "\""
+                        + " Throwable=\"" + t.toString() + "\"");
+            }
+        }
         try {
-            Files.move(pathFile, pathFileBackup);
+            Files.copy(pathFile, pathFileBackup, StandardCopyOption.COPY_ATTRIBUTES);
         } catch (Throwable t) {
-            LOGGER.error("Could not rename File to *.bak File."
+            LOGGER.error("Could not copy File to *.bak File."
                     + " TabId=\"" + strTabId + "\""
                     + " pathFile=\"" + pathFile + "\""
                     + " pathFileBackup=\"" + pathFileBackup + "\""
                     + " Throwable=\"" + t.toString() + "\"");
             return;
         }
-        LOGGER.debug("Renamed *.bak File."
+        LOGGER.debug("Copied *.bak File."
                 + " TabId=\"" + strTabId + "\""
                 + " pathFile=\"" + pathFile + "\""
                 + " pathFileBackup=\"" + pathFileBackup + "\"");
     }
 
+    // -------------------------------------------------------------------------------------
+    // Default TextArea context menu calls TextArea undo/redo directly, replace it.
+    private ContextMenu createContextMenu() {
+
+        MenuItem menuItemUndo = new MenuItem("Undo");
+        menuItemUndo.setOnAction(new EventHandler<ActionEvent>() {
+            @Override
+            public void handle(ActionEvent event) {
+                undo();
+            }
+        });
+        MenuItem menuItemRedo = new MenuItem("Redo");
+        menuItemRedo.setOnAction(new EventHandler<ActionEvent>() {
+            @Override
+            public void handle(ActionEvent event) {
+                redo();
+            }
+        });
+        MenuItem menuItemCut = new MenuItem("Cut");
+        menuItemCut.setOnAction(new EventHandler<ActionEvent>() {
+            @Override
+            public void handle(ActionEvent event) {
+                textArea.cut();
+            }
+        });
+        MenuItem menuItemCopy = new MenuItem("Copy");
+        menuItemCopy.setOnAction(new EventHandler<ActionEvent>() {
+            @Override
+            public void handle(ActionEvent event) {
+                textArea.copy();
+            }
+        });
+        MenuItem menuItemPaste = new MenuItem("Paste");
+        menuItemPaste.setOnAction(new EventHandler<ActionEvent>() {
+            @Override
+            public void handle(ActionEvent event) {
+                textArea.paste();
+            }
+        });
+        MenuItem menuItemDelete = new MenuItem("Delete");
+        menuItemDelete.setOnAction(new EventHandler<ActionEvent>() {
+            @Override
+            public void handle(ActionEvent event) {
+                textArea.replaceSelection("");
+            }
+        });
+        MenuItem menuItemSelectAll = new MenuItem("Select All");
+        menuItemSelectAll.setOnAction(new EventHandler<ActionEvent>() {
+            @Override
+            public void handle(ActionEvent event) {
+                textArea.selectAll();
+            }
+        });
+        menuItemUndo.disableProperty().bind(this.undoJournal.undoableProperty().not());
+        menuItemRedo.disableProperty().bind(this.undoJournal.redoableProperty().not());
+
+        ContextMenu contextMenu = new ContextMenu();
+        contextMenu.getItems().addAll(menuItemUndo, menuItemRedo, new SeparatorMenuItem(),
+                menuItemCut, menuItemCopy, menuItemPaste, menuItemDelete, new SeparatorMenuItem(),
+                menuItemSelectAll);
+        return contextMenu;
+    }
+
+    // -------------------------------------------------------------------------------------
+    private static String getLineEndingName(long lngCrCount, long lngLfCount) {
+
+        if (lngCrCount > 0 && lngLfCount > 0) {
+            return STR_CR_LF_MIX;
+        } else if (lngCrCount > 0) {
+            return STR_CR_LF_WIN;
+        } else if (lngLfCount > 0) {
+            return STR_LF_UNIX;
+        }
+        return STR_NO_CR_LF;
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Removes chars TextArea does not insert: control chars except LF and TAB, and DEL.
+    // Returns the same string if there are no such chars.
+    private static String filterTextAreaInput(String strText) {
+
+        int intLen = strText.length();
+        int i = 0;
+        while (i < intLen && isTextAreaChar(strText.charAt(i))) {
+            i++;
+        }
+        if (i == intLen) {
+            return strText;
+        }
+        StringBuilder sb = new StringBuilder(intLen);
+        sb.append(strText, 0, i);
+        for (; i < intLen; i++) {
+            char ch = strText.charAt(i);
+            if (isTextAreaChar(ch)) {
+                sb.append(ch);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean isTextAreaChar(char ch) {
+        return (ch >= 0x20 && ch != 0x7F) || ch == '\n' || ch == '\t';
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Shows empty read-only view, parts of file are added to it while file is loading.
+    private void startDocumentLoading() {
+
+        this.setDocument(PieceTable.of(""));
+        this.fileContentView.setEditable(false);
+        this.booDocumentLoading = true;
+        this.atomDocumentLoaded.set(null);
+        if (this.animationTimerLoad == null) {
+            this.animationTimerLoad = new AnimationTimer() {
+                @Override
+                public void handle(long lngNow) {
+                    DocumentLoaded documentLoaded = atomDocumentLoaded.getAndSet(null);
+                    if (documentLoaded != null && booDocumentLoading) {
+                        document = documentLoaded.document;
+                        fileContentView.updateDocument(documentLoaded.document, documentLoaded.lineIndex);
+                    }
+                }
+            };
+        }
+        this.animationTimerLoad.start();
+    }
+
+    // -------------------------------------------------------------------------------------
+    private void stopDocumentLoading() {
+
+        if (this.animationTimerLoad != null) {
+            this.animationTimerLoad.stop();
+        }
+        this.atomDocumentLoaded.set(null);
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Called by loading thread. Snapshot of LineIndex shares line starts with index being filled.
+    private void publishDocumentLoaded(MappedTextSource mappedTextSource, LineIndex lineIndex) {
+
+        this.atomDocumentLoaded.set(new DocumentLoaded(new PieceTable(mappedTextSource), lineIndex.snapshot()));
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Document is not complete while file is loading and after loading was cancelled.
+    private boolean isDocumentIncomplete() {
+
+        // Failed load shows error message instead of file, it must not be saved over file.
+        return this.booLoadPending
+                || (this.taskFileLoad != null && (this.taskFileLoad.isRunning() || this.taskFileLoad.getState() == Worker.State.FAILED))
+                || (this.booVirtualView && this.fileContentView != null && !this.fileContentView.isEditable());
+    }
+
+    // -------------------------------------------------------------------------------------
+    // State of load task is changed on FX thread, it's still running here until its handlers are called.
+    private boolean isDocumentLoading() {
+
+        if (this.booLoadPending) {
+            return true;
+        }
+        if (this.taskFileLoad == null) {
+            return false;
+        }
+        Worker.State state = this.taskFileLoad.getState();
+        return state == Worker.State.READY || state == Worker.State.SCHEDULED || state == Worker.State.RUNNING;
+    }
+
+    // -------------------------------------------------------------------------------------
+    private void updateCaretLineColumn() {
+
+        if (this.booVirtualView && this.fileContentView == null) {
+            return;
+        }
+        LineIndex lineIndexCurrent = this.getLineIndex();
+        long lngPos = this.getCaretPosition();
+        int intLine = lineIndexCurrent.findLine(lngPos);
+        long lngColumn = lngPos - lineIndexCurrent.getLineStart(intLine);
+        this.spCaretLineColumn.set("Ln " + (intLine + 1) + ", Col " + (lngColumn + 1));
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Sets caret and first visible line kept in OpenTabs file, or selects occurrence found in files,
+    // called when restored tab is read.
+    private void restorePosition() {
+
+        if (this.intLineSelectRestore > 0) {
+            int intLine = this.intLineSelectRestore;
+            this.intLineSelectRestore = -1;
+            this.lngCaretPositionRestore = -1;
+            this.intLineFirstRestore = -1;
+            this.selectInLine(intLine, this.intColumnSelectRestore, this.intLengthSelectRestore);
+            return;
+        }
+        long lngCaretPosition = this.lngCaretPositionRestore;
+        int intLineFirst = this.intLineFirstRestore;
+        this.lngCaretPositionRestore = -1;
+        this.intLineFirstRestore = -1;
+        if (lngCaretPosition < 0) {
+            return;
+        }
+        long lngPos = Math.min(lngCaretPosition, this.document.length());
+        if (this.booVirtualView) {
+            this.fileContentView.positionCaret(lngPos);
+            if (intLineFirst >= 0) {
+                this.fileContentView.scrollToLine(intLineFirst);
+            }
+            return;
+        }
+        this.textArea.positionCaret((int) lngPos);
+        if (intLineFirst >= 0) {
+            final double dblScrollTop = intLineFirst * this.getLineHeight();
+            // TextArea scrolls to caret on next layout, scroll position must be set after it.
+            Platform.runLater(new Runnable() {
+                @Override
+                public void run() {
+                    textArea.setScrollTop(dblScrollTop);
+                }
+            });
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    private double getLineHeight() {
+
+        Text text = new Text("Xg");
+        text.setFont(this.font);
+        return Math.ceil(text.getLayoutBounds().getHeight());
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Status bar shows line ending and charset of file read.
+    private void fireEventFileRead() {
+
+        if (this.tabPane == null) {
+            LOGGER.error("Could not fire file read event, tabPane is null."
+                    + " Id=\"" + this.strId + "\"");
+            return;
+        }
+        EventTarget eventTarget = this.tabPane;
+        EventFileRead eventFileRead = new EventFileRead(this, eventTarget, EventFileRead._FILE_READ);
+        eventFileRead.setId(this.strId);
+        eventFileRead.setLineEnding(this.spLineEnding.getValue());
+        eventFileRead.setCharsetName(this.strCharsetName);
+        this.tabPane.fireEvent(eventFileRead);
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Document of big file not edited since it was read is decoded again from the same mapped file,
+    // when both charsets have one char per byte. File is not scanned, line index is kept,
+    // blocks are decoded with new charset when they are shown.
+    private boolean redecodeDocument(Charset charset) {
+
+        if (!this.booVirtualView || this.fileContentView == null || this.isDocumentIncomplete()) {
+            return false;
+        }
+        TextSource textSourceOriginal = this.document.getTextSourceOriginal();
+        if (!(textSourceOriginal instanceof MappedTextSource mappedTextSource)) {
+            return false;
+        }
+        long lngLength = mappedTextSource.length();
+        boolean booOriginal = (lngLength == 0)
+                || (this.document.getPieceCount() == 1 && this.document.isPieceOriginal(0)
+                && this.document.getPieceStart(0) == 0 && this.document.getPieceLength(0) == lngLength);
+        if (!booOriginal || mappedTextSource.getMappedFileWindow().isFileChanged()) {
+            return false;
+        }
+        MappedTextSource mappedTextSourceNew = mappedTextSource.redecode(charset);
+        if (mappedTextSourceNew == null) {
+            return false;
+        }
+        long lngTimeStart = System.currentTimeMillis();
+        this.lineIndexLoaded = this.fileContentView.getLineIndex();
+        this.setDocument(new PieceTable(mappedTextSourceNew));
+        this.editJournal.reset(this.pathFile, this.strCharsetName, this.lngFileSizeRead, this.lngFileTimeRead, this.document.length());
+        this.restorePosition();
+        this.booFileModified = false;
+        this.lblFileState.textProperty().set("File decoded with charset " + charset.name() + ".");
+        LOGGER.debug("Decoded document with other charset."
+                + " Id=\"" + this.strId + "\""
+                + " Charset=\"" + charset + "\""
+                + " CharsetOld=\"" + mappedTextSource.getCharset() + "\""
+                + " Time=" + (System.currentTimeMillis() - lngTimeStart)
+                + " pathFile=\"" + this.pathFile + "\"");
+        this.fireEventFileRead();
+        return true;
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Releases file mapping of document read from big file.
+    private void closeDocument() {
+
+        TextSource textSourceOriginal = this.document.getTextSourceOriginal();
+        if (textSourceOriginal instanceof MappedTextSource mappedTextSource) {
+            mappedTextSource.getMappedFileWindow().close();
+        }
+    }
+
     // -------------------------------------------------------------------------------------
     private void processTask() {
 
@@ -1145,7 +2208,10 @@ public class FileContentEditor extends VBox {
                             + "\nTry to Open File with different Charset or Open File Binary.";
                     lblFileState.textProperty().unbind();
                     lblFileState.textProperty().setValue(strErrMsg);
-                    textArea.setText(strErrMsg);
+                    stopDocumentLoading();
+                    closeDocument();
+                    booVirtualView = false;
+                    setFileContent(strErrMsg);
                     textArea.setEditable(false);
                     booFileModified = false;
                     LOGGER.debug("onFailedProperty."
@@ -1157,6 +2223,22 @@ public class FileContentEditor extends VBox {
                 }
             });
 
+            this.taskFileLoad.onCancelledProperty().set(new EventHandler<WorkerStateEvent>() {
+                @Override
+                public void handle(WorkerStateEvent event) {
+                    EventType eventType = event.getEventType();
+                    // Loaded part of file stays read-only, saving it would cut the file.
+                    stopDocumentLoading();
+                    lblFileState.textProperty().unbind();
+                    lblFileState.textProperty().set("File loading cancelled.");
+                    LOGGER.debug("onCancelledProperty."
+                            + " Id=\"" + strId + "\""
+                            + " eventType=\"" + eventType + "\""
+                            + " event=\"" + event + "\"");
+                    event.consume();
+                }
+            });
+
             this.taskFileLoad.onSucceededProperty().set(new EventHandler<WorkerStateEvent>() {
                 @Override
                 public void handle(WorkerStateEvent event) {
@@ -1164,24 +2246,22 @@ public class FileContentEditor extends VBox {
                     Worker.State state = stateProperty.getValue();
                     String stateName = state.name();
                     EventType eventType = event.getEventType();
-                    String strText;
-                    int intTextLen = 0;
+                    PieceTable documentLoaded;
                     try {
-                        strText = (String) taskFileLoad.get();
+                        documentLoaded = taskFileLoad.get();
                     } catch (InterruptedException | ExecutionException ex) {
                         LOGGER.error("onSucceededProperty."
                                 + " Id=\"" + strId + "\""
                                 + " Exception=\"" + ex.toString() + "\"");
-                        strText = "";
+                        documentLoaded = null;
+                    }
+                    if (documentLoaded == null) {
+                        documentLoaded = PieceTable.of("");
                     }
                     // TODO: filter text !!!???
                     int intTextLogLimit = 100;
-                    String strTextPart = "";
-                    if (strText != null) {
-                        intTextLen = strText.length();
-                        int intTrim = Math.min(intTextLen, intTextLogLimit);
-                        strTextPart = strText.substring(0, intTrim) + "\n...";
-                    }
+                    long lngTextLen = documentLoaded.length();
+                    String strTextPart = documentLoaded.getText(0, Math.min(lngTextLen, intTextLogLimit)) + "\n...";
                     String strLineEnding = spLineEnding.getValue();
                     LOGGER.trace("onSucceededProperty got File content."
                             + " Id=\"" + strId + "\""
@@ -1190,40 +2270,33 @@ public class FileContentEditor extends VBox {
                             + " state=\"" + state + "\""
                             + " stateName=\"" + stateName + "\""
                             + " strLineEnding=\"" + strLineEnding + "\""
-                            + "\nintTextLen=\"" + intTextLen + "\""
+                            + "\nlngTextLen=\"" + lngTextLen + "\""
                             + "\nstrText=\"" + strTextPart + "\""
                     );
                     event.consume();
-                    setFileContent(strText);
-                    textArea.setText(strText);
+                    stopDocumentLoading();
+                    setDocument(documentLoaded);
+                    int intEditsReplayed = startEditJournal();
+                    restorePosition();
                     textArea.setWrapText(booTextWrap);
                     textArea.textProperty().addListener(invalidationListenerFileContent);
                     lblFileState.textProperty().unbind();
                     String strMsg = taskFileLoad.getMessage();
+                    if (intEditsReplayed > 0) {
+                        strMsg = "Recovered " + intEditsReplayed + " unsaved edits.";
+                    }
                     lblFileState.textProperty().set(strMsg);//.unbind();
-                    booFileModified = false;
+                    booFileModified = intEditsReplayed > 0;
                     LOGGER.debug("onSucceededProperty set text to textArea."
                             + " Id=\"" + strId + "\""
                             + " eventType=\"" + eventType + "\""
                             + " event=\"" + event + "\""
                             + "\nstrLineEnding=\"" + strLineEnding + "\""
                             + "\nstrMsg=\"" + strMsg + "\""
-                            + "\nintTextLen=\"" + intTextLen + "\""
+                            + "\nlngTextLen=\"" + lngTextLen + "\""
                             + "\nstrText=\"" + strTextPart + "\"");
 
-                    if (tabPane == null) {
-                        LOGGER.error("onSucceededProperty tabPane is null."
-                                + " Id=\"" + strId + "\""
-                                + " eventType=\"" + eventType + "\""
-                                + " event=\"" + event + "\"");
-                    } else {
-                        EventTarget eventTarget = tabPane;
-                        EventFileRead eventFileRead = new EventFileRead(this, eventTarget, EventFileRead._FILE_READ);
-                        eventFileRead.setId(strId);
-                        eventFileRead.setLineEnding(strLineEnding);
-                        eventFileRead.setCharsetName(strCharsetName);
-                        tabPane.fireEvent(eventFileRead);
-                    }
+                    fireEventFileRead();
                 }
             });
         }
@@ -1236,12 +2309,198 @@ public class FileContentEditor extends VBox {
         return this.textArea;
     }
 
+    public final PieceTable getDocument() {
+        return this.document;
+    }
+
     public final String getContent() {
-        return this.textArea.getText();
+        return this.document.getText();
     }
 
     public final void setFileContent(String strFileContent) {
-        this.textArea.setText(strFileContent);
+        this.setDocument(PieceTable.of(strFileContent));
+    }
+
+    private void setDocument(PieceTable document) {
+
+        this.undoJournal.clear();
+        if (this.booVirtualView) {
+            if (this.fileContentView == null) {
+                this.fileContentView = new FileContentView(this.font);
+                this.fileContentView.setUndoJournal(this.undoJournal);
+                this.fileContentView.setEditJournal(this.editJournal);
+                this.fileContentView.modCountProperty().addListener(this.invalidationListenerFileContent);
+                this.fileContentView.caretPositionProperty().addListener(new InvalidationListener() {
+                    @Override
+                    public void invalidated(Observable o) {
+                        updateCaretLineColumn();
+                    }
+                });
+                VBox.setVgrow(this.fileContentView, Priority.ALWAYS);
+            }
+            this.setContentNode(this.fileContentView);
+            this.booDocumentSync = false;
+            try {
+                this.textArea.clear();
+            } finally {
+                this.booDocumentSync = true;
+            }
+            this.document = document;
+            this.updateLineSeparator();
+            if (this.booDocumentLoading) {
+                // Part of document is shown already, keep position user scrolled to.
+                this.booDocumentLoading = false;
+                this.fileContentView.updateDocument(document, this.lineIndexLoaded);
+            } else {
+                this.fileContentView.setDocument(document, this.lineIndexLoaded);
+            }
+            this.fileContentView.setEditable(true);
+            this.lineIndexLoaded = null;
+            this.lineIndex = new LineIndex();
+            this.updateCaretLineColumn();
+            return;
+        }
+        this.setContentNode(this.textArea);
+        this.document = document;
+        this.booDocumentSync = false;
+        try {
+            this.textArea.setText(document.getText());
+        } finally {
+            this.booDocumentSync = true;
+        }
+        // TextArea drops CR chars, document must have the same text for offsets to match.
+        if (this.document.length() != this.textArea.getLength()) {
+            this.document = PieceTable.of(this.textArea.getText());
+        }
+        this.lineIndex = LineIndex.build(this.document);
+        this.updateCaretLineColumn();
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Edits not saved when editor was closed or crashed are applied to file read first time,
+    // journal of file read again is started empty. Returns number of edits applied.
+    private int startEditJournal() {
+
+        long lngLength = this.document.length();
+        if (!this.booEditJournalReplay) {
+            this.editJournal.reset(this.pathFile, this.strCharsetName, this.lngFileSizeRead, this.lngFileTimeRead, lngLength);
+            return 0;
+        }
+        this.booEditJournalReplay = false;
+        int intEdits = this.editJournal.replay(this.undoTarget, this.pathFile, this.strCharsetName, this.lngFileSizeRead, this.lngFileTimeRead, lngLength);
+        this.undoJournal.breakMerge();
+        return intEdits;
+    }
+
+    private void setContentNode(Node nodeContent) {
+        if (this.getChildren().get(0) != nodeContent) {
+            this.getChildren().set(0, nodeContent);
+        }
+    }
+
+    public final boolean isVirtualView() {
+        return this.booVirtualView;
+    }
+
+    public final FileContentView getFileContentView() {
+        return this.fileContentView;
+    }
+
+    public final long getCaretPosition() {
+        if (this.booVirtualView) {
+            return this.fileContentView.getCaretPosition();
+        }
+        return this.intPropCaretPosition.get();
+    }
+
+    // Values kept in OpenTabs file, tab which was not read yet keeps values it was restored with.
+    public final long getCaretPositionToRestore() {
+        if (this.booLoadPending) {
+            return this.lngCaretPositionRestore;
+        }
+        if (this.booVirtualView && this.fileContentView == null) {
+            return -1;
+        }
+        return this.getCaretPosition();
+    }
+
+    public final int getLineFirstToRestore() {
+        if (this.booLoadPending) {
+            return this.intLineFirstRestore;
+        }
+        if (this.booVirtualView) {
+            return (this.fileContentView == null) ? -1 : this.fileContentView.getFirstVisibleLine();
+        }
+        return (int) (this.textArea.getScrollTop() / this.getLineHeight());
+    }
+
+    public final boolean isLoadPending() {
+        return this.booLoadPending;
+    }
+
+    public final LineIndex getLineIndex() {
+        if (this.booVirtualView) {
+            return this.fileContentView.getLineIndex();
+        }
+        return this.lineIndex;
+    }
+
+    public final int getLineCount() {
+        return this.getLineIndex().getLineCount();
+    }
+
+    // Caret line and column for status bar, like "Ln 12, Col 5".
+    public final ReadOnlyStringProperty caretLineColumnProperty() {
+        return this.spCaretLineColumn;
+    }
+
+    private long getSelectionStart() {
+        if (this.booVirtualView) {
+            return this.fileContentView.getSelectionStart();
+        }
+        return this.textArea.getSelection().getStart();
+    }
+
+    private void selectRange(long lngStart, long lngEnd) {
+        if (this.booVirtualView) {
+            this.fileContentView.selectRange(lngStart, lngEnd);
+            this.fileContentView.requestFocus();
+        } else {
+            this.textArea.selectRange((int) lngStart, (int) lngEnd);
+            this.textArea.requestFocus();
+        }
+    }
+
+    // All edits of document go through TextArea or FileContentView.
+    private void replaceText(long lngStart, long lngEnd, String strText) {
+        if (this.booVirtualView) {
+            this.fileContentView.replaceText(lngStart, lngEnd, strText);
+        } else {
+            // TextArea passes the change to document through TextFormatter.
+            this.textArea.replaceText((int) lngStart, (int) lngEnd, strText);
+        }
+    }
+
+    // Ranges [alngFound[i], alngFound[i] + intFindLen) are replaced with strText by one edit.
+    private void replaceAllText(long[] alngFound, int intCount, int intFindLen, String strText) {
+        if (this.booVirtualView) {
+            this.fileContentView.replaceAllText(alngFound, intCount, intFindLen, strText);
+        } else {
+            // TextArea gets one change from first to last occurrence, it passes the change to document.
+            long lngStart = alngFound[0];
+            long lngEnd = alngFound[intCount - 1] + intFindLen;
+            long lngLenNew = lngEnd - lngStart + (long) intCount * (strText.length() - intFindLen);
+            StringBuilder sbText = new StringBuilder((int) Math.min(lngLenNew, Integer.MAX_VALUE - 8));
+            long lngPos = lngStart;
+            for (int i = 0; i < intCount; i++) {
+                sbText.append(this.document.getText(lngPos, alngFound[i]));
+                sbText.append(strText);
+                lngPos = alngFound[i] + intFindLen;
+            }
+            int intCaretPos = this.textArea.getCaretPosition();
+            this.textArea.replaceText((int) lngStart, (int) lngEnd, sbText.toString());
+            this.textArea.positionCaret(Math.min(intCaretPos, this.textArea.getLength()));
+        }
     }
 
     public final Path getPathFile() {
@@ -1293,14 +2552,40 @@ public class FileContentEditor extends VBox {
         this.spLineEnding.setValue(strLineEnding);
     }
 
+    // Line endings of document are converted when it's saved.
     public void setLineEndingWin() {
 
         this.spLineEnding.setValue(STR_CR_LF_WIN);
+        this.updateLineSeparator();
     }
 
     public void setLineEndingUnix() {
 
         this.spLineEnding.setValue(STR_LF_UNIX);
+        this.updateLineSeparator();
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Returns line separator for line ending name, null if line endings should be kept as they are.
+    private static String getLineSeparator(String strLineEnding) {
+
+        if (STR_CR_LF_WIN.equals(strLineEnding)) {
+            return "\r\n";
+        }
+        if (STR_LF_UNIX.equals(strLineEnding)) {
+            return "\n";
+        }
+        return null;
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Virtual view inserts line separator on Enter and paste, text area has only LF.
+    private void updateLineSeparator() {
+
+        if (this.fileContentView == null) {
+            return;
+        }
+        this.fileContentView.setLineSeparator(STR_CR_LF_WIN.equals(this.spLineEnding.getValue()) ? "\r\n" : "\n");
     }
 
     // -------------------------------------------------------------------------------------
@@ -1310,6 +2595,7 @@ public class FileContentEditor extends VBox {
 
     public void setCharsetName(String strCharsetName) {
         this.strCharsetName = strCharsetName;
+        this.booCharsetSelected = true;
     }
 
     // -------------------------------------------------------------------------------------
@@ -1320,6 +2606,9 @@ public class FileContentEditor extends VBox {
     public void setFont(Font font) {
         this.font = font;
         this.textArea.setFont(this.font);
+        if (this.fileContentView != null) {
+            this.fileContentView.setFont(this.font);
+        }
     }
 
     // -------------------------------------------------------------------------------------
@@ -1328,4 +2617,16 @@ public class FileContentEditor extends VBox {
     }
 
     // -------------------------------------------------------------------------------------
+    // Loaded part of big file, document length and line index match each other.
+    private static class DocumentLoaded {
+
+        private final PieceTable document;
+        private final LineIndex lineIndex;
+
+        private DocumentLoaded(PieceTable document, LineIndex lineIndex) {
+            this.document = document;
+            this.lineIndex = lineIndex;
+        }
+    }
+    // -------------------------------------------------------------------------------------
 }
@@ -0,0 +1,923 @@
+/*
+ * Copyright (c) 2024, Oleksandr Yarmolenko. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details.
+ *
+ */
+package com.olexyarm.jfxfilecontenteditor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import javafx.beans.property.LongProperty;
+import javafx.beans.property.ReadOnlyLongProperty;
+import javafx.beans.property.SimpleLongProperty;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
+import javafx.event.ActionEvent;
+import javafx.event.EventHandler;
+import javafx.geometry.Bounds;
+import javafx.geometry.Insets;
+import javafx.geometry.Point2D;
+import javafx.geometry.VPos;
+import javafx.scene.control.ContentDisplay;
+import javafx.scene.control.ContextMenu;
+import javafx.scene.control.IndexedCell;
+import javafx.scene.control.MenuItem;
+import javafx.scene.control.SeparatorMenuItem;
+import javafx.scene.control.skin.VirtualFlow;
+import javafx.scene.input.Clipboard;
+import javafx.scene.input.ClipboardContent;
+import javafx.scene.input.ContextMenuEvent;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.layout.Background;
+import javafx.scene.layout.BackgroundFill;
+import javafx.scene.layout.Pane;
+import javafx.scene.layout.StackPane;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Path;
+import javafx.scene.shape.PathElement;
+import javafx.scene.text.Font;
+import javafx.scene.text.HitInfo;
+import javafx.scene.text.Text;
+import javafx.util.Callback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Virtualized view of PieceTable document used for big files instead of TextArea.
+// Only lines visible in viewport have cells, cells are reused while scrolling
+// and read their line from document, so the cost of layout and paint does not depend on file size.
+public final class FileContentView extends StackPane {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileContentView.class);
+
+    // Very long lines are shown truncated.
+    private static final int INT_LINE_DISPLAY_MAX = 10 * 1024;
+    private static final char CH_CR = '\r';
+    private static final char CH_LF = '\n';
+    private static final Color COLOR_SELECTION = Color.rgb(0xB4, 0xD5, 0xFE);
+    private static final Color COLOR_MATCH = Color.rgb(0xFF, 0xE8, 0x7C);
+    // Lines with more matches are drawn with first matches only.
+    private static final int INT_LINE_MATCHES_MAX = 512;
+    private static final Color COLOR_LINE_NUMBER = Color.GRAY;
+    private static final double DBL_GUTTER_PADDING = 8;
+
+    private PieceTable document = PieceTable.of("");
+    private LineIndex lineIndex = new LineIndex();
+    private String strLineSeparator = "\n";
+    private boolean booEditable = true;
+    private MatchIndex matchIndex;
+    // Edits typed in view are recorded to undo journal of editor.
+    private UndoJournal undoJournal;
+    private EditJournal editJournal;
+
+    private long lngCaretPos;
+    private long lngAnchorPos;
+    private long lngColumnWanted = -1;
+    private final char[] achLine = new char[INT_LINE_DISPLAY_MAX];
+    private final ArrayList<PathElement> lstMatchElements = new ArrayList<>();
+    // Changed with document, line index or text of any line, cells read line text again only after change.
+    private long lngTextVersion;
+
+    private final LongProperty lngPropCaretPosition = new SimpleLongProperty(0);
+    private final LongProperty lngPropModCount = new SimpleLongProperty(0);
+
+    private final VirtualFlow<IndexedCell<String>> flow = new VirtualFlow<>();
+    private final Callback<VirtualFlow<IndexedCell<String>>, IndexedCell<String>> cellFactory;
+    private Font font;
+    private double dblLineHeight;
+    private double dblGutterWidth;
+    private int intGutterDigits;
+
+    // -------------------------------------------------------------------------------------
+    // Construstors
+    // -------------------------------------------------------------------------------------
+    public FileContentView(Font font) {
+
+        this.font = font;
+        this.setFocusTraversable(true);
+        this.setBackground(new Background(new BackgroundFill(Color.WHITE, null, null)));
+
+        this.cellFactory = new Callback<VirtualFlow<IndexedCell<String>>, IndexedCell<String>>() {
+            @Override
+            public IndexedCell<String> call(VirtualFlow<IndexedCell<String>> virtualFlow) {
+                return createLineCell();
+            }
+        };
+        this.flow.setCellFactory(this.cellFactory);
+        this.flow.setFixedCellSize(this.computeLineHeight());
+        this.flow.setCellCount(1);
+        this.getChildren().add(this.flow);
+
+        this.addEventHandler(KeyEvent.KEY_PRESSED, new EventHandler<KeyEvent>() {
+            @Override
+            public void handle(KeyEvent event) {
+                handleKeyPressed(event);
+            }
+        });
+        this.addEventHandler(KeyEvent.KEY_TYPED, new EventHandler<KeyEvent>() {
+            @Override
+            public void handle(KeyEvent event) {
+                handleKeyTyped(event);
+            }
+        });
+        this.flow.addEventHandler(MouseEvent.MOUSE_PRESSED, new EventHandler<MouseEvent>() {
+            @Override
+            public void handle(MouseEvent event) {
+                requestFocus();
+                if (event.getButton() != MouseButton.PRIMARY) {
+                    return;
+                }
+                long lngPos = getPositionAt(event.getSceneX(), event.getSceneY());
+                if (lngPos >= 0) {
+                    moveCaret(lngPos, event.isShiftDown());
+                }
+            }
+        });
+        this.flow.addEventHandler(MouseEvent.MOUSE_DRAGGED, new EventHandler<MouseEvent>() {
+            @Override
+            public void handle(MouseEvent event) {
+                if (!event.isPrimaryButtonDown()) {
+                    return;
+                }
+                Bounds boundsFlow = flow.localToScene(flow.getLayoutBounds());
+                if (event.getSceneY() < boundsFlow.getMinY()) {
+                    flow.scrollPixels(-dblLineHeight);
+                } else if (event.getSceneY() > boundsFlow.getMaxY()) {
+                    flow.scrollPixels(dblLineHeight);
+                }
+                long lngPos = getPositionAt(event.getSceneX(), event.getSceneY());
+                if (lngPos >= 0) {
+                    moveCaret(lngPos, true);
+                }
+            }
+        });
+        this.focusedProperty().addListener(new ChangeListener<Boolean>() {
+            @Override
+            public void changed(ObservableValue<? extends Boolean> observable, Boolean oldValue, Boolean newValue) {
+                refreshDecorations();
+            }
+        });
+        final ContextMenu contextMenu = this.createContextMenu();
+        this.flow.addEventHandler(ContextMenuEvent.CONTEXT_MENU_REQUESTED, new EventHandler<ContextMenuEvent>() {
+            @Override
+            public void handle(ContextMenuEvent event) {
+                contextMenu.show(flow, event.getScreenX(), event.getScreenY());
+                event.consume();
+            }
+        });
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Methods
+    // -------------------------------------------------------------------------------------
+    public void setDocument(PieceTable document, LineIndex lineIndex) {
+
+        this.document = document;
+        this.lineIndex = (lineIndex == null) ? LineIndex.build(document) : lineIndex;
+        this.lngCaretPos = 0;
+        this.lngAnchorPos = 0;
+        this.lngColumnWanted = -1;
+        this.lngPropCaretPosition.set(0);
+        this.lngTextVersion++;
+        this.flow.setCellCount(this.lineIndex.getLineCount());
+        this.updateGutterWidth(false);
+        this.flow.scrollTo(0);
+        this.refreshCells();
+        LOGGER.debug("Document set to view."
+                + " Length=" + document.length()
+                + " LineCount=" + this.lineIndex.getLineCount());
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Shows longer version of the same document while file is loading, caret and first visible line are kept.
+    public void updateDocument(PieceTable document, LineIndex lineIndex) {
+
+        IndexedCell<String> cellFirst = this.flow.getFirstVisibleCell();
+        int intLineFirst = (cellFirst == null) ? 0 : Math.max(0, cellFirst.getIndex());
+        this.document = document;
+        this.lineIndex = (lineIndex == null) ? LineIndex.build(document) : lineIndex;
+        this.lngCaretPos = this.clampPosition(this.lngCaretPos);
+        this.lngAnchorPos = this.clampPosition(this.lngAnchorPos);
+        this.lngTextVersion++;
+        this.flow.setCellCount(this.lineIndex.getLineCount());
+        this.updateGutterWidth(false);
+        this.flow.scrollToTop(Math.min(intLineFirst, this.lineIndex.getLineCount() - 1));
+        this.refreshCells();
+    }
+
+    // -------------------------------------------------------------------------------------
+    // All document edits made through the view must go here to keep line index in sync.
+    public void replaceText(long lngStart, long lngEnd, String strText) {
+
+        if (!this.booEditable) {
+            return;
+        }
+        String strInsert = (strText == null) ? "" : strText;
+        if (this.undoJournal != null) {
+            this.undoJournal.recordReplace(this.document, lngStart, lngEnd, strInsert);
+        }
+        if (this.editJournal != null) {
+            this.editJournal.recordReplace(lngStart, lngEnd, strInsert);
+        }
+        boolean booMatchIndexValid = this.matchIndex != null && this.matchIndex.isValid(this.document);
+        this.document.replace(lngStart, lngEnd, strInsert);
+        this.lineIndex.update(lngStart, lngEnd, strInsert);
+        if (booMatchIndexValid) {
+            this.matchIndex.update(this.document, lngStart, lngEnd, strInsert.length());
+        }
+        this.lngTextVersion++;
+        this.flow.setCellCount(this.lineIndex.getLineCount());
+        this.updateGutterWidth(false);
+        this.lngPropModCount.set(this.document.getModCount());
+        this.refreshCells();
+        this.moveCaret(lngStart + strInsert.length(), false);
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Replaces all found ranges by one edit of document and line index, view is updated once.
+    // Edit is not recorded to undo journal, editor records it as one Replace All entry.
+    public void replaceAllText(long[] alngStart, int intCount, int intFindLen, String strText) {
+
+        if (!this.booEditable || intCount == 0) {
+            return;
+        }
+        String strInsert = (strText == null) ? "" : strText;
+        if (this.editJournal != null) {
+            this.editJournal.recordReplaceAll(alngStart, intCount, intFindLen, strInsert);
+        }
+        this.document.replaceAll(alngStart, intCount, intFindLen, strInsert);
+        this.lineIndex.replaceAll(alngStart, intCount, intFindLen, strInsert);
+        this.lngTextVersion++;
+        this.flow.setCellCount(this.lineIndex.getLineCount());
+        this.updateGutterWidth(false);
+        this.lngPropModCount.set(this.document.getModCount());
+        this.refreshCells();
+        this.moveCaret(this.clampPosition(this.lngCaretPos), false);
+    }
+
+    // -------------------------------------------------------------------------------------
+    public void replaceSelection(String strText) {
+
+        this.replaceText(this.getSelectionStart(), this.getSelectionEnd(), strText);
+    }
+
+    // -------------------------------------------------------------------------------------
+    public void positionCaret(long lngPos) {
+
+        this.lngColumnWanted = -1;
+        this.moveCaret(lngPos, false);
+    }
+
+    // -------------------------------------------------------------------------------------
+    public int getFirstVisibleLine() {
+
+        IndexedCell<String> cellFirst = this.flow.getFirstVisibleCell();
+        return (cellFirst == null) ? 0 : Math.max(0, cellFirst.getIndex());
+    }
+
+    // -------------------------------------------------------------------------------------
+    public void scrollToLine(int intLine) {
+
+        this.flow.scrollToTop(Math.max(0, Math.min(intLine, this.lineIndex.getLineCount() - 1)));
+    }
+
+    // -------------------------------------------------------------------------------------
+    public void selectRange(long lngAnchor, long lngCaret) {
+
+        this.lngAnchorPos = this.clampPosition(lngAnchor);
+        this.moveCaret(lngCaret, true);
+    }
+
+    // -------------------------------------------------------------------------------------
+    public void selectAll() {
+
+        this.selectRange(0, this.document.length());
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Matches are highlighted while index is valid for document, null removes highlighting.
+    public void setMatchIndex(MatchIndex matchIndex) {
+
+        this.matchIndex = matchIndex;
+        this.refreshDecorations();
+    }
+
+    // -------------------------------------------------------------------------------------
+    public void copy() {
+
+        long lngStart = this.getSelectionStart();
+        long lngEnd = this.getSelectionEnd();
+        if (lngStart == lngEnd) {
+            return;
+        }
+        String strText;
+        try {
+            strText = this.document.getText(lngStart, lngEnd);
+        } catch (Throwable t) {
+            LOGGER.error("Could not copy selection to clipboard."
+                    + " SelectionStart=" + lngStart
+                    + " SelectionEnd=" + lngEnd
+                    + " Throwable=\"" + t.toString() + "\"");
+            return;
+        }
+        ClipboardContent clipboardContent = new ClipboardContent();
+        clipboardContent.putString(strText);
+        Clipboard.getSystemClipboard().setContent(clipboardContent);
+    }
+
+    // -------------------------------------------------------------------------------------
+    public void cut() {
+
+        if (!this.booEditable) {
+            return;
+        }
+        this.copy();
+        this.replaceSelection("");
+    }
+
+    // -------------------------------------------------------------------------------------
+    public void paste() {
+
+        Clipboard clipboard = Clipboard.getSystemClipboard();
+        if (clipboard.hasString()) {
+            this.replaceSelection(clipboard.getString());
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    public void refresh() {
+
+        this.lngTextVersion++;
+        this.refreshCells();
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Helpers
+    // -------------------------------------------------------------------------------------
+    private IndexedCell<String> createLineCell() {
+
+        final Text text = new Text();
+        text.setFont(this.font);
+        text.setTextOrigin(VPos.TOP);
+        final Path pathMatches = new Path();
+        pathMatches.setManaged(false);
+        pathMatches.setFill(COLOR_MATCH);
+        pathMatches.setStroke(null);
+        final Path pathSelection = new Path();
+        pathSelection.setManaged(false);
+        pathSelection.setFill(COLOR_SELECTION);
+        pathSelection.setStroke(null);
+        final Path pathCaret = new Path();
+        pathCaret.setManaged(false);
+        pathCaret.setStrokeWidth(1);
+        pathCaret.setStroke(Color.BLACK);
+        final Text textLineNumber = new Text();
+        textLineNumber.setFont(this.font);
+        textLineNumber.setTextOrigin(VPos.TOP);
+        textLineNumber.setFill(COLOR_LINE_NUMBER);
+        final Pane paneLine = new Pane(pathMatches, pathSelection, text, pathCaret, textLineNumber);
+
+        IndexedCell<String> cell = new IndexedCell<String>() {
+            // Line shown by cell, text is not read again while scrolling if line and text version are the same.
+            private int intLineShown = -1;
+            private long lngTextVersionShown = -1;
+
+            @Override
+            public void updateIndex(int intIndex) {
+                super.updateIndex(intIndex);
+                if (intIndex < 0 || intIndex >= lineIndex.getLineCount()) {
+                    text.setText("");
+                    textLineNumber.setText("");
+                    this.updateItem(null, true);
+                    this.intLineShown = -1;
+                } else if (intIndex != this.intLineShown || lngTextVersion != this.lngTextVersionShown) {
+                    String strLine = getLineDisplayText(intIndex);
+                    text.setText(strLine);
+                    textLineNumber.setText(Integer.toString(intIndex + 1));
+                    this.updateItem(strLine, false);
+                    this.intLineShown = intIndex;
+                    this.lngTextVersionShown = lngTextVersion;
+                }
+                // Line text is moved right of line number gutter.
+                pathMatches.setLayoutX(dblGutterWidth);
+                pathSelection.setLayoutX(dblGutterWidth);
+                text.setLayoutX(dblGutterWidth);
+                pathCaret.setLayoutX(dblGutterWidth);
+                textLineNumber.setLayoutX(dblGutterWidth - DBL_GUTTER_PADDING - textLineNumber.getLayoutBounds().getWidth());
+                updateDecoration(this);
+            }
+        };
+        cell.setGraphic(paneLine);
+        cell.setContentDisplay(ContentDisplay.GRAPHIC_ONLY);
+        cell.setPadding(Insets.EMPTY);
+        return cell;
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Draws matches, selection and caret of one line cell.
+    private void updateDecoration(IndexedCell<String> cell) {
+
+        Pane paneLine = (Pane) cell.getGraphic();
+        Path pathMatches = (Path) paneLine.getChildren().get(0);
+        Path pathSelection = (Path) paneLine.getChildren().get(1);
+        Text text = (Text) paneLine.getChildren().get(2);
+        Path pathCaret = (Path) paneLine.getChildren().get(3);
+
+        int intIndex = cell.getIndex();
+        if (intIndex < 0 || intIndex >= this.lineIndex.getLineCount()) {
+            pathMatches.getElements().clear();
+            pathSelection.getElements().clear();
+            pathCaret.getElements().clear();
+            return;
+        }
+        long lngLineStart = this.lineIndex.getLineStart(intIndex);
+        int intTextLen = text.getText().length();
+
+        long lngSelStart = this.getSelectionStart();
+        long lngSelEnd = this.getSelectionEnd();
+        long lngLineEnd = lngLineStart + intTextLen;
+        this.updateMatches(pathMatches, text, lngLineStart, lngLineEnd);
+        if (lngSelStart != lngSelEnd && lngSelStart <= lngLineEnd && lngSelEnd > lngLineStart) {
+            int intStart = (int) Math.max(0, lngSelStart - lngLineStart);
+            int intEnd = (int) Math.min(intTextLen, lngSelEnd - lngLineStart);
+            pathSelection.getElements().setAll(text.rangeShape(intStart, intEnd));
+        } else {
+            pathSelection.getElements().clear();
+        }
+
+        if (this.isFocused() && this.lineIndex.findLine(this.lngCaretPos) == intIndex) {
+            int intColumn = (int) Math.min(intTextLen, this.lngCaretPos - lngLineStart);
+            pathCaret.getElements().setAll(text.caretShape(intColumn, true));
+        } else {
+            pathCaret.getElements().clear();
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    private void updateMatches(Path pathMatches, Text text, long lngLineStart, long lngLineEnd) {
+
+        if (this.matchIndex == null || !this.matchIndex.isValid(this.document)) {
+            pathMatches.getElements().clear();
+            return;
+        }
+        int intCount = this.matchIndex.getCount();
+        int intMatch = this.matchIndex.findFirstEndingAfter(lngLineStart);
+        // List is reused for all cells, path copies its elements.
+        ArrayList<PathElement> lstElements = this.lstMatchElements;
+        lstElements.clear();
+        for (int i = 0; intMatch < intCount && i < INT_LINE_MATCHES_MAX; intMatch++, i++) {
+            long lngMatchStart = this.matchIndex.getStart(intMatch);
+            if (lngMatchStart >= lngLineEnd) {
+                break;
+            }
+            int intStart = (int) Math.max(0, lngMatchStart - lngLineStart);
+            int intEnd = (int) (Math.min(lngLineEnd, this.matchIndex.getEnd(intMatch)) - lngLineStart);
+            Collections.addAll(lstElements, text.rangeShape(intStart, intEnd));
+        }
+        if (!lstElements.isEmpty() || !pathMatches.getElements().isEmpty()) {
+            pathMatches.getElements().setAll(lstElements);
+            lstElements.clear();
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    private void refreshCells() {
+
+        IndexedCell<String> cellFirst = this.flow.getFirstVisibleCell();
+        IndexedCell<String> cellLast = this.flow.getLastVisibleCell();
+        if (cellFirst == null || cellLast == null) {
+            return;
+        }
+        for (int i = cellFirst.getIndex(); i <= cellLast.getIndex(); i++) {
+            IndexedCell<String> cell = this.flow.getVisibleCell(i);
+            if (cell != null) {
+                cell.updateIndex(i);
+            }
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    private void refreshDecorations() {
+
+        IndexedCell<String> cellFirst = this.flow.getFirstVisibleCell();
+        IndexedCell<String> cellLast = this.flow.getLastVisibleCell();
+        if (cellFirst == null || cellLast == null) {
+            return;
+        }
+        for (int i = cellFirst.getIndex(); i <= cellLast.getIndex(); i++) {
+            IndexedCell<String> cell = this.flow.getVisibleCell(i);
+            if (cell != null) {
+                this.updateDecoration(cell);
+            }
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    private String getLineDisplayText(int intLine) {
+
+        long lngStart = this.lineIndex.getLineStart(intLine);
+        long lngEnd = this.getLineEnd(intLine);
+        int intLen = (int) Math.min(lngEnd - lngStart, INT_LINE_DISPLAY_MAX);
+        this.document.getChars(lngStart, lngStart + intLen, this.achLine, 0);
+        return new String(this.achLine, 0, intLen);
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Returns offset of line end without CR LF chars.
+    private long getLineEnd(int intLine) {
+
+        long lngEnd;
+        if (intLine + 1 < this.lineIndex.getLineCount()) {
+            lngEnd = this.lineIndex.getLineStart(intLine + 1) - 1;
+        } else {
+            lngEnd = this.document.length();
+        }
+        long lngStart = this.lineIndex.getLineStart(intLine);
+        if (lngEnd > lngStart && this.document.charAt(lngEnd - 1) == CH_CR) {
+            lngEnd--;
+        }
+        return lngEnd;
+    }
+
+    // -------------------------------------------------------------------------------------
+    private long getPositionAt(double dblSceneX, double dblSceneY) {
+
+        IndexedCell<String> cellFirst = this.flow.getFirstVisibleCell();
+        IndexedCell<String> cellLast = this.flow.getLastVisibleCell();
+        if (cellFirst == null || cellLast == null) {
+            return -1;
+        }
+        IndexedCell<String> cellHit = null;
+        for (int i = cellFirst.getIndex(); i <= cellLast.getIndex(); i++) {
+            IndexedCell<String> cell = this.flow.getVisibleCell(i);
+            if (cell == null) {
+                continue;
+            }
+            Bounds bounds = cell.localToScene(cell.getLayoutBounds());
+            if (dblSceneY < bounds.getMaxY()) {
+                cellHit = cell;
+                break;
+            }
+        }
+        if (cellHit == null) {
+            cellHit = cellLast;
+        }
+        int intLine = cellHit.getIndex();
+        if (intLine < 0 || intLine >= this.lineIndex.getLineCount()) {
+            return this.document.length();
+        }
+        Text text = (Text) ((Pane) cellHit.getGraphic()).getChildren().get(2);
+        Point2D point = text.sceneToLocal(dblSceneX, dblSceneY);
+        HitInfo hitInfo = text.hitTest(point);
+        int intColumn = Math.min(hitInfo.getInsertionIndex(), text.getText().length());
+        return this.lineIndex.getLineStart(intLine) + intColumn;
+    }
+
+    // -------------------------------------------------------------------------------------
+    private void moveCaret(long lngPos, boolean booExtendSelection) {
+
+        this.lngCaretPos = this.clampPosition(lngPos);
+        if (!booExtendSelection) {
+            this.lngAnchorPos = this.lngCaretPos;
+        }
+        this.lngPropCaretPosition.set(this.lngCaretPos);
+        int intLine = this.lineIndex.findLine(this.lngCaretPos);
+        IndexedCell<String> cell = this.flow.getVisibleCell(intLine);
+        if (cell != null) {
+            this.flow.scrollTo(cell);
+        } else {
+            this.flow.scrollTo(intLine);
+        }
+        this.refreshDecorations();
+    }
+
+    // -------------------------------------------------------------------------------------
+    private void moveCaretToLine(int intLine, boolean booExtendSelection) {
+
+        int intLineCount = this.lineIndex.getLineCount();
+        int intLineTo = Math.max(0, Math.min(intLineCount - 1, intLine));
+        int intLineFrom = this.lineIndex.findLine(this.lngCaretPos);
+        if (this.lngColumnWanted < 0) {
+            this.lngColumnWanted = this.lngCaretPos - this.lineIndex.getLineStart(intLineFrom);
+        }
+        long lngColumnWanted = this.lngColumnWanted;
+        long lngLineStart = this.lineIndex.getLineStart(intLineTo);
+        long lngLineEnd = this.getLineEnd(intLineTo);
+        this.moveCaret(Math.min(lngLineStart + lngColumnWanted, lngLineEnd), booExtendSelection);
+        this.lngColumnWanted = lngColumnWanted;
+    }
+
+    // -------------------------------------------------------------------------------------
+    // CR LF is moved over as one char.
+    private long getPositionPrev(long lngPos) {
+
+        if (lngPos <= 0) {
+            return 0;
+        }
+        long lngPrev = lngPos - 1;
+        if (lngPrev > 0 && this.document.charAt(lngPrev) == CH_LF && this.document.charAt(lngPrev - 1) == CH_CR) {
+            lngPrev--;
+        }
+        return lngPrev;
+    }
+
+    private long getPositionNext(long lngPos) {
+
+        long lngLength = this.document.length();
+        if (lngPos >= lngLength) {
+            return lngLength;
+        }
+        if (lngPos + 1 < lngLength && this.document.charAt(lngPos) == CH_CR && this.document.charAt(lngPos + 1) == CH_LF) {
+            return lngPos + 2;
+        }
+        return lngPos + 1;
+    }
+
+    // -------------------------------------------------------------------------------------
+    private void handleKeyPressed(KeyEvent event) {
+
+        KeyCode keyCode = event.getCode();
+        boolean booShift = event.isShiftDown();
+        boolean booShortcut = event.isShortcutDown();
+        boolean booConsume = true;
+        int intLine = this.lineIndex.findLine(this.lngCaretPos);
+        long lngColumnWanted = this.lngColumnWanted;
+        this.lngColumnWanted = -1;
+        switch (keyCode) {
+            case LEFT:
+                if (!booShift && this.hasSelection()) {
+                    this.moveCaret(this.getSelectionStart(), false);
+                } else {
+                    this.moveCaret(this.getPositionPrev(this.lngCaretPos), booShift);
+                }
+                break;
+            case RIGHT:
+                if (!booShift && this.hasSelection()) {
+                    this.moveCaret(this.getSelectionEnd(), false);
+                } else {
+                    this.moveCaret(this.getPositionNext(this.lngCaretPos), booShift);
+                }
+                break;
+            case UP:
+                this.lngColumnWanted = lngColumnWanted;
+                this.moveCaretToLine(intLine - 1, booShift);
+                break;
+            case DOWN:
+                this.lngColumnWanted = lngColumnWanted;
+                this.moveCaretToLine(intLine + 1, booShift);
+                break;
+            case PAGE_UP:
+                this.lngColumnWanted = lngColumnWanted;
+                this.moveCaretToLine(intLine - this.getPageLines(), booShift);
+                break;
+            case PAGE_DOWN:
+                this.lngColumnWanted = lngColumnWanted;
+                this.moveCaretToLine(intLine + this.getPageLines(), booShift);
+                break;
+            case HOME:
+                if (booShortcut) {
+                    this.moveCaret(0, booShift);
+                } else {
+                    this.moveCaret(this.lineIndex.getLineStart(intLine), booShift);
+                }
+                break;
+            case END:
+                if (booShortcut) {
+                    this.moveCaret(this.document.length(), booShift);
+                } else {
+                    this.moveCaret(this.getLineEnd(intLine), booShift);
+                }
+                break;
+            case ENTER:
+                this.replaceSelection(this.strLineSeparator);
+                break;
+            case TAB:
+                this.replaceSelection("\t");
+                break;
+            case BACK_SPACE:
+                if (this.hasSelection()) {
+                    this.replaceSelection("");
+                } else if (this.lngCaretPos > 0) {
+                    this.replaceText(this.getPositionPrev(this.lngCaretPos), this.lngCaretPos, "");
+                }
+                break;
+            case DELETE:
+                if (this.hasSelection()) {
+                    this.replaceSelection("");
+                } else if (this.lngCaretPos < this.document.length()) {
+                    this.replaceText(this.lngCaretPos, this.getPositionNext(this.lngCaretPos), "");
+                }
+                break;
+            case A:
+                booConsume = booShortcut;
+                if (booShortcut) {
+                    this.selectAll();
+                }
+                break;
+            case C:
+                booConsume = booShortcut;
+                if (booShortcut) {
+                    this.copy();
+                }
+                break;
+            case X:
+                booConsume = booShortcut;
+                if (booShortcut) {
+                    this.cut();
+                }
+                break;
+            case V:
+                booConsume = booShortcut;
+                if (booShortcut) {
+                    this.paste();
+                }
+                break;
+            default:
+                booConsume = false;
+                break;
+        }
+        if (booConsume) {
+            event.consume();
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    private void handleKeyTyped(KeyEvent event) {
+
+        // AltGr is reported as Ctrl+Alt on Windows, chars typed with it must be inserted.
+        if ((event.isControlDown() && !event.isAltDown()) || event.isMetaDown()) {
+            return;
+        }
+        String strChar = event.getCharacter();
+        if (strChar == null || strChar.isEmpty() || strChar.equals(KeyEvent.CHAR_UNDEFINED)) {
+            return;
+        }
+        char ch = strChar.charAt(0);
+        if (ch < 0x20 || ch == 0x7F) {
+            return;
+        }
+        this.replaceSelection(strChar);
+        event.consume();
+    }
+
+    // -------------------------------------------------------------------------------------
+    private ContextMenu createContextMenu() {
+
+        MenuItem menuItemCut = new MenuItem("Cut");
+        menuItemCut.setOnAction(new EventHandler<ActionEvent>() {
+            @Override
+            public void handle(ActionEvent event) {
+                cut();
+            }
+        });
+        MenuItem menuItemCopy = new MenuItem("Copy");
+        menuItemCopy.setOnAction(new EventHandler<ActionEvent>() {
+            @Override
+            public void handle(ActionEvent event) {
+                copy();
+            }
+        });
+        MenuItem menuItemPaste = new MenuItem("Paste");
+        menuItemPaste.setOnAction(new EventHandler<ActionEvent>() {
+            @Override
+            public void handle(ActionEvent event) {
+                paste();
+            }
+        });
+        MenuItem menuItemDelete = new MenuItem("Delete");
+        menuItemDelete.setOnAction(new EventHandler<ActionEvent>() {
+            @Override
+            public void handle(ActionEvent event) {
+                replaceSelection("");
+            }
+        });
+        MenuItem menuItemSelectAll = new MenuItem("Select All");
+        menuItemSelectAll.setOnAction(new EventHandler<ActionEvent>() {
+            @Override
+            public void handle(ActionEvent event) {
+                selectAll();
+            }
+        });
+        ContextMenu contextMenu = new ContextMenu();
+        contextMenu.getItems().addAll(menuItemCut, menuItemCopy, menuItemPaste, menuItemDelete,
+                new SeparatorMenuItem(), menuItemSelectAll);
+        return contextMenu;
+    }
+
+    // -------------------------------------------------------------------------------------
+    private double computeLineHeight() {
+
+        Text text = new Text("Xg");
+        text.setFont(this.font);
+        this.dblLineHeight = Math.ceil(text.getLayoutBounds().getHeight());
+        return this.dblLineHeight;
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Gutter is as wide as number of last line, cells are updated when number of digits changes.
+    private void updateGutterWidth(boolean booForce) {
+
+        int intDigits = Integer.toString(this.lineIndex.getLineCount()).length();
+        if (intDigits == this.intGutterDigits && !booForce) {
+            return;
+        }
+        this.intGutterDigits = intDigits;
+        Text text = new Text("0".repeat(intDigits));
+        text.setFont(this.font);
+        this.dblGutterWidth = Math.ceil(text.getLayoutBounds().getWidth()) + 2 * DBL_GUTTER_PADDING;
+        this.refreshCells();
+    }
+
+    // -------------------------------------------------------------------------------------
+    private int getPageLines() {
+
+        return Math.max(1, (int) (this.flow.getHeight() / this.dblLineHeight) - 1);
+    }
+
+    // -------------------------------------------------------------------------------------
+    private long clampPosition(long lngPos) {
+
+        return Math.max(0, Math.min(this.document.length(), lngPos));
+    }
+
+    // -------------------------------------------------------------------------------------
+    private boolean hasSelection() {
+
+        return this.lngCaretPos != this.lngAnchorPos;
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Getters and setters
+    // -------------------------------------------------------------------------------------
+    public PieceTable getDocument() {
+        return this.document;
+    }
+
+    public LineIndex getLineIndex() {
+        return this.lineIndex;
+    }
+
+    public long getCaretPosition() {
+        return this.lngCaretPos;
+    }
+
+    public ReadOnlyLongProperty caretPositionProperty() {
+        return this.lngPropCaretPosition;
+    }
+
+    // Changes every time document is edited through the view.
+    public ReadOnlyLongProperty modCountProperty() {
+        return this.lngPropModCount;
+    }
+
+    public long getSelectionStart() {
+        return Math.min(this.lngCaretPos, this.lngAnchorPos);
+    }
+
+    public long getSelectionEnd() {
+        return Math.max(this.lngCaretPos, this.lngAnchorPos);
+    }
+
+    public boolean isEditable() {
+        return this.booEditable;
+    }
+
+    public void setUndoJournal(UndoJournal undoJournal) {
+        this.undoJournal = undoJournal;
+    }
+
+    public void setEditJournal(EditJournal editJournal) {
+        this.editJournal = editJournal;
+    }
+
+    public void setEditable(boolean booEditable) {
+        this.booEditable = booEditable;
+    }
+
+    public void setLineSeparator(String strLineSeparator) {
+        this.strLineSeparator = strLineSeparator;
+    }
+
+    // -------------------------------------------------------------------------------------
+    public void setFont(Font font) {
+
+        this.font = font;
+        this.flow.setFixedCellSize(this.computeLineHeight());
+        this.updateGutterWidth(true);
+        // Changing cell factory makes VirtualFlow recreate all cells with new font.
+        this.flow.setCellFactory(null);
+        this.flow.setCellFactory(this.cellFactory);
+    }
+    // -------------------------------------------------------------------------------------
+}
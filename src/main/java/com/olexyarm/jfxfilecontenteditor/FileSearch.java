@@ -0,0 +1,647 @@
+/*
+ * Copyright (c) 2024, Oleksandr Yarmolenko. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details.
+ *
+ */
+package com.olexyarm.jfxfilecontenteditor;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Searches one query in open documents and files of folder tree, every document or file is searched on
+// its own virtual thread. Found lines are put to queue, UI takes them from it while search is running.
+// Files of ASCII compatible charsets (UTF-8 and single byte ones) are searched in mapped bytes, query is
+// encoded with charset of file, so file is not decoded, only found lines are decoded.
+// Files of other charsets and regular expressions are searched in decoded text.
+// Binary files (zero byte in first block) and hidden folders (like .git) are skipped.
+// Folder search could use TrigramIndex to skip files which could not contain query.
+public class FileSearch {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileSearch.class);
+
+    public static final int INT_RESULTS_MAX = 100_000;
+    // Files searched at the same time, every one of them keeps file channel open.
+    private static final int INT_FILES_OPEN_MAX = 64;
+    private static final int INT_SNIFF_SIZE = 8 * 1024;
+    private static final int INT_CHUNK_SIZE = 64 * 1024;
+    private static final int INT_LINE_TEXT_MAX = 200;
+    private static final int INT_LINE_TEXT_BEFORE = 60;
+    // Decoded files are kept in memory while they are searched, total size of them is limited.
+    private static final int INT_DECODED_MB_MAX = 256;
+    private static final int INT_MB = 1024 * 1024;
+    private static final char CH_LF = '\n';
+    private static final char CH_CR = '\r';
+    private static final char CH_BOM = '\uFEFF';
+    // UTF-8 BOM as chars of document of file bytes.
+    private static final String STR_BOM_UTF8_BYTES = "\u00EF\u00BB\u00BF";
+    private static final String STR_CUT = "...";
+
+    private final String strFind;
+    private final boolean booRegex;
+    private final SearchEngine searchEngineText;
+    private final Charset charsetDefault;
+    private final boolean booCharsetDetect;
+    private final long lngTimeStart;
+
+    private final Semaphore semaphoreFiles = new Semaphore(INT_FILES_OPEN_MAX);
+    private final Semaphore semaphoreDecodedMb = new Semaphore(INT_DECODED_MB_MAX);
+    private final ConcurrentLinkedQueue<Result> queueResults = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger atomTasksRunning = new AtomicInteger();
+    private final AtomicInteger atomResults = new AtomicInteger();
+    private final AtomicLong atomFilesSearched = new AtomicLong();
+    private final AtomicLong atomFilesSkipped = new AtomicLong();
+    private final AtomicLong atomFilesFiltered = new AtomicLong();
+    private final AtomicLong atomBytesSearched = new AtomicLong();
+    private volatile boolean booCancelled;
+    private volatile boolean booResultsLimited;
+
+    // -------------------------------------------------------------------------------------
+    // Found line, column and length are in chars, line starts from 1.
+    public static class Result {
+
+        private final Path pathFile;
+        private final FileContentEditor fileEditor;
+        private final String strName;
+        private final int intLine;
+        private final int intColumn;
+        private final int intLength;
+        private final String strLineText;
+
+        private Result(Path pathFile, FileContentEditor fileEditor, int intLine, int intColumn, int intLength, String strLineText) {
+
+            this.pathFile = pathFile;
+            this.fileEditor = fileEditor;
+            if (pathFile != null) {
+                this.strName = pathFile.toString();
+            } else if (fileEditor != null) {
+                this.strName = fileEditor.getFileName();
+            } else {
+                this.strName = "";
+            }
+            this.intLine = intLine;
+            this.intColumn = intColumn;
+            this.intLength = intLength;
+            this.strLineText = strLineText;
+        }
+
+        public Path getPathFile() {
+            return this.pathFile;
+        }
+
+        // Editor of open tab, null if file is found in folder.
+        public FileContentEditor getFileEditor() {
+            return this.fileEditor;
+        }
+
+        public int getLine() {
+            return this.intLine;
+        }
+
+        public int getColumn() {
+            return this.intColumn;
+        }
+
+        public int getLength() {
+            return this.intLength;
+        }
+
+        public String getLineText() {
+            return this.strLineText;
+        }
+
+        @Override
+        public String toString() {
+            return this.strName + ":" + this.intLine + ":" + (this.intColumn + 1) + ": " + this.strLineText;
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Construstors
+    // -------------------------------------------------------------------------------------
+    // Throws PatternSyntaxException if regular expression is not valid.
+    public FileSearch(String strFind, boolean booRegex, Charset charsetDefault, boolean booCharsetDetect) {
+
+        this.strFind = strFind;
+        this.booRegex = booRegex;
+        if (booRegex) {
+            this.searchEngineText = SearchEngine.compileRegex(strFind, Pattern.MULTILINE, Settings.INT_REGEX_TIMEOUT_SEC * 1000L);
+        } else {
+            this.searchEngineText = SearchEngine.compile(strFind);
+        }
+        this.charsetDefault = charsetDefault;
+        this.booCharsetDetect = booCharsetDetect;
+        this.lngTimeStart = System.currentTimeMillis();
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Methods
+    // -------------------------------------------------------------------------------------
+    // Document must not be changed while it's searched, snapshot reader should be passed.
+    public void searchDocument(final FileContentEditor fileEditor, final PieceTable document) {
+
+        this.atomTasksRunning.incrementAndGet();
+        EditorIoScheduler.executeIo(null, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    searchText(fileEditor.getPathFile(), fileEditor, document, searchEngineText, null);
+                    atomFilesSearched.incrementAndGet();
+                } catch (SearchEngine.SearchTimeoutException ex) {
+                    skipFile(fileEditor.getPathFile(), ex.toString());
+                } finally {
+                    atomTasksRunning.decrementAndGet();
+                }
+            }
+        });
+    }
+
+    // -------------------------------------------------------------------------------------
+    // File is read from disk, fileEditor is tab of file which is not loaded yet, could be null.
+    public void searchFile(final Path pathFile, final FileContentEditor fileEditor) {
+
+        this.atomTasksRunning.incrementAndGet();
+        EditorIoScheduler.executeIo(null, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    semaphoreFiles.acquire();
+                } catch (InterruptedException ex) {
+                    atomTasksRunning.decrementAndGet();
+                    return;
+                }
+                runFileSearch(pathFile, fileEditor);
+            }
+        });
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Folder is walked on one thread, it waits while INT_FILES_OPEN_MAX files are searched.
+    // With booIndex files which could not contain text by trigram index of folder are not read,
+    // index is updated when all files are searched.
+    public void searchFolder(final Path pathDir, final boolean booIndex) {
+
+        final Path pathRoot = pathDir.toAbsolutePath().normalize();
+        this.atomTasksRunning.incrementAndGet();
+        EditorIoScheduler.executeIo(null, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final TrigramIndex.Query trigramQuery = booIndex
+                            ? TrigramIndex.get(pathRoot, charsetDefault, booCharsetDetect).newQuery(strFind, booRegex) : null;
+                    Files.walkFileTree(pathRoot, new SimpleFileVisitor<Path>() {
+                        @Override
+                        public FileVisitResult preVisitDirectory(Path pathDir, BasicFileAttributes attrs) {
+                            if (booCancelled || booResultsLimited) {
+                                return FileVisitResult.TERMINATE;
+                            }
+                            if (isFolderSkipped(pathDir, pathRoot)) {
+                                return FileVisitResult.SKIP_SUBTREE;
+                            }
+                            return FileVisitResult.CONTINUE;
+                        }
+
+                        @Override
+                        public FileVisitResult visitFile(final Path pathFile, BasicFileAttributes attrs) {
+                            if (booCancelled || booResultsLimited) {
+                                return FileVisitResult.TERMINATE;
+                            }
+                            if (!attrs.isRegularFile()) {
+                                return FileVisitResult.CONTINUE;
+                            }
+                            if (trigramQuery != null && !trigramQuery.mayContain(pathFile, attrs)) {
+                                atomFilesFiltered.incrementAndGet();
+                                return FileVisitResult.CONTINUE;
+                            }
+                            try {
+                                semaphoreFiles.acquire();
+                            } catch (InterruptedException ex) {
+                                return FileVisitResult.TERMINATE;
+                            }
+                            atomTasksRunning.incrementAndGet();
+                            EditorIoScheduler.executeIo(null, new Runnable() {
+                                @Override
+                                public void run() {
+                                    runFileSearch(pathFile, null);
+                                }
+                            });
+                            return FileVisitResult.CONTINUE;
+                        }
+
+                        @Override
+                        public FileVisitResult visitFileFailed(Path pathFile, IOException ex) {
+                            skipFile(pathFile, ex.toString());
+                            return FileVisitResult.CONTINUE;
+                        }
+                    });
+                    if (booIndex && !booCancelled) {
+                        // Index is updated after files are searched, so they are not read by both at once.
+                        semaphoreFiles.acquire(INT_FILES_OPEN_MAX);
+                        semaphoreFiles.release(INT_FILES_OPEN_MAX);
+                        TrigramIndex.update(pathRoot, charsetDefault, booCharsetDetect);
+                    }
+                } catch (IOException | InterruptedException ex) {
+                    LOGGER.error("Could not search folder."
+                            + " pathDir=\"" + pathRoot + "\""
+                            + " IOException=\"" + ex.toString() + "\"");
+                } finally {
+                    atomTasksRunning.decrementAndGet();
+                }
+            }
+        });
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Moves found results to list, returns number of results moved.
+    public int drainResults(List<Result> lstResults) {
+
+        int intCount = 0;
+        Result result;
+        while ((result = this.queueResults.poll()) != null) {
+            lstResults.add(result);
+            intCount++;
+        }
+        return intCount;
+    }
+
+    // -------------------------------------------------------------------------------------
+    public void cancel() {
+        this.booCancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return this.booCancelled;
+    }
+
+    // All files and documents passed to search before this call are searched.
+    public boolean isDone() {
+        return this.atomTasksRunning.get() == 0;
+    }
+
+    // Search was stopped after INT_RESULTS_MAX results.
+    public boolean isResultsLimited() {
+        return this.booResultsLimited;
+    }
+
+    public int getResultCount() {
+        return Math.min(this.atomResults.get(), INT_RESULTS_MAX);
+    }
+
+    public long getFilesSearched() {
+        return this.atomFilesSearched.get();
+    }
+
+    public long getFilesSkipped() {
+        return this.atomFilesSkipped.get();
+    }
+
+    // Files not read because trigram index tells they don't contain text.
+    public long getFilesFiltered() {
+        return this.atomFilesFiltered.get();
+    }
+
+    public long getTime() {
+        return System.currentTimeMillis() - this.lngTimeStart;
+    }
+
+    @Override
+    public String toString() {
+        return "FileSearch["
+                + "Regex=" + this.booRegex
+                + " Length=" + this.strFind.length()
+                + " Results=" + this.getResultCount()
+                + " FilesSearched=" + this.atomFilesSearched.get()
+                + " FilesSkipped=" + this.atomFilesSkipped.get()
+                + " FilesFiltered=" + this.atomFilesFiltered.get()
+                + " BytesSearched=" + this.atomBytesSearched.get()
+                + " Time=" + this.getTime()
+                + "]";
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Helpers
+    // -------------------------------------------------------------------------------------
+    // Called on thread of file after permit of semaphoreFiles was taken.
+    private void runFileSearch(Path pathFile, FileContentEditor fileEditor) {
+
+        try {
+            if (!this.booCancelled && !this.booResultsLimited) {
+                this.searchFileMapped(pathFile, fileEditor);
+            }
+        } catch (IOException | InterruptedException | UncheckedIOException | SearchEngine.SearchTimeoutException ex) {
+            this.skipFile(pathFile, ex.toString());
+        } finally {
+            this.semaphoreFiles.release();
+            this.atomTasksRunning.decrementAndGet();
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    private void searchFileMapped(Path pathFile, FileContentEditor fileEditor) throws IOException, InterruptedException {
+
+        try (MappedFileWindow mappedFileWindow = new MappedFileWindow(pathFile)) {
+            long lngSize = mappedFileWindow.size();
+            if (lngSize == 0) {
+                this.atomFilesSearched.incrementAndGet();
+                return;
+            }
+            Charset charset = this.charsetDefault;
+            if (this.booCharsetDetect) {
+                charset = CharsetDetector.detect(mappedFileWindow, this.charsetDefault);
+            }
+            if (!isCharsetWide(charset) && isBinary(mappedFileWindow)) {
+                this.skipFile(pathFile, "Binary");
+                return;
+            }
+            if (!this.booRegex && isAsciiCompatible(charset)) {
+                CharsetEncoder charsetEncoder = charset.newEncoder();
+                // Chars of query not in charset are never found in file.
+                if (charsetEncoder.canEncode(this.strFind)) {
+                    String strFindBytes = new String(this.strFind.getBytes(charset), StandardCharsets.ISO_8859_1);
+                    PieceTable document = new PieceTable(new MappedBytesSource(mappedFileWindow));
+                    this.searchText(pathFile, fileEditor, document, SearchEngine.compile(strFindBytes), charset);
+                }
+            } else {
+                int intMb = (int) ((lngSize + INT_MB - 1) / INT_MB);
+                if (intMb > INT_DECODED_MB_MAX) {
+                    this.skipFile(pathFile, "Too big to decode");
+                    return;
+                }
+                this.semaphoreDecodedMb.acquire(intMb);
+                try {
+                    CharBuffer charBuffer = decode(mappedFileWindow, charset);
+                    this.searchText(pathFile, fileEditor, PieceTable.of(charBuffer), this.searchEngineText, null);
+                } finally {
+                    this.semaphoreDecodedMb.release(intMb);
+                }
+            }
+            this.atomFilesSearched.incrementAndGet();
+            this.atomBytesSearched.addAndGet(lngSize);
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    // charsetBytes is charset of file if document chars are bytes of file, null if document is decoded.
+    private void searchText(Path pathFile, FileContentEditor fileEditor, PieceTable document, SearchEngine searchEngine, Charset charsetBytes) {
+
+        final LineCounter lineCounter = new LineCounter(pathFile, fileEditor, document, charsetBytes);
+        searchEngine.findAll(document, 0, document.length(), new SearchEngine.MatchHandler() {
+            @Override
+            public boolean match(long lngStart, int intLength) {
+                if (booCancelled) {
+                    return false;
+                }
+                if (atomResults.incrementAndGet() > INT_RESULTS_MAX) {
+                    booResultsLimited = true;
+                    return false;
+                }
+                queueResults.add(lineCounter.createResult(lngStart, intLength));
+                return true;
+            }
+        });
+    }
+
+    // -------------------------------------------------------------------------------------
+    private void skipFile(Path pathFile, String strReason) {
+
+        this.atomFilesSkipped.incrementAndGet();
+        LOGGER.debug("Skipped file."
+                + " Reason=\"" + strReason + "\""
+                + " pathFile=\"" + pathFile + "\"");
+    }
+
+    // -------------------------------------------------------------------------------------
+    static boolean isBinary(MappedFileWindow mappedFileWindow) throws IOException {
+
+        int intLen = (int) Math.min(INT_SNIFF_SIZE, mappedFileWindow.size());
+        ByteBuffer byteBuffer = mappedFileWindow.getBuffer(0, intLen);
+        for (int i = 0; i < intLen; i++) {
+            if (byteBuffer.get(i) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Text of these charsets has zero bytes, it's not sniffed as binary.
+    static boolean isCharsetWide(Charset charset) {
+
+        String strCharsetName = charset.name();
+        return strCharsetName.startsWith("UTF-16") || strCharsetName.startsWith("UTF-32");
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Hidden folders (like .git) are not searched.
+    static boolean isFolderSkipped(Path pathDir, Path pathRoot) {
+
+        Path pathName = pathDir.getFileName();
+        return !pathDir.equals(pathRoot) && pathName != null && pathName.toString().startsWith(".");
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Char found in bytes of these charsets is always found at start of its bytes, and LF is byte 0x0A.
+    static boolean isAsciiCompatible(Charset charset) {
+
+        if (charset.equals(StandardCharsets.UTF_8)) {
+            return true;
+        }
+        if (!charset.canEncode()) {
+            return false;
+        }
+        CharsetEncoder charsetEncoder = charset.newEncoder();
+        if (charsetEncoder.maxBytesPerChar() != 1.0f) {
+            return false;
+        }
+        byte[] abyte = "\nAz09".getBytes(charset);
+        return abyte.length == 5 && abyte[0] == CH_LF && abyte[1] == 'A' && abyte[2] == 'z' && abyte[3] == '0' && abyte[4] == '9';
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Bytes are copied to small buffer by chunks, bytes of char cut at end of chunk are decoded with next chunk.
+    private static CharBuffer decode(MappedFileWindow mappedFileWindow, Charset charset) throws IOException {
+
+        CharsetDecoder charsetDecoder = MappedTextSource.newDecoder(charset);
+        long lngSize = mappedFileWindow.size();
+        CharBuffer charBuffer = CharBuffer.allocate((int) (lngSize * charsetDecoder.maxCharsPerByte()) + 16);
+        ByteBuffer byteBuffer = ByteBuffer.allocate(INT_CHUNK_SIZE);
+        long lngPos = 0;
+        boolean booEnd = false;
+        while (!booEnd) {
+            int intLen = (int) Math.min(byteBuffer.remaining(), lngSize - lngPos);
+            if (intLen > 0) {
+                byteBuffer.put(mappedFileWindow.getBuffer(lngPos, intLen));
+                lngPos += intLen;
+            }
+            booEnd = (lngPos == lngSize);
+            byteBuffer.flip();
+            charsetDecoder.decode(byteBuffer, charBuffer, booEnd);
+            byteBuffer.compact();
+        }
+        charsetDecoder.flush(charBuffer);
+        charBuffer.flip();
+        // BOM is not part of text in editor.
+        if (charBuffer.hasRemaining() && charBuffer.get(0) == CH_BOM) {
+            charBuffer.position(1);
+        }
+        return charBuffer.slice();
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Bytes of mapped file as chars 0 - 255, so char searches run over bytes of file without decoding.
+    private static class MappedBytesSource implements TextSource {
+
+        private final MappedFileWindow mappedFileWindow;
+
+        private MappedBytesSource(MappedFileWindow mappedFileWindow) {
+            this.mappedFileWindow = mappedFileWindow;
+        }
+
+        @Override
+        public long length() {
+            return this.mappedFileWindow.size();
+        }
+
+        @Override
+        public char charAt(long lngIndex) {
+            try {
+                return (char) (this.mappedFileWindow.get(lngIndex) & 0xFF);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        @Override
+        public void getChars(long lngStart, long lngEnd, char[] achDst, int intDstBegin) {
+            try {
+                long lngPos = lngStart;
+                int intDst = intDstBegin;
+                while (lngPos < lngEnd) {
+                    int intLen = (int) Math.min(MappedFileWindow.INT_SEGMENT_OVERLAP, lngEnd - lngPos);
+                    ByteBuffer byteBuffer = this.mappedFileWindow.getBuffer(lngPos, intLen);
+                    for (int i = 0; i < intLen; i++) {
+                        achDst[intDst++] = (char) (byteBuffer.get(i) & 0xFF);
+                    }
+                    lngPos += intLen;
+                }
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Counts lines and columns from previous match to next one, matches come from start to end of document.
+    // Columns of bytes of UTF-8 are counted in chars: continuation bytes are not counted,
+    // 4 byte sequence is two chars (surrogate pair).
+    private class LineCounter {
+
+        private final Path pathFile;
+        private final FileContentEditor fileEditor;
+        private final PieceTable document;
+        private final Charset charsetBytes;
+        private final boolean booUtf8;
+        private final char[] achBuf = new char[INT_CHUNK_SIZE];
+
+        private long lngCountedTo;
+        private long lngLineStart;
+        private int intLine = 1;
+        private int intColumn;
+
+        private LineCounter(Path pathFile, FileContentEditor fileEditor, PieceTable document, Charset charsetBytes) {
+
+            this.pathFile = pathFile;
+            this.fileEditor = fileEditor;
+            this.document = document;
+            this.charsetBytes = charsetBytes;
+            this.booUtf8 = StandardCharsets.UTF_8.equals(charsetBytes);
+            // BOM is not part of text in editor, columns of line 1 are counted after it.
+            if (this.booUtf8 && document.length() >= STR_BOM_UTF8_BYTES.length()
+                    && document.getText(0, STR_BOM_UTF8_BYTES.length()).equals(STR_BOM_UTF8_BYTES)) {
+                this.lngCountedTo = STR_BOM_UTF8_BYTES.length();
+                this.lngLineStart = STR_BOM_UTF8_BYTES.length();
+            }
+        }
+
+        // ---------------------------------------------------------------------------------
+        private Result createResult(long lngStart, int intLength) {
+
+            while (this.lngCountedTo < lngStart) {
+                int intCount = (int) Math.min(INT_CHUNK_SIZE, lngStart - this.lngCountedTo);
+                this.document.getChars(this.lngCountedTo, this.lngCountedTo + intCount, this.achBuf, 0);
+                for (int i = 0; i < intCount; i++) {
+                    char ch = this.achBuf[i];
+                    if (ch == CH_LF) {
+                        this.intLine++;
+                        this.lngLineStart = this.lngCountedTo + i + 1;
+                        this.intColumn = 0;
+                    } else if (!this.booUtf8 || ch < 0x80 || ch >= 0xC0) {
+                        this.intColumn += (this.booUtf8 && ch >= 0xF0) ? 2 : 1;
+                    }
+                }
+                this.lngCountedTo += intCount;
+            }
+            int intLengthChars = (this.charsetBytes == null) ? intLength : strFind.length();
+            return new Result(this.pathFile, this.fileEditor, this.intLine, this.intColumn, intLengthChars, this.getLineText(lngStart, intLength));
+        }
+
+        // ---------------------------------------------------------------------------------
+        // Text of found line, long line is cut around match.
+        private String getLineText(long lngStart, int intLength) {
+
+            long lngTextStart = Math.max(this.lngLineStart, lngStart - INT_LINE_TEXT_BEFORE);
+            if (this.booUtf8) {
+                while (lngTextStart < lngStart && (this.document.charAt(lngTextStart) & 0xC0) == 0x80) {
+                    lngTextStart++;
+                }
+            }
+            long lngTextMax = Math.min(this.document.length(), Math.max(lngTextStart + INT_LINE_TEXT_MAX, lngStart + intLength));
+            long lngTextEnd = lngStart;
+            while (lngTextEnd < lngTextMax && this.document.charAt(lngTextEnd) != CH_LF) {
+                lngTextEnd++;
+            }
+            boolean booCutEnd = (lngTextEnd == lngTextMax && lngTextEnd < this.document.length() && this.document.charAt(lngTextEnd) != CH_LF);
+            if (booCutEnd && this.booUtf8) {
+                while (lngTextEnd > lngStart + intLength && (this.document.charAt(lngTextEnd) & 0xC0) == 0x80) {
+                    lngTextEnd--;
+                }
+            }
+            String strText = this.document.getText(lngTextStart, lngTextEnd);
+            if (this.charsetBytes != null) {
+                strText = new String(strText.getBytes(StandardCharsets.ISO_8859_1), this.charsetBytes);
+            }
+            if (!booCutEnd && strText.endsWith(String.valueOf(CH_CR))) {
+                strText = strText.substring(0, strText.length() - 1);
+            }
+            return (lngTextStart > this.lngLineStart ? STR_CUT : "") + strText + (booCutEnd ? STR_CUT : "");
+        }
+    }
+    // -------------------------------------------------------------------------------------
+}
@@ -15,9 +15,16 @@
 package com.olexyarm.jfxfilecontenteditor;
 
 import java.io.IOException;
+import java.util.regex.PatternSyntaxException;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
 import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
+import javafx.concurrent.WorkerStateEvent;
 import javafx.event.ActionEvent;
+import javafx.event.EventHandler;
 import javafx.fxml.FXML;
+import javafx.scene.control.CheckBox;
 import javafx.scene.control.Label;
 import javafx.scene.control.Tab;
 import javafx.scene.control.TabPane;
@@ -48,6 +55,9 @@ public class JfxFileContentEditorBottomController {
     @FXML
     private TextField tfBottomFind;
 
+    @FXML
+    private CheckBox cbBottomFindRegex;
+
     @FXML
     private HBox hboxBottomReplace;
 
@@ -60,6 +70,9 @@ public class JfxFileContentEditorBottomController {
     @FXML
     private Label hboxBottomLabelVersion;
 
+    @FXML
+    private TextField tfBottomCaretPosition;
+
     @FXML
     private TextField tfBottomLineEnding;
 
@@ -75,6 +88,9 @@ public class JfxFileContentEditorBottomController {
     private Label lblBottomFindResult = null;
     private TextField tfBottonFind = null;
 
+    // Running Find All, it's cancelled by any next find or replace.
+    private Task<Long> taskFindAll = null;
+
     // -------------------------------------------------------------------------------------
     // JFX constructor
     // -------------------------------------------------------------------------------------
@@ -96,6 +112,9 @@ public class JfxFileContentEditorBottomController {
         Utils.MAP_NODE_REFS.put(
                 Utils.NODE_NAMES.vboxBottom.toString(), vboxBottom);
 
+        Utils.MAP_NODE_REFS.put(
+                Utils.NODE_NAMES.tfBottomCaretPosition.toString(), tfBottomCaretPosition);
+
         Utils.MAP_NODE_REFS.put(
                 Utils.NODE_NAMES.tfBottomLineEnding.toString(), tfBottomLineEnding);
 
@@ -114,6 +133,7 @@ public class JfxFileContentEditorBottomController {
                 + " hboxBottomReplace=\"" + hboxBottomReplace + "\""
                 + " hboxBottomVersion=\"" + hboxBottomVersion + "\""
                 + " hboxBottomLabelVersion=\"" + hboxBottomLabelVersion + "\""
+                + " tfBottomCaretPosition=\"" + tfBottomCaretPosition + "\""
                 + " tfBottomLineEnding=\"" + tfBottomLineEnding + "\""
                 + " tfBottomCharset=\"" + tfBottomCharset + "\""
         );
@@ -149,6 +169,7 @@ public class JfxFileContentEditorBottomController {
     // -------------------------------------------------------------------------------------
     private String validateFindValue() {
 
+        this.cancelFindAll();
         if (lstTabs.isEmpty()) {
             LOGGER.error("No one file open for editing.");
 //            Utils.showMessage(Alert.AlertType.INFORMATION, "Find", "", "No one file open for editing.", null, null);
@@ -178,21 +199,7 @@ public class JfxFileContentEditorBottomController {
         }
         Tab tab = this.tabPane.getSelectionModel().getSelectedItem();
         FileContentEditor fileEditor = (FileContentEditor) tab.getContent();
-        int intFoundCount = fileEditor.find(strTextFind, false);
-        if (intFoundCount < 1) {
-            String strErrMsg = "No occurrence of \"" + strTextFind + "\" found in " + fileEditor.getFilePath();
-            LOGGER.debug(strErrMsg
-                    + " actionEvent=\"" + actionEvent + "\""
-                    + " TextFind=\"" + strTextFind + "\"");
-            this.lblBottomFindResult.setText(strErrMsg);
-        } else {
-            String strMsg = "Found occurrence of \"" + strTextFind + "\" in " + fileEditor.getFilePath();
-            LOGGER.debug(strMsg
-                    + " actionEvent=\"" + actionEvent + "\""
-                    + " TextFind=\"" + strTextFind + "\"");
-            this.lblBottomFindResult.setText(strMsg);
-        }
-
+        this.findOccurrence(actionEvent, fileEditor, strTextFind, true);
     }
 
     @FXML
@@ -204,7 +211,7 @@ public class JfxFileContentEditorBottomController {
         }
         Tab tab = this.tabPane.getSelectionModel().getSelectedItem();
         FileContentEditor fileEditor = (FileContentEditor) tab.getContent();
-
+        this.findOccurrence(actionEvent, fileEditor, strTextFind, false);
     }
 
     @FXML
@@ -216,9 +223,14 @@ public class JfxFileContentEditorBottomController {
         }
 
         Tab tab = this.tabPane.getSelectionModel().getSelectedItem();
-        FileContentEditor fileEditor = (FileContentEditor) tab.getContent();
-        int intFoundCount = fileEditor.find(strTextFind, true);
-        if (intFoundCount < 1) {
+        final FileContentEditor fileEditor = (FileContentEditor) tab.getContent();
+        if (this.cbBottomFindRegex.isSelected()) {
+            // Regular expression can't be searched by chunks, its matches are counted by match index.
+            this.countRegexOccurrences(fileEditor, strTextFind);
+            return;
+        }
+        final Task<Long> taskFindAllNew = fileEditor.findAll(strTextFind);
+        if (taskFindAllNew == null) {
             String strErrMsg = "No occurrence of \"" + strTextFind + "\" found in " + fileEditor.getFilePath();
             LOGGER.debug(strErrMsg
                     + " actionEvent=\"" + actionEvent + "\""
@@ -226,14 +238,40 @@ public class JfxFileContentEditorBottomController {
             this.lblBottomFindResult.setText(strErrMsg);
             return;
         }
-        String strSuffix;
-        if (intFoundCount == 1) {
-            strSuffix = "";
-        } else {
-            strSuffix = "s";
-        }
-        String strFindResult = "Fount " + intFoundCount + " occurrence" + strSuffix + " of \"" + strTextFind + "\" in " + fileEditor.getFilePath();
-        this.lblBottomFindResult.setText(strFindResult);
+        this.taskFindAll = taskFindAllNew;
+        this.lblBottomFindResult.setText("Finding all occurrences of \"" + strTextFind + "\" in " + fileEditor.getFilePath());
+        // Task is running, its messages are shown until it's finished or cancelled.
+        taskFindAllNew.messageProperty().addListener(new ChangeListener<String>() {
+            @Override
+            public void changed(ObservableValue<? extends String> observable, String strMessageOld, String strMessageNew) {
+                if (taskFindAll == taskFindAllNew && strMessageNew != null && !strMessageNew.isEmpty()) {
+                    lblBottomFindResult.setText(strMessageNew);
+                }
+            }
+        });
+        taskFindAllNew.setOnSucceeded(new EventHandler<WorkerStateEvent>() {
+            @Override
+            public void handle(WorkerStateEvent event) {
+                if (taskFindAll != taskFindAllNew) {
+                    return;
+                }
+                taskFindAll = null;
+                showFoundCount(fileEditor, strTextFind, taskFindAllNew.getValue());
+            }
+        });
+        taskFindAllNew.setOnFailed(new EventHandler<WorkerStateEvent>() {
+            @Override
+            public void handle(WorkerStateEvent event) {
+                LOGGER.error("Could not find all occurrences."
+                        + " TextFind=\"" + strTextFind + "\""
+                        + " Exception=\"" + taskFindAllNew.getException() + "\"");
+                if (taskFindAll != taskFindAllNew) {
+                    return;
+                }
+                taskFindAll = null;
+                lblBottomFindResult.setText("Could not find all occurrences of \"" + strTextFind + "\" in " + fileEditor.getFilePath());
+            }
+        });
     }
 
     // -------------------------------------------------------------------------------------
@@ -315,6 +353,154 @@ public class JfxFileContentEditorBottomController {
         this.lblBottomFindResult.setText(strFindResult);
     }
 
+    // -------------------------------------------------------------------------------------
+    // Regular expression is searched on background, result is shown when occurrence is found or search is done.
+    private void findOccurrence(final ActionEvent actionEvent, final FileContentEditor fileEditor, final String strTextFind, final boolean booNext) {
+
+        final boolean booRegex = this.cbBottomFindRegex.isSelected();
+        long lngPos;
+        try {
+            lngPos = booNext ? fileEditor.findNext(strTextFind, booRegex) : fileEditor.findPrev(strTextFind, booRegex);
+        } catch (PatternSyntaxException ex) {
+            this.showRegexError(strTextFind, ex);
+            return;
+        }
+        if (lngPos != FileContentEditor.LNG_FIND_PENDING) {
+            this.showFoundOccurrence(actionEvent, fileEditor, strTextFind, lngPos);
+            return;
+        }
+        this.lblBottomFindResult.setText("Searching \"" + strTextFind + "\" in " + fileEditor.getFilePath());
+        final Task<Void> taskMatchIndex = fileEditor.getMatchIndexTask();
+        if (taskMatchIndex == null) {
+            this.showFoundOccurrence(actionEvent, fileEditor, strTextFind, -1);
+            return;
+        }
+        EventHandler<WorkerStateEvent> eventHandlerDone = new EventHandler<WorkerStateEvent>() {
+            @Override
+            public void handle(WorkerStateEvent event) {
+                long lngPosFound = booNext ? fileEditor.findNext(strTextFind, booRegex) : fileEditor.findPrev(strTextFind, booRegex);
+                showFoundOccurrence(actionEvent, fileEditor, strTextFind, lngPosFound);
+                showSearchStopped(taskMatchIndex, strTextFind);
+            }
+        };
+        taskMatchIndex.setOnSucceeded(eventHandlerDone);
+        taskMatchIndex.setOnFailed(eventHandlerDone);
+    }
+
+    // -------------------------------------------------------------------------------------
+    private void countRegexOccurrences(final FileContentEditor fileEditor, final String strTextFind) {
+
+        long lngFoundCount;
+        try {
+            lngFoundCount = fileEditor.countMatches(strTextFind, true);
+        } catch (PatternSyntaxException ex) {
+            this.showRegexError(strTextFind, ex);
+            return;
+        }
+        if (lngFoundCount != FileContentEditor.LNG_FIND_PENDING) {
+            this.showFoundCount(fileEditor, strTextFind, lngFoundCount);
+            return;
+        }
+        this.lblBottomFindResult.setText("Searching \"" + strTextFind + "\" in " + fileEditor.getFilePath());
+        final Task<Void> taskMatchIndex = fileEditor.getMatchIndexTask();
+        if (taskMatchIndex == null) {
+            this.showFoundCount(fileEditor, strTextFind, 0);
+            return;
+        }
+        EventHandler<WorkerStateEvent> eventHandlerDone = new EventHandler<WorkerStateEvent>() {
+            @Override
+            public void handle(WorkerStateEvent event) {
+                showFoundCount(fileEditor, strTextFind, fileEditor.countMatches(strTextFind, true));
+                showSearchStopped(taskMatchIndex, strTextFind);
+            }
+        };
+        taskMatchIndex.setOnSucceeded(eventHandlerDone);
+        taskMatchIndex.setOnFailed(eventHandlerDone);
+    }
+
+    // -------------------------------------------------------------------------------------
+    private void showFoundCount(FileContentEditor fileEditor, String strTextFind, long lngFoundCount) {
+
+        if (lngFoundCount < 1) {
+            String strErrMsg = "No occurrence of \"" + strTextFind + "\" found in " + fileEditor.getFilePath();
+            LOGGER.debug(strErrMsg
+                    + " TextFind=\"" + strTextFind + "\"");
+            this.lblBottomFindResult.setText(strErrMsg);
+            return;
+        }
+        String strSuffix;
+        if (lngFoundCount == 1) {
+            strSuffix = "";
+        } else {
+            strSuffix = "s";
+        }
+        String strFindResult = "Fount " + lngFoundCount + " occurrence" + strSuffix + " of \"" + strTextFind + "\" in " + fileEditor.getFilePath();
+        this.lblBottomFindResult.setText(strFindResult);
+    }
+
+    // -------------------------------------------------------------------------------------
+    private void showSearchStopped(Task<Void> taskMatchIndex, String strTextFind) {
+
+        Throwable throwable = taskMatchIndex.getException();
+        if (throwable == null) {
+            return;
+        }
+        String strMsg;
+        if (throwable instanceof SearchEngine.SearchTimeoutException) {
+            strMsg = " (search was stopped after " + Settings.INT_REGEX_TIMEOUT_SEC + " sec)";
+        } else {
+            strMsg = " (search was stopped: " + throwable.getMessage() + ")";
+        }
+        LOGGER.debug("Regular expression search stopped."
+                + " TextFind=\"" + strTextFind + "\""
+                + " Throwable=\"" + throwable.toString() + "\"");
+        this.lblBottomFindResult.setText(this.lblBottomFindResult.getText() + strMsg);
+    }
+
+    // -------------------------------------------------------------------------------------
+    private void showRegexError(String strTextFind, PatternSyntaxException ex) {
+
+        String strErrMsg = "Regular expression \"" + strTextFind + "\" is not valid: " + ex.getDescription();
+        LOGGER.debug(strErrMsg
+                + " Index=" + ex.getIndex());
+        this.lblBottomFindResult.setText(strErrMsg);
+    }
+
+    // -------------------------------------------------------------------------------------
+    private void showFoundOccurrence(ActionEvent actionEvent, FileContentEditor fileEditor, String strTextFind, long lngPos) {
+
+        if (lngPos < 0) {
+            String strErrMsg = "No occurrence of \"" + strTextFind + "\" found in " + fileEditor.getFilePath();
+            LOGGER.debug(strErrMsg
+                    + " actionEvent=\"" + actionEvent + "\""
+                    + " TextFind=\"" + strTextFind + "\"");
+            this.lblBottomFindResult.setText(strErrMsg);
+            return;
+        }
+        String strMsg;
+        int intMatch = fileEditor.getMatchNumber(lngPos);
+        if (intMatch > 0) {
+            strMsg = "Found occurrence " + intMatch + " of " + fileEditor.getMatchCount() + " of \"" + strTextFind + "\" in " + fileEditor.getFilePath();
+        } else {
+            strMsg = "Found occurrence of \"" + strTextFind + "\" in " + fileEditor.getFilePath();
+        }
+        LOGGER.debug(strMsg
+                + " actionEvent=\"" + actionEvent + "\""
+                + " TextFind=\"" + strTextFind + "\""
+                + " Pos=" + lngPos);
+        this.lblBottomFindResult.setText(strMsg);
+    }
+
+    // -------------------------------------------------------------------------------------
+    private void cancelFindAll() {
+
+        if (this.taskFindAll != null) {
+            this.taskFindAll.cancel();
+            this.taskFindAll = null;
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
     private boolean findLabelBottomSearchResult() {
 
         if (this.lblBottomFindResult == null) {
@@ -25,8 +25,12 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 import javafx.animation.KeyFrame;
+import javafx.animation.PauseTransition;
 import javafx.animation.Timeline;
 import javafx.application.Platform;
 import javafx.beans.value.ChangeListener;
@@ -41,6 +45,7 @@ import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.print.Printer;
 import javafx.print.PrinterJob;
+import javafx.scene.Node;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.control.Alert;
@@ -53,8 +58,8 @@ import javafx.scene.control.Menu;
 import javafx.scene.control.MenuItem;
 import javafx.scene.control.Tab;
 import javafx.scene.control.TabPane;
-import javafx.scene.control.TextArea;
 import javafx.scene.control.TextField;
+import javafx.scene.control.TextInputDialog;
 import javafx.scene.control.ToolBar;
 import javafx.scene.control.Tooltip;
 import javafx.scene.input.MouseEvent;
@@ -66,6 +71,7 @@ import javafx.stage.FileChooser;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
 import javafx.stage.Window;
+import javafx.stage.WindowEvent;
 import javafx.util.Duration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -74,6 +80,9 @@ public class JfxFileContentEditorMenuController {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(JfxFileContentEditorMenuController.class);
 
+    private static final int INT_TAB_PREFETCH_DELAY_MS = 2000;
+    private static final long LNG_TAB_PREFETCH_SIZE_MAX = 256L * 1024 * 1024;
+
     // -------------------------------------------------------------------------------------
     private JfxFileContentEditorController jfxEditorController;
     private BorderPane borderPaneEditor;
@@ -198,6 +207,14 @@ public class JfxFileContentEditorMenuController {
 
     private boolean booTextWrap;
 
+    // Tabs restored at start are not read until they are selected.
+    private boolean booTabsRestoring;
+    private PauseTransition pauseTransitionPrefetch;
+    private final Set<Path> setPathsPrefetched = new HashSet<>();
+
+    // Find in Files window is not modal, only one is open.
+    private Stage stageFindFiles;
+
     // -------------------------------------------------------------------------------------
     // JFX constructor
     // -------------------------------------------------------------------------------------
@@ -228,11 +245,18 @@ public class JfxFileContentEditorMenuController {
                 if (tabTo == null) {
                     LOGGER.debug("TabPane ChangeListener tabTo is null."
                             + " this=\"" + this + "\"");
+                    updateTextFieldCaretPosition(null);
                     return;
                 }
                 String strTabToId = tabTo.getId();
                 FileContentEditor fileEditor = (FileContentEditor) tabTo.getContent();
 
+                if (!booTabsRestoring) {
+                    loadTabIfPending(tabTo);
+                }
+
+                updateTextFieldCaretPosition(fileEditor);
+
                 String strCharsetName = fileEditor.getCharsetName();
                 updateTextFieldLineCharsetName(strCharsetName);
 
@@ -447,15 +471,143 @@ public class JfxFileContentEditorMenuController {
     private void restoreOpenedTabs() {
 
         List<String> lstOpenedFiles = Utils.openTabsRestore(lstTabs);
-        for (String strFilePath : lstOpenedFiles) {
-            Path pathFile = Path.of(strFilePath);
-            this.openFileinTab(pathFile);
+        // Only last tab is read now, other tabs are read when they are selected first time.
+        this.booTabsRestoring = true;
+        try {
+            for (String strLine : lstOpenedFiles) {
+                this.restoreOpenedTab(strLine);
+            }
+            // Files modified and not saved when editor was closed or crashed are opened to recover edits.
+            Set<Path> setFilesOpened = new HashSet<>();
+            for (Tab tab : this.lstTabs) {
+                Path pathFile = ((FileContentEditor) tab.getContent()).getPathFile();
+                if (pathFile != null) {
+                    setFilesOpened.add(pathFile.toAbsolutePath().normalize());
+                }
+            }
+            for (Path pathFile : EditJournal.getFilesJournaled()) {
+                if (!setFilesOpened.contains(pathFile)) {
+                    this.openFileinTab(pathFile);
+                }
+            }
+        } finally {
+            this.booTabsRestoring = false;
         }
-        if (lstOpenedFiles.isEmpty()) {
+        // Tabs with journal are read now, so they are shown modified and closing them asks to save.
+        for (Tab tab : this.lstTabs) {
+            FileContentEditor fileEditor = (FileContentEditor) tab.getContent();
+            if (fileEditor.isLoadPending() && EditJournal.exists(fileEditor.getPathFile())) {
+                fileEditor.loadIfPending();
+            }
+        }
+        if (this.lstTabs.isEmpty()) {
             cbTextWrap.setDisable(true);
             buttonFontIncrease.setDisable(true);
             buttonFontDecrease.setDisable(true);
         }
+        if (!this.lstTabs.isEmpty()) {
+            Tab tabLast = this.lstTabs.get(this.lstTabs.size() - 1);
+            this.tabPane.getSelectionModel().select(tabLast);
+            // Listener is not called when last tab is selected already.
+            this.loadTabIfPending(tabLast);
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Line is file path optionally followed by caret position and first visible line.
+    private void restoreOpenedTab(String strLine) {
+
+        String strFilePath = strLine;
+        long lngCaretPosition = -1;
+        int intLineFirst = -1;
+        int intSep2 = strLine.lastIndexOf(Utils.CH_OPEN_TABS_SEPARATOR);
+        int intSep1 = (intSep2 <= 0) ? -1 : strLine.lastIndexOf(Utils.CH_OPEN_TABS_SEPARATOR, intSep2 - 1);
+        if (intSep1 > 0) {
+            try {
+                lngCaretPosition = Long.parseLong(strLine.substring(intSep1 + 1, intSep2));
+                intLineFirst = Integer.parseInt(strLine.substring(intSep2 + 1));
+                strFilePath = strLine.substring(0, intSep1);
+            } catch (NumberFormatException ex) {
+                // Path with tab chars, it's written without positions.
+                lngCaretPosition = -1;
+                intLineFirst = -1;
+            }
+        }
+        this.openFileinTab(Path.of(strFilePath), lngCaretPosition, intLineFirst);
+    }
+
+    // -------------------------------------------------------------------------------------
+    private void loadTabIfPending(Tab tab) {
+
+        FileContentEditor fileEditor = (FileContentEditor) tab.getContent();
+        if (fileEditor.isLoadPending()) {
+            String strErrMsg = fileEditor.loadIfPending();
+            if (strErrMsg != null && !strErrMsg.isBlank()) {
+                // Message is shown in tab state line, dialog can't be shown from selection listener.
+                LOGGER.error("Could not load restored Tab."
+                        + " Id=\"" + tab.getId() + "\""
+                        + " ErrMsg=\"" + strErrMsg + "\"");
+            }
+        }
+        this.startTabPrefetchTimer();
+    }
+
+    // -------------------------------------------------------------------------------------
+    // After user stays on tab for a while, file of next not loaded tab is read ahead in background.
+    private void startTabPrefetchTimer() {
+
+        if (!Settings.BOO_TABS_PREFETCH) {
+            return;
+        }
+        if (this.pauseTransitionPrefetch == null) {
+            this.pauseTransitionPrefetch = new PauseTransition(Duration.millis(INT_TAB_PREFETCH_DELAY_MS));
+            this.pauseTransitionPrefetch.setOnFinished(new EventHandler<ActionEvent>() {
+                @Override
+                public void handle(ActionEvent event) {
+                    prefetchNextTab();
+                }
+            });
+        }
+        this.pauseTransitionPrefetch.playFromStart();
+    }
+
+    // -------------------------------------------------------------------------------------
+    private void prefetchNextTab() {
+
+        int intSelected = this.tabPane.getSelectionModel().getSelectedIndex();
+        if (intSelected < 0) {
+            return;
+        }
+        // Tab on the right is more likely to be selected next, then tab on the left.
+        FileContentEditor fileEditorNext = null;
+        int[] aintCandidates = {intSelected + 1, intSelected - 1};
+        for (int intIndex : aintCandidates) {
+            if (intIndex < 0 || intIndex >= this.lstTabs.size()) {
+                continue;
+            }
+            FileContentEditor fileEditor = (FileContentEditor) this.lstTabs.get(intIndex).getContent();
+            if (fileEditor.isLoadPending() && !this.setPathsPrefetched.contains(fileEditor.getPathFile())) {
+                fileEditorNext = fileEditor;
+                break;
+            }
+        }
+        if (fileEditorNext == null) {
+            return;
+        }
+        final Path pathFile = fileEditorNext.getPathFile();
+        this.setPathsPrefetched.add(pathFile);
+        // Reading ahead is not serialized with tasks of file, loading of tab must not wait for it.
+        EditorIoScheduler.executeIo(null, new Runnable() {
+            @Override
+            public void run() {
+                long lngTimeStart = System.currentTimeMillis();
+                long lngBytesRead = Utils.readFileAhead(pathFile, LNG_TAB_PREFETCH_SIZE_MAX);
+                LOGGER.debug("Prefetched file of restored Tab."
+                        + " BytesRead=" + lngBytesRead
+                        + " Time=" + (System.currentTimeMillis() - lngTimeStart)
+                        + " pathFile=\"" + pathFile + "\"");
+            }
+        });
     }
 
     // -------------------------------------------------------------------------------------
@@ -497,6 +649,13 @@ public class JfxFileContentEditorMenuController {
     // -------------------------------------------------------------------------------------
     private boolean openFileinTab(Path pathFile) {
 
+        return this.openFileinTab(pathFile, -1, -1);
+    }
+
+    // -------------------------------------------------------------------------------------
+    // While tabs are restored file is not read, caret and first visible line are set when it's read.
+    private boolean openFileinTab(Path pathFile, long lngCaretPosition, int intLineFirst) {
+
         if (!Utils.checkNewTabsAllowed(this.lstTabs)) {
             return false;
         }
@@ -518,16 +677,22 @@ public class JfxFileContentEditorMenuController {
         FileContentEditor fileEditor = (FileContentEditor) tab.getContent();
         fileEditor.setTabPane(this.tabPane);
 
-        strErrMsg = fileEditor.openFile();
-        if (strErrMsg != null && !strErrMsg.isBlank()) {
-            Utils.showMessage(AlertType.ERROR, "Opening File \"" + pathFile, "\"", strErrMsg, null, null);
-            return false;
+        if (this.booTabsRestoring) {
+            fileEditor.setLoadPending(lngCaretPosition, intLineFirst);
+        } else {
+            strErrMsg = fileEditor.openFile();
+            if (strErrMsg != null && !strErrMsg.isBlank()) {
+                Utils.showMessage(AlertType.ERROR, "Opening File \"" + pathFile, "\"", strErrMsg, null, null);
+                return false;
+            }
         }
         this.booTextWrap = Settings.BOO_TEXT_WRAP_DEFAULT;
         fileEditor.setTextWrap(this.booTextWrap);
 
         this.lstTabs.add(tab);
-        this.tabPane.getSelectionModel().select(tab);
+        if (!this.booTabsRestoring) {
+            this.tabPane.getSelectionModel().select(tab);
+        }
 
         this.changeMenuVisibility(true);
 
@@ -542,6 +707,28 @@ public class JfxFileContentEditorMenuController {
         return true;
     }
 
+    // -------------------------------------------------------------------------------------
+    // Selects tab of occurrence found in files, file not open yet is opened in new tab.
+    // Returns editor of tab, null if file could not be opened.
+    public FileContentEditor showFileFound(FileContentEditor fileEditorFound, Path pathFile) {
+
+        Path pathFileFound = (pathFile == null) ? null : pathFile.toAbsolutePath().normalize();
+        for (Tab tab : this.lstTabs) {
+            FileContentEditor fileEditor = (FileContentEditor) tab.getContent();
+            Path pathFileTab = fileEditor.getPathFile();
+            if (fileEditor == fileEditorFound
+                    || (pathFileFound != null && pathFileTab != null && pathFileFound.equals(pathFileTab.toAbsolutePath().normalize()))) {
+                this.tabPane.getSelectionModel().select(tab);
+                return fileEditor;
+            }
+        }
+        if (pathFileFound == null || !this.openFileinTab(pathFileFound)) {
+            return null;
+        }
+        Tab tab = this.tabPane.getSelectionModel().getSelectedItem();
+        return (tab == null) ? null : (FileContentEditor) tab.getContent();
+    }
+
     // -------------------------------------------------------------------------------------
     // FXML Action Methods
     // -------------------------------------------------------------------------------------
@@ -706,7 +893,12 @@ public class JfxFileContentEditorMenuController {
         String strFilePath = fileEditor.getFilePath();
 
 // TODO: move print to Custom Control, or find better way to print
-        TextArea ta = fileEditor.getTexArea();
+        Node nodePrint;
+        if (fileEditor.isVirtualView()) {
+            nodePrint = fileEditor.getFileContentView();
+        } else {
+            nodePrint = fileEditor.getTexArea();
+        }
 
         PrinterJob printerJob = PrinterJob.createPrinterJob();
         if (printerJob != null) {
@@ -731,7 +923,7 @@ public class JfxFileContentEditorMenuController {
                 return;
             }
 
-            boolean booPrinted = printerJob.printPage(ta);
+            boolean booPrinted = printerJob.printPage(nodePrint);
             if (booPrinted) {
                 printerJob.endJob();
                 LOGGER.info("Printed File."
@@ -800,6 +992,70 @@ public class JfxFileContentEditorMenuController {
         node.requestFocus();
     }
 
+    // -------------------------------------------------------------------------------------
+    @FXML
+    private void findInFiles(ActionEvent actionEvent) throws IOException {
+
+        actionEvent.consume();
+        if (this.stageFindFiles != null) {
+            this.stageFindFiles.show();
+            this.stageFindFiles.toFront();
+            return;
+        }
+
+        FXMLLoader fxmlLoader = Utils.loadFXML("jfxEditorFindFiles");
+        Parent root = fxmlLoader.load();
+        final JfxFindFilesController jfxFindFilesController = fxmlLoader.<JfxFindFilesController>getController();
+        jfxFindFilesController.setParentController(this.jfxEditorController);
+        Scene scene = new Scene(root, Settings.INT_WINDOW_FIND_FILES_WIDTH, Settings.INT_WINDOW_FIND_FILES_HIGH);
+
+        this.stageFindFiles = new Stage();
+        this.stageFindFiles.setScene(scene);
+        this.stageFindFiles.setTitle("Find in Files");
+        this.stageFindFiles.initOwner(this.tabPane.getScene().getWindow());
+        this.stageFindFiles.setOnHidden(new EventHandler<WindowEvent>() {
+            @Override
+            public void handle(WindowEvent event) {
+                jfxFindFilesController.stopSearch();
+            }
+        });
+        this.stageFindFiles.show();
+    }
+
+    // -------------------------------------------------------------------------------------
+    @FXML
+    private void goToLine(ActionEvent actionEvent) throws IOException {
+
+        actionEvent.consume();
+        Tab tab = tabPane.getSelectionModel().getSelectedItem();
+        if (tab == null) {
+            Utils.showMessage(AlertType.INFORMATION, "Go to Line", "", "No one file open for editing.", null, null);
+            return;
+        }
+        FileContentEditor fileEditor = (FileContentEditor) tab.getContent();
+        int intLineCount = fileEditor.getLineCount();
+
+        TextInputDialog textInputDialog = new TextInputDialog();
+        textInputDialog.setTitle("Go to Line");
+        textInputDialog.setHeaderText("");
+        textInputDialog.setContentText("Line number (1 - " + intLineCount + "):");
+        Optional<String> optLine = textInputDialog.showAndWait();
+        if (optLine.isEmpty()) {
+            return;
+        }
+        String strLine = optLine.get().trim();
+        int intLine;
+        try {
+            intLine = Integer.parseInt(strLine);
+        } catch (NumberFormatException ex) {
+            intLine = -1;
+        }
+        if (!fileEditor.goToLine(intLine)) {
+            Utils.showMessage(AlertType.WARNING, "Go to Line", "",
+                    "Line number \"" + strLine + "\" is not in range 1 - " + intLineCount + ".", null, null);
+        }
+    }
+
     // -------------------------------------------------------------------------------------
     @FXML
     private void lineEndingWin(ActionEvent actionEvent) throws IOException {
@@ -904,8 +1160,8 @@ public class JfxFileContentEditorMenuController {
                 + " strCharset=\"" + strCharset + "\"");
 
         FileContentEditor fileEditor = (FileContentEditor) tab.getContent();
-        fileEditor.setCharsetName(strCharset);
-        String strErrMsg = fileEditor.openFile();
+        // Big file could be decoded again without reading it.
+        String strErrMsg = fileEditor.reopenFile(strCharset);
         if (strErrMsg != null && !strErrMsg.isBlank()) {
             // TODO: add error message on screen
             Utils.showMessage(AlertType.ERROR, "Opening File", "", strErrMsg, null, null);
@@ -1349,6 +1605,13 @@ public class JfxFileContentEditorMenuController {
                 fileEditor.saveFile(null);
             }
         });
+        tab.setOnClosed(new EventHandler<Event>() {
+            @Override
+            public void handle(Event event) {
+                fileEditor.cancelFileLoad();
+                fileEditor.closeEditJournal();
+            }
+        });
 
         LOGGER.info("Created Tab."
                 + " TabId=\"" + strTabId + "\""
@@ -1401,6 +1664,18 @@ public class JfxFileContentEditorMenuController {
         }
     }
 
+    // -------------------------------------------------------------------------------------
+    private void updateTextFieldCaretPosition(FileContentEditor fileEditor) {
+
+        TextField tfCaretPosition = (TextField) Utils.MAP_NODE_REFS.get(Utils.NODE_NAMES.tfBottomCaretPosition.toString());
+        tfCaretPosition.textProperty().unbind();
+        if (fileEditor == null) {
+            tfCaretPosition.setText("");
+            return;
+        }
+        tfCaretPosition.textProperty().bind(fileEditor.caretLineColumnProperty());
+    }
+
     // -------------------------------------------------------------------------------------
     private void updateTextFieldLineEnding(String strLineEnding) {
 
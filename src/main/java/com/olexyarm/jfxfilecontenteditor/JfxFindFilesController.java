@@ -0,0 +1,316 @@
+/*
+ * Copyright (c) 2024, Oleksandr Yarmolenko. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details.
+ *
+ */
+package com.olexyarm.jfxfilecontenteditor;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.ResourceBundle;
+import java.util.regex.PatternSyntaxException;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.event.ActionEvent;
+import javafx.event.EventHandler;
+import javafx.fxml.FXML;
+import javafx.fxml.Initializable;
+import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
+import javafx.scene.control.RadioButton;
+import javafx.scene.control.Tab;
+import javafx.scene.control.TextField;
+import javafx.scene.control.ToggleGroup;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.layout.VBox;
+import javafx.stage.DirectoryChooser;
+import javafx.stage.Stage;
+import javafx.util.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Find in Files window. Results of search running on background are moved to list a few times
+// per second, list creates cells only for visible results.
+public class JfxFindFilesController implements Initializable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JfxFindFilesController.class);
+
+    private static final int INT_RESULTS_POLL_MS = 100;
+
+    // -------------------------------------------------------------------------------------
+    private JfxFileContentEditorController jfxEditorController;
+
+    @FXML
+    public VBox vboxFindFiles;
+
+    @FXML
+    public TextField tfFindFilesText;
+
+    @FXML
+    public CheckBox cbFindFilesRegex;
+
+    @FXML
+    public Button butFindFilesStart;
+
+    @FXML
+    public Button butFindFilesStop;
+
+    @FXML
+    public RadioButton rbFindFilesTabs;
+
+    @FXML
+    public RadioButton rbFindFilesFolder;
+
+    @FXML
+    public TextField tfFindFilesFolder;
+
+    @FXML
+    public Button butFindFilesFolder;
+
+    @FXML
+    public CheckBox cbFindFilesIndex;
+
+    @FXML
+    public Label lblFindFilesState;
+
+    @FXML
+    public ListView<FileSearch.Result> lvFindFilesResults;
+
+    // -------------------------------------------------------------------------------------
+    private final ObservableList<FileSearch.Result> lstResults = FXCollections.observableArrayList();
+    private final ArrayList<FileSearch.Result> lstResultsNew = new ArrayList<>();
+    private FileSearch fileSearch;
+    private Timeline timelineResults;
+
+    // -------------------------------------------------------------------------------------
+    // JFX constructor
+    // -------------------------------------------------------------------------------------
+    @Override
+    @FXML
+    public void initialize(URL url, ResourceBundle rb) {
+
+        LOGGER.debug("### JfxFindFilesController initialize.");
+
+        final ToggleGroup grpScope = new ToggleGroup();
+        this.rbFindFilesTabs.setToggleGroup(grpScope);
+        this.rbFindFilesFolder.setToggleGroup(grpScope);
+        this.rbFindFilesFolder.setSelected(true);
+        this.tfFindFilesFolder.disableProperty().bind(this.rbFindFilesTabs.selectedProperty());
+        this.butFindFilesFolder.disableProperty().bind(this.rbFindFilesTabs.selectedProperty());
+        this.cbFindFilesIndex.disableProperty().bind(this.rbFindFilesTabs.selectedProperty());
+        this.cbFindFilesIndex.setSelected(Settings.BOO_FIND_FILES_INDEX);
+        this.tfFindFilesFolder.setText(Settings.getLastOpenedDir());
+
+        this.lvFindFilesResults.setItems(this.lstResults);
+        this.lvFindFilesResults.setOnMouseClicked(new EventHandler<MouseEvent>() {
+            @Override
+            public void handle(MouseEvent event) {
+                if (event.getButton() == MouseButton.PRIMARY && event.getClickCount() == 2) {
+                    showResult(lvFindFilesResults.getSelectionModel().getSelectedItem());
+                }
+            }
+        });
+        this.lvFindFilesResults.setOnKeyPressed(new EventHandler<KeyEvent>() {
+            @Override
+            public void handle(KeyEvent event) {
+                if (event.getCode() == KeyCode.ENTER) {
+                    showResult(lvFindFilesResults.getSelectionModel().getSelectedItem());
+                }
+            }
+        });
+
+        this.timelineResults = new Timeline(new KeyFrame(Duration.millis(INT_RESULTS_POLL_MS), new EventHandler<ActionEvent>() {
+            @Override
+            public void handle(ActionEvent event) {
+                takeResults();
+            }
+        }));
+        this.timelineResults.setCycleCount(Timeline.INDEFINITE);
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Methods
+    // -------------------------------------------------------------------------------------
+    public void setParentController(JfxFileContentEditorController jfxEditorController) {
+
+        this.jfxEditorController = jfxEditorController;
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Called when window is closed.
+    public void stopSearch() {
+
+        if (this.fileSearch != null) {
+            this.fileSearch.cancel();
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    // FXML Action Methods
+    // -------------------------------------------------------------------------------------
+    @FXML
+    private void findFilesStart(ActionEvent actionEvent) {
+
+        actionEvent.consume();
+        this.stopSearch();
+        this.timelineResults.stop();
+        this.lstResults.clear();
+
+        String strFind = this.tfFindFilesText.getText();
+        if (strFind == null || strFind.isEmpty()) {
+            this.lblFindFilesState.setText("Text to find is empty.");
+            return;
+        }
+        Path pathDir = null;
+        if (this.rbFindFilesFolder.isSelected()) {
+            String strDir = this.tfFindFilesFolder.getText();
+            pathDir = (strDir == null || strDir.isBlank()) ? null : Paths.get(strDir.trim());
+            if (pathDir == null || !Files.isDirectory(pathDir)) {
+                this.lblFindFilesState.setText("Folder \"" + strDir + "\" does not exist.");
+                return;
+            }
+        }
+        boolean booRegex = this.cbFindFilesRegex.isSelected();
+        try {
+            this.fileSearch = new FileSearch(strFind, booRegex, Charset.forName(Settings.STR_CHARSET_CURRENT), Settings.BOO_CHARSET_DETECT);
+        } catch (PatternSyntaxException ex) {
+            this.lblFindFilesState.setText("Regular expression is not valid: " + ex.getDescription()
+                    + " near index " + ex.getIndex() + ".");
+            return;
+        }
+
+        if (pathDir == null) {
+            // Tabs read already are searched in memory, they could be modified; other ones are read from disk.
+            for (Tab tab : this.jfxEditorController.tabPaneEditor.getTabs()) {
+                FileContentEditor fileEditor = (FileContentEditor) tab.getContent();
+                PieceTable document = fileEditor.getDocument();
+                if (fileEditor.isLoadPending()) {
+                    if (fileEditor.getPathFile() != null) {
+                        this.fileSearch.searchFile(fileEditor.getPathFile(), fileEditor);
+                    }
+                } else if (document != null) {
+                    this.fileSearch.searchDocument(fileEditor, document.snapshotReader());
+                }
+            }
+        } else {
+            this.fileSearch.searchFolder(pathDir, this.cbFindFilesIndex.isSelected());
+        }
+        LOGGER.debug("Find in Files started."
+                + " Regex=" + booRegex
+                + " pathDir=\"" + pathDir + "\"");
+        this.butFindFilesStop.setDisable(false);
+        this.lblFindFilesState.setText("Searching...");
+        this.timelineResults.play();
+    }
+
+    // -------------------------------------------------------------------------------------
+    @FXML
+    private void findFilesStop(ActionEvent actionEvent) {
+
+        actionEvent.consume();
+        this.stopSearch();
+    }
+
+    // -------------------------------------------------------------------------------------
+    @FXML
+    private void findFilesFolder(ActionEvent actionEvent) {
+
+        actionEvent.consume();
+        DirectoryChooser directoryChooser = new DirectoryChooser();
+        directoryChooser.setTitle("Find in Folder");
+        File fileDir = new File(this.tfFindFilesFolder.getText());
+        if (fileDir.isDirectory()) {
+            directoryChooser.setInitialDirectory(fileDir);
+        }
+        fileDir = directoryChooser.showDialog(this.vboxFindFiles.getScene().getWindow());
+        if (fileDir != null) {
+            this.tfFindFilesFolder.setText(fileDir.getPath());
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    @FXML
+    private void findFilesIndex(ActionEvent actionEvent) {
+
+        actionEvent.consume();
+        Settings.BOO_FIND_FILES_INDEX = this.cbFindFilesIndex.isSelected();
+        Settings.save();
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Helpers
+    // -------------------------------------------------------------------------------------
+    // Results are added to list by batches, list is updated once per batch.
+    private void takeResults() {
+
+        if (this.fileSearch == null) {
+            this.timelineResults.stop();
+            return;
+        }
+        boolean booDone = this.fileSearch.isDone();
+        this.lstResultsNew.clear();
+        if (this.fileSearch.drainResults(this.lstResultsNew) > 0) {
+            this.lstResults.addAll(this.lstResultsNew);
+            this.lstResultsNew.clear();
+        }
+        String strState = "Found " + this.lstResults.size()
+                + " in files " + this.fileSearch.getFilesSearched()
+                + ", skipped " + this.fileSearch.getFilesSkipped()
+                + (this.fileSearch.getFilesFiltered() > 0 ? ", filtered by index " + this.fileSearch.getFilesFiltered() : "")
+                + ", time " + this.fileSearch.getTime() + " ms";
+        if (!booDone) {
+            this.lblFindFilesState.setText("Searching... " + strState);
+            return;
+        }
+        this.timelineResults.stop();
+        this.butFindFilesStop.setDisable(true);
+        if (this.fileSearch.isResultsLimited()) {
+            strState += " (search was stopped after " + FileSearch.INT_RESULTS_MAX + " occurrences)";
+        } else if (this.fileSearch.isCancelled()) {
+            strState += " (search was stopped)";
+        }
+        this.lblFindFilesState.setText(strState + ".");
+        LOGGER.debug("Find in Files done. " + this.fileSearch);
+    }
+
+    // -------------------------------------------------------------------------------------
+    private void showResult(FileSearch.Result result) {
+
+        if (result == null) {
+            return;
+        }
+        FileContentEditor fileEditor = this.jfxEditorController.jfxEditorMenuController.showFileFound(
+                result.getFileEditor(), result.getPathFile());
+        if (fileEditor == null) {
+            this.lblFindFilesState.setText("Could not open file \"" + result.getPathFile() + "\".");
+            return;
+        }
+        if (!fileEditor.selectInLine(result.getLine(), result.getColumn(), result.getLength())) {
+            this.lblFindFilesState.setText("Line " + result.getLine() + " is not in file any more.");
+        }
+        Stage stage = (Stage) this.jfxEditorController.tabPaneEditor.getScene().getWindow();
+        stage.toFront();
+    }
+    // -------------------------------------------------------------------------------------
+}
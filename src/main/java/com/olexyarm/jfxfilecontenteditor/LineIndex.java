@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2024, Oleksandr Yarmolenko. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details.
+ *
+ */
+package com.olexyarm.jfxfilecontenteditor;
+
+import java.util.Arrays;
+
+// Offsets of line starts in document, line separator is LF (CR before LF belongs to line).
+// Line 0 always starts at offset 0.
+public class LineIndex {
+
+    private static final int INT_LINES_CAPACITY_DEFAULT = 1024;
+    private static final int INT_SCAN_CHUNK_SIZE = 64 * 1024;
+    private static final char CH_LF = '\n';
+
+    private long[] alngLineStart;
+    private int intLineCount;
+
+    // -------------------------------------------------------------------------------------
+    // Construstors
+    // -------------------------------------------------------------------------------------
+    public LineIndex() {
+
+        this.alngLineStart = new long[INT_LINES_CAPACITY_DEFAULT];
+        this.alngLineStart[0] = 0;
+        this.intLineCount = 1;
+    }
+
+    private LineIndex(long[] alngLineStart, int intLineCount) {
+
+        this.alngLineStart = alngLineStart;
+        this.intLineCount = intLineCount;
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Scans whole document, should be called on background thread for big documents.
+    public static LineIndex build(PieceTable document) {
+
+        LineIndex lineIndex = new LineIndex();
+        long lngLength = document.length();
+        char[] achBuf = new char[INT_SCAN_CHUNK_SIZE];
+        long lngPos = 0;
+        while (lngPos < lngLength) {
+            int intCount = (int) Math.min(INT_SCAN_CHUNK_SIZE, lngLength - lngPos);
+            document.getChars(lngPos, lngPos + intCount, achBuf, 0);
+            for (int i = 0; i < intCount; i++) {
+                if (achBuf[i] == CH_LF) {
+                    lineIndex.addLineStart(lngPos + i + 1);
+                }
+            }
+            lngPos += intCount;
+        }
+        return lineIndex;
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Methods
+    // -------------------------------------------------------------------------------------
+    public int getLineCount() {
+        return this.intLineCount;
+    }
+
+    public long getLineStart(int intLine) {
+
+        if (intLine < 0 || intLine >= this.intLineCount) {
+            throw new IndexOutOfBoundsException("line " + intLine + ", count " + this.intLineCount);
+        }
+        return this.alngLineStart[intLine];
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Returns line containing offset.
+    public int findLine(long lngOffset) {
+
+        return this.upperBound(lngOffset) - 1;
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Drops all lines except line 0, so index could be reused for next scan.
+    public void clear() {
+
+        this.intLineCount = 1;
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Appends line start, used while document is scanned from start to end.
+    public void addLineStart(long lngOffset) {
+
+        if (this.intLineCount == this.alngLineStart.length) {
+            this.alngLineStart = Arrays.copyOf(this.alngLineStart, this.alngLineStart.length * 2);
+        }
+        this.alngLineStart[this.intLineCount++] = lngOffset;
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Returns index sharing line starts with this one, it stays valid while lines are only appended
+    // to this index, because appended lines are written after intLineCount or to new array.
+    public LineIndex snapshot() {
+
+        return new LineIndex(this.alngLineStart, this.intLineCount);
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Must be called after document range [lngStart, lngEnd) was replaced with csText.
+    public void update(long lngStart, long lngEnd, CharSequence csText) {
+
+        int intTextLen = (csText == null) ? 0 : csText.length();
+        long lngDelta = intTextLen - (lngEnd - lngStart);
+
+        // Lines started after removed LF chars, i.e. in range [lngStart + 1, lngEnd].
+        int intFrom = this.upperBound(lngStart);
+        int intTo = this.upperBound(lngEnd);
+
+        int intNewLines = 0;
+        for (int i = 0; i < intTextLen; i++) {
+            if (csText.charAt(i) == CH_LF) {
+                intNewLines++;
+            }
+        }
+
+        int intTail = this.intLineCount - intTo;
+        int intCountNew = intFrom + intNewLines + intTail;
+        if (intCountNew > this.alngLineStart.length) {
+            this.alngLineStart = Arrays.copyOf(this.alngLineStart, Math.max(intCountNew, this.alngLineStart.length * 2));
+        }
+        if (intTail > 0 && intTo != intFrom + intNewLines) {
+            System.arraycopy(this.alngLineStart, intTo, this.alngLineStart, intFrom + intNewLines, intTail);
+        }
+        int intLine = intFrom;
+        for (int i = 0; i < intTextLen; i++) {
+            if (csText.charAt(i) == CH_LF) {
+                this.alngLineStart[intLine++] = lngStart + i + 1;
+            }
+        }
+        if (lngDelta != 0) {
+            for (int i = intFrom + intNewLines; i < intCountNew; i++) {
+                this.alngLineStart[i] += lngDelta;
+            }
+        }
+        this.intLineCount = intCountNew;
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Must be called after all ranges [alngStart[i], alngStart[i] + intFindLen) were replaced with csText
+    // by PieceTable.replaceAll(), offsets are before replacing. Line starts are merged in one pass.
+    public void replaceAll(long[] alngStart, int intCount, int intFindLen, CharSequence csText) {
+
+        if (intCount == 0) {
+            return;
+        }
+        int intTextLen = (csText == null) ? 0 : csText.length();
+        int intTextLines = 0;
+        for (int i = 0; i < intTextLen; i++) {
+            if (csText.charAt(i) == CH_LF) {
+                intTextLines++;
+            }
+        }
+        long lngCapacity = (long) this.intLineCount + (long) intCount * intTextLines;
+        long[] alngLineStartNew = new long[(int) Math.max(lngCapacity, this.alngLineStart.length)];
+        int intLineNew = 0;
+        int intLineOld = 0;
+        long lngDelta = 0;
+        long lngTextDelta = intTextLen - intFindLen;
+        for (int k = 0; k < intCount; k++) {
+            long lngStart = alngStart[k];
+            while (intLineOld < this.intLineCount && this.alngLineStart[intLineOld] <= lngStart) {
+                alngLineStartNew[intLineNew++] = this.alngLineStart[intLineOld++] + lngDelta;
+            }
+            // Lines started after replaced LF chars are removed.
+            while (intLineOld < this.intLineCount && this.alngLineStart[intLineOld] <= lngStart + intFindLen) {
+                intLineOld++;
+            }
+            if (intTextLines > 0) {
+                for (int i = 0; i < intTextLen; i++) {
+                    if (csText.charAt(i) == CH_LF) {
+                        alngLineStartNew[intLineNew++] = lngStart + lngDelta + i + 1;
+                    }
+                }
+            }
+            lngDelta += lngTextDelta;
+        }
+        while (intLineOld < this.intLineCount) {
+            alngLineStartNew[intLineNew++] = this.alngLineStart[intLineOld++] + lngDelta;
+        }
+        this.alngLineStart = alngLineStartNew;
+        this.intLineCount = intLineNew;
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Helpers
+    // -------------------------------------------------------------------------------------
+    // Returns index of first line starting after offset.
+    private int upperBound(long lngOffset) {
+
+        int intLow = 0;
+        int intHigh = this.intLineCount;
+        while (intLow < intHigh) {
+            int intMid = (intLow + intHigh) >>> 1;
+            if (this.alngLineStart[intMid] <= lngOffset) {
+                intLow = intMid + 1;
+            } else {
+                intHigh = intMid;
+            }
+        }
+        return intLow;
+    }
+    // -------------------------------------------------------------------------------------
+}
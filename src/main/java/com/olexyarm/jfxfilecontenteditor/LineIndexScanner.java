@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2024, Oleksandr Yarmolenko. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details.
+ *
+ */
+package com.olexyarm.jfxfilecontenteditor;
+
+import java.util.Optional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Finds line endings in decoded text: counts CR, CR LF and LF without CR, adds line starts to LineIndex.
+// Vector API is used when jdk.incubator.vector module is present (--add-modules jdk.incubator.vector),
+// otherwise chars are checked one by one.
+public class LineIndexScanner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LineIndexScanner.class);
+
+    public static final int INT_CR_COUNT = 0;
+    public static final int INT_CR_LF_COUNT = 1;
+    public static final int INT_LF_COUNT = 2;
+
+    static final char CH_CR = '\r';
+    static final char CH_LF = '\n';
+
+    private static final boolean BOO_VECTOR = isVectorAvailable();
+
+    // -------------------------------------------------------------------------------------
+    // Construstors
+    // -------------------------------------------------------------------------------------
+    private LineIndexScanner() {
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Methods
+    // -------------------------------------------------------------------------------------
+    public static boolean isVector() {
+        return BOO_VECTOR;
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Scans achBlock[0, intCount), lngCharPos is offset of block in document, chPrev is last char
+    // of previous block. Counters are added to alngLineEndings, lineIndex may be null.
+    // Returns last char of block, it's passed as chPrev for next block.
+    public static char scan(char[] achBlock, int intCount, long lngCharPos, char chPrev,
+            long[] alngLineEndings, LineIndex lineIndex) {
+
+        if (BOO_VECTOR) {
+            return LineIndexScannerVector.scan(achBlock, intCount, lngCharPos, chPrev, alngLineEndings, lineIndex);
+        }
+        return scanScalar(achBlock, 0, intCount, lngCharPos, chPrev, alngLineEndings, lineIndex);
+    }
+
+    // -------------------------------------------------------------------------------------
+    static char scanScalar(char[] achBlock, int intFrom, int intTo, long lngCharPos, char chPrev,
+            long[] alngLineEndings, LineIndex lineIndex) {
+
+        char chLast = chPrev;
+        for (int i = intFrom; i < intTo; i++) {
+            char ch = achBlock[i];
+            if (ch == CH_LF) {
+                if (chLast == CH_CR) {
+                    alngLineEndings[INT_CR_LF_COUNT]++;
+                } else {
+                    alngLineEndings[INT_LF_COUNT]++;
+                }
+                if (lineIndex != null) {
+                    lineIndex.addLineStart(lngCharPos + i + 1);
+                }
+            } else if (ch == CH_CR) {
+                alngLineEndings[INT_CR_COUNT]++;
+            }
+            chLast = ch;
+        }
+        return chLast;
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Helpers
+    // -------------------------------------------------------------------------------------
+    private static boolean isVectorAvailable() {
+
+        Optional<Module> optModule = ModuleLayer.boot().findModule("jdk.incubator.vector");
+        if (optModule.isEmpty()) {
+            LOGGER.debug("Vector API is not available, line endings are scanned by scalar code.");
+            return false;
+        }
+        try {
+            boolean booVector = LineIndexScannerVector.isSupported();
+            LOGGER.debug("Vector API is available."
+                    + " Supported=" + booVector);
+            return booVector;
+        } catch (Throwable t) {
+            LOGGER.error("Could not initialize Vector API scanner."
+                    + " Throwable=\"" + t.toString() + "\"");
+            return false;
+        }
+    }
+    // -------------------------------------------------------------------------------------
+}
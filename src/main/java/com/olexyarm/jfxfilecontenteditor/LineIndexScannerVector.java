@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2024, Oleksandr Yarmolenko. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details.
+ *
+ */
+package com.olexyarm.jfxfilecontenteditor;
+
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+// Vector API part of LineIndexScanner, class is loaded only when jdk.incubator.vector module is present.
+// Decoded chars are compared as shorts, lane masks are handled as bits of long.
+class LineIndexScannerVector {
+
+    private static final VectorSpecies<Short> SPECIES = ShortVector.SPECIES_PREFERRED;
+    private static final short SHT_CR = (short) LineIndexScanner.CH_CR;
+    private static final short SHT_LF = (short) LineIndexScanner.CH_LF;
+
+    // -------------------------------------------------------------------------------------
+    // Construstors
+    // -------------------------------------------------------------------------------------
+    private LineIndexScannerVector() {
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Methods
+    // -------------------------------------------------------------------------------------
+    // Lane mask must fit to long, scalar loop is faster when vector has few lanes.
+    static boolean isSupported() {
+
+        int intLanes = SPECIES.length();
+        return intLanes >= 8 && intLanes <= Long.SIZE;
+    }
+
+    // -------------------------------------------------------------------------------------
+    static char scan(char[] achBlock, int intCount, long lngCharPos, char chPrev,
+            long[] alngLineEndings, LineIndex lineIndex) {
+
+        int intLanes = SPECIES.length();
+        int intBound = SPECIES.loopBound(intCount);
+        long lngCrPrev = (chPrev == LineIndexScanner.CH_CR) ? 1L : 0L;
+        long lngCrCount = 0;
+        long lngCrLfCount = 0;
+        long lngLfCount = 0;
+        int i = 0;
+        for (; i < intBound; i += intLanes) {
+            ShortVector vector = ShortVector.fromCharArray(SPECIES, achBlock, i);
+            VectorMask<Short> maskCr = vector.eq(SHT_CR);
+            VectorMask<Short> maskLf = vector.eq(SHT_LF);
+            long lngCr = maskCr.toLong();
+            long lngLf = maskLf.toLong();
+            if ((lngCr | lngLf) == 0) {
+                lngCrPrev = 0;
+                continue;
+            }
+            // Bit N is set when char N - 1 is CR.
+            long lngAfterCr = (lngCr << 1) | lngCrPrev;
+            lngCrCount += Long.bitCount(lngCr);
+            lngCrLfCount += Long.bitCount(lngLf & lngAfterCr);
+            lngLfCount += Long.bitCount(lngLf & ~lngAfterCr);
+            lngCrPrev = (lngCr >>> (intLanes - 1)) & 1L;
+            if (lineIndex != null) {
+                long lngBits = lngLf;
+                while (lngBits != 0) {
+                    int intLane = Long.numberOfTrailingZeros(lngBits);
+                    lineIndex.addLineStart(lngCharPos + i + intLane + 1);
+                    lngBits &= lngBits - 1;
+                }
+            }
+        }
+        alngLineEndings[LineIndexScanner.INT_CR_COUNT] += lngCrCount;
+        alngLineEndings[LineIndexScanner.INT_CR_LF_COUNT] += lngCrLfCount;
+        alngLineEndings[LineIndexScanner.INT_LF_COUNT] += lngLfCount;
+        char chLast = (i > 0) ? achBlock[i - 1] : chPrev;
+        return LineIndexScanner.scanScalar(achBlock, i, intCount, lngCharPos, chLast, alngLineEndings, lineIndex);
+    }
+    // -------------------------------------------------------------------------------------
+}
@@ -0,0 +1,326 @@
+/*
+ * Copyright (c) 2024, Oleksandr Yarmolenko. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details.
+ *
+ */
+package com.olexyarm.jfxfilecontenteditor;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderMalfunctionError;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Read-only access to file of any size through a small set of fixed size mapped segments.
+// Segment N maps bytes [N * INT_SEGMENT_SIZE, (N + 1) * INT_SEGMENT_SIZE + INT_SEGMENT_OVERLAP),
+// so any range not longer than INT_SEGMENT_OVERLAP is inside one segment.
+// Every segment is mapped in own arena. Least recently used segment is unmapped by closing of its arena
+// when more than intSegmentsMax are mapped, all segments are unmapped when window is closed.
+// Buffer of unmapped segment throws IllegalStateException, decode() maps segment again then.
+public class MappedFileWindow implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MappedFileWindow.class);
+
+    public static final int INT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    public static final int INT_SEGMENT_OVERLAP = 4 * 1024 * 1024;
+    public static final int INT_SEGMENTS_MAX_DEFAULT = 8;
+    private static final int INT_DECODE_ATTEMPTS_MAX = 3;
+
+    private final Path pathFile;
+    private final FileChannel fileChannel;
+    private final long lngSize;
+    private final FileTime fileTimeModified;
+    private final Map<Long, Segment> mapSegments;
+    // Arenas which could not be closed because other thread was reading from them, they are closed later.
+    private final List<Arena> lstArenasClosing = new ArrayList<>();
+    private int intSegmentsMax = INT_SEGMENTS_MAX_DEFAULT;
+    private long lngSegmentsMappedCount;
+    private boolean booClosed;
+
+    // -------------------------------------------------------------------------------------
+    // Construstors
+    // -------------------------------------------------------------------------------------
+    public MappedFileWindow(Path pathFile) throws IOException {
+
+        this.pathFile = pathFile;
+        this.fileChannel = (FileChannel) Files.newByteChannel(pathFile, EnumSet.of(StandardOpenOption.READ));
+        this.lngSize = this.fileChannel.size();
+        this.fileTimeModified = Files.getLastModifiedTime(pathFile);
+        this.mapSegments = new LinkedHashMap<Long, Segment>(INT_SEGMENTS_MAX_DEFAULT * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Segment> entry) {
+                if (size() <= intSegmentsMax) {
+                    return false;
+                }
+                closeArena(entry.getValue().arena);
+                return true;
+            }
+        };
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Methods
+    // -------------------------------------------------------------------------------------
+    public long size() {
+        return this.lngSize;
+    }
+
+    public Path getPathFile() {
+        return this.pathFile;
+    }
+
+    public synchronized boolean isClosed() {
+        return this.booClosed;
+    }
+
+    // Several threads reading different parts of file at once need more segments, or segment would be
+    // unmapped while other thread still reads it.
+    public synchronized void setSegmentsMax(int intSegmentsMax) {
+        this.intSegmentsMax = Math.max(INT_SEGMENTS_MAX_DEFAULT, intSegmentsMax);
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Returns read-only buffer with bytes [lngPos, lngPos + intLen), intLen <= INT_SEGMENT_OVERLAP.
+    public synchronized ByteBuffer getBuffer(long lngPos, int intLen) throws IOException {
+
+        if (lngPos < 0 || intLen < 0 || intLen > INT_SEGMENT_OVERLAP || lngPos + intLen > this.lngSize) {
+            throw new IndexOutOfBoundsException("pos " + lngPos + ", len " + intLen + ", size " + this.lngSize);
+        }
+        if (this.booClosed) {
+            throw new IOException("Mapped file is closed."
+                    + " pathFile=\"" + this.pathFile + "\"");
+        }
+        long lngSegment = lngPos / INT_SEGMENT_SIZE;
+        ByteBuffer byteBufferSegment = this.getSegment(lngSegment);
+        int intOffset = (int) (lngPos - lngSegment * INT_SEGMENT_SIZE);
+        return byteBufferSegment.slice(intOffset, intLen);
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Returns true if file was changed or replaced after it was mapped, mapping could have old content then.
+    public boolean isFileChanged() {
+
+        try {
+            return Files.size(this.pathFile) != this.lngSize
+                    || !Files.getLastModifiedTime(this.pathFile).equals(this.fileTimeModified);
+        } catch (IOException ex) {
+            LOGGER.debug("Could not check file."
+                    + " pathFile=\"" + this.pathFile + "\""
+                    + " IOException=\"" + ex.toString() + "\"");
+            return true;
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Returns exception for failed access to mapped bytes. Access fails with InternalError
+    // when file was truncated after it was mapped and with IllegalStateException when window was closed.
+    public IOException newReadException(Throwable ex) {
+
+        String strReason = "Could not read mapped file.";
+        try {
+            long lngSizeNow = this.fileChannel.size();
+            if (lngSizeNow < this.lngSize) {
+                strReason = "File was truncated after it was mapped."
+                        + " Size=" + this.lngSize
+                        + " SizeNow=" + lngSizeNow;
+            }
+        } catch (IOException exSize) {
+            LOGGER.debug("Could not check file size."
+                    + " pathFile=\"" + this.pathFile + "\""
+                    + " IOException=\"" + exSize.toString() + "\"");
+        }
+        return new IOException(strReason + " pathFile=\"" + this.pathFile + "\"", ex);
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Decodes bytes [lngPos, lngPos + intLen) alone from reset decoder, returns number of bytes decoded.
+    // Segment unmapped by other thread while bytes are decoded is mapped again and bytes are decoded again.
+    public int decode(long lngPos, int intLen, CharsetDecoder charsetDecoder, CharBuffer charBuffer, boolean booLast) throws IOException {
+
+        int intCharStart = charBuffer.position();
+        for (int intAttempt = 1;; intAttempt++) {
+            ByteBuffer byteBuffer = this.getBuffer(lngPos, intLen);
+            IllegalStateException exState;
+            try {
+                charsetDecoder.reset();
+                charsetDecoder.decode(byteBuffer, charBuffer, booLast);
+                if (booLast) {
+                    charsetDecoder.flush(charBuffer);
+                }
+                return byteBuffer.position();
+            } catch (IllegalStateException ex) {
+                exState = ex;
+            } catch (CoderMalfunctionError ex) {
+                // Decoder wraps exception thrown by buffer of unmapped segment.
+                if (!(ex.getCause() instanceof IllegalStateException exCause)) {
+                    throw ex;
+                }
+                exState = exCause;
+            }
+            if (intAttempt == INT_DECODE_ATTEMPTS_MAX || this.isClosed()) {
+                throw exState;
+            }
+            charBuffer.position(intCharStart);
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    public byte get(long lngPos) throws IOException {
+
+        return this.getBuffer(lngPos, 1).get(0);
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Copies bytes [lngPos, lngPos + lngCount) to channel, file systems could copy them without reading.
+    public synchronized void transferTo(long lngPos, long lngCount, WritableByteChannel channelTarget) throws IOException {
+
+        if (lngPos < 0 || lngCount < 0 || lngPos + lngCount > this.lngSize) {
+            throw new IndexOutOfBoundsException("pos " + lngPos + ", count " + lngCount + ", size " + this.lngSize);
+        }
+        if (this.booClosed) {
+            throw new IOException("Mapped file is closed."
+                    + " pathFile=\"" + this.pathFile + "\"");
+        }
+        long lngDone = 0;
+        while (lngDone < lngCount) {
+            long lngTransferred = this.fileChannel.transferTo(lngPos + lngDone, lngCount - lngDone, channelTarget);
+            if (lngTransferred <= 0) {
+                throw new IOException("Could not copy file bytes."
+                        + " Pos=" + (lngPos + lngDone)
+                        + " pathFile=\"" + this.pathFile + "\"");
+            }
+            lngDone += lngTransferred;
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    @Override
+    public synchronized void close() {
+
+        if (this.booClosed) {
+            return;
+        }
+        this.booClosed = true;
+        for (Segment segment : this.mapSegments.values()) {
+            this.closeArena(segment.arena);
+        }
+        this.mapSegments.clear();
+        this.closeArenasClosing();
+        if (!this.lstArenasClosing.isEmpty()) {
+            LOGGER.error("Could not unmap file segments, they are read by other thread."
+                    + " Segments=" + this.lstArenasClosing.size()
+                    + " pathFile=\"" + this.pathFile + "\"");
+        }
+        try {
+            this.fileChannel.close();
+        } catch (IOException ex) {
+            LOGGER.error("Could not close file channel."
+                    + " pathFile=\"" + this.pathFile + "\""
+                    + " IOException=\"" + ex.toString() + "\"");
+        }
+        LOGGER.debug("Closed mapped file."
+                + " SegmentsMappedCount=" + this.lngSegmentsMappedCount
+                + " pathFile=\"" + this.pathFile + "\"");
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Helpers
+    // -------------------------------------------------------------------------------------
+    private ByteBuffer getSegment(long lngSegment) throws IOException {
+
+        Segment segment = this.mapSegments.get(lngSegment);
+        if (segment != null) {
+            return segment.byteBuffer;
+        }
+        this.closeArenasClosing();
+        long lngStart = lngSegment * INT_SEGMENT_SIZE;
+        long lngLen = Math.min(this.lngSize - lngStart, (long) INT_SEGMENT_SIZE + INT_SEGMENT_OVERLAP);
+        // Reading of mapped pages beyond end of truncated file crashes with InternalError.
+        long lngSizeNow = this.fileChannel.size();
+        if (lngSizeNow < lngStart + lngLen) {
+            throw new IOException("File was truncated after it was opened."
+                    + " Size=" + this.lngSize
+                    + " SizeNow=" + lngSizeNow
+                    + " pathFile=\"" + this.pathFile + "\"");
+        }
+        Arena arena = Arena.ofShared();
+        ByteBuffer byteBufferSegment;
+        try {
+            byteBufferSegment = this.fileChannel.map(FileChannel.MapMode.READ_ONLY, lngStart, lngLen, arena).asByteBuffer();
+        } catch (IOException | RuntimeException ex) {
+            arena.close();
+            throw ex;
+        }
+        this.mapSegments.put(lngSegment, new Segment(arena, byteBufferSegment));
+        this.lngSegmentsMappedCount++;
+        LOGGER.trace("Mapped file segment."
+                + " Segment=" + lngSegment
+                + " Start=" + lngStart
+                + " Length=" + lngLen
+                + " pathFile=\"" + this.pathFile + "\"");
+        return byteBufferSegment;
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Shared arena can't be closed while other thread is reading from it, it's closed later then.
+    private void closeArena(Arena arena) {
+
+        try {
+            arena.close();
+        } catch (IllegalStateException ex) {
+            this.lstArenasClosing.add(arena);
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    private void closeArenasClosing() {
+
+        Iterator<Arena> iterator = this.lstArenasClosing.iterator();
+        while (iterator.hasNext()) {
+            Arena arena = iterator.next();
+            try {
+                arena.close();
+                iterator.remove();
+            } catch (IllegalStateException ex) {
+                // Still read by other thread.
+            }
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    private static class Segment {
+
+        private final Arena arena;
+        private final ByteBuffer byteBuffer;
+
+        private Segment(Arena arena, ByteBuffer byteBuffer) {
+            this.arena = arena;
+            this.byteBuffer = byteBuffer;
+        }
+    }
+    // -------------------------------------------------------------------------------------
+}
@@ -0,0 +1,361 @@
+/*
+ * Copyright (c) 2024, Oleksandr Yarmolenko. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details.
+ *
+ */
+package com.olexyarm.jfxfilecontenteditor;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Text of memory mapped file decoded on demand.
+// File is split to blocks of about INT_BLOCK_SIZE bytes, every block ends on complete char,
+// so it can be decoded alone. Block table (byte and char offset of every block) is filled
+// by loader while it scans file, only INT_BLOCKS_CACHED_MAX decoded blocks are kept in memory.
+public class MappedTextSource implements TextSource {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MappedTextSource.class);
+
+    public static final int INT_BLOCK_SIZE = 1024 * 1024;
+    private static final int INT_BLOCKS_CACHED_MAX = 16;
+    private static final int INT_BLOCKS_CAPACITY_DEFAULT = 256;
+
+    // Decoders of these charsets keep shift state between chars, file can't be decoded by blocks.
+    private static final Set<String> SET_CHARSETS_STATEFUL = Set.of(
+            "x-IBM930", "x-IBM933", "x-IBM935", "x-IBM937", "x-IBM939",
+            "x-IBM1364", "x-IBM1390", "x-IBM1399", "x-JISAutoDetect");
+
+    private final MappedFileWindow mappedFileWindow;
+    private final Charset charset;
+    private final CharsetDecoder charsetDecoder;
+
+    private long[] alngBlockByteStart;
+    private long[] alngBlockCharStart;
+    private int intBlockCount;
+
+    private final Map<Integer, char[]> mapBlocksCached;
+    private int intBlockLast = -1;
+    private char[] achBlockLast;
+
+    // -------------------------------------------------------------------------------------
+    // Construstors
+    // -------------------------------------------------------------------------------------
+    public MappedTextSource(MappedFileWindow mappedFileWindow, Charset charset) throws IOException {
+
+        this.mappedFileWindow = mappedFileWindow;
+        long lngByteStart = 0;
+        Charset charsetResolved = charset;
+        // UTF-16 and UTF-32 decoders read BOM only at start of input, blocks in the middle of file
+        // must be decoded with explicit byte order.
+        String strName = charset.name();
+        long lngSize = mappedFileWindow.size();
+        if (strName.equals("UTF-16")) {
+            charsetResolved = StandardCharsets.UTF_16BE;
+            if (lngSize >= 2) {
+                int intB0 = mappedFileWindow.get(0) & 0xFF;
+                int intB1 = mappedFileWindow.get(1) & 0xFF;
+                if (intB0 == 0xFF && intB1 == 0xFE) {
+                    charsetResolved = StandardCharsets.UTF_16LE;
+                    lngByteStart = 2;
+                } else if (intB0 == 0xFE && intB1 == 0xFF) {
+                    lngByteStart = 2;
+                }
+            }
+        } else if (strName.equals("UTF-32")) {
+            charsetResolved = Charset.forName("UTF-32BE");
+            if (lngSize >= 4) {
+                int intB0 = mappedFileWindow.get(0) & 0xFF;
+                int intB1 = mappedFileWindow.get(1) & 0xFF;
+                int intB2 = mappedFileWindow.get(2) & 0xFF;
+                int intB3 = mappedFileWindow.get(3) & 0xFF;
+                if (intB0 == 0xFF && intB1 == 0xFE && intB2 == 0 && intB3 == 0) {
+                    charsetResolved = Charset.forName("UTF-32LE");
+                    lngByteStart = 4;
+                } else if (intB0 == 0 && intB1 == 0 && intB2 == 0xFE && intB3 == 0xFF) {
+                    lngByteStart = 4;
+                }
+            }
+        }
+        this.charset = charsetResolved;
+        this.charsetDecoder = newDecoder(charsetResolved);
+        this.alngBlockByteStart = new long[INT_BLOCKS_CAPACITY_DEFAULT];
+        this.alngBlockCharStart = new long[INT_BLOCKS_CAPACITY_DEFAULT];
+        this.alngBlockByteStart[0] = lngByteStart;
+        this.alngBlockCharStart[0] = 0;
+        this.intBlockCount = 0;
+        this.mapBlocksCached = createBlocksCache();
+    }
+
+    // Shares mapped file with source, block table is copied.
+    private MappedTextSource(MappedTextSource mappedTextSource, Charset charset) {
+
+        this.mappedFileWindow = mappedTextSource.mappedFileWindow;
+        this.charset = charset;
+        this.charsetDecoder = newDecoder(charset);
+        int intLength = mappedTextSource.intBlockCount + 1;
+        this.alngBlockByteStart = Arrays.copyOf(mappedTextSource.alngBlockByteStart, intLength);
+        this.alngBlockCharStart = Arrays.copyOf(mappedTextSource.alngBlockCharStart, intLength);
+        this.intBlockCount = mappedTextSource.intBlockCount;
+        this.mapBlocksCached = createBlocksCache();
+    }
+
+    // -------------------------------------------------------------------------------------
+    public static CharsetDecoder newDecoder(Charset charset) {
+
+        CharsetDecoder charsetDecoder = charset.newDecoder();
+        charsetDecoder.onMalformedInput(CodingErrorAction.REPLACE);
+        charsetDecoder.onUnmappableCharacter(CodingErrorAction.REPLACE);
+        charsetDecoder.replaceWith(Settings.STR_CHARSET_REPLACE_WITH_DEFAULT);
+        return charsetDecoder;
+    }
+
+    // -------------------------------------------------------------------------------------
+    public static boolean isBlockDecodable(Charset charset) {
+
+        String strName = charset.name();
+        return !strName.contains("2022") && !SET_CHARSETS_STATEFUL.contains(strName);
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Methods
+    // -------------------------------------------------------------------------------------
+    // Called by loader for every scanned block in file order.
+    public synchronized void addBlock(long lngByteEnd, long lngCharEnd) {
+
+        if (this.intBlockCount + 2 > this.alngBlockByteStart.length) {
+            int intCapacity = this.alngBlockByteStart.length * 2;
+            this.alngBlockByteStart = Arrays.copyOf(this.alngBlockByteStart, intCapacity);
+            this.alngBlockCharStart = Arrays.copyOf(this.alngBlockCharStart, intCapacity);
+        }
+        this.intBlockCount++;
+        this.alngBlockByteStart[this.intBlockCount] = lngByteEnd;
+        this.alngBlockCharStart[this.intBlockCount] = lngCharEnd;
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Returns offset in file of first byte of char, -1 if offset is inside of surrogate pair.
+    // Bytes of block are decoded up to the char, so malformed bytes are counted the same way
+    // as they were decoded.
+    public synchronized long getByteOffset(long lngCharPos) throws IOException {
+
+        if (lngCharPos == this.alngBlockCharStart[this.intBlockCount]) {
+            return this.alngBlockByteStart[this.intBlockCount];
+        }
+        int intBlock = this.findBlock(lngCharPos);
+        long lngByteStart = this.alngBlockByteStart[intBlock];
+        int intChars = (int) (lngCharPos - this.alngBlockCharStart[intBlock]);
+        if (intChars == 0) {
+            return lngByteStart;
+        }
+        int intByteLen = (int) (this.alngBlockByteStart[intBlock + 1] - lngByteStart);
+        ByteBuffer byteBuffer = this.mappedFileWindow.getBuffer(lngByteStart, intByteLen);
+        CharBuffer charBuffer = CharBuffer.allocate(intChars);
+        this.charsetDecoder.reset();
+        this.charsetDecoder.decode(byteBuffer, charBuffer, false);
+        if (charBuffer.position() != intChars) {
+            return -1;
+        }
+        return lngByteStart + byteBuffer.position();
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Returns source decoding the same file with other charset without scanning file again.
+    // Block table is reused, so both charsets must decode every byte to one char and have CR and LF
+    // at the same bytes (line index of file stays valid then), returns null otherwise.
+    public synchronized MappedTextSource redecode(Charset charsetNew) {
+
+        if (!isByteCharset(this.charset) || !isByteCharset(charsetNew)) {
+            return null;
+        }
+        return new MappedTextSource(this, charsetNew);
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Reader has own decoder and decoded blocks, so several readers decode file in parallel.
+    @Override
+    public synchronized TextSource newReader() {
+
+        return new MappedTextSource(this, this.charset);
+    }
+
+    // -------------------------------------------------------------------------------------
+    public MappedFileWindow getMappedFileWindow() {
+        return this.mappedFileWindow;
+    }
+
+    // Charset with explicit byte order, should be used to decode file blocks.
+    public Charset getCharset() {
+        return this.charset;
+    }
+
+    public synchronized int getBlockCount() {
+        return this.intBlockCount;
+    }
+
+    public synchronized long getBlockByteStart(int intBlock) {
+        return this.alngBlockByteStart[intBlock];
+    }
+
+    public synchronized long getBlockCharStart(int intBlock) {
+        return this.alngBlockCharStart[intBlock];
+    }
+
+    // -------------------------------------------------------------------------------------
+    @Override
+    public synchronized long length() {
+        return this.alngBlockCharStart[this.intBlockCount];
+    }
+
+    // -------------------------------------------------------------------------------------
+    @Override
+    public synchronized char charAt(long lngIndex) {
+
+        int intBlock = this.findBlock(lngIndex);
+        char[] achBlock = this.getBlockChars(intBlock);
+        return achBlock[(int) (lngIndex - this.alngBlockCharStart[intBlock])];
+    }
+
+    // -------------------------------------------------------------------------------------
+    @Override
+    public synchronized void getChars(long lngStart, long lngEnd, char[] achDst, int intDstBegin) {
+
+        long lngPos = lngStart;
+        int intDst = intDstBegin;
+        while (lngPos < lngEnd) {
+            int intBlock = this.findBlock(lngPos);
+            char[] achBlock = this.getBlockChars(intBlock);
+            long lngBlockStart = this.alngBlockCharStart[intBlock];
+            int intFrom = (int) (lngPos - lngBlockStart);
+            int intCount = (int) Math.min(lngEnd - lngPos, achBlock.length - intFrom);
+            System.arraycopy(achBlock, intFrom, achDst, intDst, intCount);
+            lngPos += intCount;
+            intDst += intCount;
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Helpers
+    // -------------------------------------------------------------------------------------
+    private static Map<Integer, char[]> createBlocksCache() {
+
+        return new LinkedHashMap<Integer, char[]>(INT_BLOCKS_CACHED_MAX * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, char[]> entry) {
+                return size() > INT_BLOCKS_CACHED_MAX;
+            }
+        };
+    }
+
+    // -------------------------------------------------------------------------------------
+    private static boolean isByteCharset(Charset charset) {
+
+        if (!charset.canEncode() || charset.newEncoder().maxBytesPerChar() != 1.0f) {
+            return false;
+        }
+        CharsetDecoder charsetDecoder = charset.newDecoder();
+        if (charsetDecoder.maxCharsPerByte() != 1.0f || charsetDecoder.averageCharsPerByte() != 1.0f) {
+            return false;
+        }
+        return "\n\r".equals(new String(new byte[]{'\n', '\r'}, charset));
+    }
+
+    // -------------------------------------------------------------------------------------
+    private int findBlock(long lngIndex) {
+
+        if (lngIndex < 0 || lngIndex >= this.alngBlockCharStart[this.intBlockCount]) {
+            throw new IndexOutOfBoundsException("index " + lngIndex + ", length " + this.alngBlockCharStart[this.intBlockCount]);
+        }
+        int intLast = this.intBlockLast;
+        if (intLast >= 0 && this.alngBlockCharStart[intLast] <= lngIndex && lngIndex < this.alngBlockCharStart[intLast + 1]) {
+            return intLast;
+        }
+        int intLow = 0;
+        int intHigh = this.intBlockCount - 1;
+        while (intLow < intHigh) {
+            int intMid = (intLow + intHigh + 1) >>> 1;
+            if (this.alngBlockCharStart[intMid] <= lngIndex) {
+                intLow = intMid;
+            } else {
+                intHigh = intMid - 1;
+            }
+        }
+        return intLow;
+    }
+
+    // -------------------------------------------------------------------------------------
+    private char[] getBlockChars(int intBlock) {
+
+        if (intBlock == this.intBlockLast) {
+            return this.achBlockLast;
+        }
+        char[] achBlock = this.mapBlocksCached.get(intBlock);
+        if (achBlock == null) {
+            achBlock = this.decodeBlock(intBlock);
+            this.mapBlocksCached.put(intBlock, achBlock);
+        }
+        this.intBlockLast = intBlock;
+        this.achBlockLast = achBlock;
+        return achBlock;
+    }
+
+    // -------------------------------------------------------------------------------------
+    private char[] decodeBlock(int intBlock) {
+
+        long lngByteStart = this.alngBlockByteStart[intBlock];
+        int intByteLen = (int) (this.alngBlockByteStart[intBlock + 1] - lngByteStart);
+        int intCharLen = (int) (this.alngBlockCharStart[intBlock + 1] - this.alngBlockCharStart[intBlock]);
+        boolean booLast = (intBlock == this.intBlockCount - 1)
+                && this.alngBlockByteStart[this.intBlockCount] == this.mappedFileWindow.size();
+        char[] achBlock = new char[intCharLen];
+        CharBuffer charBuffer = CharBuffer.wrap(achBlock);
+        try {
+            this.mappedFileWindow.decode(lngByteStart, intByteLen, this.charsetDecoder, charBuffer, booLast);
+        } catch (IOException ex) {
+            LOGGER.error("Could not read file block."
+                    + " Block=" + intBlock
+                    + " ByteStart=" + lngByteStart
+                    + " pathFile=\"" + this.mappedFileWindow.getPathFile() + "\""
+                    + " IOException=\"" + ex.toString() + "\"");
+            throw new UncheckedIOException(ex);
+        } catch (InternalError | IllegalStateException ex) {
+            // File was truncated by other program or mapped file was closed.
+            IOException exRead = this.mappedFileWindow.newReadException(ex);
+            LOGGER.error("Could not read file block."
+                    + " Block=" + intBlock
+                    + " ByteStart=" + lngByteStart
+                    + " IOException=\"" + exRead.toString() + "\"");
+            throw new UncheckedIOException(exRead);
+        }
+        if (charBuffer.position() != intCharLen) {
+            // It should never happen, but ...
+            LOGGER.error("Decoded block length mismatch."
+                    + " Block=" + intBlock
+                    + " CharLen=" + intCharLen
+                    + " Decoded=" + charBuffer.position()
+                    + " pathFile=\"" + this.mappedFileWindow.getPathFile() + "\"");
+        }
+        return achBlock;
+    }
+    // -------------------------------------------------------------------------------------
+}
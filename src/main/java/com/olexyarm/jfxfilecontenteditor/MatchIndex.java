@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2024, Oleksandr Yarmolenko. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details.
+ *
+ */
+package com.olexyarm.jfxfilecontenteditor;
+
+import java.util.Arrays;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Sorted starts of all matches of one search in document, matches don't overlap (the same matches
+// as Find All counts and Replace All replaces). Index is built once per search and patched after
+// every edit: matches before edit are kept, document is searched again from last of them only until
+// found match is one of old matches after edit, old matches after it are shifted by length change.
+// Regular expression match could depend on text around it, so index of regex search is dropped by edit.
+// Index is valid while document is the same object with the same modification count.
+// Index of long search is filled on background while it's used, it's complete when search is done.
+public class MatchIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MatchIndex.class);
+
+    private static final int INT_MATCHES_CAPACITY_DEFAULT = 16;
+
+    private final SearchEngine searchEngine;
+    private final String strFind;
+    private final int intFindLen;
+    private PieceTable document;
+    private long lngModCount;
+    private long[] alngStart;
+    private int[] aintLength;
+    private int intCount;
+    private boolean booComplete;
+
+    // -------------------------------------------------------------------------------------
+    // Construstors
+    // -------------------------------------------------------------------------------------
+    // Empty index, matches found in snapshot of document are added by add().
+    public MatchIndex(PieceTable document, SearchEngine searchEngine, String strFind) {
+
+        this.searchEngine = searchEngine;
+        this.strFind = strFind;
+        this.intFindLen = strFind.length();
+        this.document = document;
+        this.lngModCount = document.getModCount();
+        this.alngStart = new long[INT_MATCHES_CAPACITY_DEFAULT];
+        this.aintLength = new int[INT_MATCHES_CAPACITY_DEFAULT];
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Searches whole document, returns null if there are more than intMatchesMax matches.
+    public static MatchIndex build(PieceTable document, SearchEngine searchEngine, String strFind, final int intMatchesMax) {
+
+        long lngTimeStart = System.currentTimeMillis();
+        final MatchIndex matchIndex = new MatchIndex(document, searchEngine, strFind);
+        final boolean[] abooTooMany = {false};
+        searchEngine.findAll(document, 0, Long.MAX_VALUE, new SearchEngine.MatchHandler() {
+            @Override
+            public boolean match(long lngStart, int intLength) {
+                if (matchIndex.intCount == intMatchesMax) {
+                    abooTooMany[0] = true;
+                    return false;
+                }
+                matchIndex.add(lngStart, intLength);
+                return true;
+            }
+        });
+        LOGGER.debug("Built match index."
+                + " Engine=\"" + searchEngine.getName() + "\""
+                + " Count=" + matchIndex.intCount
+                + " TooMany=" + abooTooMany[0]
+                + " Time=" + (System.currentTimeMillis() - lngTimeStart));
+        matchIndex.booComplete = true;
+        return abooTooMany[0] ? null : matchIndex;
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Methods
+    // -------------------------------------------------------------------------------------
+    public boolean isValid(PieceTable documentCurrent) {
+        return documentCurrent != null && this.document == documentCurrent && this.lngModCount == documentCurrent.getModCount();
+    }
+
+    public String getFind() {
+        return this.strFind;
+    }
+
+    public SearchEngine getSearchEngine() {
+        return this.searchEngine;
+    }
+
+    public int getCount() {
+        return this.intCount;
+    }
+
+    public boolean isComplete() {
+        return this.booComplete;
+    }
+
+    // Called when search is done or stopped, next and previous matches wrap around document then.
+    public void setComplete() {
+        this.booComplete = true;
+    }
+
+    public long getStart(int intMatch) {
+
+        if (intMatch < 0 || intMatch >= this.intCount) {
+            throw new IndexOutOfBoundsException("match " + intMatch + ", count " + this.intCount);
+        }
+        return this.alngStart[intMatch];
+    }
+
+    public long getEnd(int intMatch) {
+
+        if (intMatch < 0 || intMatch >= this.intCount) {
+            throw new IndexOutOfBoundsException("match " + intMatch + ", count " + this.intCount);
+        }
+        return this.alngStart[intMatch] + this.aintLength[intMatch];
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Matches must be added in document order.
+    public void add(long lngStart, int intLength) {
+
+        if (this.intCount == this.alngStart.length) {
+            this.alngStart = Arrays.copyOf(this.alngStart, this.alngStart.length * 2);
+            this.aintLength = Arrays.copyOf(this.aintLength, this.aintLength.length * 2);
+        }
+        this.alngStart[this.intCount] = lngStart;
+        this.aintLength[this.intCount] = intLength;
+        this.intCount++;
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Returns first match starting at or after offset, first match of document after last one, -1 if there are no matches.
+    // Incomplete index does not wrap, -1 means match could be found later.
+    public int findNext(long lngOffset) {
+
+        int intMatch = this.lowerBound(lngOffset);
+        if (intMatch < this.intCount) {
+            return intMatch;
+        }
+        return (this.booComplete && this.intCount > 0) ? 0 : -1;
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Returns last match starting before offset, last match of document before first one, -1 if there are no matches.
+    public int findPrev(long lngOffset) {
+
+        int intMatch = this.lowerBound(lngOffset) - 1;
+        if (intMatch >= 0) {
+            return intMatch;
+        }
+        return (this.booComplete && this.intCount > 0) ? this.intCount - 1 : -1;
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Returns first match ending after offset, used to draw matches of line.
+    public int findFirstEndingAfter(long lngOffset) {
+
+        // Matches don't overlap, so their ends are sorted too.
+        int intLow = 0;
+        int intHigh = this.intCount;
+        while (intLow < intHigh) {
+            int intMid = (intLow + intHigh) >>> 1;
+            if (this.alngStart[intMid] + this.aintLength[intMid] <= lngOffset) {
+                intLow = intMid + 1;
+            } else {
+                intHigh = intMid;
+            }
+        }
+        return intLow;
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Must be called after document range [lngStart, lngEnd) was replaced with intTextLen chars,
+    // only if index was valid before the edit.
+    public void update(PieceTable documentNew, long lngStart, long lngEnd, int intTextLen) {
+
+        if (!this.searchEngine.isLiteral() || !this.booComplete) {
+            this.document = null;
+            return;
+        }
+        long lngDelta = intTextLen - (lngEnd - lngStart);
+        long lngEditEndNew = lngStart + intTextLen;
+        // Matches ending not after edit start are the same.
+        int intKept = this.lowerBound(lngStart - this.intFindLen + 1);
+        // Old matches completely after edit could be the same, they are shifted.
+        int intOld = this.lowerBound(lngEnd);
+        long[] alngOld = Arrays.copyOfRange(this.alngStart, intOld, this.intCount);
+        this.intCount = intKept;
+        this.document = documentNew;
+        this.lngModCount = documentNew.getModCount();
+
+        long lngPos = (intKept == 0) ? 0 : this.alngStart[intKept - 1] + this.intFindLen;
+        int intOldNext = 0;
+        final long[] alngFound = new long[1];
+        while (true) {
+            while (intOldNext < alngOld.length && alngOld[intOldNext] + lngDelta < lngPos) {
+                intOldNext++;
+            }
+            long lngLimit;
+            if (intOldNext < alngOld.length) {
+                lngLimit = alngOld[intOldNext] + lngDelta;
+            } else {
+                // Old search found nothing starting after its last match, so new matches could be only
+                // in the edited text or overlapping its end.
+                lngLimit = Math.min(documentNew.length(), Math.max(lngPos, lngEditEndNew) + this.intFindLen);
+            }
+            alngFound[0] = -1;
+            if (lngPos < lngLimit) {
+                this.searchEngine.findAll(documentNew, lngPos, lngLimit, new SearchEngine.MatchHandler() {
+                    @Override
+                    public boolean match(long lngMatchStart, int intLength) {
+                        alngFound[0] = lngMatchStart;
+                        return false;
+                    }
+                });
+            }
+            if (alngFound[0] < 0) {
+                // Search from here finds old match at limit first, all next old matches are the same.
+                for (int i = intOldNext; i < alngOld.length; i++) {
+                    this.add(alngOld[i] + lngDelta, this.intFindLen);
+                }
+                break;
+            }
+            this.add(alngFound[0], this.intFindLen);
+            lngPos = alngFound[0] + this.intFindLen;
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Helpers
+    // -------------------------------------------------------------------------------------
+    // Returns index of first match starting at or after offset.
+    private int lowerBound(long lngOffset) {
+
+        int intLow = 0;
+        int intHigh = this.intCount;
+        while (intLow < intHigh) {
+            int intMid = (intLow + intHigh) >>> 1;
+            if (this.alngStart[intMid] < lngOffset) {
+                intLow = intMid + 1;
+            } else {
+                intHigh = intMid;
+            }
+        }
+        return intLow;
+    }
+    // -------------------------------------------------------------------------------------
+}
@@ -0,0 +1,360 @@
+/*
+ * Copyright (c) 2024, Oleksandr Yarmolenko. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details.
+ *
+ */
+package com.olexyarm.jfxfilecontenteditor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Loads memory mapped file by chunks on dedicated ForkJoinPool.
+// Chunks start after LF byte, so every chunk can be decoded and scanned for line endings alone,
+// results are stitched in file order to MappedTextSource block table and LineIndex.
+public class ParallelFileLoader {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParallelFileLoader.class);
+
+    private static final int INT_CHUNK_SIZE_MIN = 16 * 1024 * 1024;
+    private static final int INT_CHUNKS_PER_THREAD = 4;
+    private static final byte BYT_LF = 0x0A;
+    private static final String STR_ASCII = createAsciiChars();
+
+    private static ForkJoinPool forkJoinPool;
+
+    private final MappedTextSource mappedTextSource;
+    private final MappedFileWindow mappedFileWindow;
+    private final Charset charset;
+    private final boolean booLineIndex;
+    private final int intThreads;
+    private final long lngSize;
+    private final Chunk[] aChunks;
+    private final AtomicLong atomLngBytesDone = new AtomicLong();
+    private volatile boolean booCancelled;
+    // First error of chunk, other chunks are stopped and loading fails with it.
+    private final AtomicReference<Exception> atomException = new AtomicReference<>();
+
+    private final long[] alngLineEndings = new long[3];
+    private final LineIndex lineIndex;
+    private int intChunksStitched;
+    private long lngBytesLoaded;
+    private long lngCharsLoaded;
+
+    // -------------------------------------------------------------------------------------
+    // Construstors
+    // -------------------------------------------------------------------------------------
+    public ParallelFileLoader(MappedTextSource mappedTextSource, int intThreads, boolean booLineIndex) throws IOException {
+
+        this.mappedTextSource = mappedTextSource;
+        this.mappedFileWindow = mappedTextSource.getMappedFileWindow();
+        this.charset = mappedTextSource.getCharset();
+        this.booLineIndex = booLineIndex;
+        this.intThreads = Math.max(1, intThreads);
+        this.lngSize = this.mappedFileWindow.size();
+        // Every thread reads own chunk, segment of one must not be unmapped for other.
+        this.mappedFileWindow.setSegmentsMax(this.intThreads + MappedFileWindow.INT_SEGMENTS_MAX_DEFAULT);
+        long lngByteStart = mappedTextSource.getBlockByteStart(0);
+        long lngChunkSize = Math.max(INT_CHUNK_SIZE_MIN, (this.lngSize - lngByteStart) / ((long) this.intThreads * INT_CHUNKS_PER_THREAD));
+        this.aChunks = this.splitToChunks(lngByteStart, lngChunkSize);
+        this.lineIndex = booLineIndex ? new LineIndex() : null;
+        this.lngBytesLoaded = lngByteStart;
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Chunk can start after any 0x0A byte only when charset encodes ASCII chars as the same single bytes,
+    // it's true for UTF-8, single byte charsets and GBK, Shift_JIS, EUC-*, but not for UTF-16 and UTF-32.
+    public static boolean isParallelLoadable(Charset charset, long lngFileSize, int intThreads) {
+
+        if (intThreads < 2 || lngFileSize < 2L * INT_CHUNK_SIZE_MIN || !MappedTextSource.isBlockDecodable(charset)) {
+            return false;
+        }
+        try {
+            return Arrays.equals(STR_ASCII.getBytes(charset), STR_ASCII.getBytes(StandardCharsets.US_ASCII));
+        } catch (Throwable t) {
+            LOGGER.debug("Could not check charset for parallel loading."
+                    + " Charset=\"" + charset + "\""
+                    + " Throwable=\"" + t.toString() + "\"");
+            return false;
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Methods
+    // -------------------------------------------------------------------------------------
+    public ForkJoinTask<Long> start() {
+
+        LOGGER.debug("Parallel loading started."
+                + " Chunks=" + this.aChunks.length
+                + " Size=" + this.lngSize
+                + " Charset=\"" + this.charset + "\""
+                + " pathFile=\"" + this.mappedFileWindow.getPathFile() + "\"");
+        return getForkJoinPool(this.intThreads).submit(new ChunkRangeTask(0, this.aChunks.length));
+    }
+
+    // -------------------------------------------------------------------------------------
+    public void cancel() {
+        this.booCancelled = true;
+    }
+
+    public long getBytesDone() {
+        return this.atomLngBytesDone.get();
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Called after task is done, document of file with chunk not loaded must not be shown, it would be saved cut.
+    public void checkFailed() throws IOException {
+
+        Exception ex = this.atomException.get();
+        if (ex instanceof IOException ioException) {
+            throw ioException;
+        }
+        if (ex != null) {
+            throw new IOException("Could not load file chunk.", ex);
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Adds chunks loaded since last call to MappedTextSource and LineIndex in file order,
+    // stops at first chunk not loaded yet. Must be called by one thread, last time after task is done.
+    public void stitch() {
+
+        while (this.intChunksStitched < this.aChunks.length) {
+            Chunk chunk = this.aChunks[this.intChunksStitched];
+            if (!chunk.booDone) {
+                break;
+            }
+            long lngCharBase = this.lngCharsLoaded;
+            for (int i = 0; i < chunk.intBlockCount; i++) {
+                this.mappedTextSource.addBlock(chunk.alngBlockByteEnd[i], lngCharBase + chunk.alngBlockCharEnd[i]);
+            }
+            if (this.lineIndex != null) {
+                LineIndex lineIndexChunk = chunk.lineIndex;
+                for (int i = 1; i < lineIndexChunk.getLineCount(); i++) {
+                    this.lineIndex.addLineStart(lngCharBase + lineIndexChunk.getLineStart(i));
+                }
+            }
+            for (int i = 0; i < this.alngLineEndings.length; i++) {
+                this.alngLineEndings[i] += chunk.alngLineEndings[i];
+            }
+            this.lngCharsLoaded += chunk.lngChars;
+            this.lngBytesLoaded = chunk.lngByteEnd;
+            // Chunk data is not needed any more.
+            chunk.lineIndex = null;
+            this.intChunksStitched++;
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    public long[] getLineEndings() {
+        return this.alngLineEndings;
+    }
+
+    public LineIndex getLineIndex() {
+        return this.lineIndex;
+    }
+
+    public long getBytesLoaded() {
+        return this.lngBytesLoaded;
+    }
+
+    public long getCharsLoaded() {
+        return this.lngCharsLoaded;
+    }
+
+    public int getChunkCount() {
+        return this.aChunks.length;
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Helpers
+    // -------------------------------------------------------------------------------------
+    // Pool is created again when number of threads is changed in settings.
+    private static synchronized ForkJoinPool getForkJoinPool(int intThreads) {
+
+        if (forkJoinPool == null || forkJoinPool.getParallelism() != intThreads) {
+            if (forkJoinPool != null) {
+                forkJoinPool.shutdown();
+            }
+            forkJoinPool = new ForkJoinPool(intThreads);
+            LOGGER.debug("Created file loading pool."
+                    + " Threads=" + intThreads);
+        }
+        return forkJoinPool;
+    }
+
+    // -------------------------------------------------------------------------------------
+    private static String createAsciiChars() {
+
+        StringBuilder sb = new StringBuilder(0x80);
+        for (char ch = 0; ch < 0x80; ch++) {
+            sb.append(ch);
+        }
+        return sb.toString();
+    }
+
+    // -------------------------------------------------------------------------------------
+    private Chunk[] splitToChunks(long lngByteStart, long lngChunkSize) throws IOException {
+
+        Chunk[] aChunksNew = new Chunk[(int) Math.max(1, (this.lngSize - lngByteStart + lngChunkSize - 1) / lngChunkSize)];
+        int intCount = 0;
+        long lngStart = lngByteStart;
+        while (lngStart < this.lngSize) {
+            long lngEnd = this.findChunkEnd(lngStart + lngChunkSize);
+            aChunksNew[intCount++] = new Chunk(lngStart, lngEnd);
+            lngStart = lngEnd;
+        }
+        if (intCount == 0) {
+            aChunksNew[intCount++] = new Chunk(lngByteStart, this.lngSize);
+        }
+        return Arrays.copyOf(aChunksNew, intCount);
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Returns offset after first LF byte at or after lngPos, chunks with very long lines are joined.
+    private long findChunkEnd(long lngPos) throws IOException {
+
+        long lngScan = lngPos;
+        while (lngScan < this.lngSize) {
+            int intLen = (int) Math.min(MappedFileWindow.INT_SEGMENT_OVERLAP, this.lngSize - lngScan);
+            ByteBuffer byteBuffer = this.mappedFileWindow.getBuffer(lngScan, intLen);
+            for (int i = 0; i < intLen; i++) {
+                if (byteBuffer.get(i) == BYT_LF) {
+                    return lngScan + i + 1;
+                }
+            }
+            lngScan += intLen;
+        }
+        return this.lngSize;
+    }
+
+    // -------------------------------------------------------------------------------------
+    private void loadChunk(Chunk chunk) throws IOException {
+
+        CharsetDecoder charsetDecoder = MappedTextSource.newDecoder(this.charset);
+        int intCharBufferSize = (int) Math.ceil(MappedTextSource.INT_BLOCK_SIZE * (double) charsetDecoder.maxCharsPerByte()) + 16;
+        CharBuffer charBuffer = CharBuffer.allocate(intCharBufferSize);
+        char[] achBuffer = charBuffer.array();
+        LineIndex lineIndexChunk = new LineIndex();
+        // Chunk starts after LF, except first one.
+        char chPrev = (chunk.lngByteStart == this.mappedTextSource.getBlockByteStart(0)) ? 0 : '\n';
+        long lngBytePos = chunk.lngByteStart;
+        long lngCharPos = 0;
+        while (lngBytePos < chunk.lngByteEnd) {
+            if (this.booCancelled) {
+                return;
+            }
+            int intLen = (int) Math.min(MappedTextSource.INT_BLOCK_SIZE, chunk.lngByteEnd - lngBytePos);
+            boolean booLast = (lngBytePos + intLen == this.lngSize);
+            charBuffer.clear();
+            int intConsumed = this.mappedFileWindow.decode(lngBytePos, intLen, charsetDecoder, charBuffer, booLast);
+            if (intConsumed == 0) {
+                throw new IOException("Could not decode file block. BytePos=" + lngBytePos);
+            }
+            int intChars = charBuffer.position();
+            chPrev = LineIndexScanner.scan(achBuffer, intChars, lngCharPos, chPrev, chunk.alngLineEndings,
+                    this.booLineIndex ? lineIndexChunk : null);
+            lngCharPos += intChars;
+            lngBytePos += intConsumed;
+            chunk.addBlock(lngBytePos, lngCharPos);
+            this.atomLngBytesDone.addAndGet(intConsumed);
+        }
+        chunk.lineIndex = lineIndexChunk;
+        chunk.lngChars = lngCharPos;
+        chunk.booDone = true;
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Loads chunks [intFrom, intTo), returns number of loaded chars.
+    private class ChunkRangeTask extends RecursiveTask<Long> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int intFrom;
+        private final int intTo;
+
+        private ChunkRangeTask(int intFrom, int intTo) {
+            this.intFrom = intFrom;
+            this.intTo = intTo;
+        }
+
+        @Override
+        protected Long compute() {
+
+            if (this.intTo - this.intFrom == 1) {
+                Chunk chunk = aChunks[this.intFrom];
+                try {
+                    loadChunk(chunk);
+                } catch (IOException | RuntimeException ex) {
+                    LOGGER.error("Could not load file chunk."
+                            + " Chunk=" + this.intFrom
+                            + " ByteStart=" + chunk.lngByteStart
+                            + " ByteEnd=" + chunk.lngByteEnd
+                            + " pathFile=\"" + mappedFileWindow.getPathFile() + "\""
+                            + " Exception=\"" + ex.toString() + "\"");
+                    atomException.compareAndSet(null, ex);
+                    booCancelled = true;
+                }
+                return chunk.lngChars;
+            }
+            int intMid = (this.intFrom + this.intTo) >>> 1;
+            ChunkRangeTask taskLeft = new ChunkRangeTask(this.intFrom, intMid);
+            ChunkRangeTask taskRight = new ChunkRangeTask(intMid, this.intTo);
+            taskLeft.fork();
+            long lngRight = taskRight.compute();
+            return taskLeft.join() + lngRight;
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Part of file starting after LF, block ends are absolute byte offsets, char ends are relative to chunk.
+    private static class Chunk {
+
+        private final long lngByteStart;
+        private final long lngByteEnd;
+        private long[] alngBlockByteEnd = new long[16];
+        private long[] alngBlockCharEnd = new long[16];
+        private int intBlockCount;
+        private final long[] alngLineEndings = new long[3];
+        private LineIndex lineIndex;
+        private long lngChars;
+        private volatile boolean booDone;
+
+        private Chunk(long lngByteStart, long lngByteEnd) {
+            this.lngByteStart = lngByteStart;
+            this.lngByteEnd = lngByteEnd;
+        }
+
+        private void addBlock(long lngByteEnd, long lngCharEnd) {
+
+            if (this.intBlockCount == this.alngBlockByteEnd.length) {
+                this.alngBlockByteEnd = Arrays.copyOf(this.alngBlockByteEnd, this.intBlockCount * 2);
+                this.alngBlockCharEnd = Arrays.copyOf(this.alngBlockCharEnd, this.intBlockCount * 2);
+            }
+            this.alngBlockByteEnd[this.intBlockCount] = lngByteEnd;
+            this.alngBlockCharEnd[this.intBlockCount] = lngCharEnd;
+            this.intBlockCount++;
+        }
+    }
+    // -------------------------------------------------------------------------------------
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) 2024, Oleksandr Yarmolenko. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details.
+ *
+ */
+package com.olexyarm.jfxfilecontenteditor;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Counts matches of compiled search in document snapshot by chunks on dedicated ForkJoinPool.
+// Every chunk reports matches starting in it, engine reads up to pattern length after chunk end,
+// so matches crossing chunk end are found too. Chunk is searched as if no match was found before it,
+// results are stitched in document order: when last counted match overlaps first match of next chunk,
+// next chunk is searched again from end of that match until its matches are the same again.
+public class ParallelSearch {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParallelSearch.class);
+
+    private static final int INT_CHUNK_SIZE_MIN = 1024 * 1024;
+    private static final int INT_CHUNKS_PER_THREAD = 8;
+    // Ends of first matches of chunk kept to find where search started again joins chunk matches.
+    private static final int INT_MATCH_ENDS_MAX = 64;
+    private static final int INT_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    private static final ForkJoinPool FORK_JOIN_POOL = new ForkJoinPool(INT_THREADS);
+
+    private final PieceTable document;
+    private final SearchEngine searchEngine;
+    private final long lngLength;
+    private final Chunk[] aChunks;
+    private final AtomicLong atomLngCharsDone = new AtomicLong();
+    private volatile boolean booCancelled;
+
+    private int intChunksStitched;
+    private long lngCount;
+    private long lngMatchEnd;
+    private int intChunksSearchedAgain;
+
+    // -------------------------------------------------------------------------------------
+    // Construstors
+    // -------------------------------------------------------------------------------------
+    // Document must not be changed while it's searched, snapshot should be passed.
+    public ParallelSearch(PieceTable document, SearchEngine searchEngine) {
+
+        this.document = document;
+        this.searchEngine = searchEngine;
+        this.lngLength = document.length();
+        long lngChunkSize = Math.max(INT_CHUNK_SIZE_MIN, this.lngLength / ((long) INT_THREADS * INT_CHUNKS_PER_THREAD));
+        int intChunkCount = (int) Math.max(1, (this.lngLength + lngChunkSize - 1) / lngChunkSize);
+        this.aChunks = new Chunk[intChunkCount];
+        for (int i = 0; i < intChunkCount; i++) {
+            this.aChunks[i] = new Chunk(i * lngChunkSize, Math.min(this.lngLength, (i + 1) * lngChunkSize));
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Methods
+    // -------------------------------------------------------------------------------------
+    public ForkJoinTask<Void> start() {
+
+        LOGGER.debug("Parallel search started."
+                + " Engine=\"" + this.searchEngine.getName() + "\""
+                + " Chunks=" + this.aChunks.length
+                + " Length=" + this.lngLength);
+        return FORK_JOIN_POOL.submit(new ChunkRangeTask(0, this.aChunks.length));
+    }
+
+    // -------------------------------------------------------------------------------------
+    public void cancel() {
+        this.booCancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return this.booCancelled;
+    }
+
+    public long getCharsDone() {
+        return this.atomLngCharsDone.get();
+    }
+
+    public long getLength() {
+        return this.lngLength;
+    }
+
+    // Number of matches in stitched chunks.
+    public long getCount() {
+        return this.lngCount;
+    }
+
+    public int getChunkCount() {
+        return this.aChunks.length;
+    }
+
+    public int getChunksSearchedAgain() {
+        return this.intChunksSearchedAgain;
+    }
+
+    // Returns true when all chunks are stitched, count is final then.
+    public boolean isDone() {
+        return this.intChunksStitched == this.aChunks.length;
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Adds matches of chunks searched since last call to count in document order,
+    // stops at first chunk not searched yet. Must be called by one thread, last time after task is done.
+    public void stitch() {
+
+        PieceTable documentReader = null;
+        while (this.intChunksStitched < this.aChunks.length && !this.booCancelled) {
+            Chunk chunk = this.aChunks[this.intChunksStitched];
+            if (!chunk.booDone) {
+                break;
+            }
+            if (chunk.lngCount > 0 && chunk.lngFirstStart < this.lngMatchEnd) {
+                if (documentReader == null) {
+                    documentReader = this.document.snapshotReader();
+                }
+                this.searchAgain(documentReader, chunk);
+                this.intChunksSearchedAgain++;
+            } else if (chunk.lngCount > 0) {
+                this.lngCount += chunk.lngCount;
+                this.lngMatchEnd = chunk.lngLastEnd;
+            }
+            // Chunk could be dropped, only its count is needed any more.
+            chunk.alngMatchEnd = null;
+            this.intChunksStitched++;
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Helpers
+    // -------------------------------------------------------------------------------------
+    // Searches chunk from end of last counted match, matches after match ending at the same place
+    // as one of chunk matches are the same as chunk matches, so their count is taken from chunk.
+    private void searchAgain(PieceTable documentReader, final Chunk chunk) {
+
+        final long[] alngResult = {0, this.lngMatchEnd};
+        final boolean[] abooJoined = {false};
+        if (this.lngMatchEnd < chunk.lngEnd) {
+            this.searchEngine.findAll(documentReader, this.lngMatchEnd, chunk.lngEnd, new SearchEngine.MatchHandler() {
+                @Override
+                public boolean match(long lngStart, int intLength) {
+                    if (booCancelled) {
+                        return false;
+                    }
+                    long lngEnd = lngStart + intLength;
+                    int intMatch = Arrays.binarySearch(chunk.alngMatchEnd, 0, chunk.intMatchEndCount, lngEnd);
+                    if (intMatch >= 0) {
+                        alngResult[0] += chunk.lngCount - intMatch;
+                        alngResult[1] = chunk.lngLastEnd;
+                        abooJoined[0] = true;
+                        return false;
+                    }
+                    alngResult[0]++;
+                    alngResult[1] = lngEnd;
+                    return true;
+                }
+            });
+        }
+        this.lngCount += alngResult[0];
+        this.lngMatchEnd = alngResult[1];
+        LOGGER.trace("Searched chunk again."
+                + " Start=" + chunk.lngStart
+                + " End=" + chunk.lngEnd
+                + " Count=" + chunk.lngCount
+                + " CountAgain=" + alngResult[0]
+                + " Joined=" + abooJoined[0]);
+    }
+
+    // -------------------------------------------------------------------------------------
+    private void searchChunk(final Chunk chunk) {
+
+        PieceTable documentReader = this.document.snapshotReader();
+        this.searchEngine.findAll(documentReader, chunk.lngStart, chunk.lngEnd, new SearchEngine.MatchHandler() {
+            @Override
+            public boolean match(long lngStart, int intLength) {
+                if (booCancelled) {
+                    return false;
+                }
+                chunk.addMatch(lngStart, lngStart + intLength);
+                return true;
+            }
+        });
+        chunk.booDone = true;
+        this.atomLngCharsDone.addAndGet(chunk.lngEnd - chunk.lngStart);
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Searches chunks [intFrom, intTo).
+    private class ChunkRangeTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int intFrom;
+        private final int intTo;
+
+        private ChunkRangeTask(int intFrom, int intTo) {
+            this.intFrom = intFrom;
+            this.intTo = intTo;
+        }
+
+        @Override
+        protected void compute() {
+
+            if (booCancelled) {
+                return;
+            }
+            if (this.intTo - this.intFrom == 1) {
+                searchChunk(aChunks[this.intFrom]);
+                return;
+            }
+            int intMid = (this.intFrom + this.intTo) >>> 1;
+            ChunkRangeTask taskLeft = new ChunkRangeTask(this.intFrom, intMid);
+            ChunkRangeTask taskRight = new ChunkRangeTask(intMid, this.intTo);
+            taskLeft.fork();
+            taskRight.compute();
+            taskLeft.join();
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Range of document [lngStart, lngEnd) and matches starting in it.
+    private static class Chunk {
+
+        private final long lngStart;
+        private final long lngEnd;
+        private long lngCount;
+        private long lngFirstStart;
+        private long lngLastEnd;
+        private long[] alngMatchEnd = new long[INT_MATCH_ENDS_MAX];
+        private int intMatchEndCount;
+        private volatile boolean booDone;
+
+        private Chunk(long lngStart, long lngEnd) {
+            this.lngStart = lngStart;
+            this.lngEnd = lngEnd;
+        }
+
+        private void addMatch(long lngMatchStart, long lngMatchEnd) {
+
+            if (this.lngCount == 0) {
+                this.lngFirstStart = lngMatchStart;
+            }
+            if (this.intMatchEndCount < this.alngMatchEnd.length) {
+                this.alngMatchEnd[this.intMatchEndCount++] = lngMatchEnd;
+            }
+            this.lngLastEnd = lngMatchEnd;
+            this.lngCount++;
+        }
+    }
+    // -------------------------------------------------------------------------------------
+}
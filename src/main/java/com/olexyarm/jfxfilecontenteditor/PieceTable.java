@@ -0,0 +1,543 @@
+/*
+ * Copyright (c) 2024, Oleksandr Yarmolenko. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details.
+ *
+ */
+package com.olexyarm.jfxfilecontenteditor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Document model of FileContentEditor.
+// The content is described by list of pieces, every piece points to range of chars
+// in original buffer (file content, never modified) or in append buffer (all inserted text).
+// Edits only split/insert/remove pieces, the text itself is never copied.
+public class PieceTable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PieceTable.class);
+
+    private static final byte BYT_SOURCE_ORIGINAL = 0;
+    private static final byte BYT_SOURCE_ADD = 1;
+    private static final int INT_PIECES_CAPACITY_DEFAULT = 16;
+    private static final int INT_ADD_BLOCK_SIZE = 16 * 1024;
+
+    private final TextSource textSourceOriginal;
+    // Append buffer is a list of fixed size blocks, written chars are never moved or changed,
+    // so snapshot can share blocks with the table while it is edited on other thread.
+    private final ArrayList<char[]> lstAddBlocks;
+    private long lngAddLength;
+    private final TextSource textSourceAdd;
+    private final boolean booReadOnly;
+
+    // Pieces are kept in parallel arrays sorted by document offset.
+    private int intPieceCount;
+    private byte[] abytPieceSource;
+    private long[] alngPieceStart;
+    private long[] alngPieceLength;
+    private long[] alngPieceOffset;
+
+    private long lngLength;
+    private long lngModCount;
+    private int intPieceLastFound;
+
+    // -------------------------------------------------------------------------------------
+    // Construstors
+    // -------------------------------------------------------------------------------------
+    public PieceTable(TextSource textSourceOriginal) {
+
+        this.textSourceOriginal = (textSourceOriginal == null) ? TextSource.of("") : textSourceOriginal;
+        this.lstAddBlocks = new ArrayList<>();
+        this.textSourceAdd = this.createAddSource();
+        this.booReadOnly = false;
+        this.abytPieceSource = new byte[INT_PIECES_CAPACITY_DEFAULT];
+        this.alngPieceStart = new long[INT_PIECES_CAPACITY_DEFAULT];
+        this.alngPieceLength = new long[INT_PIECES_CAPACITY_DEFAULT];
+        this.alngPieceOffset = new long[INT_PIECES_CAPACITY_DEFAULT];
+        long lngOriginalLength = this.textSourceOriginal.length();
+        if (lngOriginalLength > 0) {
+            this.abytPieceSource[0] = BYT_SOURCE_ORIGINAL;
+            this.alngPieceStart[0] = 0;
+            this.alngPieceLength[0] = lngOriginalLength;
+            this.alngPieceOffset[0] = 0;
+            this.intPieceCount = 1;
+        }
+        this.lngLength = lngOriginalLength;
+    }
+
+    // -------------------------------------------------------------------------------------
+    private PieceTable(PieceTable pieceTable, TextSource textSourceOriginal) {
+
+        this.textSourceOriginal = textSourceOriginal;
+        this.lstAddBlocks = new ArrayList<>(pieceTable.lstAddBlocks);
+        this.lngAddLength = pieceTable.lngAddLength;
+        this.textSourceAdd = this.createAddSource();
+        this.booReadOnly = true;
+        this.intPieceCount = pieceTable.intPieceCount;
+        this.abytPieceSource = Arrays.copyOf(pieceTable.abytPieceSource, Math.max(1, this.intPieceCount));
+        this.alngPieceStart = Arrays.copyOf(pieceTable.alngPieceStart, Math.max(1, this.intPieceCount));
+        this.alngPieceLength = Arrays.copyOf(pieceTable.alngPieceLength, Math.max(1, this.intPieceCount));
+        this.alngPieceOffset = Arrays.copyOf(pieceTable.alngPieceOffset, Math.max(1, this.intPieceCount));
+        this.lngLength = pieceTable.lngLength;
+        this.lngModCount = pieceTable.lngModCount;
+    }
+
+    // -------------------------------------------------------------------------------------
+    public static PieceTable of(CharSequence cs) {
+
+        return new PieceTable(TextSource.of(cs));
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Methods
+    // -------------------------------------------------------------------------------------
+    public long length() {
+        return this.lngLength;
+    }
+
+    public boolean isEmpty() {
+        return this.lngLength == 0;
+    }
+
+    public long getModCount() {
+        return this.lngModCount;
+    }
+
+    public int getPieceCount() {
+        return this.intPieceCount;
+    }
+
+    // Piece of original buffer has the same chars as range of file document was read from.
+    public boolean isPieceOriginal(int intPiece) {
+        return this.abytPieceSource[intPiece] == BYT_SOURCE_ORIGINAL;
+    }
+
+    // Start of piece in its source buffer.
+    public long getPieceStart(int intPiece) {
+        return this.alngPieceStart[intPiece];
+    }
+
+    public long getPieceLength(int intPiece) {
+        return this.alngPieceLength[intPiece];
+    }
+
+    public boolean isReadOnly() {
+        return this.booReadOnly;
+    }
+
+    public TextSource getTextSourceOriginal() {
+        return this.textSourceOriginal;
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Read-only copy of current content, cost depends only on number of pieces.
+    // Can be read on background thread (file save) while this table is edited.
+    public PieceTable snapshot() {
+
+        return new PieceTable(this, this.textSourceOriginal);
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Read-only copy with own reader of original buffer, every thread searching document in parallel
+    // reads its own copy (snapshot caches last found piece, file source caches decoded blocks).
+    public PieceTable snapshotReader() {
+
+        return new PieceTable(this, this.textSourceOriginal.newReader());
+    }
+
+    // -------------------------------------------------------------------------------------
+    public char charAt(long lngIndex) {
+
+        if (lngIndex < 0 || lngIndex >= this.lngLength) {
+            throw new IndexOutOfBoundsException("index " + lngIndex + ", length " + this.lngLength);
+        }
+        int intPiece = this.findPiece(lngIndex);
+        long lngSourceIndex = this.alngPieceStart[intPiece] + (lngIndex - this.alngPieceOffset[intPiece]);
+        return this.getPieceSource(intPiece).charAt(lngSourceIndex);
+    }
+
+    // -------------------------------------------------------------------------------------
+    public void getChars(long lngStart, long lngEnd, char[] achDst, int intDstBegin) {
+
+        this.checkRange(lngStart, lngEnd);
+        if (lngStart == lngEnd) {
+            return;
+        }
+        int intPiece = this.findPiece(lngStart);
+        long lngPos = lngStart;
+        int intDst = intDstBegin;
+        while (lngPos < lngEnd) {
+            long lngPieceOffset = this.alngPieceOffset[intPiece];
+            long lngPieceEnd = lngPieceOffset + this.alngPieceLength[intPiece];
+            long lngCopyEnd = Math.min(lngPieceEnd, lngEnd);
+            long lngSourceStart = this.alngPieceStart[intPiece] + (lngPos - lngPieceOffset);
+            long lngSourceEnd = lngSourceStart + (lngCopyEnd - lngPos);
+            this.getPieceSource(intPiece).getChars(lngSourceStart, lngSourceEnd, achDst, intDst);
+            intDst += (int) (lngCopyEnd - lngPos);
+            lngPos = lngCopyEnd;
+            intPiece++;
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    public String getText(long lngStart, long lngEnd) {
+
+        this.checkRange(lngStart, lngEnd);
+        long lngLen = lngEnd - lngStart;
+        if (lngLen > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Text range is too long for String. Length=" + lngLen);
+        }
+        char[] ach = new char[(int) lngLen];
+        this.getChars(lngStart, lngEnd, ach, 0);
+        return new String(ach);
+    }
+
+    // -------------------------------------------------------------------------------------
+    public String getText() {
+
+        return this.getText(0, this.lngLength);
+    }
+
+    // -------------------------------------------------------------------------------------
+    public void insert(long lngOffset, CharSequence csText) {
+
+        this.checkWritable();
+        if (lngOffset < 0 || lngOffset > this.lngLength) {
+            throw new IndexOutOfBoundsException("offset " + lngOffset + ", length " + this.lngLength);
+        }
+        if (csText == null || csText.length() == 0) {
+            return;
+        }
+        int intTextLen = csText.length();
+        long lngAddStart = this.lngAddLength;
+        this.appendAdd(csText);
+        this.lngModCount++;
+
+        // Typing at the end of last inserted text just extends the piece.
+        if (lngOffset > 0) {
+            int intPiecePrev = this.findPiece(lngOffset - 1);
+            if (this.abytPieceSource[intPiecePrev] == BYT_SOURCE_ADD
+                    && this.alngPieceOffset[intPiecePrev] + this.alngPieceLength[intPiecePrev] == lngOffset
+                    && this.alngPieceStart[intPiecePrev] + this.alngPieceLength[intPiecePrev] == lngAddStart) {
+                this.alngPieceLength[intPiecePrev] += intTextLen;
+                this.lngLength += intTextLen;
+                this.updateOffsets(intPiecePrev + 1);
+                return;
+            }
+        }
+
+        int intPiece = this.splitAt(lngOffset);
+        this.insertPieces(intPiece, 1);
+        this.abytPieceSource[intPiece] = BYT_SOURCE_ADD;
+        this.alngPieceStart[intPiece] = lngAddStart;
+        this.alngPieceLength[intPiece] = intTextLen;
+        this.lngLength += intTextLen;
+        this.updateOffsets(intPiece);
+    }
+
+    // -------------------------------------------------------------------------------------
+    public void delete(long lngStart, long lngEnd) {
+
+        this.checkWritable();
+        this.checkRange(lngStart, lngEnd);
+        if (lngStart == lngEnd) {
+            return;
+        }
+        int intPieceFrom = this.splitAt(lngStart);
+        int intPieceTo = this.splitAt(lngEnd);
+        this.removePieces(intPieceFrom, intPieceTo - intPieceFrom);
+        this.lngLength -= (lngEnd - lngStart);
+        this.lngModCount++;
+        this.updateOffsets(intPieceFrom);
+    }
+
+    // -------------------------------------------------------------------------------------
+    public void replace(long lngStart, long lngEnd, CharSequence csText) {
+
+        this.delete(lngStart, lngEnd);
+        this.insert(lngStart, csText);
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Replaces ranges [alngStart[i], alngStart[i] + intFindLen) with csText by one edit.
+    // Ranges must be sorted and must not overlap. Text is appended once, all new pieces point to it,
+    // so time is linear in count of pieces and ranges.
+    public void replaceAll(long[] alngStart, int intCount, int intFindLen, CharSequence csText) {
+
+        this.checkWritable();
+        if (intCount == 0) {
+            return;
+        }
+        this.checkRange(alngStart[0], alngStart[intCount - 1] + intFindLen);
+        int intTextLen = (csText == null) ? 0 : csText.length();
+        long lngAddStart = this.lngAddLength;
+        if (intTextLen > 0) {
+            this.appendAdd(csText);
+        }
+        // Every range could split one piece and add one piece of text.
+        int intCapacity = this.intPieceCount + 2 * intCount + 1;
+        byte[] abytSource = new byte[intCapacity];
+        long[] alngStartNew = new long[intCapacity];
+        long[] alngLength = new long[intCapacity];
+        int intPieceCountNew = 0;
+        int intPiece = 0;
+        long lngPos = 0;
+        for (int i = 0; i <= intCount; i++) {
+            long lngCopyEnd = (i < intCount) ? alngStart[i] : this.lngLength;
+            // Pieces (or their parts) between ranges are kept.
+            while (lngPos < lngCopyEnd) {
+                long lngPieceOffset = this.alngPieceOffset[intPiece];
+                long lngPieceEnd = lngPieceOffset + this.alngPieceLength[intPiece];
+                if (lngPieceEnd <= lngPos) {
+                    intPiece++;
+                    continue;
+                }
+                long lngSegmentEnd = Math.min(lngPieceEnd, lngCopyEnd);
+                abytSource[intPieceCountNew] = this.abytPieceSource[intPiece];
+                alngStartNew[intPieceCountNew] = this.alngPieceStart[intPiece] + (lngPos - lngPieceOffset);
+                alngLength[intPieceCountNew] = lngSegmentEnd - lngPos;
+                intPieceCountNew++;
+                lngPos = lngSegmentEnd;
+            }
+            if (i < intCount) {
+                if (intTextLen > 0) {
+                    abytSource[intPieceCountNew] = BYT_SOURCE_ADD;
+                    alngStartNew[intPieceCountNew] = lngAddStart;
+                    alngLength[intPieceCountNew] = intTextLen;
+                    intPieceCountNew++;
+                }
+                lngPos = alngStart[i] + intFindLen;
+            }
+        }
+        this.abytPieceSource = abytSource;
+        this.alngPieceStart = alngStartNew;
+        this.alngPieceLength = alngLength;
+        this.alngPieceOffset = new long[intCapacity];
+        this.intPieceCount = intPieceCountNew;
+        this.intPieceLastFound = 0;
+        this.lngLength += (long) intCount * (intTextLen - intFindLen);
+        this.lngModCount++;
+        this.updateOffsets(0);
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Returns offsets of all occurrences not overlapping each other, document is read once.
+    public long[] indexOfAll(CharSequence csFind) {
+
+        if (csFind == null || csFind.length() == 0) {
+            return new long[0];
+        }
+        return SearchEngine.compile(csFind.toString()).indexOfAll(this);
+    }
+
+    // -------------------------------------------------------------------------------------
+    public long indexOf(CharSequence csFind, long lngFrom) {
+
+        if (csFind == null) {
+            return -1;
+        }
+        if (lngFrom < 0) {
+            lngFrom = 0;
+        }
+        if (csFind.length() == 0) {
+            return lngFrom <= this.lngLength ? lngFrom : -1;
+        }
+        return SearchEngine.compile(csFind.toString()).indexOf(this, lngFrom);
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Helpers
+    // -------------------------------------------------------------------------------------
+    private TextSource getPieceSource(int intPiece) {
+
+        if (this.abytPieceSource[intPiece] == BYT_SOURCE_ORIGINAL) {
+            return this.textSourceOriginal;
+        }
+        return this.textSourceAdd;
+    }
+
+    // -------------------------------------------------------------------------------------
+    private void appendAdd(CharSequence csText) {
+
+        int intTextLen = csText.length();
+        int intPos = 0;
+        while (intPos < intTextLen) {
+            int intBlockPos = (int) (this.lngAddLength % INT_ADD_BLOCK_SIZE);
+            if (intBlockPos == 0 && this.lngAddLength / INT_ADD_BLOCK_SIZE == this.lstAddBlocks.size()) {
+                this.lstAddBlocks.add(new char[INT_ADD_BLOCK_SIZE]);
+            }
+            char[] achBlock = this.lstAddBlocks.get((int) (this.lngAddLength / INT_ADD_BLOCK_SIZE));
+            int intCount = Math.min(intTextLen - intPos, INT_ADD_BLOCK_SIZE - intBlockPos);
+            if (csText instanceof String str) {
+                str.getChars(intPos, intPos + intCount, achBlock, intBlockPos);
+            } else {
+                for (int i = 0; i < intCount; i++) {
+                    achBlock[intBlockPos + i] = csText.charAt(intPos + i);
+                }
+            }
+            intPos += intCount;
+            this.lngAddLength += intCount;
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    private TextSource createAddSource() {
+
+        return new TextSource() {
+            @Override
+            public long length() {
+                return lngAddLength;
+            }
+
+            @Override
+            public char charAt(long lngIndex) {
+                return lstAddBlocks.get((int) (lngIndex / INT_ADD_BLOCK_SIZE))[(int) (lngIndex % INT_ADD_BLOCK_SIZE)];
+            }
+
+            @Override
+            public void getChars(long lngStart, long lngEnd, char[] achDst, int intDstBegin) {
+                long lngPos = lngStart;
+                int intDst = intDstBegin;
+                while (lngPos < lngEnd) {
+                    int intBlockPos = (int) (lngPos % INT_ADD_BLOCK_SIZE);
+                    int intCount = (int) Math.min(lngEnd - lngPos, INT_ADD_BLOCK_SIZE - intBlockPos);
+                    System.arraycopy(lstAddBlocks.get((int) (lngPos / INT_ADD_BLOCK_SIZE)), intBlockPos, achDst, intDst, intCount);
+                    lngPos += intCount;
+                    intDst += intCount;
+                }
+            }
+        };
+    }
+
+    // -------------------------------------------------------------------------------------
+    private void checkWritable() {
+
+        if (this.booReadOnly) {
+            throw new IllegalStateException("PieceTable snapshot is read-only.");
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    private void checkRange(long lngStart, long lngEnd) {
+
+        if (lngStart < 0 || lngEnd > this.lngLength || lngStart > lngEnd) {
+            throw new IndexOutOfBoundsException("start " + lngStart + ", end " + lngEnd + ", length " + this.lngLength);
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Returns index of piece containing offset, or intPieceCount for offset == length.
+    private int findPiece(long lngOffset) {
+
+        if (lngOffset >= this.lngLength) {
+            return this.intPieceCount;
+        }
+        int intLast = this.intPieceLastFound;
+        if (intLast < this.intPieceCount
+                && this.alngPieceOffset[intLast] <= lngOffset
+                && lngOffset < this.alngPieceOffset[intLast] + this.alngPieceLength[intLast]) {
+            return intLast;
+        }
+        int intLow = 0;
+        int intHigh = this.intPieceCount - 1;
+        while (intLow < intHigh) {
+            int intMid = (intLow + intHigh + 1) >>> 1;
+            if (this.alngPieceOffset[intMid] <= lngOffset) {
+                intLow = intMid;
+            } else {
+                intHigh = intMid - 1;
+            }
+        }
+        this.intPieceLastFound = intLow;
+        return intLow;
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Makes sure a piece starts at offset and returns its index.
+    private int splitAt(long lngOffset) {
+
+        int intPiece = this.findPiece(lngOffset);
+        if (intPiece == this.intPieceCount) {
+            return intPiece;
+        }
+        long lngPieceOffset = this.alngPieceOffset[intPiece];
+        if (lngPieceOffset == lngOffset) {
+            return intPiece;
+        }
+        long lngHeadLen = lngOffset - lngPieceOffset;
+        this.insertPieces(intPiece + 1, 1);
+        this.abytPieceSource[intPiece + 1] = this.abytPieceSource[intPiece];
+        this.alngPieceStart[intPiece + 1] = this.alngPieceStart[intPiece] + lngHeadLen;
+        this.alngPieceLength[intPiece + 1] = this.alngPieceLength[intPiece] - lngHeadLen;
+        this.alngPieceOffset[intPiece + 1] = lngOffset;
+        this.alngPieceLength[intPiece] = lngHeadLen;
+        return intPiece + 1;
+    }
+
+    // -------------------------------------------------------------------------------------
+    private void insertPieces(int intIndex, int intCount) {
+
+        int intCountNew = this.intPieceCount + intCount;
+        if (intCountNew > this.alngPieceStart.length) {
+            int intCapacity = Math.max(intCountNew, this.alngPieceStart.length * 2);
+            this.abytPieceSource = Arrays.copyOf(this.abytPieceSource, intCapacity);
+            this.alngPieceStart = Arrays.copyOf(this.alngPieceStart, intCapacity);
+            this.alngPieceLength = Arrays.copyOf(this.alngPieceLength, intCapacity);
+            this.alngPieceOffset = Arrays.copyOf(this.alngPieceOffset, intCapacity);
+        }
+        int intTail = this.intPieceCount - intIndex;
+        if (intTail > 0) {
+            System.arraycopy(this.abytPieceSource, intIndex, this.abytPieceSource, intIndex + intCount, intTail);
+            System.arraycopy(this.alngPieceStart, intIndex, this.alngPieceStart, intIndex + intCount, intTail);
+            System.arraycopy(this.alngPieceLength, intIndex, this.alngPieceLength, intIndex + intCount, intTail);
+            System.arraycopy(this.alngPieceOffset, intIndex, this.alngPieceOffset, intIndex + intCount, intTail);
+        }
+        this.intPieceCount = intCountNew;
+    }
+
+    // -------------------------------------------------------------------------------------
+    private void removePieces(int intIndex, int intCount) {
+
+        if (intCount <= 0) {
+            return;
+        }
+        int intTail = this.intPieceCount - intIndex - intCount;
+        if (intTail > 0) {
+            System.arraycopy(this.abytPieceSource, intIndex + intCount, this.abytPieceSource, intIndex, intTail);
+            System.arraycopy(this.alngPieceStart, intIndex + intCount, this.alngPieceStart, intIndex, intTail);
+            System.arraycopy(this.alngPieceLength, intIndex + intCount, this.alngPieceLength, intIndex, intTail);
+            System.arraycopy(this.alngPieceOffset, intIndex + intCount, this.alngPieceOffset, intIndex, intTail);
+        }
+        this.intPieceCount -= intCount;
+        this.intPieceLastFound = 0;
+    }
+
+    // -------------------------------------------------------------------------------------
+    private void updateOffsets(int intFrom) {
+
+        long lngOffset = (intFrom == 0) ? 0 : this.alngPieceOffset[intFrom - 1] + this.alngPieceLength[intFrom - 1];
+        for (int i = intFrom; i < this.intPieceCount; i++) {
+            this.alngPieceOffset[i] = lngOffset;
+            lngOffset += this.alngPieceLength[i];
+        }
+        if (lngOffset != this.lngLength) {
+            // It should never happen, but ...
+            LOGGER.error("PieceTable length mismatch."
+                    + " PieceCount=" + this.intPieceCount
+                    + " LengthPieces=" + lngOffset
+                    + " Length=" + this.lngLength);
+            this.lngLength = lngOffset;
+        }
+    }
+    // -------------------------------------------------------------------------------------
+}
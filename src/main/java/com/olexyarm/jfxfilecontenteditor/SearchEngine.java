@@ -0,0 +1,609 @@
+/*
+ * Copyright (c) 2024, Oleksandr Yarmolenko. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details.
+ *
+ */
+package com.olexyarm.jfxfilecontenteditor;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Text search compiled once per query and run over document chunks, the document is never copied to String.
+// Algorithm is chosen by pattern:
+// - short literal: scan for first char, then compare;
+// - long literal: Boyer-Moore-Horspool, it skips up to pattern length chars at once;
+// - long periodic literal (like "abababab"): Two-Way, linear time in the worst case where Horspool is quadratic;
+// - several literals: Aho-Corasick automaton, every char of document is read once for all of them;
+// - regular expression: java.util.regex over document view, search is stopped after timeout.
+// Matches are reported from start to end and don't overlap each other.
+// Compiled engine has no mutable state, the same engine can search on several threads.
+public abstract class SearchEngine {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SearchEngine.class);
+
+    private static final int INT_CHUNK_SIZE = 64 * 1024;
+    // Shift of Horspool for shorter patterns is too short to pay for its table lookups.
+    private static final int INT_HORSPOOL_LENGTH_MIN = 8;
+    private static final int INT_HORSPOOL_TABLE_SIZE = 256;
+    // Regular expression is matched against document windows, matches starting in overlap at end
+    // of window are searched again in next window, so only matches longer than overlap could be cut.
+    private static final int INT_REGEX_WINDOW_SIZE = 1024 * 1024 * 1024;
+    private static final int INT_REGEX_WINDOW_OVERLAP = 1024 * 1024;
+    private static final int INT_PATTERNS_CACHED_MAX = 32;
+
+    // Compiled patterns by flags and expression, the same expression is often searched again.
+    private static final Map<String, Pattern> MAP_PATTERNS_CACHED = new LinkedHashMap<String, Pattern>(INT_PATTERNS_CACHED_MAX * 2, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Pattern> entry) {
+            return size() > INT_PATTERNS_CACHED_MAX;
+        }
+    };
+
+    // -------------------------------------------------------------------------------------
+    // Called for every match, returns false to stop searching.
+    public interface MatchHandler {
+
+        boolean match(long lngStart, int intLength);
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Thrown from findAll() when regular expression search runs longer than its timeout.
+    public static class SearchTimeoutException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        public SearchTimeoutException(String strMessage) {
+            super(strMessage);
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Construstors
+    // -------------------------------------------------------------------------------------
+    public static SearchEngine compile(String strFind) {
+
+        if (strFind == null || strFind.isEmpty()) {
+            throw new IllegalArgumentException("Search pattern is empty.");
+        }
+        char[] achFind = strFind.toCharArray();
+        SearchEngine searchEngine;
+        if (achFind.length < INT_HORSPOOL_LENGTH_MIN) {
+            searchEngine = new FirstCharSearchEngine(achFind);
+        } else if (getPeriod(achFind) <= achFind.length / 2) {
+            searchEngine = new TwoWaySearchEngine(achFind);
+        } else {
+            searchEngine = new HorspoolSearchEngine(achFind);
+        }
+        LOGGER.trace("Compiled search pattern."
+                + " Engine=\"" + searchEngine.getName() + "\""
+                + " Length=" + achFind.length);
+        return searchEngine;
+    }
+
+    // -------------------------------------------------------------------------------------
+    public static SearchEngine compile(String[] arrStrFind) {
+
+        if (arrStrFind == null || arrStrFind.length == 0) {
+            throw new IllegalArgumentException("Search patterns are empty.");
+        }
+        if (arrStrFind.length == 1) {
+            return compile(arrStrFind[0]);
+        }
+        for (String strFind : arrStrFind) {
+            if (strFind == null || strFind.isEmpty()) {
+                throw new IllegalArgumentException("Search pattern is empty.");
+            }
+        }
+        return new AhoCorasickSearchEngine(arrStrFind);
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Throws PatternSyntaxException if expression is not valid, lngTimeoutMs 0 means no timeout.
+    public static SearchEngine compileRegex(String strRegex, int intFlags, long lngTimeoutMs) {
+
+        if (strRegex == null || strRegex.isEmpty()) {
+            throw new IllegalArgumentException("Search pattern is empty.");
+        }
+        return new RegexSearchEngine(getPattern(strRegex, intFlags), lngTimeoutMs);
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Methods
+    // -------------------------------------------------------------------------------------
+    // Reports matches starting in [lngFrom, lngTo).
+    public abstract void findAll(PieceTable document, long lngFrom, long lngTo, MatchHandler handler);
+
+    public abstract String getName();
+
+    // Literal match depends only on its own chars, regular expression match could depend on chars around it.
+    public boolean isLiteral() {
+        return true;
+    }
+
+    // -------------------------------------------------------------------------------------
+    public long indexOf(PieceTable document, long lngFrom) {
+
+        final long[] alngFound = {-1};
+        this.findAll(document, lngFrom, Long.MAX_VALUE, new MatchHandler() {
+            @Override
+            public boolean match(long lngStart, int intLength) {
+                alngFound[0] = lngStart;
+                return false;
+            }
+        });
+        return alngFound[0];
+    }
+
+    // -------------------------------------------------------------------------------------
+    public long[] indexOfAll(PieceTable document) {
+
+        final long[][] aalngFound = {new long[16]};
+        final int[] aintCount = {0};
+        this.findAll(document, 0, Long.MAX_VALUE, new MatchHandler() {
+            @Override
+            public boolean match(long lngStart, int intLength) {
+                if (aintCount[0] == aalngFound[0].length) {
+                    aalngFound[0] = Arrays.copyOf(aalngFound[0], aintCount[0] * 2);
+                }
+                aalngFound[0][aintCount[0]++] = lngStart;
+                return true;
+            }
+        });
+        return Arrays.copyOf(aalngFound[0], aintCount[0]);
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Helpers
+    // -------------------------------------------------------------------------------------
+    private static synchronized Pattern getPattern(String strRegex, int intFlags) {
+
+        String strKey = intFlags + ":" + strRegex;
+        Pattern pattern = MAP_PATTERNS_CACHED.get(strKey);
+        if (pattern == null) {
+            pattern = Pattern.compile(strRegex, intFlags);
+            MAP_PATTERNS_CACHED.put(strKey, pattern);
+            LOGGER.trace("Compiled regular expression."
+                    + " Regex=\"" + strRegex + "\""
+                    + " Flags=" + intFlags);
+        }
+        return pattern;
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Smallest period of pattern from prefix function (pattern is a prefix of its period repeated).
+    private static int getPeriod(char[] achFind) {
+
+        int intLen = achFind.length;
+        int[] aintPrefix = new int[intLen];
+        int k = 0;
+        for (int i = 1; i < intLen; i++) {
+            while (k > 0 && achFind[i] != achFind[k]) {
+                k = aintPrefix[k - 1];
+            }
+            if (achFind[i] == achFind[k]) {
+                k++;
+            }
+            aintPrefix[i] = k;
+        }
+        return intLen - aintPrefix[intLen - 1];
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Single literal, document is read by chunks overlapping by pattern length - 1 chars.
+    private abstract static class LiteralSearchEngine extends SearchEngine {
+
+        protected final char[] achFind;
+        protected final int intFindLen;
+
+        private LiteralSearchEngine(char[] achFind) {
+
+            this.achFind = achFind;
+            this.intFindLen = achFind.length;
+        }
+
+        // Returns start of first match in achText[intFrom, intTo), -1 if there is no match.
+        protected abstract int find(char[] achText, int intFrom, int intTo);
+
+        @Override
+        public void findAll(PieceTable document, long lngFrom, long lngTo, MatchHandler handler) {
+
+            long lngLength = document.length();
+            long lngEnd = (lngTo >= lngLength) ? lngLength : Math.min(lngLength, lngTo + this.intFindLen - 1);
+            char[] achBuf = new char[Math.max(INT_CHUNK_SIZE, this.intFindLen * 2)];
+            long lngBufStart = Math.max(0, lngFrom);
+            while (lngEnd - lngBufStart >= this.intFindLen) {
+                long lngBufEnd = Math.min(lngEnd, lngBufStart + achBuf.length);
+                int intCount = (int) (lngBufEnd - lngBufStart);
+                document.getChars(lngBufStart, lngBufEnd, achBuf, 0);
+                int intPos = 0;
+                while (true) {
+                    int intFound = this.find(achBuf, intPos, intCount);
+                    if (intFound < 0) {
+                        break;
+                    }
+                    if (!handler.match(lngBufStart + intFound, this.intFindLen)) {
+                        return;
+                    }
+                    intPos = intFound + this.intFindLen;
+                }
+                if (lngBufEnd == lngEnd) {
+                    break;
+                }
+                // Next chunk starts at first match not complete in this chunk, or after last match.
+                lngBufStart += Math.max(intCount - this.intFindLen + 1, intPos);
+            }
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    private static final class FirstCharSearchEngine extends LiteralSearchEngine {
+
+        private FirstCharSearchEngine(char[] achFind) {
+            super(achFind);
+        }
+
+        @Override
+        public String getName() {
+            return "FirstChar";
+        }
+
+        @Override
+        protected int find(char[] achText, int intFrom, int intTo) {
+
+            char chFirst = this.achFind[0];
+            int intLast = intTo - this.intFindLen;
+            for (int i = intFrom; i <= intLast; i++) {
+                if (achText[i] != chFirst) {
+                    continue;
+                }
+                int j = 1;
+                while (j < this.intFindLen && achText[i + j] == this.achFind[j]) {
+                    j++;
+                }
+                if (j == this.intFindLen) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Shift table is indexed by low byte of char, chars with the same low byte share the smallest shift.
+    private static final class HorspoolSearchEngine extends LiteralSearchEngine {
+
+        private final int[] aintShift;
+
+        private HorspoolSearchEngine(char[] achFind) {
+
+            super(achFind);
+            this.aintShift = new int[INT_HORSPOOL_TABLE_SIZE];
+            Arrays.fill(this.aintShift, this.intFindLen);
+            for (int i = 0; i < this.intFindLen - 1; i++) {
+                this.aintShift[achFind[i] & 0xFF] = this.intFindLen - 1 - i;
+            }
+        }
+
+        @Override
+        public String getName() {
+            return "Horspool";
+        }
+
+        @Override
+        protected int find(char[] achText, int intFrom, int intTo) {
+
+            int intLastIndex = this.intFindLen - 1;
+            char chLast = this.achFind[intLastIndex];
+            int intPos = intFrom;
+            int intPosMax = intTo - this.intFindLen;
+            while (intPos <= intPosMax) {
+                char ch = achText[intPos + intLastIndex];
+                if (ch == chLast) {
+                    int j = 0;
+                    while (j < intLastIndex && achText[intPos + j] == this.achFind[j]) {
+                        j++;
+                    }
+                    if (j == intLastIndex) {
+                        return intPos;
+                    }
+                }
+                intPos += this.aintShift[ch & 0xFF];
+            }
+            return -1;
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Crochemore-Perrin Two-Way: pattern is split at critical factorization, right part is compared
+    // left to right, left part right to left, periodic patterns remember matched prefix.
+    private static final class TwoWaySearchEngine extends LiteralSearchEngine {
+
+        private final int intCritical;
+        private final int intPeriod;
+        private final boolean booPeriodic;
+
+        private TwoWaySearchEngine(char[] achFind) {
+
+            super(achFind);
+            int[] aintPeriod = new int[1];
+            int intSuffix = maxSuffix(achFind, aintPeriod, false);
+            int intPeriodSuffix = aintPeriod[0];
+            int intSuffixReverse = maxSuffix(achFind, aintPeriod, true);
+            int intPeriodReverse = aintPeriod[0];
+            int intCriticalPos;
+            int intPeriodPos;
+            if (intSuffix > intSuffixReverse) {
+                intCriticalPos = intSuffix;
+                intPeriodPos = intPeriodSuffix;
+            } else {
+                intCriticalPos = intSuffixReverse;
+                intPeriodPos = intPeriodReverse;
+            }
+            boolean booPeriodicPos = (intPeriodPos + intCriticalPos + 1 <= this.intFindLen);
+            for (int i = 0; booPeriodicPos && i <= intCriticalPos; i++) {
+                booPeriodicPos = (achFind[i] == achFind[i + intPeriodPos]);
+            }
+            this.intCritical = intCriticalPos;
+            this.booPeriodic = booPeriodicPos;
+            this.intPeriod = booPeriodicPos ? intPeriodPos : Math.max(intCriticalPos + 1, this.intFindLen - intCriticalPos - 1) + 1;
+        }
+
+        @Override
+        public String getName() {
+            return "TwoWay";
+        }
+
+        @Override
+        protected int find(char[] achText, int intFrom, int intTo) {
+
+            int intPos = intFrom;
+            int intPosMax = intTo - this.intFindLen;
+            int intMemory = -1;
+            while (intPos <= intPosMax) {
+                int i = this.booPeriodic ? Math.max(this.intCritical, intMemory) + 1 : this.intCritical + 1;
+                while (i < this.intFindLen && this.achFind[i] == achText[intPos + i]) {
+                    i++;
+                }
+                if (i < this.intFindLen) {
+                    intPos += i - this.intCritical;
+                    intMemory = -1;
+                    continue;
+                }
+                i = this.intCritical;
+                int intLow = this.booPeriodic ? intMemory : -1;
+                while (i > intLow && this.achFind[i] == achText[intPos + i]) {
+                    i--;
+                }
+                if (i <= intLow) {
+                    return intPos;
+                }
+                intPos += this.intPeriod;
+                if (this.booPeriodic) {
+                    intMemory = this.intFindLen - this.intPeriod - 1;
+                }
+            }
+            return -1;
+        }
+
+        // Returns start - 1 of maximal suffix for char order (reversed order if booReverse), period in aintPeriod[0].
+        private static int maxSuffix(char[] achFind, int[] aintPeriod, boolean booReverse) {
+
+            int intLen = achFind.length;
+            int intSuffix = -1;
+            int j = 0;
+            int k = 1;
+            int intPeriodSuffix = 1;
+            while (j + k < intLen) {
+                char chA = achFind[j + k];
+                char chB = achFind[intSuffix + k];
+                if (booReverse ? chA > chB : chA < chB) {
+                    j += k;
+                    k = 1;
+                    intPeriodSuffix = j - intSuffix;
+                } else if (chA == chB) {
+                    if (k != intPeriodSuffix) {
+                        k++;
+                    } else {
+                        j += intPeriodSuffix;
+                        k = 1;
+                    }
+                } else {
+                    intSuffix = j;
+                    j = intSuffix + 1;
+                    k = 1;
+                    intPeriodSuffix = 1;
+                }
+            }
+            aintPeriod[0] = intPeriodSuffix;
+            return intSuffix;
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Automaton over chars used in patterns (other chars are one class), document is read once
+    // without overlapping chunks because state of automaton goes from chunk to chunk.
+    // Match is reported at its end, the longest pattern ending there wins.
+    private static final class AhoCorasickSearchEngine extends SearchEngine {
+
+        private final int intPatternCount;
+        private final int intLengthMax;
+        private final char[] achCharClass;
+        private final int intClassCount;
+        private final int[] aintNext;
+        private final int[] aintMatchLength;
+
+        private AhoCorasickSearchEngine(String[] arrStrFind) {
+
+            this.intPatternCount = arrStrFind.length;
+            this.achCharClass = new char[Character.MAX_VALUE + 1];
+            int intClasses = 1;
+            int intLengthTotal = 0;
+            int intLengthMaxAll = 0;
+            for (String strFind : arrStrFind) {
+                intLengthTotal += strFind.length();
+                intLengthMaxAll = Math.max(intLengthMaxAll, strFind.length());
+                for (int i = 0; i < strFind.length(); i++) {
+                    char ch = strFind.charAt(i);
+                    if (this.achCharClass[ch] == 0) {
+                        this.achCharClass[ch] = (char) intClasses++;
+                    }
+                }
+            }
+            this.intClassCount = intClasses;
+            this.intLengthMax = intLengthMaxAll;
+            int intStatesMax = intLengthTotal + 1;
+            int[] aintGoto = new int[intStatesMax * intClasses];
+            Arrays.fill(aintGoto, -1);
+            int[] aintLength = new int[intStatesMax];
+            int intStates = 1;
+            for (String strFind : arrStrFind) {
+                int intState = 0;
+                for (int i = 0; i < strFind.length(); i++) {
+                    int intIndex = intState * intClasses + this.achCharClass[strFind.charAt(i)];
+                    if (aintGoto[intIndex] < 0) {
+                        aintGoto[intIndex] = intStates++;
+                    }
+                    intState = aintGoto[intIndex];
+                }
+                aintLength[intState] = Math.max(aintLength[intState], strFind.length());
+            }
+            // Failure links are resolved to full transition table by breadth first walk.
+            int[] aintFail = new int[intStates];
+            ArrayDeque<Integer> deqStates = new ArrayDeque<>();
+            for (int c = 0; c < intClasses; c++) {
+                int intChild = aintGoto[c];
+                if (intChild < 0) {
+                    aintGoto[c] = 0;
+                } else {
+                    aintFail[intChild] = 0;
+                    deqStates.add(intChild);
+                }
+            }
+            while (!deqStates.isEmpty()) {
+                int intState = deqStates.poll();
+                int intFail = aintFail[intState];
+                aintLength[intState] = Math.max(aintLength[intState], aintLength[intFail]);
+                for (int c = 0; c < intClasses; c++) {
+                    int intIndex = intState * intClasses + c;
+                    int intChild = aintGoto[intIndex];
+                    if (intChild < 0) {
+                        aintGoto[intIndex] = aintGoto[intFail * intClasses + c];
+                    } else {
+                        aintFail[intChild] = aintGoto[intFail * intClasses + c];
+                        deqStates.add(intChild);
+                    }
+                }
+            }
+            this.aintNext = Arrays.copyOf(aintGoto, intStates * intClasses);
+            this.aintMatchLength = Arrays.copyOf(aintLength, intStates);
+        }
+
+        @Override
+        public String getName() {
+            return "AhoCorasick(" + this.intPatternCount + ")";
+        }
+
+        @Override
+        public void findAll(PieceTable document, long lngFrom, long lngTo, MatchHandler handler) {
+
+            long lngLength = document.length();
+            long lngEnd = (lngTo >= lngLength) ? lngLength : Math.min(lngLength, lngTo + this.intLengthMax - 1);
+            char[] achBuf = new char[INT_CHUNK_SIZE];
+            long lngPos = Math.max(0, lngFrom);
+            // Automaton starts again after every match, so matches don't overlap.
+            int intState = 0;
+            while (lngPos < lngEnd) {
+                int intCount = (int) Math.min(achBuf.length, lngEnd - lngPos);
+                document.getChars(lngPos, lngPos + intCount, achBuf, 0);
+                for (int i = 0; i < intCount; i++) {
+                    intState = this.aintNext[intState * this.intClassCount + this.achCharClass[achBuf[i]]];
+                    int intMatchLength = this.aintMatchLength[intState];
+                    if (intMatchLength == 0) {
+                        continue;
+                    }
+                    long lngStart = lngPos + i + 1 - intMatchLength;
+                    if (lngStart >= lngTo) {
+                        return;
+                    }
+                    if (!handler.match(lngStart, intMatchLength)) {
+                        return;
+                    }
+                    intState = 0;
+                }
+                lngPos += intCount;
+            }
+        }
+    }
+    // -------------------------------------------------------------------------------------
+    // Zero length matches are reported too, Matcher moves to next char after them.
+    private static final class RegexSearchEngine extends SearchEngine {
+
+        private final Pattern pattern;
+        private final long lngTimeoutMs;
+
+        private RegexSearchEngine(Pattern pattern, long lngTimeoutMs) {
+
+            this.pattern = pattern;
+            this.lngTimeoutMs = lngTimeoutMs;
+        }
+
+        @Override
+        public String getName() {
+            return "Regex";
+        }
+
+        @Override
+        public boolean isLiteral() {
+            return false;
+        }
+
+        @Override
+        public void findAll(PieceTable document, long lngFrom, long lngTo, MatchHandler handler) {
+
+            long lngDeadlineNanos = (this.lngTimeoutMs > 0) ? System.nanoTime() + this.lngTimeoutMs * 1000000 : 0;
+            long lngLength = document.length();
+            long lngBase = Math.max(0, lngFrom);
+            while (lngBase < lngLength) {
+                int intWindowLen = (int) Math.min(INT_REGEX_WINDOW_SIZE, lngLength - lngBase);
+                boolean booLast = (lngBase + intWindowLen == lngLength);
+                long lngWindowLimit = booLast ? Long.MAX_VALUE : lngBase + intWindowLen - INT_REGEX_WINDOW_OVERLAP;
+                long lngBaseNext = lngWindowLimit;
+                Matcher matcher = this.pattern.matcher(new DocumentCharSequence(document, lngBase, intWindowLen, lngDeadlineNanos));
+                while (matcher.find()) {
+                    long lngStart = lngBase + matcher.start();
+                    if (lngStart >= lngTo) {
+                        return;
+                    }
+                    if (lngStart >= lngWindowLimit) {
+                        break;
+                    }
+                    int intLength = matcher.end() - matcher.start();
+                    if (!handler.match(lngStart, intLength)) {
+                        return;
+                    }
+                    lngBaseNext = Math.max(lngWindowLimit, lngStart + intLength);
+                }
+                if (booLast) {
+                    return;
+                }
+                lngBase = lngBaseNext;
+            }
+        }
+    }
+    // -------------------------------------------------------------------------------------
+}
@@ -150,6 +150,11 @@ public class Settings {
     public static final int INT_WINDOW_ABOUT_WIDTH = 350;
     public static final int INT_WINDOW_ABOUT_HIGH = 300;
 
+    // -------------------------------------------------------------------------------------
+    // Window Find in Files
+    public static final int INT_WINDOW_FIND_FILES_WIDTH = 800;
+    public static final int INT_WINDOW_FIND_FILES_HIGH = 500;
+
     // -------------------------------------------------------------------------------------
     // Window Settings
     private static final String STR_PROP_NAME_WINDOW_SETTINGS_WIDTH = "window_setttings_widh";
@@ -213,6 +218,16 @@ public class Settings {
             + File.separator + STR_JFX_EDITOR_SETTINGS_DIRECTORY
             + File.separator + STR_PROP_NAME_FILE_NAME_OPEN_TABS;
     // -------------------------------------------------------------------------------------
+    private static final String STR_FIND_FILES_INDEX_DIR_NAME = "FindIndex";
+    public static final String STR_FIND_FILES_INDEX_DIR_PATH = Settings.STR_DIRECTORY_USER_HOME_PATH
+            + File.separator + STR_JFX_EDITOR_SETTINGS_DIRECTORY
+            + File.separator + STR_FIND_FILES_INDEX_DIR_NAME;
+    // -------------------------------------------------------------------------------------
+    private static final String STR_EDIT_JOURNAL_DIR_NAME = "EditJournal";
+    public static final String STR_EDIT_JOURNAL_DIR_PATH = Settings.STR_DIRECTORY_USER_HOME_PATH
+            + File.separator + STR_JFX_EDITOR_SETTINGS_DIRECTORY
+            + File.separator + STR_EDIT_JOURNAL_DIR_NAME;
+    // -------------------------------------------------------------------------------------
     private static final String STR_PROP_NAME_LAST_OPENED_DIR = "Last-opened-dir";
     private static String STR_SETTINGS_LAST_OPENED_DIR;
 
@@ -252,6 +267,66 @@ public class Settings {
     private static final int INT_TABS_COUNT_MAX_DEFAULT = 3;
     public static int INT_TABS_COUNT_MAX;
 
+    // -------------------------------------------------------------------------------------
+    // Files bigger than this are shown in virtualized view instead of TextArea.
+    private static final String STR_PROP_NAME_VIRTUAL_VIEW_FILE_SIZE_KB = "VirtualView_FileSize_kb";
+    private static final int INT_VIRTUAL_VIEW_FILE_SIZE_KB_MAX = 1024 * 1024;
+    private static final int INT_VIRTUAL_VIEW_FILE_SIZE_KB_DEFAULT = 1024;
+    public static int INT_VIRTUAL_VIEW_FILE_SIZE_KB = INT_VIRTUAL_VIEW_FILE_SIZE_KB_DEFAULT;
+
+    // -------------------------------------------------------------------------------------
+    // Number of threads used to load big files, 1 means loading by one thread.
+    private static final String STR_PROP_NAME_LOAD_THREADS = "Load_Threads";
+    private static final int INT_LOAD_THREADS_MAX = 256;
+    private static final int INT_LOAD_THREADS_DEFAULT = Math.min(Runtime.getRuntime().availableProcessors(), INT_LOAD_THREADS_MAX);
+    public static int INT_LOAD_THREADS = INT_LOAD_THREADS_DEFAULT;
+
+    // -------------------------------------------------------------------------------------
+    // Regular expression search is stopped after this time, some expressions could backtrack for hours.
+    private static final String STR_PROP_NAME_REGEX_TIMEOUT_SEC = "Regex_Timeout_sec";
+    private static final int INT_REGEX_TIMEOUT_SEC_MAX = 3600;
+    private static final int INT_REGEX_TIMEOUT_SEC_DEFAULT = 10;
+    public static int INT_REGEX_TIMEOUT_SEC = INT_REGEX_TIMEOUT_SEC_DEFAULT;
+
+    // -------------------------------------------------------------------------------------
+    // Memory of undo history of one tab, oldest edits are dropped when it's used.
+    private static final String STR_PROP_NAME_UNDO_MEMORY_MB = "Undo_Memory_mb";
+    private static final int INT_UNDO_MEMORY_MB_MAX = 4096;
+    private static final int INT_UNDO_MEMORY_MB_DEFAULT = 64;
+    public static int INT_UNDO_MEMORY_MB = INT_UNDO_MEMORY_MB_DEFAULT;
+
+    // -------------------------------------------------------------------------------------
+    // Restored tab next to selected one is read ahead to file system cache while editor is idle.
+    private static final String STR_PROP_NAME_TABS_PREFETCH = "Tabs_Prefetch";
+    private static final boolean BOO_TABS_PREFETCH_DEFAULT = true;
+    public static boolean BOO_TABS_PREFETCH = BOO_TABS_PREFETCH_DEFAULT;
+
+    // -------------------------------------------------------------------------------------
+    // File is saved to temp file which replaces file when it's written completely,
+    // otherwise file is overwritten in place (backup is copied before).
+    private static final String STR_PROP_NAME_SAVE_ATOMIC = "Save_Atomic";
+    private static final boolean BOO_SAVE_ATOMIC_DEFAULT = true;
+    public static boolean BOO_SAVE_ATOMIC = BOO_SAVE_ATOMIC_DEFAULT;
+
+    // -------------------------------------------------------------------------------------
+    // Charset of opened file is guessed from its bytes, charset selected by user is used as is.
+    private static final String STR_PROP_NAME_CHARSET_DETECT = "Charset_Detect";
+    private static final boolean BOO_CHARSET_DETECT_DEFAULT = true;
+    public static boolean BOO_CHARSET_DETECT = BOO_CHARSET_DETECT_DEFAULT;
+
+    // -------------------------------------------------------------------------------------
+    // Find in Folder reads only files which could contain text by trigram index of folder, index is
+    // kept in settings directory and updated after search.
+    private static final String STR_PROP_NAME_FIND_FILES_INDEX = "Find_Files_Index";
+    private static final boolean BOO_FIND_FILES_INDEX_DEFAULT = false;
+    public static boolean BOO_FIND_FILES_INDEX = BOO_FIND_FILES_INDEX_DEFAULT;
+
+    // -------------------------------------------------------------------------------------
+    // Edits not saved yet are appended to journal file, they are applied again when editor is started after crash.
+    private static final String STR_PROP_NAME_EDIT_JOURNAL = "Edit_Journal";
+    private static final boolean BOO_EDIT_JOURNAL_DEFAULT = true;
+    public static boolean BOO_EDIT_JOURNAL = BOO_EDIT_JOURNAL_DEFAULT;
+
     // -------------------------------------------------------------------------------------
     private static final String STR_PROP_NAME_LOG_LEVEL = "Log_level";
     private static final String STR_LOG_LEVEL_DEFAULT = "I";
@@ -331,6 +406,24 @@ public class Settings {
 
             INT_TABS_COUNT_MAX = getPropValueInt(STR_PROP_NAME_TABS_MAX, "" + INT_TABS_COUNT_MAX_DEFAULT, INT_TABS_COUNT_MAX_MAX);
 
+            INT_VIRTUAL_VIEW_FILE_SIZE_KB = getPropValueInt(STR_PROP_NAME_VIRTUAL_VIEW_FILE_SIZE_KB, "" + INT_VIRTUAL_VIEW_FILE_SIZE_KB_DEFAULT, INT_VIRTUAL_VIEW_FILE_SIZE_KB_MAX);
+
+            INT_LOAD_THREADS = getPropValueInt(STR_PROP_NAME_LOAD_THREADS, "" + INT_LOAD_THREADS_DEFAULT, INT_LOAD_THREADS_MAX);
+
+            INT_REGEX_TIMEOUT_SEC = getPropValueInt(STR_PROP_NAME_REGEX_TIMEOUT_SEC, "" + INT_REGEX_TIMEOUT_SEC_DEFAULT, INT_REGEX_TIMEOUT_SEC_MAX);
+
+            INT_UNDO_MEMORY_MB = getPropValueInt(STR_PROP_NAME_UNDO_MEMORY_MB, "" + INT_UNDO_MEMORY_MB_DEFAULT, INT_UNDO_MEMORY_MB_MAX);
+
+            BOO_TABS_PREFETCH = getPropValueBoolean(STR_PROP_NAME_TABS_PREFETCH, BOO_TABS_PREFETCH_DEFAULT ? "Y" : "N");
+
+            BOO_SAVE_ATOMIC = getPropValueBoolean(STR_PROP_NAME_SAVE_ATOMIC, BOO_SAVE_ATOMIC_DEFAULT ? "Y" : "N");
+
+            BOO_CHARSET_DETECT = getPropValueBoolean(STR_PROP_NAME_CHARSET_DETECT, BOO_CHARSET_DETECT_DEFAULT ? "Y" : "N");
+
+            BOO_FIND_FILES_INDEX = getPropValueBoolean(STR_PROP_NAME_FIND_FILES_INDEX, BOO_FIND_FILES_INDEX_DEFAULT ? "Y" : "N");
+
+            BOO_EDIT_JOURNAL = getPropValueBoolean(STR_PROP_NAME_EDIT_JOURNAL, BOO_EDIT_JOURNAL_DEFAULT ? "Y" : "N");
+
             strPropValue = prop.getProperty(STR_PROP_NAME_LOG_LEVEL);
             if (strPropValue == null) {
                 LOGGER.trace("Could not find property \"" + STR_PROP_NAME_LOG_LEVEL + "\"");
@@ -439,6 +532,24 @@ public class Settings {
         }
         prop.setProperty(STR_PROP_NAME_TABS_MAX, "" + INT_TABS_COUNT_MAX);
 
+        prop.setProperty(STR_PROP_NAME_VIRTUAL_VIEW_FILE_SIZE_KB, "" + INT_VIRTUAL_VIEW_FILE_SIZE_KB);
+
+        prop.setProperty(STR_PROP_NAME_LOAD_THREADS, "" + INT_LOAD_THREADS);
+
+        prop.setProperty(STR_PROP_NAME_REGEX_TIMEOUT_SEC, "" + INT_REGEX_TIMEOUT_SEC);
+
+        prop.setProperty(STR_PROP_NAME_UNDO_MEMORY_MB, "" + INT_UNDO_MEMORY_MB);
+
+        prop.setProperty(STR_PROP_NAME_TABS_PREFETCH, BOO_TABS_PREFETCH ? "Y" : "N");
+
+        prop.setProperty(STR_PROP_NAME_SAVE_ATOMIC, BOO_SAVE_ATOMIC ? "Y" : "N");
+
+        prop.setProperty(STR_PROP_NAME_CHARSET_DETECT, BOO_CHARSET_DETECT ? "Y" : "N");
+
+        prop.setProperty(STR_PROP_NAME_FIND_FILES_INDEX, BOO_FIND_FILES_INDEX ? "Y" : "N");
+
+        prop.setProperty(STR_PROP_NAME_EDIT_JOURNAL, BOO_EDIT_JOURNAL ? "Y" : "N");
+
         if (STR_FONT_FAMILY_CURRENT == null) {
             STR_FONT_FAMILY_CURRENT = STR_FONT_FAMILY_OS_DEFAULT;
         }
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2024, Oleksandr Yarmolenko. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details.
+ *
+ */
+package com.olexyarm.jfxfilecontenteditor;
+
+// Read-only char buffer addressed by long offsets.
+// Used as the original (file content) buffer of PieceTable.
+public interface TextSource {
+
+    long length();
+
+    char charAt(long lngIndex);
+
+    // Copy chars from range [lngStart, lngEnd) to achDst starting at intDstBegin.
+    void getChars(long lngStart, long lngEnd, char[] achDst, int intDstBegin);
+
+    // Returns source with the same chars which can be read on other thread at the same time as this one.
+    // Immutable sources return themselves.
+    default TextSource newReader() {
+        return this;
+    }
+
+    // -------------------------------------------------------------------------------------
+    public static TextSource of(CharSequence cs) {
+
+        final CharSequence csSource = (cs == null) ? "" : cs;
+        return new TextSource() {
+            @Override
+            public long length() {
+                return csSource.length();
+            }
+
+            @Override
+            public char charAt(long lngIndex) {
+                return csSource.charAt((int) lngIndex);
+            }
+
+            @Override
+            public void getChars(long lngStart, long lngEnd, char[] achDst, int intDstBegin) {
+                int intStart = (int) lngStart;
+                int intEnd = (int) lngEnd;
+                if (csSource instanceof String str) {
+                    str.getChars(intStart, intEnd, achDst, intDstBegin);
+                } else if (csSource instanceof StringBuilder sb) {
+                    sb.getChars(intStart, intEnd, achDst, intDstBegin);
+                } else {
+                    for (int i = intStart; i < intEnd; i++) {
+                        achDst[intDstBegin++] = csSource.charAt(i);
+                    }
+                }
+            }
+        };
+    }
+    // -------------------------------------------------------------------------------------
+}
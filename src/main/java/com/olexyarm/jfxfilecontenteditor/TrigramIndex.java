@@ -0,0 +1,611 @@
+/*
+ * Copyright (c) 2024, Oleksandr Yarmolenko. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details.
+ *
+ */
+package com.olexyarm.jfxfilecontenteditor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Trigram filters of files of one folder tree, kept in file under settings directory, so repeated
+// searches in the same folder read only files which could contain searched text.
+// Every text file has Bloom filter of its trigrams (sequences of 3 bytes): bit set where two bits are set
+// for every trigram. File could contain text only if bits of all trigrams of text are set.
+// Filters are made only for files searched in bytes (ASCII compatible charsets), binary files are marked
+// and never searched, other files are always searched, as well as all files for regular expressions.
+// Index file is header, filters, table of files (path relative to folder, size, modified time, charset,
+// filter position) and position of table at end. Table is read to memory, filters are read from mapped file.
+// Index is updated after search: files with other size or time are read again, filters of other files
+// are copied from old index file.
+public class TrigramIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TrigramIndex.class);
+
+    private static final int INT_MAGIC = 0x4A465449;
+    private static final int INT_VERSION = 1;
+    private static final int INT_HEADER_SIZE = 8;
+    private static final int INT_TRAILER_SIZE = 12;
+    private static final String STR_INDEX_FILE_EXT = ".idx";
+    private static final String STR_INDEX_FILE_TEMP_EXT = ".tmp";
+
+    private static final byte BYTE_KIND_BINARY = 0;
+    private static final byte BYTE_KIND_FILTERED = 1;
+    private static final byte BYTE_KIND_UNFILTERED = 2;
+
+    private static final int INT_TRIGRAMS = 1 << 24;
+    // About 15% of bits of filter are set, random trigram passes it with probability 2%.
+    private static final int INT_FILTER_BITS_PER_TRIGRAM = 12;
+    private static final int INT_FILTER_BITS_MIN = 512;
+    // Files with more trigrams would have filter passing almost everything, they are always searched.
+    private static final int INT_FILTER_BITS_MAX = 1 << 20;
+    private static final int INT_SCAN_CHUNK_SIZE = 64 * 1024;
+    private static final int INT_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    // Query of these charsets is never found, chars of query are not in charset.
+    private static final long[] ALNG_HASHES_NOT_ENCODABLE = new long[0];
+
+    private static final Map<Path, TrigramIndex> MAP_INDEXES_LOADED = new HashMap<>();
+    private static final Set<Path> SET_ROOTS_UPDATING = new HashSet<>();
+
+    private final Path pathRoot;
+    private final Path pathIndexFile;
+    private final FileTime fileTimeIndex;
+    private final Map<String, Entry> mapEntries;
+    private final MappedFileWindow mappedFileWindow;
+
+    // -------------------------------------------------------------------------------------
+    private static class Entry {
+
+        private final long lngSize;
+        private final long lngTime;
+        private final byte byteKind;
+        private final String strCharsetName;
+        private final int intFilterBits;
+        private long lngFilterPos;
+
+        private Entry(long lngSize, long lngTime, byte byteKind, String strCharsetName, int intFilterBits, long lngFilterPos) {
+
+            this.lngSize = lngSize;
+            this.lngTime = lngTime;
+            this.byteKind = byteKind;
+            this.strCharsetName = strCharsetName;
+            this.intFilterBits = intFilterBits;
+            this.lngFilterPos = lngFilterPos;
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    // File found while folder is walked for update.
+    private static class FileFound {
+
+        private final String strKey;
+        private final Path pathFile;
+        private final long lngSize;
+        private final long lngTime;
+
+        private FileFound(String strKey, Path pathFile, long lngSize, long lngTime) {
+
+            this.strKey = strKey;
+            this.pathFile = pathFile;
+            this.lngSize = lngSize;
+            this.lngTime = lngTime;
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Trigrams of one search, used by thread walking folder only.
+    public class Query {
+
+        private final String strFind;
+        private final boolean booRegex;
+        private final Map<String, long[]> mapHashes = new HashMap<>();
+
+        private Query(String strFind, boolean booRegex) {
+
+            this.strFind = strFind;
+            this.booRegex = booRegex;
+        }
+
+        // ---------------------------------------------------------------------------------
+        // Returns true if file could contain text, files not in index or changed after it was written
+        // could contain anything.
+        public boolean mayContain(Path pathFile, BasicFileAttributes attrs) {
+
+            Entry entry = mapEntries.get(getKey(pathFile));
+            if (entry == null || entry.lngSize != attrs.size() || entry.lngTime != attrs.lastModifiedTime().toMillis()) {
+                return true;
+            }
+            if (entry.byteKind == BYTE_KIND_BINARY) {
+                return false;
+            }
+            if (this.booRegex || entry.byteKind != BYTE_KIND_FILTERED) {
+                return true;
+            }
+            long[] alngHashes = this.getHashes(entry.strCharsetName);
+            if (alngHashes == ALNG_HASHES_NOT_ENCODABLE) {
+                return false;
+            }
+            if (alngHashes.length == 0) {
+                return true;
+            }
+            try {
+                ByteBuffer byteBuffer = mappedFileWindow.getBuffer(entry.lngFilterPos, entry.intFilterBits / 8);
+                int intMask = entry.intFilterBits - 1;
+                for (long lngHash : alngHashes) {
+                    if (!isBitSet(byteBuffer, (int) lngHash & intMask) || !isBitSet(byteBuffer, (int) (lngHash >>> 32) & intMask)) {
+                        return false;
+                    }
+                }
+                return true;
+            } catch (IOException | RuntimeException ex) {
+                LOGGER.debug("Could not read trigram filter."
+                        + " pathFile=\"" + pathFile + "\""
+                        + " Exception=\"" + ex.toString() + "\"");
+                return true;
+            }
+        }
+
+        // ---------------------------------------------------------------------------------
+        // Text is searched in bytes encoded with charset of file, so trigrams depend on charset.
+        private long[] getHashes(String strCharsetName) {
+
+            long[] alngHashes = this.mapHashes.get(strCharsetName);
+            if (alngHashes != null) {
+                return alngHashes;
+            }
+            Charset charset = Charset.forName(strCharsetName);
+            if (!charset.newEncoder().canEncode(this.strFind)) {
+                alngHashes = ALNG_HASHES_NOT_ENCODABLE;
+            } else {
+                byte[] abyteFind = this.strFind.getBytes(charset);
+                Set<Integer> setTrigrams = new HashSet<>();
+                for (int i = 2; i < abyteFind.length; i++) {
+                    setTrigrams.add(((abyteFind[i - 2] & 0xFF) << 16) | ((abyteFind[i - 1] & 0xFF) << 8) | (abyteFind[i] & 0xFF));
+                }
+                alngHashes = new long[setTrigrams.size()];
+                int i = 0;
+                for (int intTrigram : setTrigrams) {
+                    alngHashes[i++] = hash(intTrigram);
+                }
+            }
+            this.mapHashes.put(strCharsetName, alngHashes);
+            return alngHashes;
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Construstors
+    // -------------------------------------------------------------------------------------
+    private TrigramIndex(Path pathRoot, Path pathIndexFile, FileTime fileTimeIndex, Map<String, Entry> mapEntries, MappedFileWindow mappedFileWindow) {
+
+        this.pathRoot = pathRoot;
+        this.pathIndexFile = pathIndexFile;
+        this.fileTimeIndex = fileTimeIndex;
+        this.mapEntries = mapEntries;
+        this.mappedFileWindow = mappedFileWindow;
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Returns index of folder, it's empty if index file does not exist or was written with other charset settings.
+    public static TrigramIndex get(Path pathRoot, Charset charsetDefault, boolean booCharsetDetect) {
+
+        Path pathIndexFile = getIndexFilePath(pathRoot);
+        FileTime fileTimeIndex;
+        try {
+            fileTimeIndex = Files.getLastModifiedTime(pathIndexFile);
+        } catch (IOException ex) {
+            fileTimeIndex = null;
+        }
+        synchronized (MAP_INDEXES_LOADED) {
+            TrigramIndex trigramIndex = MAP_INDEXES_LOADED.get(pathRoot);
+            if (trigramIndex != null && Objects.equals(trigramIndex.fileTimeIndex, fileTimeIndex)) {
+                return trigramIndex;
+            }
+            if (trigramIndex != null && trigramIndex.mappedFileWindow != null) {
+                // Query still reading old index gets IOException and searches file.
+                trigramIndex.mappedFileWindow.close();
+            }
+            trigramIndex = load(pathRoot, pathIndexFile, fileTimeIndex, charsetDefault, booCharsetDetect);
+            MAP_INDEXES_LOADED.put(pathRoot, trigramIndex);
+            return trigramIndex;
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Methods
+    // -------------------------------------------------------------------------------------
+    // Regular expressions are not filtered, query of them passes every text file.
+    public Query newQuery(String strFind, boolean booRegex) {
+
+        return new Query(strFind, booRegex);
+    }
+
+    public int getFileCount() {
+        return this.mapEntries.size();
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Reads files changed since index was written and writes new index file on background.
+    // Only one update of folder runs at once, update requested while it's running is ignored.
+    public static void update(final Path pathRoot, final Charset charsetDefault, final boolean booCharsetDetect) {
+
+        synchronized (SET_ROOTS_UPDATING) {
+            if (!SET_ROOTS_UPDATING.add(pathRoot)) {
+                return;
+            }
+        }
+        EditorIoScheduler.executeIo(null, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    get(pathRoot, charsetDefault, booCharsetDetect).write(charsetDefault, booCharsetDetect);
+                } catch (IOException | InterruptedException ex) {
+                    LOGGER.error("Could not update trigram index."
+                            + " pathRoot=\"" + pathRoot + "\""
+                            + " Exception=\"" + ex.toString() + "\"");
+                } finally {
+                    synchronized (SET_ROOTS_UPDATING) {
+                        SET_ROOTS_UPDATING.remove(pathRoot);
+                    }
+                }
+            }
+        });
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Helpers
+    // -------------------------------------------------------------------------------------
+    private static TrigramIndex load(Path pathRoot, Path pathIndexFile, FileTime fileTimeIndex, Charset charsetDefault, boolean booCharsetDetect) {
+
+        Map<String, Entry> mapEntries = new HashMap<>();
+        if (fileTimeIndex == null) {
+            return new TrigramIndex(pathRoot, pathIndexFile, null, mapEntries, null);
+        }
+        long lngTimeStart = System.currentTimeMillis();
+        try (FileChannel fileChannel = FileChannel.open(pathIndexFile, StandardOpenOption.READ)) {
+            long lngSize = fileChannel.size();
+            if (lngSize < INT_HEADER_SIZE + INT_TRAILER_SIZE) {
+                throw new IOException("Index file is too short.");
+            }
+            ByteBuffer byteBuffer = ByteBuffer.allocate(INT_TRAILER_SIZE);
+            fileChannel.read(byteBuffer, lngSize - INT_TRAILER_SIZE);
+            long lngTablePos = byteBuffer.getLong(0);
+            if (byteBuffer.getInt(8) != INT_MAGIC || lngTablePos < INT_HEADER_SIZE || lngTablePos > lngSize - INT_TRAILER_SIZE) {
+                throw new IOException("Index file is not complete.");
+            }
+            fileChannel.position(lngTablePos);
+            DataInputStream dis = new DataInputStream(new BufferedInputStream(Channels.newInputStream(fileChannel)));
+            String strRoot = dis.readUTF();
+            String strCharsetDefault = dis.readUTF();
+            boolean booDetect = dis.readBoolean();
+            if (!strRoot.equals(pathRoot.toString()) || !strCharsetDefault.equals(charsetDefault.name()) || booDetect != booCharsetDetect) {
+                LOGGER.debug("Trigram index was written for other folder or charset."
+                        + " Root=\"" + strRoot + "\""
+                        + " CharsetDefault=\"" + strCharsetDefault + "\""
+                        + " CharsetDetect=" + booDetect
+                        + " pathIndexFile=\"" + pathIndexFile + "\"");
+                return new TrigramIndex(pathRoot, pathIndexFile, fileTimeIndex, mapEntries, null);
+            }
+            int intCount = dis.readInt();
+            for (int i = 0; i < intCount; i++) {
+                String strKey = dis.readUTF();
+                mapEntries.put(strKey, new Entry(dis.readLong(), dis.readLong(), dis.readByte(), dis.readUTF(), dis.readInt(), dis.readLong()));
+            }
+        } catch (IOException ex) {
+            LOGGER.error("Could not read trigram index."
+                    + " pathIndexFile=\"" + pathIndexFile + "\""
+                    + " IOException=\"" + ex.toString() + "\"");
+            return new TrigramIndex(pathRoot, pathIndexFile, fileTimeIndex, new HashMap<>(), null);
+        }
+        MappedFileWindow mappedFileWindow;
+        try {
+            mappedFileWindow = new MappedFileWindow(pathIndexFile);
+        } catch (IOException ex) {
+            LOGGER.error("Could not map trigram index."
+                    + " pathIndexFile=\"" + pathIndexFile + "\""
+                    + " IOException=\"" + ex.toString() + "\"");
+            return new TrigramIndex(pathRoot, pathIndexFile, fileTimeIndex, new HashMap<>(), null);
+        }
+        LOGGER.debug("Loaded trigram index."
+                + " Files=" + mapEntries.size()
+                + " Time=" + (System.currentTimeMillis() - lngTimeStart)
+                + " pathIndexFile=\"" + pathIndexFile + "\"");
+        return new TrigramIndex(pathRoot, pathIndexFile, fileTimeIndex, mapEntries, mappedFileWindow);
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Walks folder, filters of files changed since this index was written are made on CPU threads
+    // and appended to new index file, filters of other files are copied from this index file.
+    private void write(Charset charsetDefault, boolean booCharsetDetect) throws IOException, InterruptedException {
+
+        long lngTimeStart = System.currentTimeMillis();
+        final List<FileFound> lstFilesFound = new ArrayList<>();
+        Files.walkFileTree(this.pathRoot, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path pathDir, BasicFileAttributes attrs) {
+                if (FileSearch.isFolderSkipped(pathDir, pathRoot)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path pathFile, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile()) {
+                    lstFilesFound.add(new FileFound(getKey(pathFile), pathFile, attrs.size(), attrs.lastModifiedTime().toMillis()));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path pathFile, IOException ex) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        final List<FileFound> lstFilesChanged = new ArrayList<>();
+        for (FileFound fileFound : lstFilesFound) {
+            Entry entry = this.mapEntries.get(fileFound.strKey);
+            if (entry == null || entry.lngSize != fileFound.lngSize || entry.lngTime != fileFound.lngTime) {
+                lstFilesChanged.add(fileFound);
+            }
+        }
+        if (lstFilesChanged.isEmpty() && lstFilesFound.size() == this.mapEntries.size() && this.mappedFileWindow != null) {
+            LOGGER.debug("Trigram index is up to date."
+                    + " Files=" + lstFilesFound.size()
+                    + " Time=" + (System.currentTimeMillis() - lngTimeStart)
+                    + " pathRoot=\"" + this.pathRoot + "\"");
+            return;
+        }
+
+        Files.createDirectories(this.pathIndexFile.getParent());
+        Path pathTemp = Paths.get(this.pathIndexFile.toString() + STR_INDEX_FILE_TEMP_EXT);
+        final Map<String, Entry> mapEntriesNew = new HashMap<>();
+        final AtomicLong atomBytesRead = new AtomicLong();
+        try (final FileChannel fileChannel = FileChannel.open(pathTemp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer byteBufferHeader = ByteBuffer.allocate(INT_HEADER_SIZE);
+            byteBufferHeader.putInt(INT_MAGIC).putInt(INT_VERSION).flip();
+            writeFully(fileChannel, byteBufferHeader);
+            if (this.mappedFileWindow != null) {
+                // get() could load index again and close window of this one, window is locked until filters are copied.
+                synchronized (this.mappedFileWindow) {
+                    this.copyEntries(lstFilesFound, fileChannel, mapEntriesNew);
+                }
+            } else {
+                this.copyEntries(lstFilesFound, fileChannel, mapEntriesNew);
+            }
+
+            final Entry[] aEntriesChanged = new Entry[lstFilesChanged.size()];
+            final AtomicInteger atomNext = new AtomicInteger();
+            int intThreads = Math.min(INT_THREADS, Math.max(1, lstFilesChanged.size()));
+            final CountDownLatch countDownLatch = new CountDownLatch(intThreads);
+            for (int t = 0; t < intThreads; t++) {
+                EditorIoScheduler.executeCpu(null, new Runnable() {
+                    @Override
+                    public void run() {
+                        // Trigrams found in file, bits are cleared by list of found ones after every file.
+                        long[] alngTrigramsFound = new long[INT_TRIGRAMS / 64];
+                        try {
+                            int i;
+                            while ((i = atomNext.getAndIncrement()) < aEntriesChanged.length) {
+                                FileFound fileFound = lstFilesChanged.get(i);
+                                try {
+                                    aEntriesChanged[i] = createEntry(fileFound, fileChannel, alngTrigramsFound, charsetDefault, booCharsetDetect);
+                                    atomBytesRead.addAndGet(fileFound.lngSize);
+                                } catch (IOException | RuntimeException ex) {
+                                    // File is not in index, it's searched and read again by next update.
+                                    LOGGER.debug("Could not make trigram filter."
+                                            + " pathFile=\"" + fileFound.pathFile + "\""
+                                            + " Exception=\"" + ex.toString() + "\"");
+                                }
+                            }
+                        } finally {
+                            countDownLatch.countDown();
+                        }
+                    }
+                });
+            }
+            countDownLatch.await();
+            for (int i = 0; i < aEntriesChanged.length; i++) {
+                if (aEntriesChanged[i] != null) {
+                    mapEntriesNew.put(lstFilesChanged.get(i).strKey, aEntriesChanged[i]);
+                }
+            }
+
+            long lngTablePos = fileChannel.size();
+            fileChannel.position(lngTablePos);
+            DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(fileChannel)));
+            dos.writeUTF(this.pathRoot.toString());
+            dos.writeUTF(charsetDefault.name());
+            dos.writeBoolean(booCharsetDetect);
+            dos.writeInt(mapEntriesNew.size());
+            for (Map.Entry<String, Entry> mapEntry : mapEntriesNew.entrySet()) {
+                Entry entry = mapEntry.getValue();
+                dos.writeUTF(mapEntry.getKey());
+                dos.writeLong(entry.lngSize);
+                dos.writeLong(entry.lngTime);
+                dos.writeByte(entry.byteKind);
+                dos.writeUTF(entry.strCharsetName);
+                dos.writeInt(entry.intFilterBits);
+                dos.writeLong(entry.lngFilterPos);
+            }
+            dos.writeLong(lngTablePos);
+            dos.writeInt(INT_MAGIC);
+            dos.flush();
+            // Index file must be on disk before it replaces old one, or crash could leave empty index.
+            fileChannel.force(true);
+        }
+        Files.move(pathTemp, this.pathIndexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        LOGGER.info("Updated trigram index."
+                + " Files=" + mapEntriesNew.size()
+                + " FilesRead=" + lstFilesChanged.size()
+                + " BytesRead=" + atomBytesRead.get()
+                + " IndexSize=" + Files.size(this.pathIndexFile)
+                + " Time=" + (System.currentTimeMillis() - lngTimeStart)
+                + " pathRoot=\"" + this.pathRoot + "\"");
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Entries of files not changed since this index was written are copied with their filters.
+    private void copyEntries(List<FileFound> lstFilesFound, FileChannel fileChannel, Map<String, Entry> mapEntriesNew) throws IOException {
+
+        for (FileFound fileFound : lstFilesFound) {
+            Entry entry = this.mapEntries.get(fileFound.strKey);
+            if (entry == null || entry.lngSize != fileFound.lngSize || entry.lngTime != fileFound.lngTime) {
+                continue;
+            }
+            if (entry.byteKind == BYTE_KIND_FILTERED) {
+                long lngFilterPos = fileChannel.position();
+                this.mappedFileWindow.transferTo(entry.lngFilterPos, entry.intFilterBits / 8, fileChannel);
+                fileChannel.position(lngFilterPos + entry.intFilterBits / 8);
+                entry = new Entry(entry.lngSize, entry.lngTime, entry.byteKind, entry.strCharsetName, entry.intFilterBits, lngFilterPos);
+            }
+            mapEntriesNew.put(fileFound.strKey, entry);
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Reads file like FileSearch: charset is detected, binary file is not read further.
+    private static Entry createEntry(FileFound fileFound, FileChannel fileChannel, long[] alngTrigramsFound,
+            Charset charsetDefault, boolean booCharsetDetect) throws IOException {
+
+        try (MappedFileWindow mappedFileWindowFile = new MappedFileWindow(fileFound.pathFile)) {
+            long lngSize = mappedFileWindowFile.size();
+            Charset charset = charsetDefault;
+            if (booCharsetDetect && lngSize > 0) {
+                charset = CharsetDetector.detect(mappedFileWindowFile, charsetDefault);
+            }
+            if (lngSize > 0 && !FileSearch.isCharsetWide(charset) && FileSearch.isBinary(mappedFileWindowFile)) {
+                return new Entry(fileFound.lngSize, fileFound.lngTime, BYTE_KIND_BINARY, charset.name(), 0, 0);
+            }
+            if (!FileSearch.isAsciiCompatible(charset)) {
+                return new Entry(fileFound.lngSize, fileFound.lngTime, BYTE_KIND_UNFILTERED, charset.name(), 0, 0);
+            }
+            int[] aintTrigrams = new int[1024];
+            int intTrigramCount = 0;
+            int intTrigram = 0;
+            long lngPos = 0;
+            while (lngPos < lngSize) {
+                int intLen = (int) Math.min(INT_SCAN_CHUNK_SIZE, lngSize - lngPos);
+                ByteBuffer byteBuffer = mappedFileWindowFile.getBuffer(lngPos, intLen);
+                for (int i = 0; i < intLen; i++) {
+                    intTrigram = ((intTrigram << 8) | (byteBuffer.get(i) & 0xFF)) & (INT_TRIGRAMS - 1);
+                    if (lngPos + i < 2) {
+                        continue;
+                    }
+                    long lngBit = 1L << intTrigram;
+                    if ((alngTrigramsFound[intTrigram >>> 6] & lngBit) == 0) {
+                        alngTrigramsFound[intTrigram >>> 6] |= lngBit;
+                        if (intTrigramCount == aintTrigrams.length) {
+                            aintTrigrams = Arrays.copyOf(aintTrigrams, intTrigramCount * 2);
+                        }
+                        aintTrigrams[intTrigramCount++] = intTrigram;
+                    }
+                }
+                lngPos += intLen;
+            }
+            for (int i = 0; i < intTrigramCount; i++) {
+                alngTrigramsFound[aintTrigrams[i] >>> 6] = 0;
+            }
+            long lngBitsNeeded = (long) intTrigramCount * INT_FILTER_BITS_PER_TRIGRAM;
+            if (lngBitsNeeded > INT_FILTER_BITS_MAX) {
+                return new Entry(fileFound.lngSize, fileFound.lngTime, BYTE_KIND_UNFILTERED, charset.name(), 0, 0);
+            }
+            int intFilterBits = Math.max(INT_FILTER_BITS_MIN, Integer.highestOneBit((int) Math.max(1, lngBitsNeeded - 1)) << 1);
+            int intMask = intFilterBits - 1;
+            ByteBuffer byteBufferFilter = ByteBuffer.allocate(intFilterBits / 8);
+            for (int i = 0; i < intTrigramCount; i++) {
+                long lngHash = hash(aintTrigrams[i]);
+                setBit(byteBufferFilter, (int) lngHash & intMask);
+                setBit(byteBufferFilter, (int) (lngHash >>> 32) & intMask);
+            }
+            long lngFilterPos;
+            synchronized (fileChannel) {
+                lngFilterPos = fileChannel.position();
+                writeFully(fileChannel, byteBufferFilter);
+            }
+            return new Entry(fileFound.lngSize, fileFound.lngTime, BYTE_KIND_FILTERED, charset.name(), intFilterBits, lngFilterPos);
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    private String getKey(Path pathFile) {
+
+        return this.pathRoot.relativize(pathFile).toString();
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Name of index file is made of folder path, folder path in index file is checked when it's read.
+    private static Path getIndexFilePath(Path pathRoot) {
+
+        String strRoot = pathRoot.toString();
+        Path pathName = pathRoot.getFileName();
+        String strName = (pathName == null) ? "root" : pathName.toString().replaceAll("[^A-Za-z0-9_-]", "_");
+        return Paths.get(Settings.STR_FIND_FILES_INDEX_DIR_PATH, strName + "-" + Integer.toHexString(strRoot.hashCode()) + STR_INDEX_FILE_EXT);
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Two bit positions of trigram are low and high half of 64 bit hash (SplitMix64 finalizer).
+    private static long hash(int intTrigram) {
+
+        long lngHash = intTrigram * 0x9E3779B97F4A7C15L;
+        lngHash = (lngHash ^ (lngHash >>> 30)) * 0xBF58476D1CE4E5B9L;
+        lngHash = (lngHash ^ (lngHash >>> 27)) * 0x94D049BB133111EBL;
+        return lngHash ^ (lngHash >>> 31);
+    }
+
+    private static boolean isBitSet(ByteBuffer byteBuffer, int intBit) {
+        return (byteBuffer.get(intBit >>> 3) & (1 << (intBit & 7))) != 0;
+    }
+
+    private static void setBit(ByteBuffer byteBuffer, int intBit) {
+        byteBuffer.put(intBit >>> 3, (byte) (byteBuffer.get(intBit >>> 3) | (1 << (intBit & 7))));
+    }
+
+    private static void writeFully(FileChannel fileChannel, ByteBuffer byteBuffer) throws IOException {
+
+        while (byteBuffer.hasRemaining()) {
+            fileChannel.write(byteBuffer);
+        }
+    }
+    // -------------------------------------------------------------------------------------
+}
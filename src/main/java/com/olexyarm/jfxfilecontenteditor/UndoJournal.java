@@ -0,0 +1,309 @@
+/*
+ * Copyright (c) 2024, Oleksandr Yarmolenko. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2, as
+ * published by the Free Software Foundation.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details.
+ *
+ */
+package com.olexyarm.jfxfilecontenteditor;
+
+import java.util.ArrayDeque;
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.SimpleBooleanProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Undo and redo history of document owned by editor. Every edit is kept as delta: offset, removed text
+// and inserted text, so history does not depend on how document was changed (typing, Replace, paste).
+// Typed chars and deleted chars are merged in one entry until line break, pause or caret jump.
+// Replace All is one entry keeping offsets of occurrences, text to find and replacement once.
+// Memory of entries is limited, oldest entries are dropped from the ring when limit is reached.
+public class UndoJournal {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(UndoJournal.class);
+
+    // Memory of entry object, its builders and array headers.
+    private static final int INT_ENTRY_OVERHEAD = 96;
+    private static final long LNG_MERGE_PAUSE_MS = 1000;
+    // Backspace in FileContentView removes CR LF at once.
+    private static final int INT_MERGE_DELETE_MAX = 2;
+    private static final char CH_LF = '\n';
+
+    private final ArrayDeque<Entry> dequeUndo = new ArrayDeque<>();
+    private final ArrayDeque<Entry> dequeRedo = new ArrayDeque<>();
+    private final long lngBytesMax;
+    private long lngBytes;
+    // Edits made while entry is undone or redone are not recorded.
+    private boolean booRecording = true;
+    private boolean booMerge;
+
+    private final BooleanProperty booPropUndoable = new SimpleBooleanProperty(false);
+    private final BooleanProperty booPropRedoable = new SimpleBooleanProperty(false);
+
+    // -------------------------------------------------------------------------------------
+    // Applies entries to document, editor passes edits to TextArea or FileContentView.
+    public interface Target {
+
+        void replace(long lngStart, long lngEnd, String strText);
+
+        void replaceAll(long[] alngStart, int intCount, int intFindLen, String strText);
+    }
+
+    // -------------------------------------------------------------------------------------
+    private static class Entry {
+
+        private long lngStart;
+        private final StringBuilder sbRemoved;
+        private final StringBuilder sbInserted;
+        // Replace All: offsets of removed ranges before replacing, every range had text sbRemoved.
+        private final long[] alngStart;
+        private final int intCount;
+        private final boolean booTyping;
+        private long lngTime;
+
+        private Entry(long lngStart, String strRemoved, String strInserted, long[] alngStart, int intCount, boolean booTyping) {
+
+            this.lngStart = lngStart;
+            this.sbRemoved = new StringBuilder(strRemoved);
+            this.sbInserted = new StringBuilder(strInserted);
+            this.alngStart = alngStart;
+            this.intCount = intCount;
+            this.booTyping = booTyping;
+            this.lngTime = System.currentTimeMillis();
+        }
+
+        private long getBytes() {
+            long lngBytes = INT_ENTRY_OVERHEAD + 2L * (this.sbRemoved.capacity() + this.sbInserted.capacity());
+            if (this.alngStart != null) {
+                lngBytes += 8L * this.alngStart.length;
+            }
+            return lngBytes;
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Construstors
+    // -------------------------------------------------------------------------------------
+    public UndoJournal(long lngBytesMax) {
+
+        this.lngBytesMax = lngBytesMax;
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Methods
+    // -------------------------------------------------------------------------------------
+    // Must be called before document range [lngStart, lngEnd) is replaced with strText.
+    public void recordReplace(PieceTable document, long lngStart, long lngEnd, String strText) {
+
+        if (!this.booRecording) {
+            return;
+        }
+        String strInsert = (strText == null) ? "" : strText;
+        if (lngStart == lngEnd && strInsert.isEmpty()) {
+            return;
+        }
+        if (2L * (lngEnd - lngStart + strInsert.length()) + INT_ENTRY_OVERHEAD > this.lngBytesMax) {
+            // Removed text is not copied, history before this edit could not be applied any more.
+            LOGGER.debug("Edit is too big for undo history."
+                    + " Start=" + lngStart
+                    + " End=" + lngEnd
+                    + " TextLength=" + strInsert.length()
+                    + " BytesMax=" + this.lngBytesMax);
+            this.clear();
+            return;
+        }
+        String strRemoved = document.getText(lngStart, lngEnd);
+        this.clearRedo();
+
+        long lngTime = System.currentTimeMillis();
+        boolean booTypeChar = strInsert.length() == 1 && strInsert.charAt(0) != CH_LF;
+        boolean booDeleteChar = strInsert.isEmpty() && strRemoved.length() <= INT_MERGE_DELETE_MAX && strRemoved.indexOf(CH_LF) < 0;
+        Entry entryLast = this.dequeUndo.peekLast();
+        if (this.booMerge && entryLast != null && entryLast.booTyping && lngTime - entryLast.lngTime <= LNG_MERGE_PAUSE_MS) {
+            long lngBytesLast = entryLast.getBytes();
+            boolean booMerged = false;
+            if (booTypeChar && strRemoved.isEmpty() && lngStart == entryLast.lngStart + entryLast.sbInserted.length()) {
+                entryLast.sbInserted.append(strInsert);
+                booMerged = true;
+            } else if (booDeleteChar && entryLast.sbInserted.length() == 0) {
+                if (lngEnd == entryLast.lngStart) {
+                    // Backspace
+                    entryLast.sbRemoved.insert(0, strRemoved);
+                    entryLast.lngStart = lngStart;
+                    booMerged = true;
+                } else if (lngStart == entryLast.lngStart) {
+                    // Delete
+                    entryLast.sbRemoved.append(strRemoved);
+                    booMerged = true;
+                }
+            }
+            if (booMerged) {
+                entryLast.lngTime = lngTime;
+                this.lngBytes += entryLast.getBytes() - lngBytesLast;
+                this.trim();
+                return;
+            }
+        }
+        this.add(new Entry(lngStart, strRemoved, strInsert, null, 0, booTypeChar || booDeleteChar));
+        this.booMerge = true;
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Must be called before ranges [alngStart[i], alngStart[i] + strFind.length()) are replaced with strText,
+    // array is kept by entry and must not be changed.
+    public void recordReplaceAll(long[] alngStart, int intCount, String strFind, String strText) {
+
+        if (!this.booRecording || intCount == 0) {
+            return;
+        }
+        this.clearRedo();
+        Entry entry = new Entry(-1, strFind, strText, alngStart, intCount, false);
+        if (entry.getBytes() > this.lngBytesMax) {
+            LOGGER.debug("Replace All is too big for undo history."
+                    + " Count=" + intCount
+                    + " BytesMax=" + this.lngBytesMax);
+            this.clear();
+            return;
+        }
+        this.add(entry);
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Next edit starts new entry, called when caret is moved not by typing.
+    public void breakMerge() {
+
+        this.booMerge = false;
+    }
+
+    // -------------------------------------------------------------------------------------
+    public boolean undo(Target target) {
+
+        Entry entry = this.dequeUndo.pollLast();
+        if (entry == null) {
+            return false;
+        }
+        this.booRecording = false;
+        try {
+            if (entry.alngStart == null) {
+                target.replace(entry.lngStart, entry.lngStart + entry.sbInserted.length(), entry.sbRemoved.toString());
+            } else {
+                // Occurrences are moved by difference of lengths of all replaced occurrences before them.
+                int intFindLen = entry.sbRemoved.length();
+                long lngDelta = entry.sbInserted.length() - intFindLen;
+                long[] alngStartNew = new long[entry.intCount];
+                for (int i = 0; i < entry.intCount; i++) {
+                    alngStartNew[i] = entry.alngStart[i] + i * lngDelta;
+                }
+                target.replaceAll(alngStartNew, entry.intCount, entry.sbInserted.length(), entry.sbRemoved.toString());
+            }
+        } finally {
+            this.booRecording = true;
+        }
+        this.dequeRedo.addLast(entry);
+        this.booMerge = false;
+        this.updateProperties();
+        return true;
+    }
+
+    // -------------------------------------------------------------------------------------
+    public boolean redo(Target target) {
+
+        Entry entry = this.dequeRedo.pollLast();
+        if (entry == null) {
+            return false;
+        }
+        this.booRecording = false;
+        try {
+            if (entry.alngStart == null) {
+                target.replace(entry.lngStart, entry.lngStart + entry.sbRemoved.length(), entry.sbInserted.toString());
+            } else {
+                target.replaceAll(entry.alngStart, entry.intCount, entry.sbRemoved.length(), entry.sbInserted.toString());
+            }
+        } finally {
+            this.booRecording = true;
+        }
+        this.dequeUndo.addLast(entry);
+        this.booMerge = false;
+        this.updateProperties();
+        return true;
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Edits made while recording is off are not undone, history must be cleared if document is replaced.
+    public void setRecording(boolean booRecording) {
+
+        this.booRecording = booRecording;
+    }
+
+    // -------------------------------------------------------------------------------------
+    public void clear() {
+
+        this.dequeUndo.clear();
+        this.dequeRedo.clear();
+        this.lngBytes = 0;
+        this.booMerge = false;
+        this.updateProperties();
+    }
+
+    // -------------------------------------------------------------------------------------
+    public ReadOnlyBooleanProperty undoableProperty() {
+        return this.booPropUndoable;
+    }
+
+    public ReadOnlyBooleanProperty redoableProperty() {
+        return this.booPropRedoable;
+    }
+
+    public long getBytes() {
+        return this.lngBytes;
+    }
+
+    public int getUndoCount() {
+        return this.dequeUndo.size();
+    }
+
+    // -------------------------------------------------------------------------------------
+    // Helpers
+    // -------------------------------------------------------------------------------------
+    private void add(Entry entry) {
+
+        this.dequeUndo.addLast(entry);
+        this.lngBytes += entry.getBytes();
+        this.trim();
+        this.updateProperties();
+    }
+
+    // -------------------------------------------------------------------------------------
+    private void trim() {
+
+        while (this.lngBytes > this.lngBytesMax && this.dequeUndo.size() > 1) {
+            this.lngBytes -= this.dequeUndo.pollFirst().getBytes();
+        }
+    }
+
+    // -------------------------------------------------------------------------------------
+    private void clearRedo() {
+
+        for (Entry entry : this.dequeRedo) {
+            this.lngBytes -= entry.getBytes();
+        }
+        this.dequeRedo.clear();
+        this.updateProperties();
+    }
+
+    // -------------------------------------------------------------------------------------
+    private void updateProperties() {
+
+        this.booPropUndoable.set(!this.dequeUndo.isEmpty());
+        this.booPropRedoable.set(!this.dequeRedo.isEmpty());
+    }
+    // -------------------------------------------------------------------------------------
+}
@@ -19,6 +19,8 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.OpenOption;
@@ -45,9 +47,13 @@ public class Utils {
 
     public static final Map<String, Node> MAP_NODE_REFS = new HashMap<>();
 
+    // Line of OpenTabs file is file path, caret position and first visible line separated by tabs.
+    public static final char CH_OPEN_TABS_SEPARATOR = '\t';
+    private static final int INT_READ_AHEAD_BUFFER_SIZE = 1024 * 1024;
+
     public enum NODE_NAMES {
         hboxBottomSearchResult, hboxBottomFind, tfBottomFind, hboxBottomReplace, tfBottomReplace, vboxBottom,
-        tfBottomLineEnding, tfBottomCharset
+        tfBottomCaretPosition, tfBottomLineEnding, tfBottomCharset
     };
 
     // ---------------------------------------------------------------------------
@@ -145,11 +151,21 @@ public class Utils {
                     booFileModifiedAny = true;
                 }
                 String strFilePath = fileEditor.getFilePath();
+                long lngCaretPosition = fileEditor.getCaretPositionToRestore();
+                int intLineFirst = fileEditor.getLineFirstToRestore();
                 writer.write(strFilePath);
+                if (lngCaretPosition >= 0 && intLineFirst >= 0) {
+                    writer.write(CH_OPEN_TABS_SEPARATOR);
+                    writer.write("" + lngCaretPosition);
+                    writer.write(CH_OPEN_TABS_SEPARATOR);
+                    writer.write("" + intLineFirst);
+                }
                 writer.write("\n");
                 LOGGER.debug("Saved Opened Tab to file."
                         + " path=\"" + path + "\""
                         + " strID=\"" + strID + "\""
+                        + " CaretPosition=" + lngCaretPosition
+                        + " LineFirst=" + intLineFirst
                         + " strFilePath=\"" + strFilePath + "\"");
 
             }
@@ -190,6 +206,30 @@ public class Utils {
         return lstOpenTabs;
     }
 
+    // -------------------------------------------------------------------------------------
+    // Reads file without keeping its content, so file system cache has it when file is opened.
+    public static long readFileAhead(Path pathFile, long lngBytesMax) {
+
+        ByteBuffer byteBuffer = ByteBuffer.allocateDirect(INT_READ_AHEAD_BUFFER_SIZE);
+        long lngBytesRead = 0;
+        try (FileChannel fileChannel = FileChannel.open(pathFile, StandardOpenOption.READ)) {
+            while (lngBytesRead < lngBytesMax && !Thread.currentThread().isInterrupted()) {
+                byteBuffer.clear();
+                int intRead = fileChannel.read(byteBuffer);
+                if (intRead < 0) {
+                    break;
+                }
+                lngBytesRead += intRead;
+            }
+        } catch (IOException ex) {
+            LOGGER.debug("Could not read file ahead."
+                    + " pathFile=\"" + pathFile + "\""
+                    + " BytesRead=" + lngBytesRead
+                    + " IOException=\"" + ex.toString() + "\"");
+        }
+        return lngBytesRead;
+    }
+
     // -------------------------------------------------------------------------------------
     public static boolean createNewFile(Path pathFile) {
 
@@ -4,6 +4,7 @@ module com.olexyarm.jfxfilecontenteditor {
     requires org.slf4j;
     requires ch.qos.logback.classic;
     requires java.desktop;
+    requires static jdk.incubator.vector;
 
     opens com.olexyarm.jfxfilecontenteditor to javafx.fxml;
     exports com.olexyarm.jfxfilecontenteditor;